@@ -17,6 +17,7 @@ package broadwick.networkedsir;
 
 import broadwick.BroadwickConstants;
 import broadwick.data.Movement;
+import broadwick.data.MovementIndex;
 import broadwick.model.Model;
 import broadwick.montecarlo.MonteCarloResults;
 import broadwick.montecarlo.MonteCarloScenario;
@@ -87,7 +88,8 @@ public class App extends Model {
                                            movement.getSpecies()));
             }
 
-            final MonteCarloScenario scenario = new MyMonteCarloScenario(settings, movements);
+            // index the movements by day once, the (read-only) index is shared by all the scenarios.
+            final MonteCarloScenario scenario = new MyMonteCarloScenario(settings, new MovementIndex(movements));
             SequentialMonteCarlo smc;
             smc = new SequentialMonteCarlo(
                     this.getPriors(),
@@ -16,6 +16,7 @@
 package broadwick.networkedsir;
 
 import broadwick.data.Movement;
+import broadwick.data.MovementIndex;
 import broadwick.montecarlo.MonteCarloResults;
 import broadwick.montecarlo.MonteCarloScenario;
 import broadwick.statistics.distributions.HypergeometricDistribution;
@@ -25,8 +26,6 @@ import broadwick.stochastic.SimulationEvent;
 import broadwick.stochastic.StochasticSimulator;
 import broadwick.stochastic.TransitionKernel;
 import broadwick.stochastic.algorithms.TauLeapingFixedStep;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -41,7 +40,7 @@ import lombok.extern.slf4j.Slf4j;
 public class MyMonteCarloScenario extends MonteCarloScenario {
 
     MyMonteCarloScenario(final MyProjectSettings settings,
-                         final Collection<Movement> movements) {
+                         final MovementIndex movements) {
 
         super();
         this.settings = settings;
@@ -121,10 +120,9 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
 
         currentMovements.clear();
 
-        final Predicate p = (Predicate<Movement>) (Movement m) -> m.getDepartureDate() == Math.round(simulator.getCurrentTime())
-                                                            && amountManager.getInfectedLocations().containsKey(m.getDepartureId());
-        for (final Object o : Iterables.filter(this.getMovements(), p)) {
-            final Movement m = (Movement) o;
+        // the movements departing today from the infected locations.
+        final int today = (int) Math.round(simulator.getCurrentTime());
+        for (final Movement m : movements.getDepartures(today, amountManager.getInfectedLocations().keySet())) {
             // How many infected agents will be moved
 
             final int numInfectionsAtLocation = amountManager.getInfectedLocations().get(m.getDepartureId()).size();
@@ -212,7 +210,7 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
     private int lastUsedAgentId = 0;
     private final MyProjectSettings settings;
     @Getter
-    private final Iterable<Movement> movements;
+    private final MovementIndex movements;
     @Getter
     private final RNG generator = new RNG(RNG.Generator.Well19937c);
     @Getter
@@ -15,11 +15,10 @@
  */
 package broadwick;
 
+import broadwick.utils.DateConverter;
 import lombok.Getter;
 import org.joda.time.DateTime;
 import org.joda.time.Days;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
 
 /**
  * All the constants for the Broadwick framework are defined here.
@@ -54,15 +53,14 @@ public final class BroadwickConstants {
 
     /**
      * Convert a date object to an integer (number of days from a fixed start date, here 1/1/1900). All dates in the
-     * database are stored as integer values using this method.
+     * database are stored as integer values using this method. The (compiled) date format is cached, see
+     * DateConverter.
      * @param date       the date object we are converting.
      * @param dateFormat the format the date is in when doing the conversion.
      * @return the number of days from a fixed 'zero date'.
      */
     public static int getDate(final String date, final String dateFormat) {
-        final DateTimeFormatter pattern = DateTimeFormat.forPattern(dateFormat);
-        final DateTime dateTime = pattern.parseDateTime(date);
-        return BroadwickConstants.getDate(dateTime);
+        return DateConverter.forPattern(dateFormat).toDays(date);
     }
 
     @Getter
@@ -0,0 +1,484 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.BroadwickException;
+import broadwick.data.readers.DirectedMovementsFileReader;
+import broadwick.data.readers.FullMovementsFileReader;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rits.cloning.Immutable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.time.StopWatch;
+
+/**
+ * An in-memory index of the location of every animal over time, allowing the location of an animal on a date to be
+ * found by a binary search instead of the database queries made by Lookup.getAnimalLocationIdAtDate(). For each
+ * animal the index holds the dates on which its location changes, sorted by date, and the location from that date:
+ * <ul>
+ * <li>its birth, at its location of birth (from the beginning of time if the date of birth is not known);</li>
+ * <li>each full movement, at the destination from the departure date;</li>
+ * <li>each directed movement, at the location recorded for the movement from the movement date (as in
+ * getAnimalLocationIdAtDate(), an OFF movement leaves the animal at the location it moved off);</li>
+ * <li>its death, at its location of death.</li>
+ * </ul>
+ * Changes on the same day are applied in that order. Before its first change point an animal is at its location of
+ * birth, if that is known. Animal and location ids are stored as codes from the IdDictionary of the Lookup object so
+ * the index takes three ints and a byte per change point. The index is read only once it is created so it may be
+ * shared by any number of threads, it is not copied when a MonteCarloScenario containing it is cloned.
+ */
+@Slf4j
+@Immutable
+public final class AnimalLocationIndex implements Serializable {
+
+    /**
+     * Create the index from the animals and movements in the internal database, using a thread for each available
+     * processor.
+     * @param lookup the lookup object for the internal database.
+     */
+    public AnimalLocationIndex(final Lookup lookup) {
+        this(lookup, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create the index from the animals and movements in the internal database. The movements and life histories
+     * tables are read concurrently (though the ids read from them are encoded one at a time by the synchronised
+     * dictionary) and the change points of each animal sorted in parallel.
+     * @param lookup      the lookup object for the internal database.
+     * @param parallelism the number of threads used to create the index.
+     */
+    public AnimalLocationIndex(final Lookup lookup, final int parallelism) {
+        final StopWatch sw = new StopWatch();
+        sw.start();
+
+        this.dictionary = lookup.getIdDictionary();
+        final List<Callable<ChangePoints>> readers = new ArrayList<>();
+        readers.add(new Callable<ChangePoints>() {
+            @Override
+            public ChangePoints call() {
+                return readMovements(lookup);
+            }
+        });
+        readers.add(new Callable<ChangePoints>() {
+            @Override
+            public ChangePoints call() {
+                return readLifeHistories(lookup);
+            }
+        });
+
+        final int numThreads = Math.max(1, parallelism);
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("AnimalLocationIndex-%d")
+                .setDaemon(true)
+                .build();
+        final ExecutorService es = Executors.newFixedThreadPool(numThreads, threadFactory);
+        try {
+            final List<ChangePoints> points = new ArrayList<>();
+            for (final Future<ChangePoints> result : es.invokeAll(readers)) {
+                points.add(getResult(result));
+            }
+
+            // bucket the change points by animal (CSR form) then sort each animal's change points in parallel
+            final int numSlots = dictionary.size();
+            this.offsets = new int[numSlots + 1];
+            for (final ChangePoints p : points) {
+                for (int i = 0; i < p.size; i++) {
+                    offsets[p.animals[i] + 1]++;
+                }
+            }
+            for (int a = 0; a < numSlots; a++) {
+                offsets[a + 1] += offsets[a];
+            }
+            final int numPoints = offsets[numSlots];
+            this.dates = new int[numPoints];
+            this.locations = new int[numPoints];
+            this.kinds = new byte[numPoints];
+            final int[] next = Arrays.copyOf(offsets, numSlots);
+            for (final ChangePoints p : points) {
+                for (int i = 0; i < p.size; i++) {
+                    final int pos = next[p.animals[i]]++;
+                    dates[pos] = p.dates[i];
+                    locations[pos] = p.locations[i];
+                    kinds[pos] = p.kinds[i];
+                }
+            }
+
+            final List<Callable<Integer>> sorters = new ArrayList<>();
+            final int chunk = (numSlots + numThreads - 1) / numThreads;
+            for (int first = 0; first < numSlots; first += chunk) {
+                final int from = first;
+                final int to = Math.min(numSlots, first + chunk);
+                sorters.add(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return sortChangePoints(from, to);
+                    }
+                });
+            }
+            int numAnimals = 0;
+            for (final Future<Integer> result : es.invokeAll(sorters)) {
+                numAnimals += getResult(result);
+            }
+            this.numAnimals = numAnimals;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BroadwickException("Interrupted while creating the animal location index.");
+        } finally {
+            es.shutdownNow();
+        }
+
+        sw.stop();
+        log.debug("Indexed {} location changes for {} animals in {}.", dates.length, numAnimals, sw.toString());
+    }
+
+    /**
+     * Get the number of animals in the index.
+     * @return the number of animals.
+     */
+    public int getNumAnimals() {
+        return numAnimals;
+    }
+
+    /**
+     * Get the number of location changes (births, movements and deaths) in the index.
+     * @return the number of change points.
+     */
+    public int getNumChangePoints() {
+        return dates.length;
+    }
+
+    /**
+     * Get the dictionary used to encode the animal and location ids in the index.
+     * @return the dictionary.
+     */
+    public IdDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Get the location of an animal at a specified date.
+     * @param animalId the id of the animal.
+     * @param date     the date for which we want the animals location.
+     * @return the id of the location of the animal on date, or null if the location of the animal is not known.
+     */
+    public String getLocationIdAtDate(final String animalId, final int date) {
+        return dictionary.decode(getLocationAtDate(dictionary.getCode(animalId), date));
+    }
+
+    /**
+     * Get the location of an animal at a specified date, using the codes of the ids.
+     * @param animalCode the code of the id of the animal.
+     * @param date       the date for which we want the animals location.
+     * @return the code of the id of the location of the animal on date, or IdDictionary.NO_ID if the location of the
+     *         animal is not known.
+     */
+    public int getLocationAtDate(final int animalCode, final int date) {
+        if (animalCode < 0 || animalCode >= offsets.length - 1) {
+            return IdDictionary.NO_ID;
+        }
+        final int start = offsets[animalCode];
+        final int end = offsets[animalCode + 1];
+
+        // find the last change point on or before the date.
+        int lo = start;
+        int hi = end;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (dates[mid] <= date) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo > start) {
+            return locations[lo - 1];
+        }
+
+        // the date is before the first change point so the animal is still on its location of birth (if it's known).
+        for (int i = start; i < end; i++) {
+            if (kinds[i] == BIRTH) {
+                return locations[i];
+            }
+        }
+        return IdDictionary.NO_ID;
+    }
+
+    /**
+     * Get the location of each of a collection of animals at a specified date.
+     * @param animalIds the ids of the animals.
+     * @param date      the date for which we want the animals locations.
+     * @return a map of animal id to the id of the location of the animal on date, animals whose location is not known
+     *         are not in the map.
+     */
+    public Map<String, String> getLocationIdsAtDate(final Collection<String> animalIds, final int date) {
+        final Map<String, String> locationIds = new HashMap<>(animalIds.size());
+        for (final String animalId : animalIds) {
+            final int location = getLocationAtDate(dictionary.getCode(animalId), date);
+            if (location != IdDictionary.NO_ID) {
+                locationIds.put(animalId, dictionary.decode(location));
+            }
+        }
+        return locationIds;
+    }
+
+    /**
+     * Get the number of animal codes covered by the index, i.e. one more than the largest code of an animal in the
+     * index.
+     * @return the number of animal codes.
+     */
+    int getNumAnimalCodes() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Pass the periods each of a range of animals spends alive at each location to a handler. An animal is alive from
+     * its date of birth to its date of death inclusive (as in Lookup.getAnimals(int)), animals with no birth in the
+     * life histories table are ignored. Consecutive periods at the same location are merged and periods at unknown
+     * locations are not passed to the handler.
+     * @param fromAnimal the code of the first animal in the range.
+     * @param toAnimal   the code after the last animal in the range.
+     * @param handler    the handler that will process each period.
+     */
+    void forEachStay(final int fromAnimal, final int toAnimal, final StayHandler handler) {
+        for (int a = fromAnimal; a < toAnimal; a++) {
+            final int start = offsets[a];
+            final int end = offsets[a + 1];
+            long born = Long.MAX_VALUE;
+            long died = (long) Integer.MAX_VALUE + 1;
+            for (int i = start; i < end; i++) {
+                if (kinds[i] == BIRTH && born == Long.MAX_VALUE) {
+                    born = dates[i];
+                } else if (kinds[i] == DEATH) {
+                    died = (long) dates[i] + 1;
+                }
+            }
+            if (born >= died) {
+                continue;
+            }
+
+            // the animal is at the location of each change point until the next (later) change point.
+            int location = IdDictionary.NO_ID;
+            long from = born;
+            for (int i = start; i < end; i++) {
+                final long date = Math.max(born, Math.min(died, dates[i]));
+                if (locations[i] != location) {
+                    if (location != IdDictionary.NO_ID && date > from) {
+                        handler.handle(a, location, from, date);
+                    }
+                    location = locations[i];
+                    from = date;
+                }
+            }
+            if (location != IdDictionary.NO_ID && died > from) {
+                handler.handle(a, location, from, died);
+            }
+        }
+    }
+
+    /**
+     * Read the change points from the full and directed movements tables.
+     * @param lookup the lookup object for the internal database.
+     * @return the change points.
+     */
+    private ChangePoints readMovements(final Lookup lookup) {
+        final ChangePoints points = new ChangePoints();
+        lookup.forEachMovement(FullMovementsFileReader.getTABLE_NAME(), new ResultHandler<Movement>() {
+            @Override
+            public void handle(final Movement movement) {
+                final Integer date = movement.getDepartureDate() == null ? movement.getDestinationDate()
+                                     : movement.getDepartureDate();
+                if (date != null) {
+                    points.add(dictionary.encode(movement.getId()), date, FULL,
+                               dictionary.encode(movement.getDestinationId()));
+                }
+            }
+        });
+        lookup.forEachMovement(DirectedMovementsFileReader.getTABLE_NAME(), new ResultHandler<Movement>() {
+            @Override
+            public void handle(final Movement movement) {
+                if (movement.getDestinationDate() != null) {
+                    points.add(dictionary.encode(movement.getId()), movement.getDestinationDate(), ON,
+                               dictionary.encode(movement.getDestinationId()));
+                } else if (movement.getDepartureDate() != null) {
+                    points.add(dictionary.encode(movement.getId()), movement.getDepartureDate(), OFF,
+                               dictionary.encode(movement.getDepartureId()));
+                }
+            }
+        });
+        return points;
+    }
+
+    /**
+     * Read the births and deaths from the life histories table.
+     * @param lookup the lookup object for the internal database.
+     * @return the change points.
+     */
+    private ChangePoints readLifeHistories(final Lookup lookup) {
+        final ChangePoints points = new ChangePoints();
+        try {
+            lookup.forEachAnimal(new ResultHandler<Animal>() {
+                @Override
+                public void handle(final Animal animal) {
+                    final int animalCode = dictionary.encode(animal.getId());
+                    final Integer dob = animal.getDateOfBirth();
+                    points.add(animalCode, dob == null ? Integer.MIN_VALUE : dob, BIRTH,
+                               dictionary.encode(animal.getLocationOfBirth()));
+                    if (animal.getDateOfDeath() != null) {
+                        points.add(animalCode, animal.getDateOfDeath(), DEATH,
+                                   dictionary.encode(animal.getLocationOfDeath()));
+                    }
+                }
+            });
+        } catch (org.jooq.exception.DataAccessException e) {
+            log.trace("Could not get animals - perhaps the table hasn't been created.");
+        }
+        return points;
+    }
+
+    /**
+     * Sort the change points of a range of animals by date (and kind of change on the same date).
+     * @param from the code of the first animal in the range.
+     * @param to   the code after the last animal in the range.
+     * @return the number of animals in the range that have change points.
+     */
+    private int sortChangePoints(final int from, final int to) {
+        int numSorted = 0;
+        long[] keys = new long[0];
+        int[] sortedLocations = new int[0];
+        for (int a = from; a < to; a++) {
+            final int start = offsets[a];
+            final int n = offsets[a + 1] - start;
+            if (n == 0) {
+                continue;
+            }
+            numSorted++;
+            if (n > keys.length) {
+                keys = new long[n];
+                sortedLocations = new int[n];
+            }
+            // pack the date, kind and position of each change point so a single sort of longs orders them stably.
+            for (int i = 0; i < n; i++) {
+                keys[i] = ((long) dates[start + i] << 32) | ((long) kinds[start + i] << KIND_SHIFT) | i;
+            }
+            Arrays.sort(keys, 0, n);
+            for (int i = 0; i < n; i++) {
+                sortedLocations[i] = locations[start + (int) (keys[i] & POSITION_MASK)];
+            }
+            for (int i = 0; i < n; i++) {
+                dates[start + i] = (int) (keys[i] >> 32);
+                kinds[start + i] = (byte) ((keys[i] >>> KIND_SHIFT) & KIND_MASK);
+                locations[start + i] = sortedLocations[i];
+            }
+        }
+        return numSorted;
+    }
+
+    /**
+     * Get the result of a task run while creating the index.
+     * @param <T>    the type of the result.
+     * @param result the future result of the task.
+     * @return the result.
+     * @throws InterruptedException if the thread is interrupted while waiting for the result.
+     */
+    private static <T> T getResult(final Future<T> result) throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw new BroadwickException(String.format("Could not create the animal location index. %s",
+                                                       e.getCause().getLocalizedMessage()));
+        }
+    }
+
+    /**
+     * The handler of the periods that animals spend at locations, see forEachStay().
+     */
+    interface StayHandler {
+
+        /**
+         * Handle a period that an animal spends at a location.
+         * @param animal   the code of the animal.
+         * @param location the code of the location.
+         * @param from     the first day of the period.
+         * @param to       the day after the last day of the period.
+         */
+        void handle(int animal, int location, long from, long to);
+    }
+
+    /**
+     * A growable list of (unsorted) change points read from one of the tables.
+     */
+    private static final class ChangePoints {
+
+        /**
+         * Add a change point to the list.
+         * @param animal   the code of the animal.
+         * @param date     the date of the change.
+         * @param kind     the kind of change.
+         * @param location the code of the location of the animal from the date.
+         */
+        private void add(final int animal, final int date, final byte kind, final int location) {
+            if (animal == IdDictionary.NO_ID) {
+                return;
+            }
+            if (size == dates.length) {
+                animals = Arrays.copyOf(animals, 2 * size);
+                dates = Arrays.copyOf(dates, 2 * size);
+                locations = Arrays.copyOf(locations, 2 * size);
+                kinds = Arrays.copyOf(kinds, 2 * size);
+            }
+            animals[size] = animal;
+            dates[size] = date;
+            locations[size] = location;
+            kinds[size] = kind;
+            size++;
+        }
+
+        private int size;
+        private int[] animals = new int[INITIAL_CAPACITY];
+        private int[] dates = new int[INITIAL_CAPACITY];
+        private int[] locations = new int[INITIAL_CAPACITY];
+        private byte[] kinds = new byte[INITIAL_CAPACITY];
+    }
+
+    private final IdDictionary dictionary;
+    private final int[] offsets;
+    private final int[] dates;
+    private final int[] locations;
+    private final byte[] kinds;
+    private final int numAnimals;
+    private static final byte BIRTH = 0;
+    private static final byte OFF = 1;
+    private static final byte FULL = 2;
+    private static final byte ON = 3;
+    private static final byte DEATH = 4;
+    private static final int KIND_SHIFT = 28;
+    private static final long KIND_MASK = 0xF;
+    private static final long POSITION_MASK = (1L << KIND_SHIFT) - 1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long serialVersionUID = -1467403517426785720L;
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import com.rits.cloning.Immutable;
+
+/**
+ * A compact store of animals, each animal takes 6 ints (with the ids encoded by an IdDictionary) rather than an Animal
+ * object with its boxed dates and strings. The fields of an animal are read by its row number, e.g.
+ * getLocationOfBirth(row), without creating any objects; get(row) creates the equivalent Animal object. Missing dates
+ * are stored as NULL_VALUE and missing ids as IdDictionary.NO_ID.
+ * <p>
+ * The store is read only once it is created by the Lookup class, it is not copied when a MonteCarloScenario containing
+ * it is cloned.
+ */
+@Immutable
+public final class AnimalStore extends CompactStore<Animal> {
+
+    /**
+     * Create an empty store.
+     * @param dictionary the dictionary used to encode the ids in the store.
+     */
+    AnimalStore(final IdDictionary dictionary) {
+        super(dictionary, NUM_COLUMNS);
+    }
+
+    /**
+     * Add an animal to the store.
+     * @param animal the animal to add.
+     */
+    void add(final Animal animal) {
+        final IdDictionary dictionary = getDictionary();
+        addRow(dictionary.encode(animal.getId()),
+               dictionary.encode(animal.getSpecies()),
+               unboxed(animal.getDateOfBirth()),
+               dictionary.encode(animal.getLocationOfBirth()),
+               unboxed(animal.getDateOfDeath()),
+               dictionary.encode(animal.getLocationOfDeath()));
+    }
+
+    @Override
+    public Animal get(final int row) {
+        return new Animal(id(ID, row), id(SPECIES, row), boxed(DATE_OF_BIRTH, row), id(LOCATION_OF_BIRTH, row),
+                          boxed(DATE_OF_DEATH, row), id(LOCATION_OF_DEATH, row));
+    }
+
+    /**
+     * Get the (encoded) id of an animal.
+     * @param row the row of the animal.
+     * @return the code of the animal id.
+     */
+    public int getId(final int row) {
+        return value(ID, row);
+    }
+
+    /**
+     * Get the (encoded) species of an animal.
+     * @param row the row of the animal.
+     * @return the code of the species.
+     */
+    public int getSpecies(final int row) {
+        return value(SPECIES, row);
+    }
+
+    /**
+     * Get the date of birth of an animal.
+     * @param row the row of the animal.
+     * @return the date of birth or NULL_VALUE.
+     */
+    public int getDateOfBirth(final int row) {
+        return value(DATE_OF_BIRTH, row);
+    }
+
+    /**
+     * Get the (encoded) id of the location of birth of an animal.
+     * @param row the row of the animal.
+     * @return the code of the location of birth.
+     */
+    public int getLocationOfBirth(final int row) {
+        return value(LOCATION_OF_BIRTH, row);
+    }
+
+    /**
+     * Get the date of death of an animal.
+     * @param row the row of the animal.
+     * @return the date of death or NULL_VALUE.
+     */
+    public int getDateOfDeath(final int row) {
+        return value(DATE_OF_DEATH, row);
+    }
+
+    /**
+     * Get the (encoded) id of the location of death of an animal.
+     * @param row the row of the animal.
+     * @return the code of the location of death.
+     */
+    public int getLocationOfDeath(final int row) {
+        return value(LOCATION_OF_DEATH, row);
+    }
+
+    private static final int ID = 0;
+    private static final int SPECIES = 1;
+    private static final int DATE_OF_BIRTH = 2;
+    private static final int LOCATION_OF_BIRTH = 3;
+    private static final int DATE_OF_DEATH = 4;
+    private static final int LOCATION_OF_DEATH = 5;
+    private static final int NUM_COLUMNS = 6;
+    private static final long serialVersionUID = -2979125516425815392L;
+}
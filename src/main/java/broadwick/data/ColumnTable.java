@@ -0,0 +1,538 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.BroadwickException;
+import broadwick.io.FileInputRow;
+import broadwick.utils.DateConverter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A table of the ColumnarDatabase, holding the rows read from the data files in one array per column. VARCHAR columns
+ * are stored as codes from the IdDictionary of the database, INT columns (and dates) as ints and DOUBLE columns as
+ * doubles; the type of each column, and the primary key, are taken from the CREATE TABLE command the data file reader
+ * would run on a SQL database so the readers describe their tables once for both types of database. Null values are
+ * stored as IdDictionary.NO_ID, CompactStore.NULL_VALUE or NaN respectively.
+ * <p>
+ * Rows are appended by the data file reader of the table (or copied from a DataSnapshot), after which the table is read
+ * only. The indexes (by the code
+ * of a VARCHAR column, e.g. an animal or location id, and by the value of an INT column, e.g. a date) are created on
+ * first use. As in the H2 database, the values of VARCHAR columns are compared ignoring case, both by the index and
+ * when finding the row with the same primary key, so they use the folded codes of the IdDictionary.
+ */
+public final class ColumnTable {
+
+    /**
+     * The types of column held in a table.
+     */
+    enum Type {
+        /** an int (or date) column. */
+        INT,
+        /** a double column. */
+        DOUBLE,
+        /** a VARCHAR column, stored as the codes of the values in the IdDictionary. */
+        STRING
+    }
+
+    /**
+     * Create an empty table.
+     * @param name               the name of the table.
+     * @param dictionary         the dictionary used to encode the VARCHAR columns.
+     * @param columnNames        the names of the columns, in the order the values are added by add().
+     * @param createTableCommand the SQL command that creates the table (and its indexes).
+     * @param insertString       the SQL command that inserts a row into the table.
+     */
+    ColumnTable(final String name, final IdDictionary dictionary, final Collection<String> columnNames,
+                final String createTableCommand, final String insertString) {
+        this.name = name;
+        this.dictionary = dictionary;
+        this.createTableCommand = createTableCommand;
+        this.insertString = insertString;
+        this.columnNames = new ArrayList<>(columnNames);
+        this.types = new Type[columnNames.size()];
+        this.intColumns = new int[types.length][];
+        this.doubleColumns = new double[types.length][];
+        this.intIndexes = new int[types.length][][];
+        this.codeIndexes = new int[types.length][][];
+        this.intValues = new int[types.length];
+        this.doubleValues = new double[types.length];
+
+        for (int col = 0; col < types.length; col++) {
+            types[col] = typeOf(this.columnNames.get(col), createTableCommand);
+            if (types[col] == Type.DOUBLE) {
+                doubleColumns[col] = new double[INITIAL_CAPACITY];
+            } else {
+                intColumns[col] = new int[INITIAL_CAPACITY];
+            }
+        }
+
+        final Matcher key = PRIMARY_KEY.matcher(createTableCommand);
+        if (key.find()) {
+            final String[] keys = key.group(1).split(",");
+            if (keys.length != 1 || indexOf(keys[0].trim()) < 0 || types[indexOf(keys[0].trim())] != Type.STRING) {
+                throw new BroadwickException(String.format("Cannot store %s in memory, only a single VARCHAR column "
+                                                           + "can be used as a primary key.", name));
+            }
+            keyColumn = indexOf(keys[0].trim());
+            keyRows = new int[INITIAL_CAPACITY];
+            Arrays.fill(keyRows, -1);
+        } else {
+            keyColumn = -1;
+        }
+    }
+
+    /**
+     * Get the name of the table.
+     * @return the name of the table.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the number of rows in the table.
+     * @return the number of rows.
+     */
+    public synchronized int size() {
+        return numRows;
+    }
+
+    /**
+     * Add a row read from a data file to the table. If the table has a primary key and a row with the same key has
+     * already been added (ignoring case) that row is replaced (as the MERGE statement used for such tables would do).
+     * @param row         the row read from the data file.
+     * @param fileColumns the (one based) column of the data file holding the value of each column of the table, or -1
+     *                    if the value is null.
+     * @param isDate      whether each column of the table is a date (converted to a number of days).
+     * @param converter   the converter used to read the dates.
+     * @return true if the row was added, false if it replaced a row with the same key.
+     */
+    public synchronized boolean add(final FileInputRow row, final int[] fileColumns, final boolean[] isDate,
+                                 final DateConverter converter) {
+        for (int col = 0; col < types.length; col++) {
+            final int field = fileColumns[col] - 1;
+            if (fileColumns[col] == -1) {
+                intValues[col] = types[col] == Type.STRING ? IdDictionary.NO_ID : CompactStore.NULL_VALUE;
+                doubleValues[col] = Double.NaN;
+            } else if (isDate[col]) {
+                // missing dates are stored as Integer.MAX_VALUE
+                final int date = row.isEmpty(field) ? Integer.MAX_VALUE : row.getDate(field, converter);
+                intValues[col] = types[col] == Type.STRING ? dictionary.encode(Integer.toString(date)) : date;
+                doubleValues[col] = date;
+            } else if (types[col] == Type.STRING) {
+                intValues[col] = dictionary.encode(row.getString(field));
+            } else if (types[col] == Type.INT) {
+                intValues[col] = row.isEmpty(field) ? CompactStore.NULL_VALUE : row.getInt(field);
+            } else {
+                doubleValues[col] = row.isEmpty(field) ? Double.NaN : row.getDouble(field);
+            }
+        }
+
+        int target = numRows;
+        if (keyColumn >= 0) {
+            final int code = dictionary.fold(intValues[keyColumn]);
+            if (code >= keyRows.length) {
+                final int length = keyRows.length;
+                keyRows = Arrays.copyOf(keyRows, Math.max(2 * length, code + 1));
+                Arrays.fill(keyRows, length, keyRows.length, -1);
+            }
+            if (code >= 0 && keyRows[code] >= 0) {
+                target = keyRows[code];
+            } else if (code >= 0) {
+                keyRows[code] = numRows;
+            }
+        }
+        final boolean added = target == numRows;
+        if (added) {
+            ensureCapacity();
+            numRows++;
+        }
+        for (int col = 0; col < types.length; col++) {
+            if (types[col] == Type.DOUBLE) {
+                doubleColumns[col][target] = doubleValues[col];
+            } else {
+                intColumns[col][target] = intValues[col];
+            }
+        }
+        Arrays.fill(intIndexes, null);
+        Arrays.fill(codeIndexes, null);
+        return added;
+    }
+
+    /**
+     * Copy the rows of a table of a snapshot to the end of the table. The columns are matched by name (a column that
+     * is not in the snapshot is null in every copied row) and the rows are not checked against the primary key, the
+     * snapshot having been written from a table that already had unique keys.
+     * @param table the table of the snapshot.
+     */
+    synchronized void add(final DataSnapshot.Table table) {
+        final int first = numRows;
+        final int count = table.getNumRows();
+        for (int col = 0; col < types.length; col++) {
+            if (types[col] == Type.DOUBLE) {
+                doubleColumns[col] = Arrays.copyOf(doubleColumns[col], Math.max(doubleColumns[col].length,
+                                                                                first + count));
+            } else {
+                intColumns[col] = Arrays.copyOf(intColumns[col], Math.max(intColumns[col].length, first + count));
+            }
+
+            DataSnapshot.Column column = null;
+            for (final Map.Entry<String, DataSnapshot.Column> entry : table.getColumns().entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(columnNames.get(col))) {
+                    column = entry.getValue();
+                }
+            }
+            if (column == null) {
+                if (types[col] == Type.DOUBLE) {
+                    Arrays.fill(doubleColumns[col], first, first + count, Double.NaN);
+                } else {
+                    Arrays.fill(intColumns[col], first, first + count,
+                                types[col] == Type.STRING ? IdDictionary.NO_ID : CompactStore.NULL_VALUE);
+                }
+            } else if (types[col] == Type.DOUBLE) {
+                for (int row = 0; row < count; row++) {
+                    doubleColumns[col][first + row] = column.getDouble(row);
+                }
+            } else if (types[col] == Type.INT) {
+                // the snapshot stores null ints as Integer.MIN_VALUE, as the table does.
+                for (int row = 0; row < count; row++) {
+                    intColumns[col][first + row] = column.getInt(row);
+                }
+            } else {
+                // encode each value of the column's dictionary once, then translate the codes of the rows.
+                final String[] values = column.getDictionary();
+                final int[] codes = new int[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    codes[i] = dictionary.encode(values[i]);
+                }
+                for (int row = 0; row < count; row++) {
+                    final int code = column.getInt(row);
+                    intColumns[col][first + row] = code >= 0 && code < codes.length ? codes[code] : IdDictionary.NO_ID;
+                }
+            }
+        }
+
+        if (keyColumn >= 0) {
+            for (int row = first; row < first + count; row++) {
+                final int code = dictionary.fold(intColumns[keyColumn][row]);
+                if (code >= keyRows.length) {
+                    final int length = keyRows.length;
+                    keyRows = Arrays.copyOf(keyRows, Math.max(2 * length, code + 1));
+                    Arrays.fill(keyRows, length, keyRows.length, -1);
+                }
+                if (code >= 0) {
+                    keyRows[code] = row;
+                }
+            }
+        }
+        numRows += count;
+        Arrays.fill(intIndexes, null);
+        Arrays.fill(codeIndexes, null);
+    }
+
+    /**
+     * Get the SQL command that creates the table.
+     * @return the create table command.
+     */
+    String getCreateTableCommand() {
+        return createTableCommand;
+    }
+
+    /**
+     * Get the SQL command that inserts a row into the table, the parameters are the values returned by getValue().
+     * @return the insert command.
+     */
+    String getInsertString() {
+        return insertString;
+    }
+
+    /**
+     * Get the number of columns in the table.
+     * @return the number of columns.
+     */
+    int getNumColumns() {
+        return types.length;
+    }
+
+    /**
+     * Get the name of a column of the table.
+     * @param col the index of the column.
+     * @return the name of the column.
+     */
+    String getColumnName(final int col) {
+        return columnNames.get(col);
+    }
+
+    /**
+     * Get the type of a column of the table.
+     * @param col the index of the column.
+     * @return the type of the column.
+     */
+    Type getType(final int col) {
+        return types[col];
+    }
+
+    /**
+     * Find a column of the table.
+     * @param columnName the name of the column.
+     * @return the index of the column or -1 if the table has no such column.
+     */
+    int indexOf(final String columnName) {
+        for (int col = 0; col < columnNames.size(); col++) {
+            if (columnNames.get(col).equalsIgnoreCase(columnName)) {
+                return col;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the value in an INT column (or the code of the value in a VARCHAR column).
+     * @param col the index of the column.
+     * @param row the row.
+     * @return the value, NULL_VALUE (or NO_ID) if it is null.
+     */
+    int getInt(final int col, final int row) {
+        return intColumns[col][row];
+    }
+
+    /**
+     * Get the value in a DOUBLE column.
+     * @param col the index of the column.
+     * @param row the row.
+     * @return the value, NaN if it is null.
+     */
+    double getDouble(final int col, final int row) {
+        return doubleColumns[col][row];
+    }
+
+    /**
+     * Get a value of a column as an object of the type a SQL database would return, i.e. an Integer, Double or String.
+     * @param col the index of the column, if this is -1 the absent value is returned.
+     * @param row the row.
+     * @param absent the value returned if the table does not have the column.
+     * @return the value, null if it is null.
+     */
+    Object getValue(final int col, final int row, final Object absent) {
+        if (col < 0) {
+            return absent;
+        }
+        switch (types[col]) {
+            case STRING:
+                return dictionary.decode(intColumns[col][row]);
+            case INT:
+                final int value = intColumns[col][row];
+                return value == CompactStore.NULL_VALUE ? null : Integer.valueOf(value);
+            default:
+                final double x = doubleColumns[col][row];
+                return Double.isNaN(x) ? null : Double.valueOf(x);
+        }
+    }
+
+    /**
+     * Get the rows in which a VARCHAR column has a given value, using (and creating, on first use) an index of the
+     * column. As in H2 (which is configured to ignore case) the values are compared ignoring case.
+     * @param col   the index of the column.
+     * @param value the value.
+     * @return the rows, in the order they were added.
+     */
+    int[] getRows(final int col, final String value) {
+        final int code = dictionary.getFoldedCode(value);
+        if (col < 0 || code == IdDictionary.NO_ID) {
+            return EMPTY;
+        }
+        final int[][] index = codeIndex(col);
+        final int[] offsets = index[0];
+        if (code >= offsets.length - 1) {
+            return EMPTY;
+        }
+        return Arrays.copyOfRange(index[1], offsets[code], offsets[code + 1]);
+    }
+
+    /**
+     * Get the rows in which an INT column is in a range, using (and creating, on first use) an index of the column.
+     * Rows in which the column is null are never returned.
+     * @param col  the index of the column.
+     * @param from the smallest value in the range.
+     * @param to   the largest value in the range.
+     * @return the rows, in order of the value in the column.
+     */
+    int[] getRows(final int col, final int from, final int to) {
+        final int[][] index = intIndex(col);
+        final int first = firstAtLeast(index[0], from);
+        final int last = to == Integer.MAX_VALUE ? index[0].length : firstAtLeast(index[0], to + 1);
+        return first < last ? Arrays.copyOfRange(index[1], first, last) : EMPTY;
+    }
+
+    /**
+     * Count the rows in which an INT column is in a range, see getRows(int, int, int).
+     * @param col  the index of the column.
+     * @param from the smallest value in the range.
+     * @param to   the largest value in the range.
+     * @return the number of rows.
+     */
+    int countRows(final int col, final int from, final int to) {
+        final int[][] index = intIndex(col);
+        final int first = firstAtLeast(index[0], from);
+        final int last = to == Integer.MAX_VALUE ? index[0].length : firstAtLeast(index[0], to + 1);
+        return Math.max(0, last - first);
+    }
+
+    /**
+     * Get (creating it if necessary) the index of a VARCHAR column: the rows sorted by folded code, and the offset of
+     * the first row with each folded code (so the rows with folded code c are rows[offsets[c]] to
+     * rows[offsets[c + 1] - 1]).
+     * @param col the index of the column.
+     * @return the offsets and rows of the index.
+     */
+    private synchronized int[][] codeIndex(final int col) {
+        if (codeIndexes[col] == null) {
+            final int[] values = new int[numRows];
+            int maxCode = -1;
+            for (int row = 0; row < numRows; row++) {
+                values[row] = dictionary.fold(intColumns[col][row]);
+                maxCode = Math.max(maxCode, values[row]);
+            }
+            final int[] offsets = new int[maxCode + 2];
+            for (int row = 0; row < numRows; row++) {
+                if (values[row] >= 0) {
+                    offsets[values[row] + 1]++;
+                }
+            }
+            for (int code = 0; code <= maxCode; code++) {
+                offsets[code + 1] += offsets[code];
+            }
+            final int[] next = Arrays.copyOf(offsets, offsets.length);
+            final int[] rows = new int[offsets[maxCode + 1]];
+            for (int row = 0; row < numRows; row++) {
+                if (values[row] >= 0) {
+                    rows[next[values[row]]++] = row;
+                }
+            }
+            codeIndexes[col] = new int[][]{offsets, rows};
+        }
+        return codeIndexes[col];
+    }
+
+    /**
+     * Get (creating it if necessary) the index of an INT column: the non null values in ascending order and the row of
+     * each.
+     * @param col the index of the column.
+     * @return the sorted values and their rows.
+     */
+    private synchronized int[][] intIndex(final int col) {
+        if (intIndexes[col] == null) {
+            final int[] values = intColumns[col];
+            final long[] keys = new long[numRows];
+            int n = 0;
+            for (int row = 0; row < numRows; row++) {
+                if (values[row] != CompactStore.NULL_VALUE) {
+                    // the value in the high bits and the row in the low bits so that sorting orders by value then row.
+                    keys[n++] = ((long) values[row] << Integer.SIZE) | row;
+                }
+            }
+            Arrays.sort(keys, 0, n);
+            final int[] sortedValues = new int[n];
+            final int[] rows = new int[n];
+            for (int i = 0; i < n; i++) {
+                sortedValues[i] = (int) (keys[i] >> Integer.SIZE);
+                rows[i] = (int) keys[i];
+            }
+            intIndexes[col] = new int[][]{sortedValues, rows};
+        }
+        return intIndexes[col];
+    }
+
+    /**
+     * Find the first element of a sorted array that is at least a given value.
+     * @param values the sorted array.
+     * @param value  the value.
+     * @return the index of the element, the length of the array if every element is smaller.
+     */
+    private static int firstAtLeast(final int[] values, final int value) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (values[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Make room for another row in each column.
+     */
+    private void ensureCapacity() {
+        for (int col = 0; col < types.length; col++) {
+            if (types[col] == Type.DOUBLE && numRows == doubleColumns[col].length) {
+                doubleColumns[col] = Arrays.copyOf(doubleColumns[col], 2 * numRows);
+            } else if (types[col] != Type.DOUBLE && numRows == intColumns[col].length) {
+                intColumns[col] = Arrays.copyOf(intColumns[col], 2 * numRows);
+            }
+        }
+    }
+
+    /**
+     * Find the type of a column from the command that creates the table.
+     * @param columnName         the name of the column.
+     * @param createTableCommand the command that creates the table.
+     * @return the type of the column, VARCHAR columns and columns of any other type are stored as strings.
+     */
+    private static Type typeOf(final String columnName, final String createTableCommand) {
+        final Matcher matcher = Pattern.compile("[(,]\\s*" + Pattern.quote(columnName) + "\\s+(\\w+)",
+                                                Pattern.CASE_INSENSITIVE).matcher(createTableCommand);
+        if (matcher.find()) {
+            final String type = matcher.group(1).toUpperCase(Locale.ENGLISH);
+            if (type.startsWith("INT")) {
+                return Type.INT;
+            } else if ("DOUBLE".equals(type) || "FLOAT".equals(type) || "REAL".equals(type)) {
+                return Type.DOUBLE;
+            }
+        }
+        return Type.STRING;
+    }
+
+    private final String name;
+    private final IdDictionary dictionary;
+    private final String createTableCommand;
+    private final String insertString;
+    private final List<String> columnNames;
+    private final Type[] types;
+    private final int[][] intColumns;
+    private final double[][] doubleColumns;
+    private final int[][][] intIndexes;
+    private final int[][][] codeIndexes;
+    private final int keyColumn;
+    private int[] keyRows;
+    private int numRows;
+    private final int[] intValues;
+    private final double[] doubleValues;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int[] EMPTY = new int[0];
+    private static final Pattern PRIMARY_KEY = Pattern.compile("PRIMARY KEY\\s*\\(([^)]*)\\)",
+                                                               Pattern.CASE_INSENSITIVE);
+}
@@ -0,0 +1,757 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.data.readers.BatchedMovementsFileReader;
+import broadwick.data.readers.DirectedMovementsFileReader;
+import broadwick.data.readers.FullMovementsFileReader;
+import broadwick.data.readers.LocationsFileReader;
+import broadwick.data.readers.PopulationsFileReader;
+import broadwick.data.readers.TestsFileReader;
+import com.google.common.base.Throwables;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.time.StopWatch;
+import org.jooq.SQLDialect;
+
+/**
+ * A database that holds the data files in memory, one ColumnTable (an array per column) per table, and answers the
+ * queries of the Lookup class from indexes of the tables (by animal/location id and by date) without SQL. It is
+ * selected with the backend option of the <data/> section of the configuration file.
+ * <p>
+ * Custom SQL queries (Lookup.runCustomQuery() and forEachRecord()) cannot be answered from the tables so the first
+ * call to getConnection() copies the tables to a H2 database, which is used for the SQL from then on. As in the H2
+ * database, ids are compared ignoring case.
+ */
+@Slf4j
+public final class ColumnarDatabase implements DatabaseImpl {
+
+    /**
+     * Create an empty database.
+     * @param dbName the name of the H2 database created (only) if a SQL connection is required.
+     */
+    public ColumnarDatabase(final String dbName) {
+        this.open(dbName);
+    }
+
+    @Override
+    public void open(final String database) {
+        this.dbName = database;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (h2 != null) {
+            h2.close();
+        }
+    }
+
+    /**
+     * Get a connection to a H2 copy of the tables, the copy is made on the first call.
+     * @return the connection object.
+     * @throws SQLException if the connection cannot be obtained.
+     */
+    @Override
+    public synchronized Connection getConnection() throws SQLException {
+        if (h2 == null) {
+            final H2Database database = new H2Database(dbName, true);
+            copyTo(database);
+            h2 = database;
+        }
+        return h2.getConnection();
+    }
+
+    @Override
+    public SQLDialect getDialect() {
+        return SQLDialect.H2;
+    }
+
+    /**
+     * Create a table, or get the table if one of the same name has already been created (e.g. by the reader of another
+     * file of the same section of the configuration file).
+     * @param tableName          the name of the table.
+     * @param createTableCommand the SQL command that creates the table, from which the column types are found.
+     * @param insertString       the SQL command that inserts a row into the table.
+     * @param columnNames        the names of the columns in the order their values are added to the table.
+     * @return the table.
+     */
+    public synchronized ColumnTable createTable(final String tableName, final String createTableCommand,
+                                                final String insertString, final Collection<String> columnNames) {
+        final String key = tableName.toUpperCase(Locale.ENGLISH);
+        ColumnTable table = tables.get(key);
+        if (table == null) {
+            table = new ColumnTable(tableName, dictionary, columnNames, createTableCommand, insertString);
+            tables.put(key, table);
+        } else {
+            log.debug("Table {} already exists, ignoring", tableName);
+        }
+        return table;
+    }
+
+    /**
+     * Copy the tables of a snapshot into the database (without reading the data files), creating each table with the
+     * commands recorded in the snapshot.
+     * @param snapshot the snapshot.
+     */
+    public void restore(final DataSnapshot snapshot) {
+        for (final DataSnapshot.Table table : snapshot.getTables().values()) {
+            createTable(table.getName(), table.getCreateTableCommand(), table.getInsertString(),
+                        table.getColumns().keySet()).add(table);
+            log.debug("Restored {} rows into {}", table.getNumRows(), table.getName());
+        }
+    }
+
+    /**
+     * Get the tables of the database.
+     * @return the tables, in the order they were created.
+     */
+    synchronized List<ColumnTable> getTables() {
+        return new ArrayList<>(tables.values());
+    }
+
+    /**
+     * Get the dictionary that encodes the VARCHAR columns of every table.
+     * @return the id dictionary.
+     */
+    IdDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Get the number of rows in a table.
+     * @param tableName the name of the table.
+     * @return the number of rows, 0 if there is no such table.
+     */
+    int count(final String tableName) {
+        final ColumnTable table = getTable(tableName);
+        return table == null ? 0 : table.size();
+    }
+
+    /**
+     * Get the number of movements in a date range, see Lookup.getNumMovements(int, int).
+     * @param startDate the first date in the range.
+     * @param endDate   the final date in the range.
+     * @return the number of movements.
+     */
+    int countMovements(final int startDate, final int endDate) {
+        return select(BatchedMovementsFileReader.getTABLE_NAME(),
+                      BatchedMovementsFileReader.getDEPARTURE_DATE(), startDate, endDate,
+                      BatchedMovementsFileReader.getDESTINATION_DATE(), Integer.MIN_VALUE, endDate).length
+               + select(FullMovementsFileReader.getTABLE_NAME(),
+                        FullMovementsFileReader.getDEPARTURE_DATE(), startDate, endDate,
+                        FullMovementsFileReader.getDESTINATION_DATE(), Integer.MIN_VALUE, endDate).length
+               + select(DirectedMovementsFileReader.getTABLE_NAME(),
+                        DirectedMovementsFileReader.getMOVEMENT_DATE(), startDate, endDate, null, 0, 0).length;
+    }
+
+    /**
+     * Pass each of the movements of every movements table to a handler, see Lookup.forEachMovement().
+     * @param handler the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    int forEachMovement(final ResultHandler<? super Movement> handler) {
+        return forEachMovement(BatchedMovementsFileReader.getTABLE_NAME(), handler)
+               + forEachMovement(FullMovementsFileReader.getTABLE_NAME(), handler)
+               + forEachMovement(DirectedMovementsFileReader.getTABLE_NAME(), handler);
+    }
+
+    /**
+     * Pass each of the movements in one of the movements tables to a handler.
+     * @param tableName the name of the movements table.
+     * @param handler   the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    int forEachMovement(final String tableName, final ResultHandler<? super Movement> handler) {
+        final ColumnTable table = getTable(tableName);
+        return table == null ? 0 : forEach(table, null, null, movementMapper(table), handler);
+    }
+
+    /**
+     * Pass each of the movements in a date range to a handler, see Lookup.forEachMovement(int, int, ResultHandler).
+     * @param startDate the first date in the range.
+     * @param endDate   the final date in the range.
+     * @param handler   the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    int forEachMovement(final int startDate, final int endDate, final ResultHandler<? super Movement> handler) {
+        return forEachMovement(DirectedMovementsFileReader.getTABLE_NAME(), null,
+                               DirectedMovementsFileReader.getMOVEMENT_DATE(), startDate, endDate, handler)
+               + forEachMovementBetween(FullMovementsFileReader.getTABLE_NAME(),
+                                        FullMovementsFileReader.getDEPARTURE_DATE(), startDate,
+                                        FullMovementsFileReader.getDESTINATION_DATE(), endDate, handler)
+               + forEachMovementBetween(BatchedMovementsFileReader.getTABLE_NAME(),
+                                        BatchedMovementsFileReader.getDEPARTURE_DATE(), startDate,
+                                        BatchedMovementsFileReader.getDESTINATION_DATE(), endDate, handler);
+    }
+
+    /**
+     * Pass each of the OFF movements in a date range to a handler, see Lookup.forEachOffMovement().
+     * @param startDate the first date in the range.
+     * @param endDate   the final date in the range.
+     * @param handler   the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    int forEachOffMovement(final int startDate, final int endDate, final ResultHandler<? super Movement> handler) {
+        return forEachMovement(DirectedMovementsFileReader.getTABLE_NAME(), "OFF",
+                               DirectedMovementsFileReader.getMOVEMENT_DATE(), startDate, endDate, handler)
+               + forEachMovement(FullMovementsFileReader.getTABLE_NAME(), null,
+                                 FullMovementsFileReader.getDEPARTURE_DATE(), startDate, endDate, handler)
+               + forEachMovement(BatchedMovementsFileReader.getTABLE_NAME(), null,
+                                 BatchedMovementsFileReader.getDEPARTURE_DATE(), startDate, endDate, handler);
+    }
+
+    /**
+     * Pass each of the ON movements in a date range to a handler, see Lookup.forEachOnMovement().
+     * @param startDate the first date in the range.
+     * @param endDate   the final date in the range.
+     * @param handler   the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    int forEachOnMovement(final int startDate, final int endDate, final ResultHandler<? super Movement> handler) {
+        return forEachMovement(DirectedMovementsFileReader.getTABLE_NAME(), "ON",
+                               DirectedMovementsFileReader.getMOVEMENT_DATE(), startDate, endDate, handler)
+               + forEachMovement(FullMovementsFileReader.getTABLE_NAME(), null,
+                                 FullMovementsFileReader.getDESTINATION_DATE(), startDate, endDate, handler)
+               + forEachMovement(BatchedMovementsFileReader.getTABLE_NAME(), null,
+                                 BatchedMovementsFileReader.getDESTINATION_DATE(), startDate, endDate, handler);
+    }
+
+    /**
+     * Pass each of the tests to a handler.
+     * @param handler the handler that will process each test.
+     * @return the number of tests passed to the handler.
+     */
+    int forEachTest(final ResultHandler<? super Test> handler) {
+        final ColumnTable table = getTable(TestsFileReader.getTABLE_NAME());
+        return table == null ? 0 : forEach(table, null, null, testMapper(table), handler);
+    }
+
+    /**
+     * Pass each of the tests in a date range to a handler.
+     * @param startDate the first date in the range.
+     * @param endDate   the final date in the range.
+     * @param handler   the handler that will process each test.
+     * @return the number of tests passed to the handler.
+     */
+    int forEachTest(final int startDate, final int endDate, final ResultHandler<? super Test> handler) {
+        final ColumnTable table = getTable(TestsFileReader.getTABLE_NAME());
+        if (table == null) {
+            return 0;
+        }
+        final int[] rows = select(TestsFileReader.getTABLE_NAME(), TestsFileReader.getTEST_DATE(), startDate, endDate,
+                                  null, 0, 0);
+        return forEach(table, rows, null, testMapper(table), handler);
+    }
+
+    /**
+     * Pass each of the animals to a handler.
+     * @param handler the handler that will process each animal.
+     * @return the number of animals passed to the handler.
+     */
+    int forEachAnimal(final ResultHandler<? super Animal> handler) {
+        final ColumnTable table = getTable(PopulationsFileReader.getLIFE_HISTORIES_TABLE_NAME());
+        return table == null ? 0 : forEach(table, null, null, animalMapper(table), handler);
+    }
+
+    /**
+     * Pass each of the animals alive on a given date to a handler, see Lookup.forEachAnimal(int, ResultHandler).
+     * @param date    the date.
+     * @param handler the handler that will process each animal.
+     * @return the number of animals passed to the handler.
+     */
+    int forEachAnimal(final int date, final ResultHandler<? super Animal> handler) {
+        final ColumnTable table = getTable(PopulationsFileReader.getLIFE_HISTORIES_TABLE_NAME());
+        if (table == null) {
+            return 0;
+        }
+        final int dateOfDeath = table.indexOf(PopulationsFileReader.getDATE_OF_DEATH());
+        final int[] rows = select(PopulationsFileReader.getLIFE_HISTORIES_TABLE_NAME(),
+                                  PopulationsFileReader.getDATE_OF_BIRTH(), Integer.MIN_VALUE, date, null, 0, 0);
+        return forEach(table, rows, new RowFilter() {
+            @Override
+            public boolean accept(final int row) {
+                if (dateOfDeath < 0) {
+                    return true;
+                }
+                final int dod = table.getInt(dateOfDeath, row);
+                return dod == CompactStore.NULL_VALUE || dod >= date;
+            }
+        }, animalMapper(table), handler);
+    }
+
+    /**
+     * Pass each of the locations to a handler.
+     * @param handler the handler that will process each location.
+     * @return the number of locations passed to the handler.
+     */
+    int forEachLocation(final ResultHandler<? super Location> handler) {
+        final ColumnTable table = getTable(LocationsFileReader.getTABLE_NAME());
+        return table == null ? 0 : forEach(table, null, null, locationMapper(table), handler);
+    }
+
+    /**
+     * Get a location by its id.
+     * @param locationId the id of the location.
+     * @return the location, null if there is no location with the id.
+     */
+    Location getLocation(final String locationId) {
+        final ColumnTable table = getTable(LocationsFileReader.getTABLE_NAME());
+        if (table == null) {
+            return null;
+        }
+        final int[] rows = table.getRows(table.indexOf(LocationsFileReader.getID()), locationId);
+        // if a location appears more than once (ids are compared ignoring case) the last one read is used.
+        return rows.length == 0 ? null : locationMapper(table).map(rows[rows.length - 1]);
+    }
+
+    /**
+     * Get an animal by its id.
+     * @param animalId the id of the animal.
+     * @return the animal, null if there is no animal with the id.
+     */
+    Animal getAnimal(final String animalId) {
+        final ColumnTable table = getTable(PopulationsFileReader.getLIFE_HISTORIES_TABLE_NAME());
+        if (table == null) {
+            return null;
+        }
+        final int[] rows = table.getRows(table.indexOf(PopulationsFileReader.getID()), animalId);
+        // as for locations, if more than one animal matches (i.e. the ids differ only in case) the last one is used.
+        return rows.length == 0 ? null : animalMapper(table).map(rows[rows.length - 1]);
+    }
+
+    /**
+     * Get the movements (from the full and directed movements tables) of an animal.
+     * @param animalId the id of the animal.
+     * @return the movements of the animal.
+     */
+    Collection<Movement> getMovementsForAnimal(final String animalId) {
+        final Collection<Movement> movements = new HashSet<>();
+        for (final String tableName : new String[]{FullMovementsFileReader.getTABLE_NAME(),
+                                                   DirectedMovementsFileReader.getTABLE_NAME()}) {
+            final ColumnTable table = getTable(tableName);
+            if (table != null) {
+                final RowMapper<Movement> mapper = movementMapper(table);
+                for (final int row : table.getRows(table.indexOf(FullMovementsFileReader.getID()), animalId)) {
+                    movements.add(mapper.map(row));
+                }
+            }
+        }
+        return movements;
+    }
+
+    /**
+     * Get the location of an animal on a date, see Lookup.getAnimalLocationIdAtDate(). The movements of the animal are
+     * found from the index of the animal ids of each movements table.
+     * @param animalId the id of the animal.
+     * @param date     the date.
+     * @return the id of the location of the animal, null if it cannot be found.
+     */
+    String getAnimalLocationIdAtDate(final String animalId, final int date) {
+        String locationId = "";
+        int locationDate = Integer.MIN_VALUE;
+
+        // the destination of the last full movement departing or arriving on or before the date.
+        final ColumnTable full = getTable(FullMovementsFileReader.getTABLE_NAME());
+        if (full != null) {
+            final int departureDate = full.indexOf(FullMovementsFileReader.getDEPARTURE_DATE());
+            final int destinationDate = full.indexOf(FullMovementsFileReader.getDESTINATION_DATE());
+            final int destinationId = full.indexOf(FullMovementsFileReader.getDESTINATION_ID());
+            if (departureDate >= 0 && destinationDate >= 0 && destinationId >= 0) {
+                for (final int row : full.getRows(full.indexOf(FullMovementsFileReader.getID()), animalId)) {
+                    final int departed = full.getInt(departureDate, row);
+                    final int arrived = full.getInt(destinationDate, row);
+                    if (isOnOrBefore(departed, date) || isOnOrBefore(arrived, date)) {
+                        final int thisDate = arrived == CompactStore.NULL_VALUE ? 0 : arrived;
+                        if (thisDate > locationDate) {
+                            locationDate = thisDate;
+                            locationId = (String) full.getValue(destinationId, row, null);
+                        }
+                    }
+                }
+            }
+        }
+
+        // the location of the last directed movement on or before the date, if it is later.
+        final ColumnTable directed = getTable(DirectedMovementsFileReader.getTABLE_NAME());
+        if (directed != null) {
+            final int movementDate = directed.indexOf(DirectedMovementsFileReader.getMOVEMENT_DATE());
+            final int location = directed.indexOf(DirectedMovementsFileReader.getLOCATION_ID());
+            if (movementDate >= 0 && location >= 0) {
+                for (final int row : directed.getRows(directed.indexOf(DirectedMovementsFileReader.getID()),
+                                                      animalId)) {
+                    final int thisDate = directed.getInt(movementDate, row);
+                    if (isOnOrBefore(thisDate, date) && thisDate > locationDate) {
+                        locationDate = thisDate;
+                        locationId = (String) directed.getValue(location, row, null);
+                    }
+                }
+            }
+        }
+
+        if (locationDate > Integer.MIN_VALUE) {
+            return locationId;
+        }
+        // else no movement => it is still on it's location of birth.
+        final Animal animal = getAnimal(animalId);
+        if (animal != null) {
+            return animal.getLocationOfBirth();
+        }
+        log.error("Could not find location for {} at {}", animalId, date);
+        return null;
+    }
+
+    /**
+     * Get a table by name.
+     * @param tableName the name of the table.
+     * @return the table, null if it has not been created.
+     */
+    private synchronized ColumnTable getTable(final String tableName) {
+        return tables.get(tableName.toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Find the rows of a table in which one date column is in a range and (optionally) another column is in another
+     * range. The rows are found from the index of whichever column has fewer rows in its range and checked against the
+     * other range. As in a SQL query, a null value is not in any range and if a column is not in the table (e.g. it was
+     * not configured for the data file) no rows are found.
+     * @param tableName the name of the table.
+     * @param column    the name of the first column.
+     * @param from      the smallest value of the first column.
+     * @param to        the largest value of the first column.
+     * @param other     the name of the second column, or null if there is only one range.
+     * @param otherFrom the smallest value of the second column.
+     * @param otherTo   the largest value of the second column.
+     * @return the rows.
+     */
+    private int[] select(final String tableName, final String column, final int from, final int to,
+                         final String other, final int otherFrom, final int otherTo) {
+        final ColumnTable table = getTable(tableName);
+        final int col = table == null ? -1 : table.indexOf(column);
+        final int otherCol = table == null || other == null ? -1 : table.indexOf(other);
+        if (col < 0 || (other != null && otherCol < 0)) {
+            return new int[0];
+        }
+        if (other == null) {
+            return table.getRows(col, from, to);
+        }
+
+        final boolean useFirst = table.countRows(col, from, to) <= table.countRows(otherCol, otherFrom, otherTo);
+        final int[] candidates = useFirst ? table.getRows(col, from, to) : table.getRows(otherCol, otherFrom, otherTo);
+        final int checkCol = useFirst ? otherCol : col;
+        final int checkFrom = useFirst ? otherFrom : from;
+        final int checkTo = useFirst ? otherTo : to;
+        int n = 0;
+        for (final int row : candidates) {
+            final int value = table.getInt(checkCol, row);
+            if (value != CompactStore.NULL_VALUE && value >= checkFrom && value <= checkTo) {
+                candidates[n++] = row;
+            }
+        }
+        return Arrays.copyOf(candidates, n);
+    }
+
+    /**
+     * Pass the movements of one of the movements tables that depart and arrive between two dates to a handler.
+     * @param tableName   the name of the movements table.
+     * @param departure   the departure date column.
+     * @param startDate   the earliest departure date.
+     * @param destination the destination date column.
+     * @param endDate     the latest departure and destination date.
+     * @param handler     the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    private int forEachMovementBetween(final String tableName, final String departure, final int startDate,
+                                       final String destination, final int endDate,
+                                       final ResultHandler<? super Movement> handler) {
+        final ColumnTable table = getTable(tableName);
+        if (table == null) {
+            return 0;
+        }
+        final int[] rows = select(tableName, departure, startDate, endDate, destination, Integer.MIN_VALUE, endDate);
+        return forEach(table, rows, null, movementMapper(table), handler);
+    }
+
+    /**
+     * Pass the directed movements (or the movements of another table) in which a date column is in a range to a
+     * handler, optionally only those in a given direction.
+     * @param tableName the name of the movements table.
+     * @param direction the direction ("ON" or "OFF") of the directed movements, or null for every movement.
+     * @param column    the date column.
+     * @param from      the smallest date.
+     * @param to        the largest date.
+     * @param handler   the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    private int forEachMovement(final String tableName, final String direction, final String column, final int from,
+                                final int to, final ResultHandler<? super Movement> handler) {
+        final ColumnTable table = getTable(tableName);
+        if (table == null) {
+            return 0;
+        }
+        final int directionCol = table.indexOf(DirectedMovementsFileReader.getMOVEMENT_DIRECTION());
+        if (direction != null && directionCol < 0) {
+            return 0;
+        }
+        final RowFilter filter = direction == null ? null : new RowFilter() {
+            @Override
+            public boolean accept(final int row) {
+                return direction.equalsIgnoreCase((String) table.getValue(directionCol, row, null));
+            }
+        };
+        return forEach(table, select(tableName, column, from, to, null, 0, 0), filter, movementMapper(table), handler);
+    }
+
+    /**
+     * Create objects from rows of a table and pass them to a handler.
+     * @param <T>     the type of object created from each row.
+     * @param table   the table.
+     * @param rows    the rows, or null for every row of the table.
+     * @param filter  the condition the rows must satisfy, or null for every row.
+     * @param mapper  the object that creates the objects from the rows.
+     * @param handler the handler that will process each object.
+     * @return the number of objects passed to the handler.
+     */
+    private static <T> int forEach(final ColumnTable table, final int[] rows, final RowFilter filter,
+                                   final RowMapper<T> mapper, final ResultHandler<? super T> handler) {
+        final int numRows = rows == null ? table.size() : rows.length;
+        int count = 0;
+        for (int i = 0; i < numRows; i++) {
+            final int row = rows == null ? i : rows[i];
+            if (filter == null || filter.accept(row)) {
+                handler.handle(mapper.map(row));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Check if a date (that may be null) is on or before another.
+     * @param value the date, or NULL_VALUE.
+     * @param date  the other date.
+     * @return true if value is not null and is on or before date.
+     */
+    private static boolean isOnOrBefore(final int value, final int date) {
+        return value != CompactStore.NULL_VALUE && value <= date;
+    }
+
+    /**
+     * Copy the tables to a H2 database, creating each table with the command its data file reader gave.
+     * @param database the H2 database.
+     * @throws SQLException if the tables cannot be created or copied.
+     */
+    private void copyTo(final H2Database database) throws SQLException {
+        final StopWatch sw = new StopWatch();
+        sw.start();
+        final List<ColumnTable> toCopy = getTables();
+
+        int copied = 0;
+        try (Connection connection = database.getConnection()) {
+            connection.setAutoCommit(false);
+            for (final ColumnTable table : toCopy) {
+                try (Statement stmt = connection.createStatement()) {
+                    for (final String command : table.getCreateTableCommand().split(";")) {
+                        if (!command.trim().isEmpty()) {
+                            stmt.execute(command);
+                        }
+                    }
+                }
+                try (PreparedStatement pstmt = connection.prepareStatement(table.getInsertString())) {
+                    for (int row = 0; row < table.size(); row++) {
+                        for (int col = 0; col < table.getNumColumns(); col++) {
+                            pstmt.setObject(col + 1, table.getValue(col, row, null));
+                        }
+                        pstmt.addBatch();
+                        if ((row + 1) % COPY_BATCH_SIZE == 0) {
+                            pstmt.executeBatch();
+                        }
+                    }
+                    pstmt.executeBatch();
+                }
+                connection.commit();
+                copied += table.size();
+            }
+        } catch (SQLException e) {
+            log.error("Could not copy the data to {}. {}", dbName, Throwables.getStackTraceAsString(e));
+            database.close();
+            throw e;
+        }
+
+        sw.stop();
+        log.info("Copied {} rows to {} for SQL queries in {}.", copied, dbName, sw.toString());
+    }
+
+    /**
+     * Create the mapper from rows of a movements table to Movement objects, the directed movements are converted as by
+     * Lookup.
+     * @param table the movements table.
+     * @return the mapper.
+     */
+    private static RowMapper<Movement> movementMapper(final ColumnTable table) {
+        final int id = table.indexOf(FullMovementsFileReader.getID());
+        final int batchSize = table.indexOf(BatchedMovementsFileReader.getBATCH_SIZE());
+        final int departureDate = table.indexOf(FullMovementsFileReader.getDEPARTURE_DATE());
+        // the departure id columns of the full and batched movements tables are named differently, see Lookup.
+        final int fullDepartureId = table.indexOf(FullMovementsFileReader.getDEPARTURE_ID());
+        final int departureId = fullDepartureId >= 0 ? fullDepartureId
+                                : table.indexOf(BatchedMovementsFileReader.getDEPARTURE_ID());
+        final int destinationDate = table.indexOf(FullMovementsFileReader.getDESTINATION_DATE());
+        final int destinationId = table.indexOf(FullMovementsFileReader.getDESTINATION_ID());
+        final int marketDate = table.indexOf(BatchedMovementsFileReader.getMARKET_DATE());
+        final int marketId = table.indexOf(BatchedMovementsFileReader.getMARKET_ID());
+        final int species = table.indexOf(DirectedMovementsFileReader.getSPECIES());
+        final int direction = table.indexOf(DirectedMovementsFileReader.getMOVEMENT_DIRECTION());
+        final int locationId = table.indexOf(DirectedMovementsFileReader.getLOCATION_ID());
+        final int movementDate = table.indexOf(DirectedMovementsFileReader.getMOVEMENT_DATE());
+        return new RowMapper<Movement>() {
+            @Override
+            public Movement map(final int row) {
+                Integer depDate = (Integer) table.getValue(departureDate, row, null);
+                String depId = (String) table.getValue(departureId, row, "");
+                Integer destDate = (Integer) table.getValue(destinationDate, row, null);
+                String destId = (String) table.getValue(destinationId, row, "");
+
+                // For directed movements, set the appropriate destination/departure id and dates.
+                if (direction >= 0 && locationId >= 0 && movementDate >= 0) {
+                    if ("ON".equalsIgnoreCase((String) table.getValue(direction, row, null))) {
+                        destId = (String) table.getValue(locationId, row, null);
+                        destDate = (Integer) table.getValue(movementDate, row, null);
+                    } else {
+                        depId = (String) table.getValue(locationId, row, null);
+                        depDate = (Integer) table.getValue(movementDate, row, null);
+                    }
+                }
+                return new Movement((String) table.getValue(id, row, ""), (Integer) table.getValue(batchSize, row, null),
+                                    depDate, depId, destDate, destId,
+                                    (Integer) table.getValue(marketDate, row, null),
+                                    (String) table.getValue(marketId, row, ""),
+                                    (String) table.getValue(species, row, ""));
+            }
+        };
+    }
+
+    /**
+     * Create the mapper from rows of the life histories table to Animal objects.
+     * @param table the life histories table.
+     * @return the mapper.
+     */
+    private static RowMapper<Animal> animalMapper(final ColumnTable table) {
+        final int id = table.indexOf(PopulationsFileReader.getID());
+        final int dateOfBirth = table.indexOf(PopulationsFileReader.getDATE_OF_BIRTH());
+        final int locationOfBirth = table.indexOf(PopulationsFileReader.getLOCATION_OF_BIRTH());
+        final int dateOfDeath = table.indexOf(PopulationsFileReader.getDATE_OF_DEATH());
+        final int locationOfDeath = table.indexOf(PopulationsFileReader.getLOCATION_OF_DEATH());
+        final int species = table.indexOf(PopulationsFileReader.getSPECIES());
+        return new RowMapper<Animal>() {
+            @Override
+            public Animal map(final int row) {
+                return new Animal((String) table.getValue(id, row, ""), (String) table.getValue(species, row, ""),
+                                  (Integer) table.getValue(dateOfBirth, row, null),
+                                  (String) table.getValue(locationOfBirth, row, ""),
+                                  (Integer) table.getValue(dateOfDeath, row, null),
+                                  (String) table.getValue(locationOfDeath, row, ""));
+            }
+        };
+    }
+
+    /**
+     * Create the mapper from rows of the locations table to Location objects.
+     * @param table the locations table.
+     * @return the mapper.
+     */
+    private static RowMapper<Location> locationMapper(final ColumnTable table) {
+        final int id = table.indexOf(LocationsFileReader.getID());
+        final int easting = table.indexOf(LocationsFileReader.getEASTING());
+        final int northing = table.indexOf(LocationsFileReader.getNORTHING());
+        return new RowMapper<Location>() {
+            @Override
+            public Location map(final int row) {
+                return new Location((String) table.getValue(id, row, ""), (Double) table.getValue(easting, row, null),
+                                    (Double) table.getValue(northing, row, null), new HashMap<String, Integer>());
+            }
+        };
+    }
+
+    /**
+     * Create the mapper from rows of the tests table to Test objects.
+     * @param table the tests table.
+     * @return the mapper.
+     */
+    private static RowMapper<Test> testMapper(final ColumnTable table) {
+        final int id = table.indexOf(TestsFileReader.getID());
+        final int group = table.indexOf(TestsFileReader.getGROUP_ID());
+        final int location = table.indexOf(TestsFileReader.getLOCATION_ID());
+        final int testDate = table.indexOf(TestsFileReader.getTEST_DATE());
+        final int positiveResult = table.indexOf(TestsFileReader.getPOSITIVE_RESULT());
+        final int negativeResult = table.indexOf(TestsFileReader.getNEGATIVE_RESULT());
+        return new RowMapper<Test>() {
+            @Override
+            public Test map(final int row) {
+                final Integer positive = (Integer) table.getValue(positiveResult, row, null);
+                final Integer negative = (Integer) table.getValue(negativeResult, row, null);
+                return new Test((String) table.getValue(id, row, ""), (String) table.getValue(group, row, ""),
+                                (String) table.getValue(location, row, ""),
+                                (Integer) table.getValue(testDate, row, null),
+                                positive == null ? null : positive != 0, negative == null ? null : negative != 0);
+            }
+        };
+    }
+
+    /**
+     * Creates an object from a row of a table.
+     * @param <T> the type of the object.
+     */
+    private interface RowMapper<T> {
+
+        /**
+         * Create the object from a row.
+         * @param row the row.
+         * @return the object.
+         */
+        T map(int row);
+    }
+
+    /**
+     * A condition on the rows of a table.
+     */
+    private interface RowFilter {
+
+        /**
+         * Check if a row satisfies the condition.
+         * @param row the row.
+         * @return true if the row satisfies the condition.
+         */
+        boolean accept(int row);
+    }
+
+    private String dbName;
+    private H2Database h2;
+    private final IdDictionary dictionary = new IdDictionary();
+    private final Map<String, ColumnTable> tables = new LinkedHashMap<>();
+    private static final int COPY_BATCH_SIZE = 10000;
+}
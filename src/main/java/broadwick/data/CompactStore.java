@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Base class for stores that hold a table of data as one int array per column rather than one object per row. Ids are
+ * stored as codes from an IdDictionary and missing values as NULL_VALUE. Rows are appended while the store is being
+ * created (by a single thread) after which the store is read only.
+ * @param <T> the type of object (e.g. Movement) that can be created from a row of the store.
+ */
+public abstract class CompactStore<T> implements Serializable {
+
+    /**
+     * Create an empty store.
+     * @param dictionary the dictionary used to encode the ids in the store.
+     * @param numColumns the number of columns in the store.
+     */
+    CompactStore(final IdDictionary dictionary, final int numColumns) {
+        this.dictionary = dictionary;
+        this.columns = new int[numColumns][INITIAL_CAPACITY];
+    }
+
+    /**
+     * Get the number of rows in the store.
+     * @return the number of rows.
+     */
+    public final int size() {
+        return numRows;
+    }
+
+    /**
+     * Get the dictionary used to encode the ids in the store.
+     * @return the dictionary.
+     */
+    public final IdDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Create the object stored in a row of the store. A new object is created on each call.
+     * @param row the (zero based) index of the row.
+     * @return the object.
+     */
+    public abstract T get(int row);
+
+    /**
+     * Get a read only view of the store as a list of objects, the objects are created (by get()) as they are accessed.
+     * This allows the store to be passed to code written for the collections returned by the Lookup class.
+     * @return the list view of the store.
+     */
+    public final List<T> asList() {
+        return new AbstractList<T>() {
+            @Override
+            public T get(final int index) {
+                return CompactStore.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return numRows;
+            }
+        };
+    }
+
+    /**
+     * Append a row to the store.
+     * @param values the value of each column in the row.
+     */
+    final void addRow(final int... values) {
+        if (numRows == columns[0].length) {
+            for (int col = 0; col < columns.length; col++) {
+                columns[col] = Arrays.copyOf(columns[col], 2 * numRows);
+            }
+        }
+        for (int col = 0; col < columns.length; col++) {
+            columns[col][numRows] = values[col];
+        }
+        numRows++;
+    }
+
+    /**
+     * Release the unused capacity of the columns once all the rows have been added.
+     */
+    final void trim() {
+        for (int col = 0; col < columns.length; col++) {
+            columns[col] = Arrays.copyOf(columns[col], numRows);
+        }
+    }
+
+    /**
+     * Get a value from the store.
+     * @param column the index of the column.
+     * @param row    the index of the row.
+     * @return the value.
+     */
+    final int value(final int column, final int row) {
+        if (row < 0 || row >= numRows) {
+            throw new IndexOutOfBoundsException(String.format("Row %d requested from a store of %d rows.",
+                                                              row, numRows));
+        }
+        return columns[column][row];
+    }
+
+    /**
+     * Get an id from the store.
+     * @param column the index of the column holding the id codes.
+     * @param row    the index of the row.
+     * @return the id.
+     */
+    final String id(final int column, final int row) {
+        return dictionary.decode(value(column, row));
+    }
+
+    /**
+     * Get a value from the store as an Integer, as used by the Movement and Animal classes.
+     * @param column the index of the column.
+     * @param row    the index of the row.
+     * @return the value, or null if the value is missing.
+     */
+    final Integer boxed(final int column, final int row) {
+        final int value = value(column, row);
+        return value == NULL_VALUE ? null : value;
+    }
+
+    /**
+     * Convert an Integer to the value stored in the store.
+     * @param value the value.
+     * @return the value or NULL_VALUE if the value is null.
+     */
+    static int unboxed(final Integer value) {
+        return value == null ? NULL_VALUE : value;
+    }
+
+    /**
+     * The value stored for missing (null) integers.
+     */
+    public static final int NULL_VALUE = Integer.MIN_VALUE;
+    private final IdDictionary dictionary;
+    private final int[][] columns;
+    private int numRows;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long serialVersionUID = 1L;
+}
@@ -21,8 +21,11 @@ import broadwick.data.readers.BatchedMovementsFileReader;
 import broadwick.data.readers.LocationsFileReader;
 import broadwick.data.readers.DirectedMovementsFileReader;
 import broadwick.data.readers.TestsFileReader;
+import broadwick.data.readers.DataFileReader;
+import broadwick.data.readers.IngestionMonitor;
 import broadwick.BroadwickException;
 import broadwick.config.generated.DataFiles;
+import broadwick.config.generated.DataOptions;
 import broadwick.config.generated.DataFiles.BatchMovementFile;
 import broadwick.config.generated.DataFiles.DirectedMovementFile;
 import broadwick.config.generated.DataFiles.FullMovementFile;
@@ -30,8 +33,27 @@ import broadwick.config.generated.DataFiles.LocationsFile;
 import broadwick.config.generated.DataFiles.PopulationFile;
 import broadwick.config.generated.DataFiles.TestsFile;
 import broadwick.config.generated.Project;
+import broadwick.config.generated.WarmUpOptions;
+import com.google.common.base.Joiner;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.RandomStringUtils;
@@ -52,6 +74,9 @@ public class DataReader implements java.lang.AutoCloseable {
 
         // if there is a data section in the config file let's read it.
         if (data != null) {
+            if (data.getOptions() != null && data.getOptions().getProgressInterval() != null) {
+                IngestionMonitor.setLogInterval(data.getOptions().getProgressInterval());
+            }
             if (data.getDatabases() != null) {
                 // there is a database mentioned in the config file so let's use it
                 dbName = data.getDatabases().getName();
@@ -59,6 +84,9 @@ public class DataReader implements java.lang.AutoCloseable {
 //                dbImpl = new DerbyDatabase(dbName, false);
 //                dbImpl = new HyperSqlDatabase(dbName, false);
                 dbImpl = new H2Database(dbName, false);
+            } else if (data.getDatafiles() != null && isDatabaseKept()) {
+                // the database is kept in the given directory so that it can be reused by later runs.
+                readIntoDatabaseDirectory(Paths.get(data.getOptions().getDatabaseDirectory()));
             } else if (data.getDatafiles() != null) {
                 // there is a datafiles section in the config file so we will read them and create a randomly named 
                 // database.
@@ -67,14 +95,21 @@ public class DataReader implements java.lang.AutoCloseable {
 //                dbImpl = new FirebirdDatabase(dbName, true);
 //                dbImpl = new DerbyDatabase(dbName, true);
 //                dbImpl = new HyperSqlDatabase(dbName, true);
-                dbImpl = new H2Database(dbName, true);
+                dbImpl = isInMemory() ? new ColumnarDatabase(dbName) : new H2Database(dbName, true);
                 readDataSection();
             } else {
                 throw new BroadwickException("There is a <data> section in the configuration file but neither a <database> nor <datafiles> section.");
             }
 
-            lookup = new Lookup(dbImpl);
+            final DataOptions options = data.getOptions();
+            lookup = new Lookup(dbImpl, options == null ? null : options.getCaches());
+            if (options != null && options.getFetchSize() != null) {
+                lookup.setFetchSize(options.getFetchSize());
+            }
             logDbStatistics();
+            if (options != null && options.getWarmUp() != null) {
+                warmUpCaches(options.getWarmUp());
+            }
         }
 
     }
@@ -88,21 +123,129 @@ public class DataReader implements java.lang.AutoCloseable {
         final DataFiles files = data.getDatafiles();
         if (files != null) {
             sw.start();
-            readDataFiles(files);
+            final Path snapshotFile = getSnapshotFile(files);
+            final DataSnapshot snapshot = snapshotFile == null ? null
+                                          : DataSnapshot.read(snapshotFile, snapshotFile.getFileName().toString());
+            if (snapshot != null) {
+                log.info("Restoring data files from snapshot {}.", snapshotFile);
+                snapshot.restore(dbImpl);
+            } else {
+                readDataFiles(files);
+                if (snapshotFile != null) {
+                    DataSnapshot.write(dbImpl, snapshotFile, snapshotFile.getFileName().toString());
+                }
+            }
             sw.stop();
             log.info("Processed input data in {} ms", sw.toString());
             log.info("Data stored internally in {}.", dbName);
         }
     }
 
+    /**
+     * Read the data files into a H2 database kept in a directory between runs. The database is named after the checksum
+     * of the <datafiles/> section (the file names and column mappings) and a manifest of the length and checksum of
+     * each file is saved beside it once the files have been read. If the files have not changed since then the database
+     * is opened read only without reading any files, if some files have only had rows appended to them only the new
+     * rows are read, otherwise the database is emptied and all the files are read again.
+     * @param directory the directory in which the database is kept.
+     */
+    private void readIntoDatabaseDirectory(final Path directory) {
+        final StopWatch sw = new StopWatch();
+        sw.start();
+        final DataFiles files = data.getDatafiles();
+        final String db = "broadwick_" + IngestManifest.key(files);
+        dbName = directory.resolve(db + "_db").toAbsolutePath().toString();
+        final Path manifestFile = directory.resolve(db + MANIFEST_SUFFIX);
+
+        final IngestManifest manifest = IngestManifest.create(DataSnapshot.getFileNames(files));
+        final IngestManifest previous = Files.exists(Paths.get(dbName + H2_FILE_SUFFIX))
+                                        ? IngestManifest.read(manifestFile) : null;
+        final Map<String, Long> offsets = previous == null ? null : manifest.getReadOffsets(previous);
+        if (offsets != null && manifest.isUpToDate(offsets)) {
+            log.info("The data files have not changed since they were read into {}, reusing it.", dbName);
+            dbImpl = new H2Database(dbName, false, true);
+        } else {
+            try {
+                // the manifest is removed while the database is changed so that the database is not reused if reading
+                // the files fails.
+                Files.createDirectories(directory);
+                Files.deleteIfExists(manifestFile);
+            } catch (IOException e) {
+                throw new BroadwickException(String.format("Could not create the database in %s. %s",
+                                                           directory, e.getLocalizedMessage()));
+            }
+            if (offsets == null) {
+                dbImpl = new H2Database(dbName, true);
+            } else {
+                log.info("Adding the rows appended to the data files to {}.", dbName);
+                dbImpl = new H2Database(dbName, false);
+                readOffsets = offsets;
+            }
+            readDataFiles(files);
+            readOffsets = null;
+            checkpoint();
+            manifest.write(manifestFile);
+        }
+        sw.stop();
+        log.info("Processed input data in {} ms", sw.toString());
+        log.info("Data stored internally in {}.", dbName);
+    }
+
+    /**
+     * Write all the changes made to the database to disk, so that the database is complete before its manifest is
+     * written.
+     */
+    private void checkpoint() {
+        try (Connection connection = dbImpl.getConnection(); Statement stmt = connection.createStatement()) {
+            stmt.execute("CHECKPOINT SYNC");
+        } catch (SQLException e) {
+            throw new BroadwickException(String.format("Could not save the database %s. %s", dbName,
+                                                       e.getLocalizedMessage()));
+        }
+    }
+
     @Override
     public final void close() {
+        if (lookup != null) {
+            lookup.logCacheStats();
+            lookup.close();
+        }
         if (dbImpl != null) {
             log.trace("Closing database connection");
             dbImpl.close();
         }
     }
 
+    /**
+     * Load the locations and animals given in the warmUp element of the <data/> section of the configuration file into
+     * the caches of the lookup object.
+     * @param warmUp the warmUp element of the configuration file.
+     */
+    private void warmUpCaches(final WarmUpOptions warmUp) {
+        final StopWatch sw = new StopWatch();
+        sw.start();
+        if (Boolean.TRUE.equals(warmUp.isLocations())) {
+            log.info("Preloaded {} locations.", lookup.preloadLocations());
+        }
+        if (warmUp.getAnimalIdsFile() != null) {
+            final List<String> animalIds = new ArrayList<>();
+            try {
+                for (final String line : Files.readAllLines(Paths.get(warmUp.getAnimalIdsFile()),
+                                                            StandardCharsets.UTF_8)) {
+                    if (!line.trim().isEmpty()) {
+                        animalIds.add(line.trim());
+                    }
+                }
+            } catch (IOException e) {
+                throw new BroadwickException(String.format("Could not read the animal ids to preload from %s. %s",
+                                                           warmUp.getAnimalIdsFile(), e.getLocalizedMessage()));
+            }
+            log.info("Preloaded {} of {} animals.", lookup.preloadAnimals(animalIds), animalIds.size());
+        }
+        sw.stop();
+        log.info("Warmed up the data caches in {}.", sw.toString());
+    }
+
     /**
      * Save a message giving the numbers of elements in the database.
      */
@@ -114,27 +257,207 @@ public class DataReader implements java.lang.AutoCloseable {
     }
 
     /**
-     * Read the datafiles, each section type of the <datafiles/> element (e.g. all the <MovementFile/>s) are read in
-     * parallel and each individual element is its read in parallel with the data saved to an internal database. Once
-     * the datafiles have been read some post-processing is run to determine the locations of individuals at each time
-     * step throughout the simulation.
+     * Read the datafiles, each section type of the <datafiles/> element (e.g. all the <MovementFile/>s) is stored in
+     * its own table so the sections are independent of each other and may be read concurrently (controlled by the
+     * parallelism option of the <data/> element); the files within a section share a table and are always read
+     * serially. When the sections are read serially reading stops at the first section that fails; when they are read
+     * concurrently every section is read and the failures are reported in the order the sections appear below,
+     * regardless of which finished first.
      * @param files the Datafiles object from the configuration file.
      */
     private void readDataFiles(final DataFiles files) {
 
-        try {
-            final String addingFileMsg = "Reading %s ...";
-
-            readAllLocationSections(files.getLocationsFile(), addingFileMsg);
-            readAllPopulationSections(files.getPopulationFile(), addingFileMsg);
-            readAllTestSections(files.getTestsFile(), addingFileMsg);
-            readAllFullMovementSections(files.getFullMovementFile(), addingFileMsg);
-            readAllDirectedMovementSections(files.getDirectedMovementFile(), addingFileMsg);
-            readAllBatchedMovementSections(files.getBatchMovementFile(), addingFileMsg);
-        } catch (Exception e) {
-            log.error("Failure reading data file section. {}", e.getLocalizedMessage());
-            throw new BroadwickException(String.format("Failure reading data file section. %s", e.getLocalizedMessage()));
+        final String addingFileMsg = "Reading %s ...";
+        final Map<String, Callable<Integer>> sections = new LinkedHashMap<>();
+        sections.put("LocationsFile", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return readAllLocationSections(files.getLocationsFile(), addingFileMsg);
+            }
+        });
+        sections.put("PopulationFile", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return readAllPopulationSections(files.getPopulationFile(), addingFileMsg);
+            }
+        });
+        sections.put("TestsFile", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return readAllTestSections(files.getTestsFile(), addingFileMsg);
+            }
+        });
+        sections.put("FullMovementFile", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return readAllFullMovementSections(files.getFullMovementFile(), addingFileMsg);
+            }
+        });
+        sections.put("DirectedMovementFile", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return readAllDirectedMovementSections(files.getDirectedMovementFile(), addingFileMsg);
+            }
+        });
+        sections.put("BatchMovementFile", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return readAllBatchedMovementSections(files.getBatchMovementFile(), addingFileMsg);
+            }
+        });
+
+        readSections(sections, getParallelism());
+    }
+
+    /**
+     * Read the data file sections, concurrently if more than one thread is to be used. In serial mode the sections are
+     * read one after another and reading stops at the first section that fails. In parallel mode every section is read
+     * (a failing section does not cancel the others) so that all the failures are reported together, in the order the
+     * sections were given.
+     * @param sections    the sections to be read, keyed by the name of the section.
+     * @param parallelism the maximum number of sections that are read at the same time.
+     * @throws BroadwickException if any of the sections could not be read.
+     */
+    static void readSections(final Map<String, Callable<Integer>> sections, final int parallelism) {
+        final List<String> failures = new ArrayList<>();
+        if (parallelism > 1) {
+            log.info("Reading data file sections using {} threads.", Math.min(parallelism, sections.size()));
+            final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                    .setNameFormat("DataReader-%d")
+                    .setDaemon(true)
+                    .build();
+            final ExecutorService es = Executors.newFixedThreadPool(Math.min(parallelism, sections.size()),
+                                                                    threadFactory);
+            try {
+                final Map<String, Future<Integer>> results = new LinkedHashMap<>();
+                for (final Map.Entry<String, Callable<Integer>> section : sections.entrySet()) {
+                    results.put(section.getKey(), es.submit(section.getValue()));
+                }
+                for (final Map.Entry<String, Future<Integer>> result : results.entrySet()) {
+                    try {
+                        result.getValue().get();
+                    } catch (ExecutionException e) {
+                        failures.add(String.format("[%s] %s", result.getKey(), describe(e.getCause())));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.add("Interrupted while waiting for the data files to be read.");
+            } finally {
+                es.shutdownNow();
+            }
+        } else {
+            for (final Map.Entry<String, Callable<Integer>> section : sections.entrySet()) {
+                try {
+                    section.getValue().call();
+                } catch (Exception e) {
+                    failures.add(String.format("[%s] %s", section.getKey(), describe(e)));
+                    break;
+                }
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            final String errors = Joiner.on("; ").join(failures);
+            log.error("Failure reading data file section. {}", errors);
+            throw new BroadwickException(String.format("Failure reading data file section. %s", errors));
+        }
+    }
+
+    /**
+     * Describe the reason a section could not be read, many exceptions (e.g. NullPointerException) have no message so
+     * the exception itself is described instead.
+     * @param error the exception thrown reading the section.
+     * @return the message of the exception, or the exception's toString() if it has no message.
+     */
+    private static String describe(final Throwable error) {
+        final String message = error.getLocalizedMessage();
+        return message == null ? error.toString() : message;
+    }
+
+    /**
+     * Get the number of data file sections that are to be read concurrently from the options in the <data/> section of
+     * the configuration file. If no value is given the sections are read serially, a value less than 1 will use one
+     * thread for each available processor.
+     * @return the number of threads used to read the data files.
+     */
+    private int getParallelism() {
+        int parallelism = 1;
+        if (data.getOptions() != null && data.getOptions().getParallelism() != null) {
+            parallelism = data.getOptions().getParallelism();
+            if (parallelism < 1) {
+                parallelism = Runtime.getRuntime().availableProcessors();
+            }
         }
+        return parallelism;
+    }
+
+    /**
+     * Get the snapshot file for the data files, the snapshot is named after the checksum of the data files (and their
+     * column mappings) and stored in the snapshotDirectory given in the <data/> section of the configuration file.
+     * @param files the Datafiles object from the configuration file.
+     * @return the snapshot file or null if snapshots are not used.
+     */
+    private Path getSnapshotFile(final DataFiles files) {
+        final DataOptions options = data.getOptions();
+        if (options == null || options.getSnapshotDirectory() == null) {
+            return null;
+        }
+        return Paths.get(options.getSnapshotDirectory(), DataSnapshot.checksum(files));
+    }
+
+    /**
+     * Check if the <data/> section of the configuration file gives a directory in which the database created from the
+     * data files is kept between runs. This only applies to H2 databases.
+     * @return true if the database is to be kept in the databaseDirectory.
+     */
+    private boolean isDatabaseKept() {
+        final DataOptions options = data.getOptions();
+        if (options == null || options.getDatabaseDirectory() == null) {
+            return false;
+        }
+        if (isInMemory()) {
+            log.warn("The in-memory backend does not keep the data between runs, ignoring the databaseDirectory.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check if the backend option of the <data/> section of the configuration file selects the in-memory database.
+     * @return true if the data files are to be stored in a ColumnarDatabase, false for a H2 database.
+     */
+    private boolean isInMemory() {
+        final DataOptions options = data.getOptions();
+        final String backend = options == null ? null : options.getBackend();
+        if (backend == null || H2_BACKEND.equalsIgnoreCase(backend.trim())) {
+            return false;
+        } else if (MEMORY_BACKEND.equalsIgnoreCase(backend.trim())) {
+            return true;
+        }
+        throw new BroadwickException(String.format("Unknown data backend %s, expected %s or %s.",
+                                                   backend, H2_BACKEND, MEMORY_BACKEND));
+    }
+
+    /**
+     * Apply the options given in the <data/> section of the configuration file (e.g. the batch size) to a data file
+     * reader, and set where the reader starts reading the file if only the rows appended to it are to be read.
+     * @param <T>      the type of the data file reader.
+     * @param reader   the reader to be configured.
+     * @param fileName the name of the file the reader reads.
+     * @return the configured reader.
+     */
+    private <T extends DataFileReader> T configure(final T reader, final String fileName) {
+        final DataOptions options = data.getOptions();
+        if (options != null) {
+            if (options.getBatchSize() != null && options.getBatchSize() > 0) {
+                reader.setBatchSize(options.getBatchSize());
+            }
+        }
+        if (readOffsets != null && readOffsets.containsKey(fileName)) {
+            reader.setOffset(readOffsets.get(fileName));
+        }
+        return reader;
     }
 
     /**
@@ -172,7 +495,7 @@ public class DataReader implements java.lang.AutoCloseable {
 
         for (final DataFiles.DirectedMovementFile file : directedMovementFiles) {
             log.trace(String.format(addingFileMsg, file.getName()));
-            final DirectedMovementsFileReader movementsFileReader = new DirectedMovementsFileReader(file, dbImpl);
+            final DirectedMovementsFileReader movementsFileReader = configure(new DirectedMovementsFileReader(file, dbImpl), file.getName());
             elementsRead += movementsFileReader.insert();
         }
 
@@ -193,7 +516,7 @@ public class DataReader implements java.lang.AutoCloseable {
 
         for (final DataFiles.FullMovementFile file : fullMovementFiles) {
             log.trace(String.format(addingFileMsg, file.getName()));
-            final FullMovementsFileReader movementsFileReader = new FullMovementsFileReader(file, dbImpl);
+            final FullMovementsFileReader movementsFileReader = configure(new FullMovementsFileReader(file, dbImpl), file.getName());
             elementsRead += movementsFileReader.insert();
         }
 
@@ -214,7 +537,7 @@ public class DataReader implements java.lang.AutoCloseable {
 
         for (final DataFiles.BatchMovementFile file : batchMovementFiles) {
             log.trace(String.format(addingFileMsg, file.getName()));
-            final BatchedMovementsFileReader movementsFileReader = new BatchedMovementsFileReader(file, dbImpl);
+            final BatchedMovementsFileReader movementsFileReader = configure(new BatchedMovementsFileReader(file, dbImpl), file.getName());
             elementsRead += movementsFileReader.insert();
         }
 
@@ -235,7 +558,7 @@ public class DataReader implements java.lang.AutoCloseable {
 
         for (final DataFiles.LocationsFile file : locationsFile) {
             log.trace(String.format(addingFileMsg, file.getName()));
-            final LocationsFileReader locationsFileReader = new LocationsFileReader(file, dbImpl);
+            final LocationsFileReader locationsFileReader = configure(new LocationsFileReader(file, dbImpl), file.getName());
             elementsRead += locationsFileReader.insert();
         }
 
@@ -256,7 +579,7 @@ public class DataReader implements java.lang.AutoCloseable {
 
         for (final DataFiles.TestsFile file : testsFile) {
             log.trace(String.format(addingFileMsg, file.getName()));
-            final TestsFileReader testsFileReader = new TestsFileReader(file, dbImpl);
+            final TestsFileReader testsFileReader = configure(new TestsFileReader(file, dbImpl), file.getName());
             elementsRead += testsFileReader.insert();
         }
 
@@ -277,7 +600,7 @@ public class DataReader implements java.lang.AutoCloseable {
 
         for (final DataFiles.PopulationFile file : populationsFiles) {
             log.trace(String.format(addingFileMsg, file.getName()));
-            final PopulationsFileReader populationsFileReader = new PopulationsFileReader(file, dbImpl);
+            final PopulationsFileReader populationsFileReader = configure(new PopulationsFileReader(file, dbImpl), file.getName());
             elementsRead += populationsFileReader.insert();
         }
 
@@ -291,5 +614,11 @@ public class DataReader implements java.lang.AutoCloseable {
     private Lookup lookup;
     private Project.Data data;
     private DatabaseImpl dbImpl;
+    @Getter
     private String dbName;
+    private Map<String, Long> readOffsets;
+    private static final String H2_BACKEND = "h2";
+    private static final String MEMORY_BACKEND = "memory";
+    private static final String MANIFEST_SUFFIX = ".manifest";
+    private static final String H2_FILE_SUFFIX = ".h2.db";
 }
@@ -0,0 +1,756 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.BroadwickException;
+import broadwick.config.generated.DataFiles;
+import com.google.common.base.Throwables;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.namespace.QName;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.time.StopWatch;
+
+/**
+ * A binary, columnar snapshot of the tables created from the <datafiles/> section of the configuration file. Each
+ * column of each table is stored contiguously; integer (date) columns as ints, double columns as doubles and string
+ * columns as an int code into a dictionary of the distinct values of that column. The snapshot is keyed by a checksum
+ * of the data files and their column mappings so that a snapshot is only used if the files have not changed since it
+ * was written. The column data is memory mapped when the snapshot is read.
+ * <p>
+ * A snapshot may be written from, and restored into, either a H2 database (whose tables and indexes are recreated and
+ * the rows inserted) or a ColumnarDatabase (whose tables are copied from and to the columns of the snapshot without
+ * SQL), so a snapshot written with one backend may be restored with the other.
+ */
+@Slf4j
+public final class DataSnapshot {
+
+    /**
+     * Create the snapshot object from its (read) parts.
+     * @param key    the checksum of the data files from which the snapshot was created.
+     * @param ddl    the statements needed to create the tables and indexes.
+     * @param tables the tables in the snapshot.
+     */
+    private DataSnapshot(final String key, final List<String> ddl, final Map<String, Table> tables) {
+        this.key = key;
+        this.ddl = ddl;
+        this.tables = Collections.unmodifiableMap(tables);
+    }
+
+    /**
+     * Calculate a checksum of the data files in a <datafiles/> section of the configuration file and of the section
+     * itself (i.e. the column mappings) so that a change in either can be detected.
+     * @param files the <datafiles/> section of the configuration file.
+     * @return the checksum as a hex string.
+     */
+    public static String checksum(final DataFiles files) {
+        try {
+            final Hasher hasher = Hashing.murmur3_128().newHasher();
+            hasher.putString(toXml(files), StandardCharsets.UTF_8);
+            for (final String name : getFileNames(files)) {
+                hasher.putString(name, StandardCharsets.UTF_8);
+                hasher.putBytes(com.google.common.io.Files.asByteSource(new File(name))
+                        .hash(Hashing.murmur3_128()).asBytes());
+            }
+            return hasher.hash().toString();
+        } catch (IOException e) {
+            log.error("Could not calculate checksum of the data files. {}", e.getLocalizedMessage());
+            throw new BroadwickException(e);
+        }
+    }
+
+    /**
+     * Write a <datafiles/> section of the configuration file (i.e. the names of the data files and their column
+     * mappings) as XML.
+     * @param files the <datafiles/> section of the configuration file.
+     * @return the XML of the section.
+     */
+    static String toXml(final DataFiles files) {
+        try {
+            final StringWriter writer = new StringWriter();
+            JAXBContext.newInstance(DataFiles.class).createMarshaller()
+                    .marshal(new JAXBElement<>(new QName("datafiles"), DataFiles.class, files), writer);
+            return writer.toString();
+        } catch (JAXBException e) {
+            log.error("Could not write the data files section. {}", e.getLocalizedMessage());
+            throw new BroadwickException(e);
+        }
+    }
+
+    /**
+     * Get the names of all the data files in a <datafiles/> section of the configuration file.
+     * @param files the <datafiles/> section of the configuration file.
+     * @return the names of the data files in the order they appear in the section.
+     */
+    public static List<String> getFileNames(final DataFiles files) {
+        final List<String> names = new ArrayList<>();
+        for (final DataFiles.LocationsFile file : files.getLocationsFile()) {
+            names.add(file.getName());
+        }
+        for (final DataFiles.PopulationFile file : files.getPopulationFile()) {
+            names.add(file.getName());
+        }
+        for (final DataFiles.TestsFile file : files.getTestsFile()) {
+            names.add(file.getName());
+        }
+        for (final DataFiles.FullMovementFile file : files.getFullMovementFile()) {
+            names.add(file.getName());
+        }
+        for (final DataFiles.DirectedMovementFile file : files.getDirectedMovementFile()) {
+            names.add(file.getName());
+        }
+        for (final DataFiles.BatchMovementFile file : files.getBatchMovementFile()) {
+            names.add(file.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Write all the tables in a database to a snapshot file. The snapshot is written to a temporary file that is
+     * renamed once it is complete so that a partially written snapshot is never read.
+     * @param dbImpl the database whose tables are to be saved.
+     * @param file   the snapshot file.
+     * @param key    the checksum of the data files from which the database was created.
+     */
+    public static void write(final DatabaseImpl dbImpl, final Path file, final String key) {
+        final StopWatch sw = new StopWatch();
+        sw.start();
+
+        // read each table into columns, building the dictionaries for the string columns.
+        final List<String> ddl = new ArrayList<>();
+        final List<Table> tables = new ArrayList<>();
+        if (dbImpl instanceof ColumnarDatabase) {
+            // the tables are read from their columns rather than from a H2 copy of the database.
+            for (final ColumnTable columnTable : ((ColumnarDatabase) dbImpl).getTables()) {
+                for (final String command : columnTable.getCreateTableCommand().split(";")) {
+                    if (!command.trim().isEmpty()) {
+                        ddl.add(command.trim());
+                    }
+                }
+                tables.add(readTable(columnTable));
+            }
+        } else {
+            try (Connection connection = dbImpl.getConnection()) {
+                ddl.addAll(getTableDefinitions(connection));
+                try (ResultSet rs = connection.getMetaData().getTables(null, null, "%", new String[]{"TABLE"})) {
+                    while (rs.next()) {
+                        tables.add(readTable(connection, rs.getString("TABLE_NAME")));
+                    }
+                }
+            } catch (SQLException e) {
+                log.error("Could not write snapshot {}. {}", file, Throwables.getStackTraceAsString(e));
+                return;
+            }
+        }
+
+        try {
+            // The header contains the descriptions of the tables and the dictionaries and is followed by the column
+            // data in the order the columns appear in the header.
+            final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+            try (DataOutputStream header = new DataOutputStream(headerBytes)) {
+                header.writeUTF(key);
+                header.writeInt(ddl.size());
+                for (final String statement : ddl) {
+                    header.writeUTF(statement);
+                }
+                header.writeInt(tables.size());
+                for (final Table table : tables) {
+                    header.writeUTF(table.getName());
+                    header.writeInt(table.getNumRows());
+                    header.writeUTF(table.getCreateTableCommand());
+                    header.writeUTF(table.getInsertString());
+                    header.writeInt(table.getColumns().size());
+                    for (final Column column : table.getColumns().values()) {
+                        header.writeUTF(column.getName());
+                        header.writeByte(column.getType().ordinal());
+                        if (column.getType() == ColumnType.STRING) {
+                            header.writeInt(column.dictionary.length);
+                            for (final String value : column.dictionary) {
+                                header.writeUTF(value);
+                            }
+                        }
+                    }
+                }
+            }
+
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            final Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                final ByteBuffer preamble = ByteBuffer.allocate(12);
+                preamble.putInt(MAGIC).putInt(VERSION).putInt(headerBytes.size()).flip();
+                writeFully(channel, preamble);
+                writeFully(channel, ByteBuffer.wrap(headerBytes.toByteArray()));
+
+                final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+                for (final Table table : tables) {
+                    for (final Column column : table.getColumns().values()) {
+                        for (int row = 0; row < table.getNumRows(); row++) {
+                            if (buffer.remaining() < Double.BYTES) {
+                                buffer.flip();
+                                writeFully(channel, buffer);
+                                buffer.clear();
+                            }
+                            if (column.getType() == ColumnType.DOUBLE) {
+                                buffer.putDouble(column.doubles.get(row));
+                            } else {
+                                buffer.putInt(column.ints.get(row));
+                            }
+                        }
+                    }
+                }
+                buffer.flip();
+                writeFully(channel, buffer);
+            }
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+
+            sw.stop();
+            log.info("Saved snapshot of data files to {} in {}.", file, sw.toString());
+        } catch (IOException e) {
+            log.error("Could not write snapshot {}. {}", file, Throwables.getStackTraceAsString(e));
+        }
+    }
+
+    /**
+     * Read a snapshot file, memory mapping the column data. If the file does not exist, was written by a different
+     * version of this class or was created from different data files (i.e. the key does not match) then no snapshot is
+     * read.
+     * @param file the snapshot file.
+     * @param key  the checksum of the data files for which we require the snapshot.
+     * @return the snapshot, or null if there is no valid snapshot for the key.
+     */
+    public static DataSnapshot read(final Path file, final String key) {
+        if (!Files.isReadable(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer preamble = ByteBuffer.allocate(12);
+            readFully(channel, preamble, 0);
+            preamble.flip();
+            if (preamble.getInt() != MAGIC || preamble.getInt() != VERSION) {
+                log.warn("Ignoring snapshot {}, it is not a (current) data snapshot.", file);
+                return null;
+            }
+            final ByteBuffer headerBytes = ByteBuffer.allocate(preamble.getInt());
+            readFully(channel, headerBytes, preamble.capacity());
+
+            try (DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes.array()))) {
+                final String snapshotKey = header.readUTF();
+                if (!snapshotKey.equals(key)) {
+                    log.info("Ignoring snapshot {}, the data files have changed since it was written.", file);
+                    return null;
+                }
+
+                final List<String> ddl = new ArrayList<>();
+                final int numStatements = header.readInt();
+                for (int i = 0; i < numStatements; i++) {
+                    ddl.add(header.readUTF());
+                }
+
+                long position = preamble.capacity() + headerBytes.capacity();
+                final Map<String, Table> tables = new LinkedHashMap<>();
+                final int numTables = header.readInt();
+                for (int i = 0; i < numTables; i++) {
+                    final Table table = new Table(header.readUTF(), header.readInt(), header.readUTF(),
+                                                  header.readUTF());
+                    final int numColumns = header.readInt();
+                    for (int j = 0; j < numColumns; j++) {
+                        final Column column = new Column(header.readUTF(), ColumnType.values()[header.readByte()]);
+                        if (column.getType() == ColumnType.STRING) {
+                            column.dictionary = new String[header.readInt()];
+                            for (int k = 0; k < column.dictionary.length; k++) {
+                                column.dictionary[k] = header.readUTF();
+                            }
+                        }
+                        final long size = (long) table.getNumRows() * column.getType().getWidth();
+                        final ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                        if (column.getType() == ColumnType.DOUBLE) {
+                            column.doubles = data.asDoubleBuffer();
+                        } else {
+                            column.ints = data.asIntBuffer();
+                        }
+                        position += size;
+                        table.columns.put(column.getName(), column);
+                    }
+                    tables.put(table.getName(), table);
+                }
+                return new DataSnapshot(snapshotKey, ddl, tables);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read snapshot {}. {}", file, e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Recreate the tables (and their indexes) in the snapshot in a database. The tables of a ColumnarDatabase are
+     * copied from the columns of the snapshot, those of any other database are created by the statements in the
+     * snapshot and their rows inserted.
+     * @param dbImpl the database into which the tables will be restored.
+     */
+    public void restore(final DatabaseImpl dbImpl) {
+        final StopWatch sw = new StopWatch();
+        sw.start();
+
+        if (dbImpl instanceof ColumnarDatabase) {
+            ((ColumnarDatabase) dbImpl).restore(this);
+            sw.stop();
+            log.info("Restored data from snapshot in {}.", sw.toString());
+            return;
+        }
+
+        try (Connection connection = dbImpl.getConnection()) {
+            try (Statement stmt = connection.createStatement()) {
+                for (final String statement : ddl) {
+                    log.trace("Restoring {}", statement);
+                    stmt.execute(statement);
+                }
+            }
+            connection.commit();
+
+            for (final Table table : tables.values()) {
+                try (PreparedStatement pstmt = connection.prepareStatement(table.getInsertString())) {
+                    for (int row = 0; row < table.getNumRows(); row++) {
+                        int parameterIndex = 1;
+                        for (final Column column : table.getColumns().values()) {
+                            pstmt.setObject(parameterIndex++, column.getValue(row));
+                        }
+                        pstmt.addBatch();
+                        if ((row + 1) % RESTORE_BATCH_SIZE == 0) {
+                            pstmt.executeBatch();
+                            connection.commit();
+                        }
+                    }
+                    pstmt.executeBatch();
+                    connection.commit();
+                }
+                log.debug("Restored {} rows into {}", table.getNumRows(), table.getName());
+            }
+        } catch (SQLException e) {
+            log.error("Could not restore snapshot. {}", Throwables.getStackTraceAsString(e));
+            throw new BroadwickException(e);
+        }
+
+        sw.stop();
+        log.info("Restored data from snapshot in {}.", sw.toString());
+    }
+
+    /**
+     * Get the statements that create the tables (and their indexes and constraints) in the database.
+     * @param connection the connection to the database.
+     * @return the DDL statements.
+     * @throws SQLException if the database could not be scripted.
+     */
+    private static List<String> getTableDefinitions(final Connection connection) throws SQLException {
+        final List<String> ddl = new ArrayList<>();
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery("SCRIPT NODATA")) {
+            while (rs.next()) {
+                final String statement = rs.getString(1);
+                if (statement.startsWith("CREATE CACHED TABLE") || statement.startsWith("CREATE MEMORY TABLE")
+                    || statement.startsWith("CREATE INDEX") || statement.startsWith("CREATE UNIQUE INDEX")
+                    || statement.startsWith("ALTER TABLE")) {
+                    ddl.add(statement);
+                }
+            }
+        }
+        return ddl;
+    }
+
+    /**
+     * Read a database table into columns.
+     * @param connection the connection to the database.
+     * @param tableName  the name of the table.
+     * @return the table.
+     * @throws SQLException if the table could not be read.
+     */
+    private static Table readTable(final Connection connection, final String tableName) throws SQLException {
+        final int numRows;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(String.format("SELECT COUNT(*) FROM %s", tableName))) {
+            rs.next();
+            numRows = rs.getInt(1);
+        }
+
+        final Table table;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(String.format("SELECT * FROM %s", tableName))) {
+            final ResultSetMetaData metaData = rs.getMetaData();
+            final int numColumns = metaData.getColumnCount();
+            final Column[] columns = new Column[numColumns];
+            final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+            final StringBuilder columnDefinitions = new StringBuilder();
+            final StringBuilder columnNames = new StringBuilder();
+            final StringBuilder parameters = new StringBuilder();
+            for (int i = 0; i < numColumns; i++) {
+                final ColumnType type;
+                switch (metaData.getColumnType(i + 1)) {
+                    case Types.INTEGER:
+                        type = ColumnType.INT;
+                        break;
+                    case Types.DOUBLE:
+                        type = ColumnType.DOUBLE;
+                        break;
+                    default:
+                        type = ColumnType.STRING;
+                        break;
+                }
+                columns[i] = new Column(metaData.getColumnName(i + 1), type);
+                if (type == ColumnType.DOUBLE) {
+                    columns[i].doubles = DoubleBuffer.allocate(numRows);
+                } else {
+                    columns[i].ints = IntBuffer.allocate(numRows);
+                }
+                dictionaries.add(new HashMap<String, Integer>());
+                final String separator = i > 0 ? ", " : "";
+                columnDefinitions.append(separator).append(columns[i].getName()).append(' ').append(type.getSqlType());
+                columnNames.append(separator).append(columns[i].getName());
+                parameters.append(separator).append('?');
+            }
+            // the commands describe the columns of the table for a ColumnarDatabase (the statements that recreate the
+            // table and its indexes in a H2 database are taken from the script of the database).
+            table = new Table(tableName, numRows,
+                              String.format("CREATE TABLE %s (%s)", tableName, columnDefinitions),
+                              String.format("INSERT INTO %s (%s) VALUES (%s)", tableName, columnNames, parameters));
+            for (final Column column : columns) {
+                table.columns.put(column.getName(), column);
+            }
+
+            int row = 0;
+            while (rs.next() && row < table.getNumRows()) {
+                for (int i = 0; i < numColumns; i++) {
+                    switch (columns[i].getType()) {
+                        case INT:
+                            final int intValue = rs.getInt(i + 1);
+                            columns[i].ints.put(row, rs.wasNull() ? NULL_INT : intValue);
+                            break;
+                        case DOUBLE:
+                            final double doubleValue = rs.getDouble(i + 1);
+                            columns[i].doubles.put(row, rs.wasNull() ? Double.NaN : doubleValue);
+                            break;
+                        default:
+                            final String value = rs.getString(i + 1);
+                            if (value == null) {
+                                columns[i].ints.put(row, NULL_INT);
+                            } else {
+                                Integer code = dictionaries.get(i).get(value);
+                                if (code == null) {
+                                    code = dictionaries.get(i).size();
+                                    dictionaries.get(i).put(value, code);
+                                }
+                                columns[i].ints.put(row, code);
+                            }
+                            break;
+                    }
+                }
+                row++;
+            }
+
+            for (int i = 0; i < numColumns; i++) {
+                if (columns[i].getType() == ColumnType.STRING) {
+                    columns[i].dictionary = new String[dictionaries.get(i).size()];
+                    for (final Map.Entry<String, Integer> entry : dictionaries.get(i).entrySet()) {
+                        columns[i].dictionary[entry.getValue()] = entry.getKey();
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Read a table of a ColumnarDatabase into columns.
+     * @param columnTable the table.
+     * @return the table.
+     */
+    private static Table readTable(final ColumnTable columnTable) {
+        final int numRows = columnTable.size();
+        final Table table = new Table(columnTable.getName(), numRows, columnTable.getCreateTableCommand(),
+                                      columnTable.getInsertString());
+        for (int col = 0; col < columnTable.getNumColumns(); col++) {
+            final Column column;
+            switch (columnTable.getType(col)) {
+                case INT:
+                    column = new Column(columnTable.getColumnName(col), ColumnType.INT);
+                    column.ints = IntBuffer.allocate(numRows);
+                    for (int row = 0; row < numRows; row++) {
+                        final int value = columnTable.getInt(col, row);
+                        column.ints.put(row, value == CompactStore.NULL_VALUE ? NULL_INT : value);
+                    }
+                    break;
+                case DOUBLE:
+                    column = new Column(columnTable.getColumnName(col), ColumnType.DOUBLE);
+                    column.doubles = DoubleBuffer.allocate(numRows);
+                    for (int row = 0; row < numRows; row++) {
+                        column.doubles.put(row, columnTable.getDouble(col, row));
+                    }
+                    break;
+                default:
+                    column = new Column(columnTable.getColumnName(col), ColumnType.STRING);
+                    column.ints = IntBuffer.allocate(numRows);
+                    final Map<String, Integer> dictionary = new HashMap<>();
+                    for (int row = 0; row < numRows; row++) {
+                        final String value = (String) columnTable.getValue(col, row, null);
+                        if (value == null) {
+                            column.ints.put(row, NULL_INT);
+                        } else {
+                            Integer code = dictionary.get(value);
+                            if (code == null) {
+                                code = dictionary.size();
+                                dictionary.put(value, code);
+                            }
+                            column.ints.put(row, code);
+                        }
+                    }
+                    column.dictionary = new String[dictionary.size()];
+                    for (final Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+                        column.dictionary[entry.getValue()] = entry.getKey();
+                    }
+                    break;
+            }
+            table.columns.put(column.getName(), column);
+        }
+        return table;
+    }
+
+    /**
+     * Write the contents of a buffer to a channel.
+     * @param channel the channel.
+     * @param buffer  the buffer.
+     * @throws IOException if the buffer could not be written.
+     */
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Fill a buffer from a channel starting at a given position.
+     * @param channel  the channel.
+     * @param buffer   the buffer.
+     * @param position the position in the channel to start reading.
+     * @throws IOException if the buffer could not be filled.
+     */
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, pos);
+            if (read < 0) {
+                throw new IOException("Unexpected end of snapshot file.");
+            }
+            pos += read;
+        }
+    }
+
+    /**
+     * The types of column stored in the snapshot.
+     */
+    public static enum ColumnType {
+
+        /**
+         * Integer (including date) columns.
+         */
+        INT(Integer.BYTES, "INT"),
+        /**
+         * Double columns.
+         */
+        DOUBLE(Double.BYTES, "DOUBLE"),
+        /**
+         * String columns, stored as an int code into the dictionary of the column.
+         */
+        STRING(Integer.BYTES, "VARCHAR");
+
+        /**
+         * Create the column type.
+         * @param width   the number of bytes used to store each value.
+         * @param sqlType the SQL type of columns of this type.
+         */
+        private ColumnType(final int width, final String sqlType) {
+            this.width = width;
+            this.sqlType = sqlType;
+        }
+        @Getter
+        private final int width;
+        @Getter
+        private final String sqlType;
+    }
+
+    /**
+     * A table in the snapshot.
+     */
+    public static final class Table {
+
+        /**
+         * Create an empty table.
+         * @param name               the name of the table.
+         * @param numRows            the number of rows in the table.
+         * @param createTableCommand the SQL command that creates the table.
+         * @param insertString       the SQL command that inserts a row (the values of the columns in order) into the
+         *                           table.
+         */
+        private Table(final String name, final int numRows, final String createTableCommand,
+                      final String insertString) {
+            this.name = name;
+            this.numRows = numRows;
+            this.createTableCommand = createTableCommand;
+            this.insertString = insertString;
+        }
+
+        /**
+         * Get the columns of the table, in the order they appear in the table.
+         * @return the columns keyed by the name of the column.
+         */
+        public Map<String, Column> getColumns() {
+            return Collections.unmodifiableMap(columns);
+        }
+
+        @Getter
+        private final String name;
+        @Getter
+        private final int numRows;
+        @Getter
+        private final String createTableCommand;
+        @Getter
+        private final String insertString;
+        private final Map<String, Column> columns = new LinkedHashMap<>();
+    }
+
+    /**
+     * A column of a table in the snapshot.
+     */
+    public static final class Column {
+
+        /**
+         * Create an empty column.
+         * @param name the name of the column.
+         * @param type the type of the column.
+         */
+        private Column(final String name, final ColumnType type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        /**
+         * Get the value in a given row of an INT or STRING column, for a STRING column this is the code of the value
+         * in the dictionary of the column. Missing values are returned as Integer.MIN_VALUE.
+         * @param row the row.
+         * @return the int value.
+         */
+        public int getInt(final int row) {
+            return ints.get(row);
+        }
+
+        /**
+         * Get the value in a given row of a DOUBLE column, missing values are returned as NaN.
+         * @param row the row.
+         * @return the double value.
+         */
+        public double getDouble(final int row) {
+            return doubles.get(row);
+        }
+
+        /**
+         * Get the value in a given row of a STRING column.
+         * @param row the row.
+         * @return the string value, or null if there is no value.
+         */
+        public String getString(final int row) {
+            final int code = ints.get(row);
+            return code == NULL_INT ? null : dictionary[code];
+        }
+
+        /**
+         * Get the value in a given row as an object (Integer, Double or String) as it would be read from the
+         * database.
+         * @param row the row.
+         * @return the value, or null if there is no value.
+         */
+        public Object getValue(final int row) {
+            switch (type) {
+                case INT:
+                    final int intValue = ints.get(row);
+                    return intValue == NULL_INT ? null : intValue;
+                case DOUBLE:
+                    final double doubleValue = doubles.get(row);
+                    return Double.isNaN(doubleValue) ? null : doubleValue;
+                default:
+                    return getString(row);
+            }
+        }
+
+        /**
+         * Get the distinct values of a STRING column, indexed by their code.
+         * @return the dictionary of the column.
+         */
+        public String[] getDictionary() {
+            return dictionary.clone();
+        }
+
+        @Getter
+        private final String name;
+        @Getter
+        private final ColumnType type;
+        private IntBuffer ints;
+        private DoubleBuffer doubles;
+        private String[] dictionary;
+    }
+
+    @Getter
+    private final String key;
+    private final List<String> ddl;
+    @Getter
+    private final Map<String, Table> tables;
+    private static final int MAGIC = 0x42574453;
+    private static final int VERSION = 2;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final int RESTORE_BATCH_SIZE = 10000;
+}
@@ -43,6 +43,19 @@ public final class H2Database implements DatabaseImpl {
      * @param deleteDb delete the contents of the database once a connection is made.
      */
     public H2Database(final String dbName, final boolean deleteDb) {
+        this(dbName, deleteDb, false);
+    }
+
+    /**
+     * Create a new H2 database instance for a given database name. If the database does not exist one is created, if
+     * one exists and the deleteDb is true then the contents of the database are deleted. A read only database is
+     * opened without the ability to change its contents, so that an existing database may be reused safely.
+     * @param dbName   the name of the database to which we will connect.
+     * @param deleteDb delete the contents of the database once a connection is made.
+     * @param readOnly open the database read only.
+     */
+    public H2Database(final String dbName, final boolean deleteDb, final boolean readOnly) {
+        this.readOnly = readOnly;
         this.open(dbName);
 
         if (deleteDb) {
@@ -62,7 +75,8 @@ public final class H2Database implements DatabaseImpl {
             if (connection == null) {
                 Class.forName("org.h2.Driver");
                 connectionPool = JdbcConnectionPool.create(
-                        String.format("jdbc:h2:%s;IGNORECASE=TRUE;TRACE_LEVEL_FILE=0;TRACE_LEVEL_SYSTEM_OUT=0;LOG=0;WRITE_DELAY=100000;MVCC=TRUE;LOCK_MODE=0", database),
+                        String.format("jdbc:h2:%s;IGNORECASE=TRUE;TRACE_LEVEL_FILE=0;TRACE_LEVEL_SYSTEM_OUT=0;LOG=0;WRITE_DELAY=100000;MVCC=TRUE;LOCK_MODE=0%s",
+                                      database, readOnly ? ";ACCESS_MODE_DATA=r" : ""),
                         "", "");
                 connectionPool.setLogWriter(null);
             }
@@ -97,6 +111,8 @@ public final class H2Database implements DatabaseImpl {
             if (connection != null) {
                 connection.commit();
                 connection.close();
+            }
+            if (connectionPool != null) {
                 connectionPool.dispose();
             }
         } catch (SQLException ex) {
@@ -115,4 +131,5 @@ public final class H2Database implements DatabaseImpl {
     }
     private Connection connection = null;
     private JdbcConnectionPool connectionPool = null;
+    private boolean readOnly = false;
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A dictionary that assigns a unique integer code to each of the (location, animal, species...) ids in the data
+ * so that they can be stored in int arrays and compared as ints. Codes are assigned sequentially from 0 in the order
+ * the ids are first seen, each id string is stored only once however many times it appears in the data. A null id is
+ * given the code NO_ID.
+ * <p>
+ * As the H2 database compares ids ignoring case, each id also has a folded code: the code of the first id seen that is
+ * equal to it ignoring case. Ids that differ only in case have different codes (so they are decoded as they were read)
+ * but the same folded code.
+ * <p>
+ * Codes may be added by several threads at once (e.g. the readers of the movements and life histories tables when an
+ * AnimalLocationIndex is created), encode() is synchronised so each id is given a single code. The other methods do
+ * not lock so they may be called by any number of threads without waiting for each other.
+ */
+public final class IdDictionary implements Serializable {
+
+    /**
+     * Create an empty dictionary.
+     */
+    public IdDictionary() {
+        this.codes = new ConcurrentHashMap<>();
+        this.foldedCodes = new ConcurrentHashMap<>();
+        this.ids = new String[INITIAL_CAPACITY];
+        this.folds = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Get the code for an id, adding the id to the dictionary if it has not been seen before.
+     * @param id the id.
+     * @return the code for the id, NO_ID if the id is null.
+     */
+    public synchronized int encode(final String id) {
+        if (id == null) {
+            return NO_ID;
+        }
+        final Integer code = codes.get(id);
+        if (code != null) {
+            return code;
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, 2 * ids.length);
+            folds = Arrays.copyOf(folds, 2 * folds.length);
+        }
+        final String key = id.toUpperCase(Locale.ENGLISH);
+        final Integer folded = foldedCodes.get(key);
+        if (folded == null) {
+            foldedCodes.put(key, size);
+        }
+        ids[size] = id;
+        folds[size] = folded == null ? size : folded;
+        codes.put(id, size);
+        return size++;
+    }
+
+    /**
+     * Get the code for an id without adding it to the dictionary.
+     * @param id the id.
+     * @return the code for the id, NO_ID if the id is null or is not in the dictionary.
+     */
+    public int getCode(final String id) {
+        if (id == null) {
+            return NO_ID;
+        }
+        final Integer code = codes.get(id);
+        return code == null ? NO_ID : code;
+    }
+
+    /**
+     * Get the folded code of an id, i.e. the code of the first id in the dictionary that is equal to it ignoring case,
+     * without adding it to the dictionary.
+     * @param id the id.
+     * @return the folded code for the id, NO_ID if the id is null or no id equal to it ignoring case is in the
+     *         dictionary.
+     */
+    public int getFoldedCode(final String id) {
+        if (id == null) {
+            return NO_ID;
+        }
+        final Integer code = foldedCodes.get(id.toUpperCase(Locale.ENGLISH));
+        return code == null ? NO_ID : code;
+    }
+
+    /**
+     * Get the folded code of a code, i.e. the code of the first id in the dictionary that is equal, ignoring case, to
+     * the id given the code.
+     * @param code the code.
+     * @return the folded code, NO_ID if the code is NO_ID.
+     * @throws IndexOutOfBoundsException if the code has not been assigned.
+     */
+    public int fold(final int code) {
+        if (code == NO_ID) {
+            return NO_ID;
+        }
+        final int[] current = folds;
+        if (code < 0 || code >= current.length || code >= codes.size()) {
+            throw new IndexOutOfBoundsException(String.format("No id has been assigned the code %d.", code));
+        }
+        return current[code];
+    }
+
+    /**
+     * Get the id that has been given a code.
+     * @param code the code.
+     * @return the id, null if the code is NO_ID.
+     * @throws IndexOutOfBoundsException if the code has not been assigned.
+     */
+    public String decode(final int code) {
+        if (code == NO_ID) {
+            return null;
+        }
+        final String[] current = ids;
+        if (code < 0 || code >= current.length || current[code] == null) {
+            throw new IndexOutOfBoundsException(String.format("No id has been assigned the code %d.", code));
+        }
+        return current[code];
+    }
+
+    /**
+     * Get the number of ids in the dictionary.
+     * @return the number of ids.
+     */
+    public int size() {
+        return codes.size();
+    }
+
+    /**
+     * Check if an id is in the dictionary.
+     * @param id the id.
+     * @return true if the id has been given a code.
+     */
+    public boolean contains(final String id) {
+        return id != null && codes.containsKey(id);
+    }
+
+    /**
+     * The code given to a null id.
+     */
+    public static final int NO_ID = -1;
+    private final Map<String, Integer> codes;
+    private final Map<String, Integer> foldedCodes;
+    private volatile String[] ids;
+    private volatile int[] folds;
+    private int size;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long serialVersionUID = -4106212376617227466L;
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.BroadwickException;
+import broadwick.config.generated.DataFiles;
+import broadwick.io.FileInput;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A record of the data files that have been read into a database that is kept between runs; the length and checksum
+ * of each file is saved alongside the database once the files have been read. Comparing the record with the files as
+ * they are now tells us whether the database can be reused as it is, whether the rows appended to some of the files
+ * need to be added to it or whether it must be created again.
+ */
+@Slf4j
+final class IngestManifest {
+
+    /**
+     * Create the manifest from the entries for each data file.
+     * @param entries the entries keyed by the name of the file.
+     */
+    private IngestManifest(final Map<String, Entry> entries) {
+        this.entries = Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * Calculate a checksum of the <datafiles/> section of the configuration file (i.e. the names of the files and their
+     * column mappings), but not of the contents of the files. Databases are named after this checksum so that a
+     * database read from the same files can be found when the contents of the files have changed.
+     * @param files the <datafiles/> section of the configuration file.
+     * @return the checksum as a hex string.
+     */
+    static String key(final DataFiles files) {
+        return Hashing.murmur3_128().hashString(DataSnapshot.toXml(files), StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Create a manifest of the data files as they are now.
+     * @param fileNames the names of the data files.
+     * @return the manifest.
+     */
+    static IngestManifest create(final List<String> fileNames) {
+        final Map<String, Entry> entries = new LinkedHashMap<>();
+        for (final String name : fileNames) {
+            try {
+                final ByteSource source = com.google.common.io.Files.asByteSource(new File(name));
+                entries.put(name, new Entry(source.size(), source.hash(Hashing.murmur3_128())));
+            } catch (IOException e) {
+                throw new BroadwickException(String.format("Could not calculate checksum of %s. %s", name,
+                                                           e.getLocalizedMessage()));
+            }
+        }
+        return new IngestManifest(entries);
+    }
+
+    /**
+     * Read a manifest file.
+     * @param file the manifest file.
+     * @return the manifest or null if the file does not exist or cannot be read.
+     */
+    static IngestManifest read(final Path file) {
+        if (!Files.isReadable(file)) {
+            return null;
+        }
+        try {
+            final Map<String, Entry> entries = new LinkedHashMap<>();
+            for (final String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (!line.isEmpty() && line.charAt(0) != '#') {
+                    final String[] fields = line.split("\t", 3);
+                    entries.put(fields[2], new Entry(Long.parseLong(fields[0]), HashCode.fromString(fields[1])));
+                }
+            }
+            return new IngestManifest(entries);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read data file manifest {}. {}", file, e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write the manifest to a file. The manifest is written to a temporary file that is renamed once it is complete.
+     * @param file the manifest file.
+     */
+    void write(final Path file) {
+        final List<String> lines = new ArrayList<>();
+        lines.add("# length, checksum and name of the data files read into the database.");
+        for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+            lines.add(String.format("%d\t%s\t%s", entry.getValue().length, entry.getValue().checksum,
+                                    entry.getKey()));
+        }
+        try {
+            final Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmpFile, lines, StandardCharsets.UTF_8);
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.error("Could not write data file manifest {}. {}", file, e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Compare this manifest of the data files as they are now with the manifest of the files when they were read into
+     * a database, to find where reading of each file should start to bring the database up to date. A file that has
+     * not changed is read from its end (i.e. not at all) and a file that has only grown, i.e. whose previous contents
+     * are unchanged and ended with a complete line, is read from its previous length.
+     * @param previous the manifest of the files when they were read.
+     * @return the byte offset from which each file is to be read keyed by the name of the file, or null if any file has
+     *         changed in some other way and the database has to be created from scratch.
+     */
+    Map<String, Long> getReadOffsets(final IngestManifest previous) {
+        final Map<String, Long> offsets = new LinkedHashMap<>();
+        for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+            final String name = entry.getKey();
+            final Entry current = entry.getValue();
+            final Entry old = previous.entries.get(name);
+            if (old == null || old.length > current.length) {
+                log.info("{} is not the file that was read into the database.", name);
+                return null;
+            }
+            if (old.length < current.length && !isPrefix(name, old)) {
+                log.info("{} has changed since it was read into the database.", name);
+                return null;
+            }
+            if (old.length == current.length && !old.checksum.equals(current.checksum)) {
+                log.info("{} has changed since it was read into the database.", name);
+                return null;
+            }
+            offsets.put(name, old.length);
+        }
+        return offsets;
+    }
+
+    /**
+     * Check if a set of read offsets means that none of the data files need to be read.
+     * @param offsets the byte offset from which each file is to be read.
+     * @return true if every offset is the end of its file.
+     */
+    boolean isUpToDate(final Map<String, Long> offsets) {
+        for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+            final Long offset = offsets.get(entry.getKey());
+            if (offset == null || offset != entry.getValue().length) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the contents of a data file when it was read are the start of the file as it is now and end with a
+     * complete line, so that the rest of the file is made up of whole lines appended to it. We cannot tell where the
+     * lines of a compressed file end without decompressing it, so a compressed file that has grown is read again.
+     * @param name the name of the data file.
+     * @param old  the entry for the file when it was read.
+     * @return true if rows can be read from the end of the previous contents.
+     */
+    private static boolean isPrefix(final String name, final Entry old) {
+        try {
+            if (FileInput.isCompressed(name)) {
+                return false;
+            }
+            final ByteSource source = com.google.common.io.Files.asByteSource(new File(name));
+            if (old.length > 0 && source.slice(old.length - 1, 1).read()[0] != '\n') {
+                return false;
+            }
+            return source.slice(0, old.length).hash(Hashing.murmur3_128()).equals(old.checksum);
+        } catch (IOException e) {
+            log.warn("Could not read {}. {}", name, e.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    /**
+     * The length and checksum of a data file.
+     */
+    private static final class Entry {
+
+        /**
+         * Create the entry.
+         * @param length   the length of the file in bytes.
+         * @param checksum the checksum of the contents of the file.
+         */
+        private Entry(final long length, final HashCode checksum) {
+            this.length = length;
+            this.checksum = checksum;
+        }
+        private final long length;
+        private final HashCode checksum;
+    }
+
+    private final Map<String, Entry> entries;
+}
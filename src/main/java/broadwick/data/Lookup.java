@@ -15,6 +15,9 @@
  */
 package broadwick.data;
 
+import broadwick.BroadwickException;
+import broadwick.config.generated.CacheOptions;
+import broadwick.config.generated.CacheSpec;
 import broadwick.data.readers.BatchedMovementsFileReader;
 import broadwick.data.readers.DirectedMovementsFileReader;
 import broadwick.data.readers.FullMovementsFileReader;
@@ -24,23 +27,48 @@ import broadwick.data.readers.TestsFileReader;
 import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.Serializable;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.StopWatch;
+import org.jooq.Cursor;
 import org.jooq.DSLContext;
+import org.jooq.Field;
 import org.jooq.Record;
 import org.jooq.Record1;
-import org.jooq.Record2;
+import org.jooq.RecordMapper;
 import org.jooq.Result;
+import org.jooq.ResultQuery;
+import org.jooq.SelectJoinStep;
 import org.jooq.conf.Settings;
 import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
@@ -49,6 +77,8 @@ import org.jooq.impl.DSL;
  * This class works as an interface to the databases holding the movements, locations and animal data read from the
  * configuration file. When the methods to retrieve all the data in the DB (e.g. getMovements()) are called the results
  * are stored in a cache for speedier retrieval. This cache is not permanent however, freeing memory when required.
+ * If the data is held in a ColumnarDatabase the queries are answered from its in-memory tables (without SQL or the
+ * caches) and only custom queries are run on a SQL database.
  */
 @Slf4j
 public final class Lookup {
@@ -58,14 +88,140 @@ public final class Lookup {
      * @param dbFacade the object that is responsible for accessing the internal databases.
      */
     public Lookup(final DatabaseImpl dbFacade) {
+        this(dbFacade, null);
+    }
+
+    /**
+     * Create the lookup object for accessing data in the internal databases with caches of locations, animals and
+     * movements configured in the <options/> of the <data/> section of the configuration file.
+     * @param dbFacade     the object that is responsible for accessing the internal databases.
+     * @param cacheOptions the configuration of the caches, or null for the default (1000 entry) caches.
+     */
+    public Lookup(final DatabaseImpl dbFacade, final CacheOptions cacheOptions) {
+        locationsCache = createCache(LOCATIONS_CACHE, cacheOptions == null ? null : cacheOptions.getLocations(),
+                                     new Weigher<String, Location>() {
+                                         @Override
+                                         public int weigh(final String key, final Location value) {
+                                             return 1;
+                                         }
+                                     });
+        animalsCache = createCache(ANIMALS_CACHE, cacheOptions == null ? null : cacheOptions.getAnimals(),
+                                   new Weigher<String, Animal>() {
+                                       @Override
+                                       public int weigh(final String key, final Animal value) {
+                                           return 1;
+                                       }
+                                   });
+        movementsCache = createCache(MOVEMENTS_CACHE, cacheOptions == null ? null : cacheOptions.getMovements(),
+                                     new Weigher<String, Collection<Movement>>() {
+                                         @Override
+                                         public int weigh(final String key, final Collection<Movement> value) {
+                                             return Math.max(1, value.size());
+                                         }
+                                     });
+        this.dbFacade = dbFacade;
+        this.columnar = dbFacade instanceof ColumnarDatabase ? (ColumnarDatabase) dbFacade : null;
+        this.idDictionary = columnar == null ? new IdDictionary() : columnar.getDictionary();
+        if (columnar == null) {
+            connect();
+        }
+        this.movementTables = columnar == null ? findMovementTables() : Collections.<String>emptyList();
+        this.queryExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("Lookup-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Get the connection to the database. For a ColumnarDatabase the connection (to a SQL copy of the data) is made on
+     * the first call.
+     * @return the connection.
+     */
+    public Connection getConnection() {
+        connect();
+        return connection;
+    }
+
+    /**
+     * Connect to the database for SQL queries, if this has not already been done. The queries of a ColumnarDatabase
+     * are answered without SQL so this is only done when a custom query is run.
+     */
+    private synchronized void connect() {
+        if (jooq == null) {
+            try {
+                connection = dbFacade.getConnection();
+                statements = new StatementCache(connection);
+                jooqConnection = dbFacade.getConnection();
+                jooq = createContext(jooqConnection);
+            } catch (SQLException e) {
+                log.error("Could not create database lookup object. {}", Throwables.getStackTraceAsString(e));
+            }
+        }
+    }
+
+    /**
+     * Create the jOOQ context for queries on a connection to the database.
+     * @param conn the connection.
+     * @return the context.
+     */
+    private DSLContext createContext(final Connection conn) {
+        final Settings settings = new Settings();
+        settings.setExecuteLogging(Boolean.FALSE);
+        return DSL.using(conn, dbFacade.getDialect(), settings);
+    }
+
+    /**
+     * Find which of the movements tables have been created in the database; not every project is configured with
+     * every type of movement file, knowing which tables exist means the movements queries are only run on those tables
+     * (rather than relying on the exception thrown for a missing table).
+     * @return the names of the movements tables in the database.
+     */
+    private List<String> findMovementTables() {
+        final List<String> tables = new ArrayList<>();
+        if (connection == null) {
+            return tables;
+        }
         try {
-            connection = dbFacade.getConnection();
-            final Settings settings = new Settings();
-            settings.setExecuteLogging(Boolean.FALSE);
-            jooq = DSL.using(dbFacade.getConnection(), dbFacade.getDialect(), settings);
+            final DatabaseMetaData metaData = connection.getMetaData();
+            for (final String tableName : new String[]{BatchedMovementsFileReader.getTABLE_NAME(),
+                                                       FullMovementsFileReader.getTABLE_NAME(),
+                                                       DirectedMovementsFileReader.getTABLE_NAME()}) {
+                // the tables are created with unquoted (i.e. upper case) names.
+                try (ResultSet rs = metaData.getTables(null, null, tableName.toUpperCase(Locale.ENGLISH), null)) {
+                    if (rs.next()) {
+                        tables.add(tableName);
+                    }
+                }
+            }
         } catch (SQLException e) {
-            log.error("Could not create database lookup object. {}", Throwables.getStackTraceAsString(e));
+            log.error("Could not find the movements tables. {}", e.getLocalizedMessage());
+        }
+        log.trace("Found movements tables {}.", tables);
+        return Collections.unmodifiableList(tables);
+    }
+
+    /**
+     * Close the connections to the database made by this object (closing the statements prepared on them), so that the
+     * database can be closed. The lookup object cannot be used for SQL queries once it has been closed.
+     */
+    public synchronized void close() {
+        // the threads are not interrupted as H2 closes the database file if a thread reading it is interrupted.
+        queryExecutor.shutdown();
+        if (statements != null) {
+            // the statements prepared by other threads are closed with the connection.
+            statements.clear();
+        }
+        for (final Connection conn : new Connection[]{connection, jooqConnection}) {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    log.warn("Could not close database connection. {}", e.getLocalizedMessage());
+                }
+            }
         }
+        connection = null;
+        jooqConnection = null;
     }
 
     /**
@@ -73,6 +229,9 @@ public final class Lookup {
      * @return the number of tests in the database.
      */
     public int getNumTests() {
+        if (columnar != null) {
+            return columnar.count(TestsFileReader.getTABLE_NAME());
+        }
         int numTests = 0;
         try {
             final Result<Record1<Integer>> fetch = jooq.selectCount().from(TestsFileReader.getTABLE_NAME()).fetch();
@@ -88,6 +247,9 @@ public final class Lookup {
      * @return the number of animals in the database.
      */
     public int getNumAnimals() {
+        if (columnar != null) {
+            return columnar.count(PopulationsFileReader.getLIFE_HISTORIES_TABLE_NAME());
+        }
         int numAnimals = 0;
         try {
             final Result<Record1<Integer>> fetch = jooq.selectCount().from(PopulationsFileReader.getLIFE_HISTORIES_TABLE_NAME()).fetch();
@@ -103,6 +265,9 @@ public final class Lookup {
      * @return the number of locations in the database.
      */
     public int getNumLocations() {
+        if (columnar != null) {
+            return columnar.count(LocationsFileReader.getTABLE_NAME());
+        }
         int numLocations = 0;
         try {
             final Result<Record1<Integer>> fetch = jooq.selectCount().from(LocationsFileReader.getTABLE_NAME()).fetch();
@@ -118,204 +283,111 @@ public final class Lookup {
      * @return the number of movements in the database.
      */
     public int getNumMovements() {
-        int numMovements = 0;
-
-        try {
-            numMovements = jooq.selectCount().from(BatchedMovementsFileReader.getTABLE_NAME()).fetch().get(0).value1();
-        } catch (org.jooq.exception.DataAccessException e) {
-            log.trace("Could not get number of movements from {} - perhaps the table hasn't been created.",
-                      BatchedMovementsFileReader.getTABLE_NAME());
-        }
-        try {
-            numMovements += jooq.selectCount().from(FullMovementsFileReader.getTABLE_NAME()).fetch().get(0).value1();
-        } catch (org.jooq.exception.DataAccessException e) {
-            log.trace("Could not get number of movements from {} - perhaps the table hasn't been created.",
-                      FullMovementsFileReader.getTABLE_NAME());
-        }
-        try {
-            numMovements += jooq.selectCount().from(DirectedMovementsFileReader.getTABLE_NAME()).fetch().get(0).value1();
-        } catch (org.jooq.exception.DataAccessException e) {
-            log.trace("Could not get number of movements from {} - perhaps the table hasn't been created.",
-                      DirectedMovementsFileReader.getTABLE_NAME());
+        if (columnar != null) {
+            return columnar.count(BatchedMovementsFileReader.getTABLE_NAME())
+                   + columnar.count(FullMovementsFileReader.getTABLE_NAME())
+                   + columnar.count(DirectedMovementsFileReader.getTABLE_NAME());
         }
-        return numMovements;
+        return countMovements(movementConditions(null, null, null));
     }
 
     /**
-     * Get the number of movements stored in the internal database filtered on a date range.
+     * Get the number of movements stored in the internal database filtered on a date range. A movement is in the range
+     * if it departs and arrives in the range, i.e. the departure date is bounded by the range on both sides so that the
+     * query is a range scan of the date indexes of the movements tables.
      * @param startDate the first date in the range with which we will filter the movements
      * @param endDate   the final date in the range with which we will filter the movements
      * @return a collection of movement events that have been recorded.
      */
     public int getNumMovements(final int startDate, final int endDate) {
-        int numMovements = 0;
-
-        try {
-            numMovements = jooq.selectCount().from(BatchedMovementsFileReader.getTABLE_NAME())
-                    .where(String.format("%s >= %d and %s <= %d",
-                                         BatchedMovementsFileReader.getDEPARTURE_DATE(), startDate,
-                                         BatchedMovementsFileReader.getDESTINATION_DATE(), endDate)).fetch().get(0).value1();
-        } catch (org.jooq.exception.DataAccessException e) {
-            log.trace("Could not get number of movements from {} - perhaps the table hasn't been created.",
-                      BatchedMovementsFileReader.getTABLE_NAME());
-        }
-        try {
-            numMovements += jooq.selectCount().from(FullMovementsFileReader.getTABLE_NAME())
-                    .where(String.format("%s >= %d and %s <= %d",
-                                         FullMovementsFileReader.getDEPARTURE_DATE(), startDate,
-                                         FullMovementsFileReader.getDESTINATION_DATE(), endDate))
-                    .fetch().get(0).value1();
-        } catch (org.jooq.exception.DataAccessException e) {
-            log.trace("Could not get number of movements from {} - perhaps the table hasn't been created.",
-                      FullMovementsFileReader.getTABLE_NAME());
-        }
-        try {
-            numMovements += jooq.selectCount().from(DirectedMovementsFileReader.getTABLE_NAME())
-                    .where(String.format("%s >= %d and %s <= %d",
-                                         DirectedMovementsFileReader.getMOVEMENT_DATE(), startDate,
-                                         DirectedMovementsFileReader.getMOVEMENT_DATE(), endDate))
-                    .fetch().get(0).value1();
-        } catch (org.jooq.exception.DataAccessException e) {
-            log.trace("Could not get number of movements from {} - perhaps the table hasn't been created.",
-                      DirectedMovementsFileReader.getTABLE_NAME());
+        if (columnar != null) {
+            return columnar.countMovements(startDate, endDate);
         }
-        return numMovements;
+        return countMovements(movementsBetween(startDate, endDate));
     }
 
     /**
-     * Get all the movements that have been read from the file(s) specified in the configuration file.
+     * Get all the movements that have been read from the file(s) specified in the configuration file. The movements
+     * tables are read concurrently and their movements are appended to one list, without comparing the movements, so
+     * a movement that appears twice in the data files appears twice in the list.
      * @return a collection of movement events that have been recorded.
      */
     public Collection<Movement> getMovements() {
-        final Collection<Movement> movements = new HashSet<>();
+        final Collection<Movement> movements = new ArrayList<>();
         final StopWatch sw = new StopWatch();
         sw.start();
 
-        Result<Record> records;
-        try {
-            records = jooq.select().from(BatchedMovementsFileReader.getTABLE_NAME()).fetch();
-            for (final Record r : records) {
-                final Movement movement = createMovement(r);
-                if (movement != null) {
-                    movements.add(movement);
-                }
-            }
-        } catch (org.jooq.exception.DataAccessException e) {
-            log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                      BatchedMovementsFileReader.getTABLE_NAME());
-        }
-
-        try {
-            records = jooq.select().from(FullMovementsFileReader.getTABLE_NAME()).fetch();
-            for (final Record r : records) {
-                final Movement movement = createMovement(r);
-                if (movement != null) {
-                    movements.add(movement);
-                }
-            }
-        } catch (org.jooq.exception.DataAccessException e) {
-            log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                      FullMovementsFileReader.getTABLE_NAME());
-        }
-
-        try {
-            records = jooq.select().from(DirectedMovementsFileReader.getTABLE_NAME()).fetch();
-            for (final Record r : records) {
-                final Movement movement = createMovement(r);
-                if (movement != null) {
-                    movements.add(movement);
-                }
-            }
-        } catch (org.jooq.exception.DataAccessException e) {
-            log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                      DirectedMovementsFileReader.getTABLE_NAME());
-        }
+        forEachMovement(collectInto(movements));
 
         sw.stop();
         log.debug("Found {} movements in {}.", movements.size(), sw.toString());
         return movements;
     }
 
+    /**
+     * Pass each of the movements that have been read from the file(s) specified in the configuration file to a
+     * handler as they are read from the database. Unlike getMovements() the movements are not collected and the memory
+     * used does not depend on the number of movements. The movements tables are read concurrently but the handler is
+     * only called from the thread that calls this method, so the handler need not be thread safe.
+     * @param handler the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    public int forEachMovement(final ResultHandler<? super Movement> handler) {
+        if (columnar != null) {
+            return columnar.forEachMovement(handler);
+        }
+        return fetchMovements(movementConditions(null, null, null), handler);
+    }
+
+    /**
+     * Pass each of the movements in one of the movements tables to a handler as they are read from the database.
+     * @param tableName the name of the movements table.
+     * @param handler   the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    int forEachMovement(final String tableName, final ResultHandler<? super Movement> handler) {
+        if (columnar != null) {
+            return columnar.forEachMovement(tableName, handler);
+        }
+        return movementTables.contains(tableName) ? fetchLazily(jooq, tableName, null, Movement.class, handler) : 0;
+    }
+
     /**
      * Get all the movements that have been read from the file(s) specified in the configuration file filtered on a date
-     * range.
+     * range, i.e. the movements that depart and arrive in the range. As in getMovements() the movements tables are
+     * read concurrently and their movements appended to one list.
      * @param startDate the first date in the range with which we will filter the movements
      * @param endDate   the final date in the range with which we will filter the movements
      * @return a collection of movement events that have been recorded.
      */
     public Collection<Movement> getMovements(final int startDate, final int endDate) {
         log.trace("Getting all movements between {} and {}", startDate, endDate);
-        final Collection<Movement> movements = new HashSet<>();
+        final Collection<Movement> movements = new ArrayList<>();
         final StopWatch sw = new StopWatch();
         sw.start();
 
-        try {
-            // try directed movements
-            Result<Record> records;
-
-            try {
-                records = jooq.select().from(DirectedMovementsFileReader.getTABLE_NAME())
-                        .where(String.format("%s >= %d and %s <= %d",
-                                             DirectedMovementsFileReader.getMOVEMENT_DATE(), startDate,
-                                             DirectedMovementsFileReader.getMOVEMENT_DATE(), endDate))
-                        .fetch();
-                for (final Record r : records) {
-                    final Movement movement = createMovement(r);
-                    if (movement != null) {
-                        movements.add(movement);
-                    }
-                }
-            } catch (org.jooq.exception.DataAccessException e) {
-                log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                          DirectedMovementsFileReader.getTABLE_NAME());
-            }
-
-            try {
-                // try full movements
-                records = jooq.select().from(FullMovementsFileReader.getTABLE_NAME())
-                        .where(String.format("%s >= %d and %s <= %d",
-                                             FullMovementsFileReader.getDEPARTURE_DATE(), startDate,
-                                             FullMovementsFileReader.getDESTINATION_DATE(), endDate))
-                        .fetch();
-                for (final Record r : records) {
-                    final Movement movement = createMovement(r);
-                    if (movement != null) {
-                        movements.add(movement);
-                    }
-                }
-            } catch (org.jooq.exception.DataAccessException e) {
-                log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                          FullMovementsFileReader.getTABLE_NAME());
-            }
-
-            try {
-                // try batched movements
-                records = jooq.select().from(BatchedMovementsFileReader.getTABLE_NAME())
-                        .where(String.format("%s >= %d and %s <= %d",
-                                             BatchedMovementsFileReader.getDEPARTURE_DATE(), startDate,
-                                             BatchedMovementsFileReader.getDESTINATION_DATE(), endDate))
-                        .fetch();
-                for (final Record r : records) {
-                    final Movement movement = createMovement(r);
-                    if (movement != null) {
-                        movements.add(movement);
-                    }
-                }
-            } catch (org.jooq.exception.DataAccessException e) {
-                log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                          BatchedMovementsFileReader.getTABLE_NAME());
-            }
-
-        } catch (org.jooq.exception.DataAccessException e) {
-            // We WILL get an error here - we don't know the type of table here so we try directed, batched and full
-            // movements. We can ignore the errors.
-        }
+        forEachMovement(startDate, endDate, collectInto(movements));
 
         sw.stop();
         log.debug("Found {} movements in {}.", movements.size(), sw.toString());
         return movements;
     }
 
+    /**
+     * Pass each of the movements in a date range to a handler as they are read from the database, see
+     * getMovements(int, int).
+     * @param startDate the first date in the range with which we will filter the movements
+     * @param endDate   the final date in the range with which we will filter the movements
+     * @param handler   the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    public int forEachMovement(final int startDate, final int endDate, final ResultHandler<? super Movement> handler) {
+        if (columnar != null) {
+            return columnar.forEachMovement(startDate, endDate, handler);
+        }
+        return fetchMovements(movementsBetween(startDate, endDate), handler);
+    }
+
     /**
      * Get all the OFF movements that have been read from the file(s) specified in the configuration file filtered on a
      * date range.
@@ -325,78 +397,43 @@ public final class Lookup {
      */
     public Collection<Movement> getOffMovements(final int startDate, final int endDate) {
         log.trace("Getting off movements between {} and {}", startDate, endDate);
-        final Collection<Movement> movements = new HashSet<>();
+        final Collection<Movement> movements = new ArrayList<>();
         final StopWatch sw = new StopWatch();
         sw.start();
 
-        try {
-            // try directed movements
-            Result<Record> records;
-
-            try {
-                records = jooq.select().from(DirectedMovementsFileReader.getTABLE_NAME())
-                        .where(String.format("%s >= %d AND %s <= %d AND %s ='OFF'",
-                                             DirectedMovementsFileReader.getMOVEMENT_DATE(), startDate,
-                                             DirectedMovementsFileReader.getMOVEMENT_DATE(), endDate,
-                                             DirectedMovementsFileReader.getMOVEMENT_DIRECTION()))
-                        .fetch();
-                for (final Record r : records) {
-                    final Movement movement = createMovement(r);
-                    if (movement != null) {
-                        movements.add(movement);
-                    }
-                }
-            } catch (org.jooq.exception.DataAccessException e) {
-                log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                          DirectedMovementsFileReader.getTABLE_NAME());
-            }
-
-            try {
-                // try full movements
-                records = jooq.select().from(FullMovementsFileReader.getTABLE_NAME())
-                        .where(String.format("%s >= %d and %s <= %d",
-                                             FullMovementsFileReader.getDEPARTURE_DATE(), startDate,
-                                             FullMovementsFileReader.getDEPARTURE_DATE(), endDate))
-                        .fetch();
-                for (final Record r : records) {
-                    final Movement movement = createMovement(r);
-                    if (movement != null) {
-                        movements.add(movement);
-                    }
-                }
-            } catch (org.jooq.exception.DataAccessException e) {
-                log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                          FullMovementsFileReader.getTABLE_NAME());
-            }
-
-            try {
-                // try batched movements
-                records = jooq.select().from(BatchedMovementsFileReader.getTABLE_NAME())
-                        .where(String.format("%s >= %d and %s <= %d",
-                                             BatchedMovementsFileReader.getDEPARTURE_DATE(), startDate,
-                                             BatchedMovementsFileReader.getDEPARTURE_DATE(), endDate))
-                        .fetch();
-                for (final Record r : records) {
-                    final Movement movement = createMovement(r);
-                    if (movement != null) {
-                        movements.add(movement);
-                    }
-                }
-            } catch (org.jooq.exception.DataAccessException e) {
-                log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                          BatchedMovementsFileReader.getTABLE_NAME());
-            }
-
-        } catch (org.jooq.exception.DataAccessException e) {
-            // We WILL get an error here - we don't know the type of table here so we try directed, batched and full
-            // movements. We can ignore the errors.
-        }
+        forEachOffMovement(startDate, endDate, collectInto(movements));
 
         sw.stop();
         log.debug("Found {} off movements in {}.", movements.size(), sw.toString());
         return movements;
     }
 
+    /**
+     * Pass each of the OFF movements in a date range to a handler as they are read from the database, see
+     * getOffMovements(int, int).
+     * @param startDate the first date in the range with which we will filter the movements
+     * @param endDate   the final date in the range with which we will filter the movements
+     * @param handler   the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    public int forEachOffMovement(final int startDate, final int endDate,
+                                  final ResultHandler<? super Movement> handler) {
+        if (columnar != null) {
+            return columnar.forEachOffMovement(startDate, endDate, handler);
+        }
+        return fetchMovements(movementConditions(
+                String.format("%s >= %d and %s <= %d",
+                              BatchedMovementsFileReader.getDEPARTURE_DATE(), startDate,
+                              BatchedMovementsFileReader.getDEPARTURE_DATE(), endDate),
+                String.format("%s >= %d and %s <= %d",
+                              FullMovementsFileReader.getDEPARTURE_DATE(), startDate,
+                              FullMovementsFileReader.getDEPARTURE_DATE(), endDate),
+                String.format("%s >= %d AND %s <= %d AND %s ='OFF'",
+                              DirectedMovementsFileReader.getMOVEMENT_DATE(), startDate,
+                              DirectedMovementsFileReader.getMOVEMENT_DATE(), endDate,
+                              DirectedMovementsFileReader.getMOVEMENT_DIRECTION())), handler);
+    }
+
     /**
      * Get all the ON movements that have been read from the file(s) specified in the configuration file filtered on a
      * date range.
@@ -406,78 +443,43 @@ public final class Lookup {
      */
     public Collection<Movement> getOnMovements(final int startDate, final int endDate) {
         log.trace("Getting on movements between {} and {}", startDate, endDate);
-        final Collection<Movement> movements = new HashSet<>();
+        final Collection<Movement> movements = new ArrayList<>();
         final StopWatch sw = new StopWatch();
         sw.start();
 
-        try {
-            // try directed movements
-            Result<Record> records;
-
-            try {
-                records = jooq.select().from(DirectedMovementsFileReader.getTABLE_NAME())
-                        .where(String.format("%s >= %d AND %s <= %d AND %s ='ON'",
-                                             DirectedMovementsFileReader.getMOVEMENT_DATE(), startDate,
-                                             DirectedMovementsFileReader.getMOVEMENT_DATE(), endDate,
-                                             DirectedMovementsFileReader.getMOVEMENT_DIRECTION()))
-                        .fetch();
-                for (final Record r : records) {
-                    final Movement movement = createMovement(r);
-                    if (movement != null) {
-                        movements.add(movement);
-                    }
-                }
-            } catch (org.jooq.exception.DataAccessException e) {
-                log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                          DirectedMovementsFileReader.getTABLE_NAME());
-            }
-
-            try {
-                // try full movements
-                records = jooq.select().from(FullMovementsFileReader.getTABLE_NAME())
-                        .where(String.format("%s >= %d and %s <= %d",
-                                             FullMovementsFileReader.getDESTINATION_DATE(), startDate,
-                                             FullMovementsFileReader.getDESTINATION_DATE(), endDate))
-                        .fetch();
-                for (final Record r : records) {
-                    final Movement movement = createMovement(r);
-                    if (movement != null) {
-                        movements.add(movement);
-                    }
-                }
-            } catch (org.jooq.exception.DataAccessException e) {
-                log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                          FullMovementsFileReader.getTABLE_NAME());
-            }
-
-            try {
-                // try batched movements
-                records = jooq.select().from(BatchedMovementsFileReader.getTABLE_NAME())
-                        .where(String.format("%s >= %d and %s <= %d",
-                                             BatchedMovementsFileReader.getDESTINATION_DATE(), startDate,
-                                             BatchedMovementsFileReader.getDESTINATION_DATE(), endDate))
-                        .fetch();
-                for (final Record r : records) {
-                    final Movement movement = createMovement(r);
-                    if (movement != null) {
-                        movements.add(movement);
-                    }
-                }
-            } catch (org.jooq.exception.DataAccessException e) {
-                log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                          BatchedMovementsFileReader.getTABLE_NAME());
-            }
-
-        } catch (org.jooq.exception.DataAccessException e) {
-            // We WILL get an error here - we don't know the type of table here so we try directed, batched and full
-            // movements. We can ignore the errors.
-        }
+        forEachOnMovement(startDate, endDate, collectInto(movements));
 
         sw.stop();
         log.debug("Found {} on movements in {}.", movements.size(), sw.toString());
         return movements;
     }
 
+    /**
+     * Pass each of the ON movements in a date range to a handler as they are read from the database, see
+     * getOnMovements(int, int).
+     * @param startDate the first date in the range with which we will filter the movements
+     * @param endDate   the final date in the range with which we will filter the movements
+     * @param handler   the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    public int forEachOnMovement(final int startDate, final int endDate,
+                                 final ResultHandler<? super Movement> handler) {
+        if (columnar != null) {
+            return columnar.forEachOnMovement(startDate, endDate, handler);
+        }
+        return fetchMovements(movementConditions(
+                String.format("%s >= %d and %s <= %d",
+                              BatchedMovementsFileReader.getDESTINATION_DATE(), startDate,
+                              BatchedMovementsFileReader.getDESTINATION_DATE(), endDate),
+                String.format("%s >= %d and %s <= %d",
+                              FullMovementsFileReader.getDESTINATION_DATE(), startDate,
+                              FullMovementsFileReader.getDESTINATION_DATE(), endDate),
+                String.format("%s >= %d AND %s <= %d AND %s ='ON'",
+                              DirectedMovementsFileReader.getMOVEMENT_DATE(), startDate,
+                              DirectedMovementsFileReader.getMOVEMENT_DATE(), endDate,
+                              DirectedMovementsFileReader.getMOVEMENT_DIRECTION())), handler);
+    }
+
     /**
      * Get all the tests that have been read from the file(s) specified in the configuration file.
      * @return a collection of movement events that have been recorded.
@@ -487,19 +489,26 @@ public final class Lookup {
         final StopWatch sw = new StopWatch();
         sw.start();
 
-        final Result<Record> records = jooq.select().from(TestsFileReader.getTABLE_NAME()).fetch();
-        for (final Record r : records) {
-            final Test test = createTest(r);
-            if (test != null) {
-                tests.add(test);
-            }
-        }
+        forEachTest(collectInto(tests));
 
         sw.stop();
         log.debug("Found {} tests in {}.", tests.size(), sw.toString());
         return tests;
     }
 
+    /**
+     * Pass each of the tests that have been read from the file(s) specified in the configuration file to a handler as
+     * they are read from the database.
+     * @param handler the handler that will process each test.
+     * @return the number of tests passed to the handler.
+     */
+    public int forEachTest(final ResultHandler<? super Test> handler) {
+        if (columnar != null) {
+            return columnar.forEachTest(handler);
+        }
+        return fetchLazily(TestsFileReader.getTABLE_NAME(), null, Test.class, handler);
+    }
+
     /**
      * Get all the tests that have been read from the file(s) specified in the configuration file.
      * @param startDate the first date in the range with which we will filter the tests.
@@ -511,23 +520,30 @@ public final class Lookup {
         final StopWatch sw = new StopWatch();
         sw.start();
 
-        final Result<Record> records = jooq.select().from(TestsFileReader.getTABLE_NAME())
-                .where(String.format("%s >= %d and %s <= %d",
-                                     TestsFileReader.getTEST_DATE(), startDate,
-                                     TestsFileReader.getTEST_DATE(), endDate))
-                .fetch();
-        for (final Record r : records) {
-            final Test test = createTest(r);
-            if (test != null) {
-                tests.add(test);
-            }
-        }
+        forEachTest(startDate, endDate, collectInto(tests));
 
         sw.stop();
         log.debug("Found {} tests in {}.", tests.size(), sw.toString());
         return tests;
     }
 
+    /**
+     * Pass each of the tests in a date range to a handler as they are read from the database.
+     * @param startDate the first date in the range with which we will filter the tests.
+     * @param endDate   the final date in the range with which we will filter the tests.
+     * @param handler   the handler that will process each test.
+     * @return the number of tests passed to the handler.
+     */
+    public int forEachTest(final int startDate, final int endDate, final ResultHandler<? super Test> handler) {
+        if (columnar != null) {
+            return columnar.forEachTest(startDate, endDate, handler);
+        }
+        return fetchLazily(TestsFileReader.getTABLE_NAME(),
+                           String.format("%s >= %d and %s <= %d",
+                                         TestsFileReader.getTEST_DATE(), startDate,
+                                         TestsFileReader.getTEST_DATE(), endDate), Test.class, handler);
+    }
+
     /**
      * Get all the animals that have been read from the file(s) specified in the configuration file.
      * @return a collection of animal events that have been recorded.
@@ -537,19 +553,26 @@ public final class Lookup {
         final StopWatch sw = new StopWatch();
         sw.start();
 
-        final Result<Record> records = jooq.select().from(PopulationsFileReader.getLIFE_HISTORIES_TABLE_NAME()).fetch();
-        for (final Record r : records) {
-            final Animal animal = createAnimal(r);
-            if (animal != null) {
-                animals.add(animal);
-            }
-        }
+        forEachAnimal(collectInto(animals));
 
         sw.stop();
         log.debug("Found {} animals in {}.", animals.size(), sw.toString());
         return animals;
     }
 
+    /**
+     * Pass each of the animals that have been read from the file(s) specified in the configuration file to a handler
+     * as they are read from the database.
+     * @param handler the handler that will process each animal.
+     * @return the number of animals passed to the handler.
+     */
+    public int forEachAnimal(final ResultHandler<? super Animal> handler) {
+        if (columnar != null) {
+            return columnar.forEachAnimal(handler);
+        }
+        return fetchLazily(PopulationsFileReader.getLIFE_HISTORIES_TABLE_NAME(), null, Animal.class, handler);
+    }
+
     /**
      * Get all the animals that have been read from the file(s) specified in the configuration file whose date of birth
      * is before or on a given date and whose date of death (it there is any) is on or after the same date.
@@ -558,28 +581,34 @@ public final class Lookup {
      */
     public Collection<Animal> getAnimals(final int date) {
         final Collection<Animal> animals = new HashSet<>();
-        final String whereClause = String.format("%s <= %d and (%s IS NULL or %s >= %d)",
-                                                 PopulationsFileReader.getDATE_OF_BIRTH(), date,
-                                                 PopulationsFileReader.getDATE_OF_DEATH(),
-                                                 PopulationsFileReader.getDATE_OF_DEATH(), date);
-
         final StopWatch sw = new StopWatch();
         sw.start();
 
-        final Result<Record> records = jooq.select().from(PopulationsFileReader.getLIFE_HISTORIES_TABLE_NAME()).where(whereClause)
-                .fetch();
-        for (final Record r : records) {
-            final Animal animal = createAnimal(r);
-            if (animal != null) {
-                animals.add(animal);
-            }
-        }
+        forEachAnimal(date, collectInto(animals));
 
         sw.stop();
         log.debug("Found {} animals in {}.", animals.size(), sw.toString());
         return animals;
     }
 
+    /**
+     * Pass each of the animals alive on a given date to a handler as they are read from the database, see
+     * getAnimals(int).
+     * @param date    the date for which we reuqire the animals in the system.
+     * @param handler the handler that will process each animal.
+     * @return the number of animals passed to the handler.
+     */
+    public int forEachAnimal(final int date, final ResultHandler<? super Animal> handler) {
+        if (columnar != null) {
+            return columnar.forEachAnimal(date, handler);
+        }
+        final String whereClause = String.format("%s <= %d and (%s IS NULL or %s >= %d)",
+                                                 PopulationsFileReader.getDATE_OF_BIRTH(), date,
+                                                 PopulationsFileReader.getDATE_OF_DEATH(),
+                                                 PopulationsFileReader.getDATE_OF_DEATH(), date);
+        return fetchLazily(PopulationsFileReader.getLIFE_HISTORIES_TABLE_NAME(), whereClause, Animal.class, handler);
+    }
+
     /**
      * Get all the movements that have been read from the file(s) specified in the configuration file.
      * @return a collection of movement events that have been recorded.
@@ -589,13 +618,7 @@ public final class Lookup {
         final StopWatch sw = new StopWatch();
         sw.start();
 
-        final Result<Record> records = jooq.select().from(LocationsFileReader.getTABLE_NAME()).fetch();
-        for (final Record r : records) {
-            final Location location = createLocation(r);
-            if (location != null) {
-                locations.add(location);
-            }
-        }
+        forEachLocation(collectInto(locations));
 
         sw.stop();
         log.debug("Found {} locations in {}.", locations.size(), sw.toString());
@@ -603,47 +626,239 @@ public final class Lookup {
     }
 
     /**
-     * Get a location from the list of locations in the system. If there is no location matching the id a
-     * BroadwickException is thrown because we should only be looking for valid locations. Note, this method returns a
-     * live view of the movements so changes to one affect the other and in a worst case scenario can cause a
-     * ConcurrentModificationException. The returned collection isn't threadsafe or serializable, even if unfiltered is.
-     * @param locationId the id of the location we are looking for.
-     * @return the Location object with the required id.
+     * Pass each of the locations that have been read from the file(s) specified in the configuration file to a handler
+     * as they are read from the database.
+     * @param handler the handler that will process each location.
+     * @return the number of locations passed to the handler.
      */
-    public Location getLocation(final String locationId) {
-        Location location = locationsCache.getIfPresent(locationId);
-        if (location == null) {
-            final Result<Record> records = jooq.select().from(LocationsFileReader.getTABLE_NAME())
-                    .where(String.format("%s = '%s'", LocationsFileReader.getID(), locationId)).fetch();
-            for (final Record r : records) {
-                location = createLocation(r);
-                locationsCache.put(location.getId(), location);
-            }
+    public int forEachLocation(final ResultHandler<? super Location> handler) {
+        if (columnar != null) {
+            return columnar.forEachLocation(handler);
         }
-        return location;
+        return fetchLazily(LocationsFileReader.getTABLE_NAME(), null, Location.class, handler);
     }
 
     /**
-     * Get an animal from the list of animals in the system. If there is no animal matching the id a BroadwickException
-     * is thrown because we should only be looking for valid animals. Note, this method returns a live view of the
-     * movements so changes to one affect the other and in a worst case scenario can cause a
-     * ConcurrentModificationException. The returned collection isn't threadsafe or serializable, even if unfiltered is.
-     * @param animalId the id of the animal we are looking for.
-     * @return the Animal object with the required id.
+     * Get all the movements in a compact store in which the location, animal and species ids are encoded as ints by
+     * the dictionary returned by getIdDictionary(). The store is created (from the same movements as getMovements()
+     * though duplicates are not removed) on the first call and kept for the lifetime of this object; it uses a fraction
+     * of the memory of the collection returned by getMovements().
+     * @return the compact store of movements.
      */
-    public Animal getAnimal(final String animalId) {
-        Animal animal = animalsCache.getIfPresent(animalId);
-        if (animal == null) {
-            final Result<Record> records = jooq.select().from(PopulationsFileReader.getLIFE_HISTORIES_TABLE_NAME())
-                    .where(String.format("ID = '%s'", animalId)).fetch();
-            for (final Record r : records) {
-                animal = createAnimal(r);
-                animalsCache.put(animal.getId(), animal);
-            }
+    public synchronized MovementStore getMovementStore() {
+        if (movementStore == null) {
+            final StopWatch sw = new StopWatch();
+            sw.start();
+
+            final MovementStore store = new MovementStore(idDictionary);
+            forEachMovement(new ResultHandler<Movement>() {
+                @Override
+                public void handle(final Movement movement) {
+                    store.add(movement);
+                }
+            });
+            store.trim();
+            movementStore = store;
+
+            sw.stop();
+            log.debug("Stored {} movements ({} ids) in {}.", store.size(), idDictionary.size(), sw.toString());
+        }
+        return movementStore;
+    }
+
+    /**
+     * Get all the animals in a compact store in which the location, animal and species ids are encoded as ints by the
+     * dictionary returned by getIdDictionary(). The store is created on the first call and kept for the lifetime of
+     * this object.
+     * @return the compact store of animals.
+     */
+    public synchronized AnimalStore getAnimalStore() {
+        if (animalStore == null) {
+            final StopWatch sw = new StopWatch();
+            sw.start();
+
+            final AnimalStore store = new AnimalStore(idDictionary);
+            try {
+                forEachAnimal(new ResultHandler<Animal>() {
+                    @Override
+                    public void handle(final Animal animal) {
+                        store.add(animal);
+                    }
+                });
+            } catch (org.jooq.exception.DataAccessException e) {
+                log.trace("Could not get animals - perhaps the table hasn't been created.");
+            }
+            store.trim();
+            animalStore = store;
+
+            sw.stop();
+            log.debug("Stored {} animals ({} ids) in {}.", store.size(), idDictionary.size(), sw.toString());
+        }
+        return animalStore;
+    }
+
+    /**
+     * Get the dictionary that encodes the ids in the compact movement and animal stores. The dictionary is shared by
+     * the stores so that, e.g. a location code from a MovementStore identifies the same location in an AnimalStore.
+     * @return the id dictionary.
+     */
+    public IdDictionary getIdDictionary() {
+        return idDictionary;
+    }
+
+    /**
+     * Load all the locations in the database into the locations cache (up to the size of the cache) so that
+     * getLocation() does not need to query the database.
+     * @return the number of locations read.
+     */
+    public int preloadLocations() {
+        return forEachLocation(new ResultHandler<Location>() {
+            @Override
+            public void handle(final Location location) {
+                locationsCache.put(location.getId(), location);
+            }
+        });
+    }
+
+    /**
+     * Load a collection of animals into the animals cache (up to the size of the cache) so that getAnimal() does not
+     * need to query the database. The animals are read in bulk, PRELOAD_BATCH_SIZE at a time.
+     * @param animalIds the ids of the animals to load.
+     * @return the number of animals read.
+     */
+    public int preloadAnimals(final Collection<String> animalIds) {
+        int numAnimals = 0;
+        final List<String> batch = new ArrayList<>(PRELOAD_BATCH_SIZE);
+        for (final String animalId : animalIds) {
+            batch.add(animalId);
+            if (batch.size() == PRELOAD_BATCH_SIZE) {
+                numAnimals += getAnimals(batch).size();
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            numAnimals += getAnimals(batch).size();
+        }
+        return numAnimals;
+    }
+
+    /**
+     * Get the statistics (hits, misses, evictions...) of the locations, animals and movements caches. The statistics
+     * are only recorded for the caches configured with recordStats, the others report zero.
+     * @return a map of the name of the cache to its statistics.
+     */
+    public Map<String, CacheStats> getCacheStats() {
+        final Map<String, CacheStats> stats = new LinkedHashMap<>();
+        stats.put(LOCATIONS_CACHE, locationsCache.stats());
+        stats.put(ANIMALS_CACHE, animalsCache.stats());
+        stats.put(MOVEMENTS_CACHE, movementsCache.stats());
+        return stats;
+    }
+
+    /**
+     * Log the statistics of the caches that are configured to record them.
+     */
+    public void logCacheStats() {
+        for (final Map.Entry<String, CacheStats> entry : getCacheStats().entrySet()) {
+            if (recordingStats.contains(entry.getKey())) {
+                final CacheStats stats = entry.getValue();
+                log.info("{} cache: {} requests, hit rate {}, {} evictions.", entry.getKey(), stats.requestCount(),
+                         String.format("%.3f", stats.hitRate()), stats.evictionCount());
+            }
+        }
+    }
+
+    /**
+     * Get a location from the list of locations in the system. If there is no location matching the id a
+     * BroadwickException is thrown because we should only be looking for valid locations. Note, this method returns a
+     * live view of the movements so changes to one affect the other and in a worst case scenario can cause a
+     * ConcurrentModificationException. The returned collection isn't threadsafe or serializable, even if unfiltered is.
+     * @param locationId the id of the location we are looking for.
+     * @return the Location object with the required id.
+     */
+    public Location getLocation(final String locationId) {
+        if (columnar != null) {
+            return columnar.getLocation(locationId);
+        }
+        Location location = locationsCache.getIfPresent(locationId);
+        if (location == null) {
+            final Result<Record> records = fetch(LOCATION_QUERY, locationId);
+            if (records != null) {
+                for (final Record r : records) {
+                    location = createLocation(r);
+                    locationsCache.put(location.getId(), location);
+                }
+            }
+        }
+        return location;
+    }
+
+    /**
+     * Get an animal from the list of animals in the system. If there is no animal matching the id a BroadwickException
+     * is thrown because we should only be looking for valid animals. Note, this method returns a live view of the
+     * movements so changes to one affect the other and in a worst case scenario can cause a
+     * ConcurrentModificationException. The returned collection isn't threadsafe or serializable, even if unfiltered is.
+     * @param animalId the id of the animal we are looking for.
+     * @return the Animal object with the required id.
+     */
+    public Animal getAnimal(final String animalId) {
+        if (columnar != null) {
+            return columnar.getAnimal(animalId);
+        }
+        Animal animal = animalsCache.getIfPresent(animalId);
+        if (animal == null) {
+            final Result<Record> records = fetch(ANIMAL_QUERY, animalId);
+            if (records != null) {
+                for (final Record r : records) {
+                    animal = createAnimal(r);
+                    animalsCache.put(animal.getId(), animal);
+                }
+            }
         }
         return animal;
     }
 
+    /**
+     * Get the animals with any of a collection of ids. The animals are found by a single query rather than one query
+     * per animal as getAnimal() would.
+     * @param animalIds the ids of the animals we are looking for.
+     * @return a map of animal id to the Animal object, animals that are not in the database are not in the map.
+     */
+    public Map<String, Animal> getAnimals(final Collection<String> animalIds) {
+        final Map<String, Animal> animals = new HashMap<>(animalIds.size());
+        if (columnar != null) {
+            for (final String animalId : animalIds) {
+                final Animal animal = columnar.getAnimal(animalId);
+                if (animal != null) {
+                    animals.put(animalId, animal);
+                }
+            }
+            return animals;
+        }
+        final Collection<String> notCached = new HashSet<>();
+        for (final String animalId : animalIds) {
+            final Animal animal = animalsCache.getIfPresent(animalId);
+            if (animal == null) {
+                notCached.add(animalId);
+            } else {
+                animals.put(animalId, animal);
+            }
+        }
+
+        if (!notCached.isEmpty()) {
+            final Result<Record> records = fetch(ANIMALS_QUERY, toIdArray(notCached));
+            if (records != null) {
+                final AnimalMapper mapper = new AnimalMapper(records.fields());
+                for (final Record r : records) {
+                    final Animal animal = mapper.map(r);
+                    animalsCache.put(animal.getId(), animal);
+                    animals.put(animal.getId(), animal);
+                }
+            }
+        }
+        return animals;
+    }
+
     /**
      * Get all the recorded movements for a given animal. Note, this method returns a live view of the movements so
      * changes to one affect the other and in a worst case scenario can cause a ConcurrentModificationException. The
@@ -652,38 +867,89 @@ public final class Lookup {
      * @return a collection of movement events that have been recorded for the animal with the given id.
      */
     public Collection<Movement> getMovementsForAnimal(final String animalId) {
+        if (columnar != null) {
+            return columnar.getMovementsForAnimal(animalId);
+        }
+        final Collection<Movement> cached = movementsCache.getIfPresent(animalId);
+        if (cached != null) {
+            return new HashSet<>(cached);
+        }
         final Collection<Movement> movements = new HashSet<>();
         final StopWatch sw = new StopWatch();
         sw.start();
 
-        Result<Record> records;
-        try {
-            records = jooq.select().from(FullMovementsFileReader.getTABLE_NAME())
-                    .where(String.format("%s = '%s'", FullMovementsFileReader.getID(), animalId))
-                    .orderBy(DSL.fieldByName(FullMovementsFileReader.getDEPARTURE_DATE()).asc())
-                    .fetch();
-            for (final Record r : records) {
-                movements.add(createMovement(r));
+        for (final String query : new String[]{FULL_MOVEMENTS_FOR_ANIMAL_QUERY, DIRECTED_MOVEMENTS_FOR_ANIMAL_QUERY}) {
+            final Result<Record> records = fetch(query, animalId);
+            if (records != null) {
+                final MovementMapper mapper = new MovementMapper(records.fields());
+                for (final Record r : records) {
+                    movements.add(mapper.map(r));
+                }
             }
-        } catch (org.jooq.exception.DataAccessException e) {
-            log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                      FullMovementsFileReader.getTABLE_NAME());
         }
 
-        try {
-            records = jooq.select().from(DirectedMovementsFileReader.getTABLE_NAME())
-                    .where(String.format("%s = '%s'", DirectedMovementsFileReader.getID(), animalId))
-                    .fetch();
-            for (final Record r : records) {
-                movements.add(createMovement(r));
+        sw.stop();
+        log.debug("Found {} movements in {}.", movements.size(), sw.toString());
+        movementsCache.put(animalId, new HashSet<>(movements));
+        return movements;
+    }
+
+    /**
+     * Get all the recorded movements for each of a collection of animals. The movements are found by one query on each
+     * of the movements tables rather than by calling getMovementsForAnimal() for each animal.
+     * @param animalIds the ids of the animals whose movements are to be returned.
+     * @return a map of animal id to the movements recorded for the animal; every animal in animalIds is in the map
+     *         (with an empty collection if it has no recorded movements).
+     */
+    public Map<String, Collection<Movement>> getMovementsForAnimals(final Collection<String> animalIds) {
+        final Map<String, Collection<Movement>> movements = new HashMap<>(animalIds.size());
+        if (columnar != null) {
+            for (final String animalId : animalIds) {
+                movements.put(animalId, columnar.getMovementsForAnimal(animalId));
+            }
+            return movements;
+        }
+        final Collection<String> notCached = new HashSet<>();
+        for (final String animalId : animalIds) {
+            final Collection<Movement> cached = movementsCache.getIfPresent(animalId);
+            if (cached == null) {
+                movements.put(animalId, new HashSet<Movement>());
+                notCached.add(animalId);
+            } else {
+                movements.put(animalId, new HashSet<>(cached));
+            }
+        }
+        final StopWatch sw = new StopWatch();
+        sw.start();
+
+        int numMovements = 0;
+        if (!notCached.isEmpty()) {
+            final Object ids = toIdArray(notCached);
+            for (final String query : new String[]{FULL_MOVEMENTS_FOR_ANIMALS_QUERY,
+                                                   DIRECTED_MOVEMENTS_FOR_ANIMALS_QUERY}) {
+                final Result<Record> records = fetch(query, ids);
+                if (records != null) {
+                    final MovementMapper mapper = new MovementMapper(records.fields());
+                    for (final Record r : records) {
+                        final Movement movement = mapper.map(r);
+                        Collection<Movement> animalMovements = movements.get(movement.getId());
+                        if (animalMovements == null) {
+                            // the database compares ids ignoring case so the id may differ from the one requested.
+                            animalMovements = new HashSet<>();
+                            movements.put(movement.getId(), animalMovements);
+                        }
+                        animalMovements.add(movement);
+                        numMovements++;
+                    }
+                }
+            }
+            for (final String animalId : notCached) {
+                movementsCache.put(animalId, new HashSet<>(movements.get(animalId)));
             }
-        } catch (org.jooq.exception.DataAccessException e) {
-            log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                      DirectedMovementsFileReader.getTABLE_NAME());
         }
 
         sw.stop();
-        log.debug("Found {} movements in {}.", movements.size(), sw.toString());
+        log.debug("Found {} movements for {} animals in {}.", numMovements, animalIds.size(), sw.toString());
         return movements;
     }
 
@@ -696,54 +962,35 @@ public final class Lookup {
      * @return the location of the animal on date or Location.getNullLocation if there isn't a valid location.
      */
     public String getAnimalLocationIdAtDate(final String animalId, final int date) {
+        if (columnar != null) {
+            return columnar.getAnimalLocationIdAtDate(animalId, date);
+        }
 
         String locationId = "";
         int locationDate = Integer.MIN_VALUE;
-        Result<Record2<Object, Object>> records;
-        try {
-            // get the destination id of the last movement BEFORE the given date.
-            records = jooq.select(DSL.fieldByName(FullMovementsFileReader.getDESTINATION_ID()),
-                                  DSL.fieldByName(FullMovementsFileReader.getDESTINATION_DATE()))
-                    .from(FullMovementsFileReader.getTABLE_NAME())
-                    .where(String.format("%s = '%s' and (%s <= %d or %s <= %d)",
-                                         FullMovementsFileReader.getID(), animalId,
-                                         FullMovementsFileReader.getDEPARTURE_DATE(), date,
-                                         FullMovementsFileReader.getDESTINATION_DATE(), date))
-                    .orderBy(DSL.fieldByName(FullMovementsFileReader.getDESTINATION_DATE()).desc())
-                    .limit(1)
-                    .fetch();
-            if (records.isNotEmpty()) {
-                final int thisDate = (int) records.getValue(0, DSL.fieldByName(FullMovementsFileReader.getDESTINATION_DATE()));
-                if (thisDate > locationDate) {
-                    locationDate = (int) records.getValue(0, DSL.fieldByName(FullMovementsFileReader.getDESTINATION_DATE()));
-                    locationId = (String) records.getValue(0, DSL.fieldByName(FullMovementsFileReader.getDESTINATION_ID()));
-                }
-            }
-        } catch (org.jooq.exception.DataAccessException e) {
-            log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                      FullMovementsFileReader.getTABLE_NAME());
-        }
-
-        try {
-            records = jooq.select(DSL.fieldByName(DirectedMovementsFileReader.getLOCATION_ID()),
-                                  DSL.fieldByName(DirectedMovementsFileReader.getMOVEMENT_DATE()))
-                    .from(DirectedMovementsFileReader.getTABLE_NAME())
-                    .where(String.format("%s = '%s' and %s <= %d",
-                                         DirectedMovementsFileReader.getID(), animalId,
-                                         DirectedMovementsFileReader.getMOVEMENT_DATE(), date))
-                    .orderBy(DSL.fieldByName(DirectedMovementsFileReader.getMOVEMENT_DATE()).desc())
-                    .limit(1)
-                    .fetch();
-            if (records.isNotEmpty()) {
-                final int thisDate = (int) records.getValue(0, DSL.fieldByName(DirectedMovementsFileReader.getMOVEMENT_DATE()));
-                if (thisDate > locationDate) {
-                    locationDate = (int) records.getValue(0, DSL.fieldByName(DirectedMovementsFileReader.getMOVEMENT_DATE()));
-                    locationId = (String) records.getValue(0, DSL.fieldByName(DirectedMovementsFileReader.getLOCATION_ID()));
+        // get the location id of the last movement BEFORE the given date from each of the movements tables.
+        final Object[][] queries = {{FULL_LOCATION_AT_DATE_QUERY, animalId, date, date},
+                                    {DIRECTED_LOCATION_AT_DATE_QUERY, animalId, date}};
+        for (final Object[] query : queries) {
+            final PreparedStatement statement = statements.get((String) query[0]);
+            if (statement != null) {
+                try {
+                    for (int i = 1; i < query.length; i++) {
+                        statement.setObject(i, query[i]);
+                    }
+                    try (ResultSet rs = statement.executeQuery()) {
+                        if (rs.next()) {
+                            final int thisDate = rs.getInt(2);
+                            if (thisDate > locationDate) {
+                                locationDate = thisDate;
+                                locationId = rs.getString(1);
+                            }
+                        }
+                    }
+                } catch (SQLException e) {
+                    log.error("Could not execute SQL {}. {}", query[0], e.getLocalizedMessage());
                 }
             }
-        } catch (org.jooq.exception.DataAccessException e) {
-            log.trace("Could not get movements from {} - this is not an error; the project might be configutred with one.",
-                      DirectedMovementsFileReader.getTABLE_NAME());
         }
 
         if (locationDate > Integer.MIN_VALUE) {
@@ -760,6 +1007,84 @@ public final class Lookup {
         return null;
     }
 
+    /**
+     * Get the location of each of a collection of animals at a specified date, see getAnimalLocationIdAtDate(). The
+     * locations are found by one query on each of the movements tables (and one on the life histories table for the
+     * animals that have not moved) rather than by calling getAnimalLocationIdAtDate() for each animal.
+     * @param animalIds the ids of the animals.
+     * @param date      the date for which we want the animals locations.
+     * @return a map of animal id to the id of the location of the animal on date, animals whose location cannot be
+     *         found are not in the map.
+     */
+    public Map<String, String> getAnimalLocationsAtDate(final Collection<String> animalIds, final int date) {
+        final Map<String, String> locations = new HashMap<>(animalIds.size());
+        if (animalIds.isEmpty()) {
+            return locations;
+        } else if (columnar != null) {
+            for (final String animalId : animalIds) {
+                final String locationId = columnar.getAnimalLocationIdAtDate(animalId, date);
+                if (locationId != null) {
+                    locations.put(animalId, locationId);
+                }
+            }
+            return locations;
+        }
+        final StopWatch sw = new StopWatch();
+        sw.start();
+
+        // find the location id of the last movement BEFORE the given date for every animal in each movements table.
+        final Map<String, Integer> locationDates = new HashMap<>(animalIds.size());
+        final Object ids = toIdArray(animalIds);
+        final Object[][] queries = {{FULL_LOCATIONS_AT_DATE_QUERY, ids, date, date},
+                                    {DIRECTED_LOCATIONS_AT_DATE_QUERY, ids, date}};
+        for (final Object[] query : queries) {
+            final PreparedStatement statement = statements.get((String) query[0]);
+            if (statement != null) {
+                try {
+                    for (int i = 1; i < query.length; i++) {
+                        statement.setObject(i, query[i]);
+                    }
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            final String animalId = rs.getString(1);
+                            final int thisDate = rs.getInt(3);
+                            final Integer locationDate = locationDates.get(animalId);
+                            if (locationDate == null || thisDate > locationDate) {
+                                locationDates.put(animalId, thisDate);
+                                locations.put(animalId, rs.getString(2));
+                            }
+                        }
+                    }
+                } catch (SQLException e) {
+                    log.error("Could not execute SQL {}. {}", query[0], e.getLocalizedMessage());
+                }
+            }
+        }
+
+        // animals that haven't moved are still on their location of birth.
+        final Collection<String> notMoved = new ArrayList<>();
+        for (final String animalId : animalIds) {
+            if (!locations.containsKey(animalId)) {
+                notMoved.add(animalId);
+            }
+        }
+        if (!notMoved.isEmpty()) {
+            final Map<String, Animal> animals = getAnimals(notMoved);
+            for (final String animalId : notMoved) {
+                final Animal animal = animals.get(animalId);
+                if (animal != null) {
+                    locations.put(animalId, animal.getLocationOfBirth());
+                } else {
+                    log.error("Could not find location for {} at {}", animalId, date);
+                }
+            }
+        }
+
+        sw.stop();
+        log.debug("Found locations of {} animals in {}.", locations.size(), sw.toString());
+        return locations;
+    }
+
     /**
      * Run a custom query against the database. This method is not intended to be used in general situations as it
      * exposed the underlying jooq data structures but in some situations it may be used as a last resort.
@@ -767,6 +1092,7 @@ public final class Lookup {
      * @return a Result set of records that were returned by the database.
      */
     public Result<Record> runCustomQuery(final String query) {
+        connect();
         Result<Record> records = null;
         try {
             records = jooq.fetch(query);
@@ -777,258 +1103,773 @@ public final class Lookup {
     }
 
     /**
-     * Create a location object from the node object defining it in the graph database.
-     * @param locationRecord the record object from the database defining the location.
-     * @return the created location object.
+     * Create one of the caches of this class from its configuration.
+     * @param <V>     the type of the values in the cache.
+     * @param name    the name of the cache (used in log messages).
+     * @param spec    the configuration of the cache, or null for the default (1000 entry) cache.
+     * @param weigher the weight of an entry in the cache, used if the cache is configured with a maximumWeight.
+     * @return the cache.
      */
-    private Location createLocation(final Record locationRecord) {
-        String id = "";
-        Double easting = null;
-        Double northing = null;
+    private <V> Cache<String, V> createCache(final String name, final CacheSpec spec,
+                                             final Weigher<String, V> weigher) {
+        final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        if (spec == null) {
+            return builder.maximumSize(DEFAULT_CACHE_SIZE).build();
+        }
 
-        try {
-            id = (String) locationRecord.getValue(LocationsFileReader.getID());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+        if (spec.getMaximumWeight() != null) {
+            builder.maximumWeight(spec.getMaximumWeight()).weigher(weigher);
+        } else {
+            builder.maximumSize(spec.getMaximumSize() == null ? DEFAULT_CACHE_SIZE : spec.getMaximumSize());
         }
-        try {
-            easting = (Double) locationRecord.getValue(LocationsFileReader.getEASTING());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+        if (spec.getExpireAfterAccess() != null) {
+            builder.expireAfterAccess(spec.getExpireAfterAccess(), TimeUnit.SECONDS);
         }
-        try {
-            northing = (Double) locationRecord.getValue(LocationsFileReader.getNORTHING());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+        if (spec.getExpireAfterWrite() != null) {
+            builder.expireAfterWrite(spec.getExpireAfterWrite(), TimeUnit.SECONDS);
         }
-
-        // TODO add custom tags
-//        for (int i = 6; i < locationRecord.size(); i++) {
-//            locationRecord.getValue(i);
-//        }
-        final Map<String, Integer> populations = new HashMap<>();
-        log.trace("Creating location object for {}",
-                  String.format("%s %f,%f %s", id, easting, northing, populations));
-
-        return new Location(id, easting, northing, populations);
+        if (Boolean.TRUE.equals(spec.isRecordStats())) {
+            builder.recordStats();
+            recordingStats.add(name);
+        }
+        log.debug("Created {} cache {}.", name, builder);
+        return builder.build();
     }
 
     /**
-     * Create an animal object from the node object defining it in the graph database.
-     * @param animalRecord the record object from the database defining the animal.
-     * @return the created animal object.
+     * Run one of the parameterised queries of this class using the calling thread's prepared statement.
+     * @param sql        the SQL of the query.
+     * @param parameters the values of the parameters of the query.
+     * @return the result of the query, or null if the query could not be run (e.g. the table does not exist).
      */
-    private Animal createAnimal(final Record animalRecord) {
-
-        String id = "";
-        Integer dob = null;
-        String lob = "";
-        Integer dod = null;
-        String lod = "";
-        String species = "";
-
-        try {
-            id = (String) animalRecord.getValue(PopulationsFileReader.getID());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            log.trace("error {}", e.getLocalizedMessage());
-            // ignore - the field was not in the record.
-        }
-        try {
-            dob = (Integer) animalRecord.getValue(PopulationsFileReader.getDATE_OF_BIRTH());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
-        }
-        try {
-            lob = (String) animalRecord.getValue(PopulationsFileReader.getLOCATION_OF_BIRTH());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+    private Result<Record> fetch(final String sql, final Object... parameters) {
+        final PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            return null;
         }
         try {
-            dod = (Integer) animalRecord.getValue(PopulationsFileReader.getDATE_OF_DEATH());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                return jooq.fetch(rs);
+            }
+        } catch (SQLException | DataAccessException e) {
+            log.error("Could not execute SQL {}. {}", sql, e.getLocalizedMessage());
         }
-        try {
-            lod = (String) animalRecord.getValue(PopulationsFileReader.getLOCATION_OF_DEATH());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+        return null;
+    }
+
+    /**
+     * Convert a collection of ids to the array bound to the parameter of the queries for many ids, removing any
+     * duplicate ids (which would otherwise duplicate the rows in the result).
+     * @param ids the ids.
+     * @return the array of distinct ids.
+     */
+    private static Object toIdArray(final Collection<String> ids) {
+        return (ids instanceof Set ? ids : new HashSet<>(ids)).toArray();
+    }
+
+    /**
+     * Check if one of the tables created from the data files (e.g. the populations table) holds any rows, not every
+     * project is configured with every type of data file.
+     * @param tableName the name of the table.
+     * @return true if the table exists and is not empty.
+     */
+    boolean hasRows(final String tableName) {
+        if (columnar != null) {
+            return columnar.count(tableName) > 0;
         }
+        connect();
         try {
-            species = (String) animalRecord.getValue(PopulationsFileReader.getSPECIES());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+            return jooq.selectCount().from(tableName).fetch().get(0).value1() > 0;
+        } catch (DataAccessException e) {
+            log.trace("Could not count the rows of {} - perhaps the table hasn't been created.", tableName);
+            return false;
         }
+    }
 
-        // TODO add custom tags
-//        for (int i = 6; i < animalRecord.size(); i++) {
-//            animalRecord.getValue(i);
-//        }
-        log.trace("Creating animal object for {}",
-                  String.format("%s (%s) dob:%d[%s] dod:%d[%s]", id, species, dob, lob, dod, lod));
+    /**
+     * Run a custom query against the database, passing each record to a handler as it is read from the database rather
+     * than collecting them all in a Result as runCustomQuery() does.
+     * @param query   the SQL query to be run.
+     * @param handler the handler that will process each record.
+     * @return the number of records passed to the handler.
+     */
+    public int forEachRecord(final String query, final ResultHandler<? super Record> handler) {
+        connect();
+        int count = 0;
+        try (Cursor<Record> cursor = jooq.resultQuery(query).fetchSize(fetchSize).fetchLazy()) {
+            for (final Record r : cursor) {
+                handler.handle(r);
+                count++;
+            }
+        } catch (DataAccessException e) {
+            log.error("Could not execute SQL {}. {}", query, e.getLocalizedMessage());
+        }
+        return count;
+    }
 
-        return new Animal(id, species, dob, lob, dod, lod);
+    /**
+     * Get the conditions on the movements in a date range (see getMovements(int, int)) for each movements table. A
+     * full or batched movement is in the range if it departs on or after the start date and arrives on or before the
+     * end date; the conditions also require it to depart on or before the end date so that the date-led indexes of
+     * the tables bound the scan at both ends. This assumes that no movement arrives before it departs, in which case
+     * the extra bound is implied and the movements selected are unchanged. A movement whose departure date is missing
+     * or later than its arrival date is not selected.
+     * @param startDate the first date in the range.
+     * @param endDate   the final date in the range.
+     * @return the condition for each movements table in the database, keyed by the name of the table.
+     */
+    private Map<String, String> movementsBetween(final int startDate, final int endDate) {
+        return movementConditions(String.format("%s >= %d and %s <= %d and %s <= %d",
+                                                BatchedMovementsFileReader.getDEPARTURE_DATE(), startDate,
+                                                BatchedMovementsFileReader.getDEPARTURE_DATE(), endDate,
+                                                BatchedMovementsFileReader.getDESTINATION_DATE(), endDate),
+                                  String.format("%s >= %d and %s <= %d and %s <= %d",
+                                                FullMovementsFileReader.getDEPARTURE_DATE(), startDate,
+                                                FullMovementsFileReader.getDEPARTURE_DATE(), endDate,
+                                                FullMovementsFileReader.getDESTINATION_DATE(), endDate),
+                                  String.format("%s >= %d and %s <= %d",
+                                                DirectedMovementsFileReader.getMOVEMENT_DATE(), startDate,
+                                                DirectedMovementsFileReader.getMOVEMENT_DATE(), endDate));
+    }
 
+    /**
+     * Collect the conditions of a movements query on each of the movements tables that are in the database.
+     * @param batched  the condition on the batched movements, or null for all of them.
+     * @param full     the condition on the full movements, or null for all of them.
+     * @param directed the condition on the directed movements, or null for all of them.
+     * @return the condition for each movements table in the database, keyed by the name of the table.
+     */
+    private Map<String, String> movementConditions(final String batched, final String full, final String directed) {
+        final Map<String, String> conditions = new LinkedHashMap<>();
+        conditions.put(BatchedMovementsFileReader.getTABLE_NAME(), batched);
+        conditions.put(FullMovementsFileReader.getTABLE_NAME(), full);
+        conditions.put(DirectedMovementsFileReader.getTABLE_NAME(), directed);
+        conditions.keySet().retainAll(movementTables);
+        return conditions;
     }
 
     /**
-     * Create a Test object from the node object defining it in the graph database.
-     * @param testRecord the record object from the database defining the test.
-     * @return the created test object.
+     * Count the movements in each of the movements tables that satisfy a condition, counting each table concurrently.
+     * @param conditions the condition on the movements of each table, keyed by the name of the table.
+     * @return the total number of movements.
      */
-    private Test createTest(final Record testRecord) {
+    private int countMovements(final Map<String, String> conditions) {
+        final List<TableQuery<Integer>> queries = new ArrayList<>();
+        for (final Map.Entry<String, String> condition : conditions.entrySet()) {
+            queries.add(new TableQuery<Integer>() {
+                @Override
+                public Integer query(final DSLContext context) {
+                    final SelectJoinStep<Record1<Integer>> select = context.selectCount().from(condition.getKey());
+                    final ResultQuery<Record1<Integer>> query = condition.getValue() == null
+                                                                 ? select : select.where(condition.getValue());
+                    return query.fetch().get(0).value1();
+                }
+            });
+        }
+        int numMovements = 0;
+        for (final Integer count : runQueries(queries)) {
+            numMovements += count;
+        }
+        return numMovements;
+    }
 
-        String id = "";
-        String group = "";
-        String location = "";
-        Integer testDate = null;
-        Boolean positiveResult = null;
-        Boolean negativeResult = null;
+    /**
+     * Read the movements that satisfy a condition from each of the movements tables, passing each to a handler. If
+     * there is more than one table the tables are read concurrently, each on its own connection, and the movements are
+     * passed to the handler (in batches of fetchSize) from the thread that calls this method.
+     * @param conditions the condition on the movements of each table, keyed by the name of the table.
+     * @param handler    the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    private int fetchMovements(final Map<String, String> conditions, final ResultHandler<? super Movement> handler) {
+        if (conditions.size() == 1) {
+            final Map.Entry<String, String> condition = conditions.entrySet().iterator().next();
+            return fetchLazily(jooq, condition.getKey(), condition.getValue(), Movement.class, handler);
+        }
+        return new MovementStream(conditions).forEach(handler);
+    }
 
-        try {
-            id = (String) testRecord.getValue(TestsFileReader.getID());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+    /**
+     * Run queries on the movements tables, concurrently if there is more than one. A single query is run on the
+     * connection of this object in the calling thread.
+     * @param <T>     the type of the result of each query.
+     * @param queries the queries.
+     * @return the result of each query.
+     */
+    private <T> List<T> runQueries(final List<TableQuery<T>> queries) {
+        final List<T> results = new ArrayList<>(queries.size());
+        if (queries.size() == 1) {
+            results.add(queries.get(0).query(jooq));
+            return results;
         }
         try {
-            group = (String) testRecord.getValue(TestsFileReader.getGROUP_ID());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+            for (final Future<T> result : queryExecutor.invokeAll(queries)) {
+                results.add(getResult(result));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BroadwickException("Interrupted while querying the movements tables.");
         }
+        return results;
+    }
+
+    /**
+     * Get the result of a query run by the query executor, rethrowing any exception thrown by the query.
+     * @param <T>    the type of the result.
+     * @param result the future result of the query.
+     * @return the result.
+     * @throws InterruptedException if the thread is interrupted while waiting for the result.
+     */
+    private static <T> T getResult(final Future<T> result) throws InterruptedException {
         try {
-            location = (String) testRecord.getValue(TestsFileReader.getLOCATION_ID());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new BroadwickException(String.format("Could not query the movements tables. %s",
+                                                       e.getCause().getLocalizedMessage()));
         }
-        try {
-            testDate = (Integer) testRecord.getValue(TestsFileReader.getTEST_DATE());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+    }
+
+    /**
+     * Run a query on a table, reading the result lazily (fetchSize rows at a time) and creating an object of the
+     * required type from each row which is passed to a handler.
+     * @param <T>         the type of object created from each row.
+     * @param tableName   the name of the table.
+     * @param whereClause the condition the rows must satisfy, or null for all the rows.
+     * @param type        the type of object created from each row.
+     * @param handler     the handler that will process each object.
+     * @return the number of objects passed to the handler.
+     */
+    private <T> int fetchLazily(final String tableName, final String whereClause, final Class<T> type,
+                                final ResultHandler<? super T> handler) {
+        return fetchLazily(jooq, tableName, whereClause, type, handler);
+    }
+
+    /**
+     * Run a query on a table using a given jOOQ context (i.e. connection), see fetchLazily(String, String, Class,
+     * ResultHandler).
+     * @param <T>         the type of object created from each row.
+     * @param context     the context on which the query is run.
+     * @param tableName   the name of the table.
+     * @param whereClause the condition the rows must satisfy, or null for all the rows.
+     * @param type        the type of object created from each row.
+     * @param handler     the handler that will process each object.
+     * @return the number of objects passed to the handler.
+     */
+    private <T> int fetchLazily(final DSLContext context, final String tableName, final String whereClause,
+                                final Class<T> type, final ResultHandler<? super T> handler) {
+        final SelectJoinStep<Record> select = context.select().from(tableName);
+        final ResultQuery<Record> query = whereClause == null ? select : select.where(whereClause);
+
+        int count = 0;
+        try (Cursor<Record> cursor = query.fetchSize(fetchSize).fetchLazy()) {
+            final RecordMapper<Record, T> mapper = createMapper(type, cursor.fields());
+            for (final Record r : cursor) {
+                final T result = mapper.map(r);
+                if (result != null) {
+                    handler.handle(result);
+                    count++;
+                }
+            }
         }
-        try {
-            final Integer val = (Integer) testRecord.getValue(TestsFileReader.getPOSITIVE_RESULT());
-            if (val == 0) {
-                positiveResult = Boolean.FALSE;
-            } else {
-                positiveResult = Boolean.TRUE;
+        return count;
+    }
+
+    /**
+     * Create a handler that adds each result to a collection.
+     * @param <T>        the type of the results.
+     * @param collection the collection to which the results are added.
+     * @return the handler.
+     */
+    private static <T> ResultHandler<T> collectInto(final Collection<? super T> collection) {
+        return new ResultHandler<T>() {
+            @Override
+            public void handle(final T result) {
+                collection.add(result);
             }
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+        };
+    }
+
+    /**
+     * Create the object that converts the records of a query result to Movement, Animal, Location or Test objects.
+     * @param <T>    the type of object created from each record.
+     * @param type   the type of object created from each record.
+     * @param fields the fields of the query result.
+     * @return the mapper.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> RecordMapper<Record, T> createMapper(final Class<T> type, final Field<?>[] fields) {
+        if (type == Movement.class) {
+            return (RecordMapper<Record, T>) new MovementMapper(fields);
+        } else if (type == Animal.class) {
+            return (RecordMapper<Record, T>) new AnimalMapper(fields);
+        } else if (type == Location.class) {
+            return (RecordMapper<Record, T>) new LocationMapper(fields);
+        } else if (type == Test.class) {
+            return (RecordMapper<Record, T>) new TestMapper(fields);
         }
-        try {
-            final Integer val = (Integer) testRecord.getValue(TestsFileReader.getNEGATIVE_RESULT());
-            if (val == 0) {
-                negativeResult = Boolean.FALSE;
-            } else {
-                negativeResult = Boolean.TRUE;
+        throw new IllegalArgumentException("Cannot create " + type.getName() + " objects from database records.");
+    }
+
+    /**
+     * Find the index of a named field in the fields of a query result.
+     * @param fields the fields of the query result.
+     * @param name   the name of the field.
+     * @return the index of the field or -1 if the field is not in the result.
+     */
+    private static int indexOf(final Field<?>[] fields, final String name) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].getName().equals(name)) {
+                return i;
             }
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
         }
+        return -1;
+    }
 
-        // TODO add custom tags
-//        for (int i = 6; i < testRecord.size(); i++) {
-//            testRecord.getValue(i);
-//        }
-        log.trace("Creating test object for {}",
-                  String.format("%s group:%s location:%s date:%d pos:%s neg:%s", id, group, location, testDate, positiveResult, negativeResult));
+    /**
+     * Get the value of a field of a record.
+     * @param <T>    the type of the value.
+     * @param record the record.
+     * @param index  the index of the field (from indexOf()).
+     * @param absent the value to return if the field is not in the record.
+     * @return the value of the field.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T valueOf(final Record record, final int index, final T absent) {
+        return index < 0 ? absent : (T) record.getValue(index);
+    }
 
-        return new Test(id, group, location, testDate, positiveResult, negativeResult);
+    /**
+     * Create a location object from the node object defining it in the graph database.
+     * @param locationRecord the record object from the database defining the location.
+     * @return the created location object.
+     */
+    private Location createLocation(final Record locationRecord) {
+        return new LocationMapper(locationRecord.fields()).map(locationRecord);
     }
 
     /**
-     * Create a movement object from the relationship object defining it in the graph database.
-     * @param movementRecord the record object from the database defining the movement.
-     * @return the created movement object.
+     * Create an animal object from the node object defining it in the graph database.
+     * @param animalRecord the record object from the database defining the animal.
+     * @return the created animal object.
      */
-    private Movement createMovement(final Record movementRecord) {
+    private Animal createAnimal(final Record animalRecord) {
+        return new AnimalMapper(animalRecord.fields()).map(animalRecord);
+    }
 
-        String id = "";
-        Integer batchSize = null;
-        Integer departureDate = null;
-        String departureId = "";
-        Integer destinationDate = null;
-        String destinationId = "";
-        Integer marketDate = null;
-        String marketId = "";
-        String species = "";
+    /**
+     * Create Location objects from the records of a query result. The index of each field is found once for the
+     * result rather than for each record.
+     */
+    private static final class LocationMapper implements RecordMapper<Record, Location> {
+
+        /**
+         * Find the location fields in a query result.
+         * @param fields the fields of the query result.
+         */
+        LocationMapper(final Field<?>[] fields) {
+            id = indexOf(fields, LocationsFileReader.getID());
+            easting = indexOf(fields, LocationsFileReader.getEASTING());
+            northing = indexOf(fields, LocationsFileReader.getNORTHING());
+        }
 
-        try {
-            id = (String) movementRecord.getValue(FullMovementsFileReader.getID());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+        @Override
+        public Location map(final Record locationRecord) {
+            final String locationId = valueOf(locationRecord, id, "");
+            final Double x = valueOf(locationRecord, easting, null);
+            final Double y = valueOf(locationRecord, northing, null);
+
+            // TODO add custom tags
+            final Map<String, Integer> populations = new HashMap<>();
+            if (log.isTraceEnabled()) {
+                log.trace("Creating location object for {}",
+                          String.format("%s %f,%f %s", locationId, x, y, populations));
+            }
+            return new Location(locationId, x, y, populations);
         }
-        try {
-            batchSize = (Integer) movementRecord.getValue(BatchedMovementsFileReader.getBATCH_SIZE());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+
+        private final int id;
+        private final int easting;
+        private final int northing;
+    }
+
+    /**
+     * Create Animal objects from the records of a query result. The index of each field is found once for the result
+     * rather than for each record.
+     */
+    private static final class AnimalMapper implements RecordMapper<Record, Animal> {
+
+        /**
+         * Find the animal fields in a query result.
+         * @param fields the fields of the query result.
+         */
+        AnimalMapper(final Field<?>[] fields) {
+            id = indexOf(fields, PopulationsFileReader.getID());
+            dateOfBirth = indexOf(fields, PopulationsFileReader.getDATE_OF_BIRTH());
+            locationOfBirth = indexOf(fields, PopulationsFileReader.getLOCATION_OF_BIRTH());
+            dateOfDeath = indexOf(fields, PopulationsFileReader.getDATE_OF_DEATH());
+            locationOfDeath = indexOf(fields, PopulationsFileReader.getLOCATION_OF_DEATH());
+            species = indexOf(fields, PopulationsFileReader.getSPECIES());
         }
-        try {
-            departureDate = (Integer) movementRecord.getValue(FullMovementsFileReader.getDEPARTURE_DATE());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+
+        @Override
+        public Animal map(final Record animalRecord) {
+            final String animalId = valueOf(animalRecord, id, "");
+            final Integer dob = valueOf(animalRecord, dateOfBirth, null);
+            final String lob = valueOf(animalRecord, locationOfBirth, "");
+            final Integer dod = valueOf(animalRecord, dateOfDeath, null);
+            final String lod = valueOf(animalRecord, locationOfDeath, "");
+            final String animalSpecies = valueOf(animalRecord, species, "");
+
+            // TODO add custom tags
+            if (log.isTraceEnabled()) {
+                log.trace("Creating animal object for {}",
+                          String.format("%s (%s) dob:%d[%s] dod:%d[%s]", animalId, animalSpecies, dob, lob, dod, lod));
+            }
+            return new Animal(animalId, animalSpecies, dob, lob, dod, lod);
         }
-        try {
-            departureId = (String) movementRecord.getValue(FullMovementsFileReader.getDEPARTURE_ID());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+
+        private final int id;
+        private final int dateOfBirth;
+        private final int locationOfBirth;
+        private final int dateOfDeath;
+        private final int locationOfDeath;
+        private final int species;
+    }
+
+    /**
+     * Create Test objects from the records of a query result. The index of each field is found once for the result
+     * rather than for each record.
+     */
+    private static final class TestMapper implements RecordMapper<Record, Test> {
+
+        /**
+         * Find the test fields in a query result.
+         * @param fields the fields of the query result.
+         */
+        TestMapper(final Field<?>[] fields) {
+            id = indexOf(fields, TestsFileReader.getID());
+            group = indexOf(fields, TestsFileReader.getGROUP_ID());
+            location = indexOf(fields, TestsFileReader.getLOCATION_ID());
+            testDate = indexOf(fields, TestsFileReader.getTEST_DATE());
+            positiveResult = indexOf(fields, TestsFileReader.getPOSITIVE_RESULT());
+            negativeResult = indexOf(fields, TestsFileReader.getNEGATIVE_RESULT());
         }
-        try {
-            destinationDate = (Integer) movementRecord.getValue(FullMovementsFileReader.getDESTINATION_DATE());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+
+        @Override
+        public Test map(final Record testRecord) {
+            final String testId = valueOf(testRecord, id, "");
+            final String groupId = valueOf(testRecord, group, "");
+            final String locationId = valueOf(testRecord, location, "");
+            final Integer date = valueOf(testRecord, testDate, null);
+            final Integer positive = valueOf(testRecord, positiveResult, null);
+            final Integer negative = valueOf(testRecord, negativeResult, null);
+            final Boolean isPositive = positive == null ? null : positive != 0;
+            final Boolean isNegative = negative == null ? null : negative != 0;
+
+            // TODO add custom tags
+            if (log.isTraceEnabled()) {
+                log.trace("Creating test object for {}",
+                          String.format("%s group:%s location:%s date:%d pos:%s neg:%s",
+                                        testId, groupId, locationId, date, isPositive, isNegative));
+            }
+            return new Test(testId, groupId, locationId, date, isPositive, isNegative);
         }
-        try {
-            destinationId = (String) movementRecord.getValue(FullMovementsFileReader.getDESTINATION_ID());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+
+        private final int id;
+        private final int group;
+        private final int location;
+        private final int testDate;
+        private final int positiveResult;
+        private final int negativeResult;
+    }
+
+    /**
+     * Create Movement objects from the records of a query result (from any of the movements tables). The index of each
+     * field is found once for the result rather than for each record.
+     */
+    private static final class MovementMapper implements RecordMapper<Record, Movement> {
+
+        /**
+         * Find the movement fields in a query result.
+         * @param fields the fields of the query result.
+         */
+        MovementMapper(final Field<?>[] fields) {
+            id = indexOf(fields, FullMovementsFileReader.getID());
+            batchSize = indexOf(fields, BatchedMovementsFileReader.getBATCH_SIZE());
+            departureDate = indexOf(fields, FullMovementsFileReader.getDEPARTURE_DATE());
+            // the departure id column of the full movements table is named differently from that of the batched
+            // movements table (DEPERTUREID rather than DEPARTUREID).
+            final int fullDepartureId = indexOf(fields, FullMovementsFileReader.getDEPARTURE_ID());
+            departureId = fullDepartureId >= 0 ? fullDepartureId
+                          : indexOf(fields, BatchedMovementsFileReader.getDEPARTURE_ID());
+            destinationDate = indexOf(fields, FullMovementsFileReader.getDESTINATION_DATE());
+            destinationId = indexOf(fields, FullMovementsFileReader.getDESTINATION_ID());
+            marketDate = indexOf(fields, BatchedMovementsFileReader.getMARKET_DATE());
+            marketId = indexOf(fields, BatchedMovementsFileReader.getMARKET_ID());
+            species = indexOf(fields, DirectedMovementsFileReader.getSPECIES());
+            direction = indexOf(fields, DirectedMovementsFileReader.getMOVEMENT_DIRECTION());
+            locationId = indexOf(fields, DirectedMovementsFileReader.getLOCATION_ID());
+            movementDate = indexOf(fields, DirectedMovementsFileReader.getMOVEMENT_DATE());
         }
-        try {
-            marketDate = (Integer) movementRecord.getValue(BatchedMovementsFileReader.getMARKET_DATE());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+
+        @Override
+        public Movement map(final Record movementRecord) {
+            final String movementId = valueOf(movementRecord, id, "");
+            final Integer size = valueOf(movementRecord, batchSize, null);
+            Integer depDate = valueOf(movementRecord, departureDate, null);
+            String depId = valueOf(movementRecord, departureId, "");
+            Integer destDate = valueOf(movementRecord, destinationDate, null);
+            String destId = valueOf(movementRecord, destinationId, "");
+            final Integer mktDate = valueOf(movementRecord, marketDate, null);
+            final String mktId = valueOf(movementRecord, marketId, "");
+            final String movementSpecies = valueOf(movementRecord, species, "");
+
+            // For directed movements, set the appropriate destination/departure id and dates.
+            if (direction >= 0 && locationId >= 0 && movementDate >= 0) {
+                final String movementDirection = valueOf(movementRecord, direction, null);
+                if ("ON".equalsIgnoreCase(movementDirection)) {
+                    destId = valueOf(movementRecord, locationId, null);
+                    destDate = valueOf(movementRecord, movementDate, null);
+                } else {
+                    depId = valueOf(movementRecord, locationId, null);
+                    depDate = valueOf(movementRecord, movementDate, null);
+                }
+            }
+
+            // TODO add custom tags
+            if (log.isTraceEnabled()) {
+                log.trace("Creating movement object for {}",
+                          String.format("%s batchSize:%d departureDate:%d departureId:%s destinationDate:%d destinationId:%s marketDate:%s marketId:%s species:%s",
+                                        movementId, size, depDate, depId, destDate, destId, mktDate, mktId,
+                                        movementSpecies));
+            }
+            return new Movement(movementId, size, depDate, depId, destDate, destId, mktDate, mktId, movementSpecies);
         }
-        try {
-            marketId = (String) movementRecord.getValue(BatchedMovementsFileReader.getMARKET_ID());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+
+        private final int id;
+        private final int batchSize;
+        private final int departureDate;
+        private final int departureId;
+        private final int destinationDate;
+        private final int destinationId;
+        private final int marketDate;
+        private final int marketId;
+        private final int species;
+        private final int direction;
+        private final int locationId;
+        private final int movementDate;
+    }
+
+    /**
+     * A query on one of the movements tables that is run by the query executor on its own connection to the database.
+     * @param <T> the type of the result of the query.
+     */
+    private abstract class TableQuery<T> implements Callable<T> {
+
+        @Override
+        public final T call() throws SQLException {
+            try (Connection conn = dbFacade.getConnection()) {
+                return query(createContext(conn));
+            }
         }
-        try {
-            species = (String) movementRecord.getValue(DirectedMovementsFileReader.getSPECIES());
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+
+        /**
+         * Run the query.
+         * @param context the context (connection) on which the query is run.
+         * @return the result of the query.
+         */
+        abstract T query(DSLContext context);
+    }
+
+    /**
+     * The movements read concurrently from several movements tables. Each table is read by the query executor, which
+     * passes the movements in batches to the thread that called forEach() through a bounded queue, so the tables are
+     * read while the handler is processing the movements already read without holding every movement in memory.
+     */
+    private final class MovementStream {
+
+        /**
+         * Create the stream.
+         * @param conditions the condition on the movements of each table, keyed by the name of the table.
+         */
+        MovementStream(final Map<String, String> conditions) {
+            this.conditions = conditions;
         }
-        // For directed movements, set the appropriate destination/departure id and dates.
-        try {
-            final String direction = (String) movementRecord.getValue(DirectedMovementsFileReader.getMOVEMENT_DIRECTION());
-            if ("ON".equalsIgnoreCase(direction)) {
-                destinationId = (String) movementRecord.getValue(DirectedMovementsFileReader.getLOCATION_ID());
-                destinationDate = (Integer) movementRecord.getValue(DirectedMovementsFileReader.getMOVEMENT_DATE());
-            } else {
-                departureId = (String) movementRecord.getValue(DirectedMovementsFileReader.getLOCATION_ID());
-                departureDate = (Integer) movementRecord.getValue(DirectedMovementsFileReader.getMOVEMENT_DATE());
+
+        /**
+         * Read the movements, passing each to a handler in the calling thread.
+         * @param handler the handler that will process each movement.
+         * @return the number of movements passed to the handler.
+         */
+        int forEach(final ResultHandler<? super Movement> handler) {
+            final List<Future<Integer>> readers = new ArrayList<>();
+            for (final Map.Entry<String, String> condition : conditions.entrySet()) {
+                readers.add(queryExecutor.submit(new TableQuery<Integer>() {
+                    @Override
+                    public Integer query(final DSLContext context) {
+                        return read(context, condition.getKey(), condition.getValue());
+                    }
+                }));
+            }
+
+            int count = 0;
+            try {
+                // each reader ends with an empty batch.
+                int reading = readers.size();
+                while (reading > 0) {
+                    final List<Movement> batch = batches.take();
+                    if (batch.isEmpty()) {
+                        reading--;
+                    }
+                    for (final Movement movement : batch) {
+                        handler.handle(movement);
+                        count++;
+                    }
+                }
+                for (final Future<Integer> reader : readers) {
+                    getResult(reader);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BroadwickException("Interrupted while reading the movements tables.");
+            } finally {
+                // stop the readers if the handler has thrown an exception.
+                abandoned = true;
             }
-        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            // ignore - the field was not in the record.
+            return count;
         }
 
-        // TODO add custom tags
-//        for (int i = 6; i < testRecord.size(); i++) {
-//            testRecord.getValue(i);
-//        }
-        log.trace("Creating movement object for {}",
-                  String.format("%s batchSize:%d departureDate:%d departureId:%s destinationDate:%d destinationId:%s marketDate:%s marketId:%s species:%s",
-                                id, batchSize, departureDate, departureId, destinationDate, destinationId, marketDate, marketId, species));
+        /**
+         * Read the movements from a table, adding them to the queue in batches.
+         * @param context   the context (connection) on which the table is read.
+         * @param tableName the name of the table.
+         * @param condition the condition on the movements, or null for all of them.
+         * @return the number of movements read.
+         */
+        private int read(final DSLContext context, final String tableName, final String condition) {
+            final List<List<Movement>> batch = new ArrayList<>(1);
+            batch.add(new ArrayList<Movement>(fetchSize));
+            try {
+                final int count = fetchLazily(context, tableName, condition, Movement.class,
+                                              new ResultHandler<Movement>() {
+                                                  @Override
+                                                  public void handle(final Movement movement) {
+                                                      batch.get(0).add(movement);
+                                                      if (batch.get(0).size() >= fetchSize) {
+                                                          put(batch.set(0, new ArrayList<Movement>(fetchSize)));
+                                                      }
+                                                  }
+                                              });
+                if (!batch.get(0).isEmpty()) {
+                    put(batch.get(0));
+                }
+                return count;
+            } finally {
+                put(Collections.<Movement>emptyList());
+            }
+        }
 
-        return new Movement(id, batchSize, departureDate, departureId, destinationDate, destinationId, marketDate, marketId, species);
+        /**
+         * Add a batch of movements to the queue, waiting for space in the queue unless the movements are no longer
+         * being read. The reading thread is never interrupted (H2 closes the database file if a thread reading it is
+         * interrupted) so the wait is checked periodically.
+         * @param movements the batch of movements.
+         */
+        private void put(final List<Movement> movements) {
+            try {
+                while (!batches.offer(movements, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    if (abandoned) {
+                        throw new CancellationException("The movements are no longer being read.");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while reading the movements tables.");
+            }
+        }
+        private final Map<String, String> conditions;
+        private final BlockingQueue<List<Movement>> batches = new ArrayBlockingQueue<>(MAX_QUEUED_BATCHES);
+        private volatile boolean abandoned = false;
     }
-    Cache<String, Collection<Movement>> movementsCache = CacheBuilder.newBuilder().maximumSize(1000).build();
-    Cache<String, Location> locationsCache = CacheBuilder.newBuilder().maximumSize(1000).build();
-    Cache<String, Animal> animalsCache = CacheBuilder.newBuilder().maximumSize(1000).build();
-    Cache<String, Test> testsCache = CacheBuilder.newBuilder().maximumSize(1000).build();
+
+    Cache<String, Collection<Movement>> movementsCache;
+    Cache<String, Location> locationsCache;
+    Cache<String, Animal> animalsCache;
+    // no query reads or writes the tests cache, so unlike the other caches it is not configured by the CacheOptions.
+    Cache<String, Test> testsCache = CacheBuilder.newBuilder().maximumSize(DEFAULT_CACHE_SIZE).build();
     private DSLContext jooq;
+    private StatementCache statements;
+    private final Set<String> recordingStats = new HashSet<>();
+    private final IdDictionary idDictionary;
+    private final DatabaseImpl dbFacade;
+    private final ColumnarDatabase columnar;
+    private MovementStore movementStore;
+    private AnimalStore animalStore;
     @Getter
-    @SuppressWarnings("PMD.UnusedPrivateField")
+    @Setter
+    private int fetchSize = DEFAULT_FETCH_SIZE;
     private Connection connection;
+    private Connection jooqConnection;
+    private final List<String> movementTables;
+    private final ExecutorService queryExecutor;
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    private static final int MAX_QUEUED_BATCHES = 8;
+    private static final long POLL_INTERVAL = 100;
+    private static final int DEFAULT_CACHE_SIZE = 1000;
+    private static final int PRELOAD_BATCH_SIZE = 10000;
+    private static final String LOCATIONS_CACHE = "locations";
+    private static final String ANIMALS_CACHE = "animals";
+    private static final String MOVEMENTS_CACHE = "movements";
+    private static final String LOCATION_QUERY = String.format("SELECT * FROM %s WHERE %s = ?",
+                                                               LocationsFileReader.getTABLE_NAME(),
+                                                               LocationsFileReader.getID());
+    private static final String ANIMAL_QUERY = String.format("SELECT * FROM %s WHERE %s = ?",
+                                                             PopulationsFileReader.getLIFE_HISTORIES_TABLE_NAME(),
+                                                             PopulationsFileReader.getID());
+    private static final String FULL_MOVEMENTS_FOR_ANIMAL_QUERY = String.format(
+            "SELECT * FROM %s WHERE %s = ? ORDER BY %s ASC",
+            FullMovementsFileReader.getTABLE_NAME(), FullMovementsFileReader.getID(),
+            FullMovementsFileReader.getDEPARTURE_DATE());
+    private static final String DIRECTED_MOVEMENTS_FOR_ANIMAL_QUERY = String.format(
+            "SELECT * FROM %s WHERE %s = ?",
+            DirectedMovementsFileReader.getTABLE_NAME(), DirectedMovementsFileReader.getID());
+    private static final String FULL_LOCATION_AT_DATE_QUERY = String.format(
+            "SELECT %s, %s FROM %s WHERE %s = ? AND (%s <= ? OR %s <= ?) ORDER BY %s DESC LIMIT 1",
+            FullMovementsFileReader.getDESTINATION_ID(), FullMovementsFileReader.getDESTINATION_DATE(),
+            FullMovementsFileReader.getTABLE_NAME(), FullMovementsFileReader.getID(),
+            FullMovementsFileReader.getDEPARTURE_DATE(), FullMovementsFileReader.getDESTINATION_DATE(),
+            FullMovementsFileReader.getDESTINATION_DATE());
+    private static final String DIRECTED_LOCATION_AT_DATE_QUERY = String.format(
+            "SELECT %s, %s FROM %s WHERE %s = ? AND %s <= ? ORDER BY %s DESC LIMIT 1",
+            DirectedMovementsFileReader.getLOCATION_ID(), DirectedMovementsFileReader.getMOVEMENT_DATE(),
+            DirectedMovementsFileReader.getTABLE_NAME(), DirectedMovementsFileReader.getID(),
+            DirectedMovementsFileReader.getMOVEMENT_DATE(), DirectedMovementsFileReader.getMOVEMENT_DATE());
+    // the queries for many ids join the table to the ids bound (as an array) to the first parameter, which H2 answers
+    // with an index lookup for each id (whereas it scans the index for "ID IN (SELECT X FROM TABLE(...))").
+    private static final String IDS_JOIN = "SELECT %s FROM TABLE(X VARCHAR = ?) IDS INNER JOIN %s T ON T.%s = IDS.X";
+    private static final String ANIMALS_QUERY = String.format(IDS_JOIN, "T.*",
+                                                              PopulationsFileReader.getLIFE_HISTORIES_TABLE_NAME(),
+                                                              PopulationsFileReader.getID());
+    private static final String FULL_MOVEMENTS_FOR_ANIMALS_QUERY = String.format(
+            IDS_JOIN, "T.*", FullMovementsFileReader.getTABLE_NAME(), FullMovementsFileReader.getID());
+    private static final String DIRECTED_MOVEMENTS_FOR_ANIMALS_QUERY = String.format(
+            IDS_JOIN, "T.*", DirectedMovementsFileReader.getTABLE_NAME(), DirectedMovementsFileReader.getID());
+    private static final String FULL_LOCATIONS_AT_DATE_QUERY = String.format(
+            IDS_JOIN + " WHERE T.%s <= ? OR T.%s <= ?",
+            String.format("T.%s, T.%s, T.%s", FullMovementsFileReader.getID(),
+                          FullMovementsFileReader.getDESTINATION_ID(), FullMovementsFileReader.getDESTINATION_DATE()),
+            FullMovementsFileReader.getTABLE_NAME(), FullMovementsFileReader.getID(),
+            FullMovementsFileReader.getDEPARTURE_DATE(), FullMovementsFileReader.getDESTINATION_DATE());
+    private static final String DIRECTED_LOCATIONS_AT_DATE_QUERY = String.format(
+            IDS_JOIN + " WHERE T.%s <= ?",
+            String.format("T.%s, T.%s, T.%s", DirectedMovementsFileReader.getID(),
+                          DirectedMovementsFileReader.getLOCATION_ID(), DirectedMovementsFileReader.getMOVEMENT_DATE()),
+            DirectedMovementsFileReader.getTABLE_NAME(), DirectedMovementsFileReader.getID(),
+            DirectedMovementsFileReader.getMOVEMENT_DATE());
 }
 
 /**
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import com.rits.cloning.Immutable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.time.StopWatch;
+
+/**
+ * An in-memory index of movements by day, allowing the movements departing from (or arriving at) a set of locations on
+ * a given day to be found in time proportional to the number of locations and movements found rather than the total
+ * number of movements. The movements are bucketed by their departure date (and separately by their destination date)
+ * and, within each day, sorted by the (integer coded) location so that the movements for a location are found by a
+ * binary search. Movements without a departure (destination) date, e.g. the ON (OFF) half of a directed movement, are
+ * not in the departure (destination) index.
+ * <p>
+ * The index cannot be modified once it is created so it may be shared by any number of threads, it is not copied when
+ * a MonteCarloScenario containing it is cloned.
+ */
+@Slf4j
+@Immutable
+public final class MovementIndex implements Serializable {
+
+    /**
+     * Create the index from all the movements in the internal database.
+     * @param lookup the lookup object for the internal database.
+     */
+    public MovementIndex(final Lookup lookup) {
+        this(lookup.getMovements());
+    }
+
+    /**
+     * Create the index from a collection of movements.
+     * @param movements the movements to be indexed.
+     */
+    public MovementIndex(final Collection<Movement> movements) {
+        final StopWatch sw = new StopWatch();
+        sw.start();
+
+        this.movements = movements.toArray(new Movement[movements.size()]);
+        final int[] departureDays = new int[this.movements.length];
+        final int[] departureLocations = new int[this.movements.length];
+        final int[] destinationDays = new int[this.movements.length];
+        final int[] destinationLocations = new int[this.movements.length];
+        final Map<String, Integer> codes = new HashMap<>();
+        for (int i = 0; i < this.movements.length; i++) {
+            final Movement movement = this.movements[i];
+            departureDays[i] = toDay(movement.getDepartureDate());
+            departureLocations[i] = encode(codes, movement.getDepartureId());
+            destinationDays[i] = toDay(movement.getDestinationDate());
+            destinationLocations[i] = encode(codes, movement.getDestinationId());
+        }
+        this.locationCodes = codes;
+        this.departures = new DayIndex(this.movements, codes, departureDays, departureLocations);
+        this.arrivals = new DayIndex(this.movements, codes, destinationDays, destinationLocations);
+
+        sw.stop();
+        log.debug("Indexed {} movements on {} locations in {}.", this.movements.length, codes.size(), sw.toString());
+    }
+
+    /**
+     * Get the number of movements in the index.
+     * @return the number of movements.
+     */
+    public int size() {
+        return movements.length;
+    }
+
+    /**
+     * Get the first day on which any movement departs or arrives.
+     * @return the first day in the index, or Integer.MAX_VALUE if there are no dated movements.
+     */
+    public int getFirstDay() {
+        return Math.min(departures.getFirstDay(), arrivals.getFirstDay());
+    }
+
+    /**
+     * Get the last day on which any movement departs or arrives.
+     * @return the last day in the index, or Integer.MIN_VALUE if there are no dated movements.
+     */
+    public int getLastDay() {
+        return Math.max(departures.getLastDay(), arrivals.getLastDay());
+    }
+
+    /**
+     * Get the movements departing on a given day.
+     * @param day the date of departure.
+     * @return the movements departing on the day.
+     */
+    public List<Movement> getDepartures(final int day) {
+        final List<Movement> found = new ArrayList<>();
+        forEachDeparture(day, collectInto(found));
+        return found;
+    }
+
+    /**
+     * Get the movements departing from any of a collection of locations on a given day.
+     * @param day       the date of departure.
+     * @param locations the ids of the locations of departure.
+     * @return the movements departing from the locations on the day.
+     */
+    public List<Movement> getDepartures(final int day, final Collection<String> locations) {
+        final List<Movement> found = new ArrayList<>();
+        forEachDeparture(day, locations, collectInto(found));
+        return found;
+    }
+
+    /**
+     * Get the movements arriving on a given day.
+     * @param day the date of arrival.
+     * @return the movements arriving on the day.
+     */
+    public List<Movement> getArrivals(final int day) {
+        final List<Movement> found = new ArrayList<>();
+        forEachArrival(day, collectInto(found));
+        return found;
+    }
+
+    /**
+     * Get the movements arriving at any of a collection of locations on a given day.
+     * @param day       the date of arrival.
+     * @param locations the ids of the locations of destination.
+     * @return the movements arriving at the locations on the day.
+     */
+    public List<Movement> getArrivals(final int day, final Collection<String> locations) {
+        final List<Movement> found = new ArrayList<>();
+        forEachArrival(day, locations, collectInto(found));
+        return found;
+    }
+
+    /**
+     * Pass each of the movements departing on a given day to a handler.
+     * @param day     the date of departure.
+     * @param handler the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    public int forEachDeparture(final int day, final ResultHandler<? super Movement> handler) {
+        return departures.forEach(day, handler);
+    }
+
+    /**
+     * Pass each of the movements departing from any of a collection of locations on a given day to a handler.
+     * @param day       the date of departure.
+     * @param locations the ids of the locations of departure.
+     * @param handler   the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    public int forEachDeparture(final int day, final Collection<String> locations,
+                                final ResultHandler<? super Movement> handler) {
+        return departures.forEach(day, locations, handler);
+    }
+
+    /**
+     * Pass each of the movements arriving on a given day to a handler.
+     * @param day     the date of arrival.
+     * @param handler the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    public int forEachArrival(final int day, final ResultHandler<? super Movement> handler) {
+        return arrivals.forEach(day, handler);
+    }
+
+    /**
+     * Pass each of the movements arriving at any of a collection of locations on a given day to a handler.
+     * @param day       the date of arrival.
+     * @param locations the ids of the locations of destination.
+     * @param handler   the handler that will process each movement.
+     * @return the number of movements passed to the handler.
+     */
+    public int forEachArrival(final int day, final Collection<String> locations,
+                              final ResultHandler<? super Movement> handler) {
+        return arrivals.forEach(day, locations, handler);
+    }
+
+    /**
+     * Get the integer code used for a location in the index.
+     * @param codes      the codes already assigned to locations.
+     * @param locationId the id of the location.
+     * @return the code for the location.
+     */
+    private static int encode(final Map<String, Integer> codes, final String locationId) {
+        final String id = locationId == null ? "" : locationId;
+        Integer code = codes.get(id);
+        if (code == null) {
+            code = codes.size();
+            codes.put(id, code);
+        }
+        return code;
+    }
+
+    /**
+     * Get the day of a movement date, movements without a date (including dates that were missing from the data file
+     * and stored as Integer.MAX_VALUE) are not indexed.
+     * @param date the date.
+     * @return the day or NO_DAY if the date is missing.
+     */
+    private static int toDay(final Integer date) {
+        return date == null ? NO_DAY : date;
+    }
+
+    /**
+     * Create a handler that adds each movement to a list.
+     * @param list the list to which the movements are added.
+     * @return the handler.
+     */
+    private static ResultHandler<Movement> collectInto(final List<Movement> list) {
+        return new ResultHandler<Movement>() {
+            @Override
+            public void handle(final Movement movement) {
+                list.add(movement);
+            }
+        };
+    }
+
+    /**
+     * The movements bucketed by day and, within a day, sorted by location, stored in compressed sparse row form: the
+     * indices (into movements) of the movements on day d and sorted by location are
+     * order[dayStart[d - firstDay]] ... order[dayStart[d - firstDay + 1] - 1]. The movements and location codes are
+     * shared with the MovementIndex (and its other DayIndex).
+     */
+    private static final class DayIndex implements Serializable {
+
+        /**
+         * Create the index using two stable counting sorts, first by location and then by day.
+         * @param movements     the movements.
+         * @param locationCodes the code of each location id.
+         * @param days          the day of each movement (NO_DAY if it is not to be indexed).
+         * @param locations     the location code of each movement.
+         */
+        DayIndex(final Movement[] movements, final Map<String, Integer> locationCodes, final int[] days,
+                 final int[] locations) {
+            this.movements = movements;
+            this.locationCodes = locationCodes;
+            this.locations = locations;
+            final int numLocations = locationCodes.size();
+
+            int first = Integer.MAX_VALUE;
+            int last = Integer.MIN_VALUE;
+            int numIndexed = 0;
+            for (final int day : days) {
+                if (day != NO_DAY) {
+                    first = Math.min(first, day);
+                    last = Math.max(last, day);
+                    numIndexed++;
+                }
+            }
+            this.firstDay = first;
+            this.lastDay = last;
+
+            // sort by location
+            final int[] locationStart = new int[numLocations + 1];
+            for (int i = 0; i < days.length; i++) {
+                if (days[i] != NO_DAY) {
+                    locationStart[locations[i] + 1]++;
+                }
+            }
+            for (int loc = 0; loc < numLocations; loc++) {
+                locationStart[loc + 1] += locationStart[loc];
+            }
+            final int[] byLocation = new int[numIndexed];
+            for (int i = 0; i < days.length; i++) {
+                if (days[i] != NO_DAY) {
+                    byLocation[locationStart[locations[i]]++] = i;
+                }
+            }
+
+            // then (stably) by day so that the movements on each day remain sorted by location.
+            final int numDays = numIndexed == 0 ? 0 : last - first + 1;
+            this.dayStart = new int[numDays + 1];
+            for (final int i : byLocation) {
+                dayStart[days[i] - first + 1]++;
+            }
+            for (int d = 0; d < numDays; d++) {
+                dayStart[d + 1] += dayStart[d];
+            }
+            final int[] next = Arrays.copyOf(dayStart, numDays);
+            this.order = new int[numIndexed];
+            for (final int i : byLocation) {
+                order[next[days[i] - first]++] = i;
+            }
+        }
+
+        /**
+         * Pass each of the movements on a day to a handler.
+         * @param day     the day.
+         * @param handler the handler that will process each movement.
+         * @return the number of movements passed to the handler.
+         */
+        int forEach(final int day, final ResultHandler<? super Movement> handler) {
+            if (day < firstDay || day > lastDay) {
+                return 0;
+            }
+            final int end = dayStart[day - firstDay + 1];
+            for (int i = dayStart[day - firstDay]; i < end; i++) {
+                handler.handle(movements[order[i]]);
+            }
+            return end - dayStart[day - firstDay];
+        }
+
+        /**
+         * Pass each of the movements on a day at any of a collection of locations to a handler.
+         * @param day         the day.
+         * @param locationIds the ids of the locations.
+         * @param handler     the handler that will process each movement.
+         * @return the number of movements passed to the handler.
+         */
+        int forEach(final int day, final Collection<String> locationIds,
+                    final ResultHandler<? super Movement> handler) {
+            if (day < firstDay || day > lastDay) {
+                return 0;
+            }
+            final int start = dayStart[day - firstDay];
+            final int end = dayStart[day - firstDay + 1];
+            int count = 0;
+            for (final String locationId : locationIds) {
+                final Integer code = locationCodes.get(locationId);
+                if (code != null) {
+                    for (int i = lowerBound(start, end, code); i < end && locations[order[i]] == code; i++) {
+                        handler.handle(movements[order[i]]);
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Find the first position in a range of the order array whose movement has a location code not less than a
+         * given code.
+         * @param start the start of the range.
+         * @param end   the end (exclusive) of the range.
+         * @param code  the location code.
+         * @return the position.
+         */
+        private int lowerBound(final int start, final int end, final int code) {
+            int lo = start;
+            int hi = end;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (locations[order[mid]] < code) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        @Getter
+        private final int firstDay;
+        @Getter
+        private final int lastDay;
+        private final int[] dayStart;
+        private final int[] order;
+        private final int[] locations;
+        private final Movement[] movements;
+        private final Map<String, Integer> locationCodes;
+        private static final long serialVersionUID = 4475426900049912979L;
+    }
+
+    private final Movement[] movements;
+    private final Map<String, Integer> locationCodes;
+    private final DayIndex departures;
+    private final DayIndex arrivals;
+    private static final int NO_DAY = Integer.MAX_VALUE;
+    private static final long serialVersionUID = 3712205478853124731L;
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import com.rits.cloning.Immutable;
+
+/**
+ * A compact store of movements, each movement takes 9 ints (with the ids encoded by an IdDictionary) rather than a
+ * Movement object with its boxed dates and strings. The fields of a movement are read by its row number, e.g.
+ * getDepartureId(row), without creating any objects; get(row) creates the equivalent Movement object. Missing dates and
+ * batch sizes are stored as NULL_VALUE and missing ids as IdDictionary.NO_ID.
+ * <p>
+ * The store is read only once it is created by the Lookup class, it is not copied when a MonteCarloScenario containing
+ * it is cloned.
+ */
+@Immutable
+public final class MovementStore extends CompactStore<Movement> {
+
+    /**
+     * Create an empty store.
+     * @param dictionary the dictionary used to encode the ids in the store.
+     */
+    MovementStore(final IdDictionary dictionary) {
+        super(dictionary, NUM_COLUMNS);
+    }
+
+    /**
+     * Add a movement to the store.
+     * @param movement the movement to add.
+     */
+    void add(final Movement movement) {
+        final IdDictionary dictionary = getDictionary();
+        addRow(dictionary.encode(movement.getId()),
+               unboxed(movement.getBatchSize()),
+               unboxed(movement.getDepartureDate()),
+               dictionary.encode(movement.getDepartureId()),
+               unboxed(movement.getDestinationDate()),
+               dictionary.encode(movement.getDestinationId()),
+               unboxed(movement.getMarketDate()),
+               dictionary.encode(movement.getMarketId()),
+               dictionary.encode(movement.getSpecies()));
+    }
+
+    @Override
+    public Movement get(final int row) {
+        return new Movement(id(ID, row), boxed(BATCH_SIZE, row), boxed(DEPARTURE_DATE, row), id(DEPARTURE_ID, row),
+                            boxed(DESTINATION_DATE, row), id(DESTINATION_ID, row), boxed(MARKET_DATE, row),
+                            id(MARKET_ID, row), id(SPECIES, row));
+    }
+
+    /**
+     * Get the (encoded) id of a movement.
+     * @param row the row of the movement.
+     * @return the code of the movement id.
+     */
+    public int getId(final int row) {
+        return value(ID, row);
+    }
+
+    /**
+     * Get the batch size of a movement.
+     * @param row the row of the movement.
+     * @return the batch size or NULL_VALUE.
+     */
+    public int getBatchSize(final int row) {
+        return value(BATCH_SIZE, row);
+    }
+
+    /**
+     * Get the departure date of a movement.
+     * @param row the row of the movement.
+     * @return the departure date or NULL_VALUE.
+     */
+    public int getDepartureDate(final int row) {
+        return value(DEPARTURE_DATE, row);
+    }
+
+    /**
+     * Get the (encoded) id of the location of departure of a movement.
+     * @param row the row of the movement.
+     * @return the code of the departure location.
+     */
+    public int getDepartureId(final int row) {
+        return value(DEPARTURE_ID, row);
+    }
+
+    /**
+     * Get the destination date of a movement.
+     * @param row the row of the movement.
+     * @return the destination date or NULL_VALUE.
+     */
+    public int getDestinationDate(final int row) {
+        return value(DESTINATION_DATE, row);
+    }
+
+    /**
+     * Get the (encoded) id of the location of destination of a movement.
+     * @param row the row of the movement.
+     * @return the code of the destination location.
+     */
+    public int getDestinationId(final int row) {
+        return value(DESTINATION_ID, row);
+    }
+
+    /**
+     * Get the market date of a movement.
+     * @param row the row of the movement.
+     * @return the market date or NULL_VALUE.
+     */
+    public int getMarketDate(final int row) {
+        return value(MARKET_DATE, row);
+    }
+
+    /**
+     * Get the (encoded) id of the market of a movement.
+     * @param row the row of the movement.
+     * @return the code of the market.
+     */
+    public int getMarketId(final int row) {
+        return value(MARKET_ID, row);
+    }
+
+    /**
+     * Get the (encoded) species of a movement.
+     * @param row the row of the movement.
+     * @return the code of the species.
+     */
+    public int getSpecies(final int row) {
+        return value(SPECIES, row);
+    }
+
+    private static final int ID = 0;
+    private static final int BATCH_SIZE = 1;
+    private static final int DEPARTURE_DATE = 2;
+    private static final int DEPARTURE_ID = 3;
+    private static final int DESTINATION_DATE = 4;
+    private static final int DESTINATION_ID = 5;
+    private static final int MARKET_DATE = 6;
+    private static final int MARKET_ID = 7;
+    private static final int SPECIES = 8;
+    private static final int NUM_COLUMNS = 9;
+    private static final long serialVersionUID = 6020837153407011926L;
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.BroadwickException;
+import broadwick.data.readers.PopulationsFileReader;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rits.cloning.Immutable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.time.StopWatch;
+import org.jooq.Record;
+
+/**
+ * The number of animals at every location on every day, precomputed from the life histories and movements (via an
+ * AnimalLocationIndex) and the populations (census) tables, so that the size of the population at a location on a day
+ * does not need a query of the animals table (as Lookup.getAnimals(int) would) and the number of animal-days at a
+ * location over a period can be found without adding up the populations on each day.
+ * <p>
+ * The population of a location only changes on the days on which animals are born at, move to or from or die at the
+ * location, so the cube is held as the days on which the population of each location changes and the population from
+ * each of those days, along with the cumulative number of animal-days at the start of each run of days. A population
+ * is found by a binary search of the changes at the location, i.e. in O(log(changes)) time rather than the O(1) time
+ * of a dense location by day array, which would need an int for every location on every day of the data and would be
+ * mostly repeated values.
+ * <p>
+ * An animal is counted at a location from its date of birth to its date of death inclusive, as in
+ * Lookup.getAnimals(int); animals that are not in the life histories table are not counted. The populations table
+ * records the census of a location on a date, a location with census records takes the population in its most recent
+ * census (the sum of the census records for each species on that date) instead of the number of animals found there
+ * and has no population before its first census. The cube is read only once it is created so it may be shared by any
+ * number of threads, it is not copied when a MonteCarloScenario containing it is cloned.
+ */
+@Slf4j
+@Immutable
+public final class PopulationCube implements Serializable {
+
+    /**
+     * Create the population cube from the data in the internal database, using a thread for each available processor.
+     * @param lookup the lookup object for the internal database.
+     */
+    public PopulationCube(final Lookup lookup) {
+        this(new AnimalLocationIndex(lookup), lookup, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create the population cube from the location of each animal over time and the census records in the internal
+     * database. The periods each animal spends at each location are collected in parallel, over ranges of animals,
+     * and the changes in population at each location are then sorted and summed in parallel, over ranges of locations.
+     * @param index       the location of each animal over time, created from the same lookup object.
+     * @param lookup      the lookup object for the internal database.
+     * @param parallelism the number of threads used to create the cube.
+     */
+    public PopulationCube(final AnimalLocationIndex index, final Lookup lookup, final int parallelism) {
+        final StopWatch sw = new StopWatch();
+        sw.start();
+
+        this.dictionary = index.getDictionary();
+        final Map<Integer, TreeMap<Integer, Integer>> census = readCensus(lookup);
+
+        final int numThreads = Math.max(1, parallelism);
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("PopulationCube-%d")
+                .setDaemon(true)
+                .build();
+        final ExecutorService es = Executors.newFixedThreadPool(numThreads, threadFactory);
+        try {
+            // collect the days on which animals arrive at (+1) and leave (-1) each location, for ranges of animals.
+            final List<Callable<Changes>> collectors = new ArrayList<>();
+            final int numAnimals = index.getNumAnimalCodes();
+            final int animalChunk = Math.max(1, (numAnimals + numThreads - 1) / numThreads);
+            for (int first = 0; first < numAnimals; first += animalChunk) {
+                final int from = first;
+                final int to = Math.min(numAnimals, first + animalChunk);
+                collectors.add(new Callable<Changes>() {
+                    @Override
+                    public Changes call() {
+                        return collectChanges(index, census, from, to);
+                    }
+                });
+            }
+            final List<Changes> changes = new ArrayList<>();
+            for (final Future<Changes> result : es.invokeAll(collectors)) {
+                changes.add(getResult(result));
+            }
+
+            // bucket the changes by location (CSR form) then sum each location's changes in parallel
+            final int numSlots = dictionary.size();
+            final int[] offsets = new int[numSlots + 1];
+            for (final Changes c : changes) {
+                for (int i = 0; i < c.size; i++) {
+                    offsets[c.locations[i] + 1]++;
+                }
+            }
+            for (int l = 0; l < numSlots; l++) {
+                offsets[l + 1] += offsets[l];
+            }
+            final long[] keys = new long[offsets[numSlots]];
+            final int[] next = Arrays.copyOf(offsets, numSlots);
+            for (final Changes c : changes) {
+                for (int i = 0; i < c.size; i++) {
+                    keys[next[c.locations[i]]++] = c.keys[i];
+                }
+            }
+            changes.clear();
+
+            this.runDays = new int[numSlots][];
+            this.runPopulations = new int[numSlots][];
+            this.runAnimalDays = new long[numSlots][];
+            final List<Callable<Integer>> summers = new ArrayList<>();
+            final int locationChunk = Math.max(1, (numSlots + numThreads - 1) / numThreads);
+            for (int first = 0; first < numSlots; first += locationChunk) {
+                final int from = first;
+                final int to = Math.min(numSlots, first + locationChunk);
+                summers.add(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return createRuns(offsets, keys, census, from, to);
+                    }
+                });
+            }
+            int numLocations = 0;
+            for (final Future<Integer> result : es.invokeAll(summers)) {
+                numLocations += getResult(result);
+            }
+            this.numLocations = numLocations;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BroadwickException("Interrupted while creating the population cube.");
+        } finally {
+            es.shutdownNow();
+        }
+
+        sw.stop();
+        log.debug("Created population cube of {} locations ({} from census) in {}.", numLocations, census.size(),
+                  sw.toString());
+    }
+
+    /**
+     * Get the number of locations that have a population on some day.
+     * @return the number of locations.
+     */
+    public int getNumLocations() {
+        return numLocations;
+    }
+
+    /**
+     * Get the dictionary of the codes given to the animal and location ids.
+     * @return the dictionary.
+     */
+    public IdDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Get the number of animals at a location on a given day.
+     * @param locationId the id of the location.
+     * @param day        the day.
+     * @return the population of the location, 0 if the location is not known.
+     */
+    public int getPopulation(final String locationId, final int day) {
+        return getPopulation(dictionary.getCode(locationId), day);
+    }
+
+    /**
+     * Get the number of animals at a location on a given day.
+     * @param locationCode the code of the id of the location.
+     * @param day          the day.
+     * @return the population of the location, 0 if the location is not known.
+     */
+    public int getPopulation(final int locationCode, final int day) {
+        if (locationCode < 0 || locationCode >= runDays.length || runDays[locationCode] == null) {
+            return 0;
+        }
+        final int run = findRun(runDays[locationCode], day);
+        return run < 0 ? 0 : runPopulations[locationCode][run];
+    }
+
+    /**
+     * Get the population of every location with a population on a given day.
+     * @param day the day.
+     * @return the population of each location keyed by the id of the location.
+     */
+    public Map<String, Integer> getPopulations(final int day) {
+        final Map<String, Integer> populations = new HashMap<>();
+        for (int l = 0; l < runDays.length; l++) {
+            final int population = getPopulation(l, day);
+            if (population > 0) {
+                populations.put(dictionary.decode(l), population);
+            }
+        }
+        return populations;
+    }
+
+    /**
+     * Get the number of animal-days at a location over a period, i.e. the sum of the population of the location on
+     * each day of the period.
+     * @param locationId the id of the location.
+     * @param fromDay    the first day of the period.
+     * @param toDay      the last day of the period (inclusive).
+     * @return the number of animal-days, 0 if the location is not known or the period is empty.
+     */
+    public long getAnimalDays(final String locationId, final int fromDay, final int toDay) {
+        return getAnimalDays(dictionary.getCode(locationId), fromDay, toDay);
+    }
+
+    /**
+     * Get the number of animal-days at a location over a period, i.e. the sum of the population of the location on
+     * each day of the period.
+     * @param locationCode the code of the id of the location.
+     * @param fromDay      the first day of the period.
+     * @param toDay        the last day of the period (inclusive).
+     * @return the number of animal-days, 0 if the location is not known or the period is empty.
+     */
+    public long getAnimalDays(final int locationCode, final int fromDay, final int toDay) {
+        if (locationCode < 0 || locationCode >= runDays.length || runDays[locationCode] == null || toDay < fromDay) {
+            return 0;
+        }
+        return getAnimalDaysBefore(locationCode, (long) toDay + 1) - getAnimalDaysBefore(locationCode, fromDay);
+    }
+
+    /**
+     * Get the number of animal-days at a location before a given day.
+     * @param locationCode the code of the id of the location.
+     * @param day          the day.
+     * @return the number of animal-days on the days before day.
+     */
+    private long getAnimalDaysBefore(final int locationCode, final long day) {
+        final int[] days = runDays[locationCode];
+        final int run = findRun(days, day);
+        if (run < 0) {
+            return 0;
+        }
+        return runAnimalDays[locationCode][run] + runPopulations[locationCode][run] * (day - days[run]);
+    }
+
+    /**
+     * Find the run of days that contains a day.
+     * @param days the first day of each run.
+     * @param day  the day.
+     * @return the index of the last run starting on or before day, -1 if day is before the first run.
+     */
+    private static int findRun(final int[] days, final long day) {
+        int low = 0;
+        int high = days.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (days[mid] <= day) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Read the census records from the populations table, summing the records of each location on the same date.
+     * @param lookup the lookup object for the internal database.
+     * @return the population on each census date, keyed by the code of the location.
+     */
+    private Map<Integer, TreeMap<Integer, Integer>> readCensus(final Lookup lookup) {
+        final Map<Integer, TreeMap<Integer, Integer>> census = new HashMap<>();
+        final String tableName = PopulationsFileReader.getPOPULATIONS_TABLE_NAME();
+        if (!lookup.hasRows(tableName)) {
+            return census;
+        }
+        lookup.forEachRecord(String.format("SELECT LOCATION, POPULATION, DATE FROM %s", tableName),
+                             new ResultHandler<Record>() {
+                                 @Override
+                                 public void handle(final Record record) {
+                                     final Object location = record.getValue(0);
+                                     final Object size = record.getValue(1);
+                                     final Object date = record.getValue(2);
+                                     if (location == null || size == null || date == null
+                                         || ((Number) date).intValue() == Integer.MAX_VALUE) {
+                                         return;
+                                     }
+                                     final int population;
+                                     try {
+                                         population = Integer.parseInt(size.toString().trim());
+                                     } catch (NumberFormatException e) {
+                                         log.warn("Ignoring population {} of {} - it is not a number.", size,
+                                                  location);
+                                         return;
+                                     }
+                                     final int code = dictionary.encode(location.toString());
+                                     TreeMap<Integer, Integer> populations = census.get(code);
+                                     if (populations == null) {
+                                         populations = new TreeMap<>();
+                                         census.put(code, populations);
+                                     }
+                                     final int day = ((Number) date).intValue();
+                                     final Integer previous = populations.get(day);
+                                     populations.put(day, previous == null ? population : previous + population);
+                                 }
+                             });
+        return census;
+    }
+
+    /**
+     * Collect the changes in population made by the periods a range of animals spend at locations that are not
+     * covered by a census.
+     * @param index      the location of each animal over time.
+     * @param census     the census records keyed by the code of the location.
+     * @param fromAnimal the code of the first animal in the range.
+     * @param toAnimal   the code after the last animal in the range.
+     * @return the changes.
+     */
+    private static Changes collectChanges(final AnimalLocationIndex index,
+                                          final Map<Integer, TreeMap<Integer, Integer>> census,
+                                          final int fromAnimal, final int toAnimal) {
+        final Changes changes = new Changes();
+        index.forEachStay(fromAnimal, toAnimal, new AnimalLocationIndex.StayHandler() {
+            @Override
+            public void handle(final int animal, final int location, final long from, final long to) {
+                if (!census.containsKey(location)) {
+                    changes.add(location, from, true);
+                    if (to <= Integer.MAX_VALUE) {
+                        changes.add(location, to, false);
+                    }
+                }
+            }
+        });
+        return changes;
+    }
+
+    /**
+     * Create the runs of days with the same population for a range of locations, from the census records of the
+     * location or by sorting and summing its changes in population.
+     * @param offsets the offset of the changes of each location in keys.
+     * @param keys    the changes in population (see Changes), bucketed by location.
+     * @param census  the census records keyed by the code of the location.
+     * @param from    the code of the first location in the range.
+     * @param to      the code after the last location in the range.
+     * @return the number of locations in the range that have a population on some day.
+     */
+    private int createRuns(final int[] offsets, final long[] keys, final Map<Integer, TreeMap<Integer, Integer>> census,
+                           final int from, final int to) {
+        int numCreated = 0;
+        for (int l = from; l < to; l++) {
+            final int[] days;
+            final int[] populations;
+            int numRuns = 0;
+            final TreeMap<Integer, Integer> records = census.get(l);
+            if (records != null) {
+                days = new int[records.size()];
+                populations = new int[records.size()];
+                for (final Map.Entry<Integer, Integer> record : records.entrySet()) {
+                    days[numRuns] = record.getKey();
+                    populations[numRuns++] = record.getValue();
+                }
+            } else {
+                final int start = offsets[l];
+                final int end = offsets[l + 1];
+                if (start == end) {
+                    continue;
+                }
+                Arrays.sort(keys, start, end);
+                days = new int[end - start];
+                populations = new int[end - start];
+                int population = 0;
+                int i = start;
+                while (i < end) {
+                    final long day = keys[i] >> 1;
+                    while (i < end && (keys[i] >> 1) == day) {
+                        population += (keys[i] & 1) == 1 ? 1 : -1;
+                        i++;
+                    }
+                    if (numRuns == 0 || populations[numRuns - 1] != population) {
+                        days[numRuns] = (int) day;
+                        populations[numRuns++] = population;
+                    }
+                }
+            }
+
+            final long[] animalDays = new long[numRuns];
+            for (int r = 1; r < numRuns; r++) {
+                animalDays[r] = animalDays[r - 1] + (long) populations[r - 1] * ((long) days[r] - days[r - 1]);
+            }
+            runDays[l] = Arrays.copyOf(days, numRuns);
+            runPopulations[l] = Arrays.copyOf(populations, numRuns);
+            runAnimalDays[l] = animalDays;
+            numCreated++;
+        }
+        return numCreated;
+    }
+
+    /**
+     * Get the result of one of the tasks creating the cube.
+     * @param <T>    the type of the result.
+     * @param result the future result of the task.
+     * @return the result.
+     * @throws InterruptedException if the thread is interrupted while waiting for the result.
+     */
+    private static <T> T getResult(final Future<T> result) throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw new BroadwickException(String.format("Could not create the population cube. %s",
+                                                       e.getCause().getLocalizedMessage()));
+        }
+    }
+
+    /**
+     * A growable list of changes in population, each held as the location and a key of the day of the change
+     * (shifted left one bit) and a bit that is set for an arrival and clear for a departure, so that sorting the keys
+     * sorts the changes by day.
+     */
+    private static final class Changes {
+
+        /**
+         * Add a change in population.
+         * @param location the code of the location.
+         * @param day      the day of the change.
+         * @param arrival  true if an animal arrives at the location, false if it leaves.
+         */
+        private void add(final int location, final long day, final boolean arrival) {
+            if (size == locations.length) {
+                locations = Arrays.copyOf(locations, 2 * size);
+                keys = Arrays.copyOf(keys, 2 * size);
+            }
+            locations[size] = location;
+            keys[size++] = (day << 1) | (arrival ? 1 : 0);
+        }
+        private int[] locations = new int[INITIAL_CAPACITY];
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private int size = 0;
+    }
+
+    private final IdDictionary dictionary;
+    private final int[][] runDays;
+    private final int[][] runPopulations;
+    private final long[][] runAnimalDays;
+    private final int numLocations;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long serialVersionUID = 4125736870617412298L;
+}
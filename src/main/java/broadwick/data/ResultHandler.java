@@ -0,0 +1,30 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+/**
+ * A callback that is given the results of a Lookup query one at a time as they are read from the database, so that
+ * large queries can be processed without holding the whole result in memory.
+ * @param <T> the type of object (e.g. Movement) created from each row of the result.
+ */
+public interface ResultHandler<T> {
+
+    /**
+     * Process a single result of the query.
+     * @param result the object created from a row of the query result.
+     */
+    void handle(T result);
+}
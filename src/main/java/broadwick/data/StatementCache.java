@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A cache of prepared statements for the queries made by the Lookup class. A JDBC PreparedStatement cannot be used by
+ * two threads at once so each thread has its own statements; the first time a thread runs a query the SQL is parsed
+ * and planned by the database, subsequent runs only bind new parameter values. Statements that cannot be prepared
+ * (typically because the project has not been configured with the table they query) are remembered so they are not
+ * attempted again. The statements are closed when the connection is closed.
+ */
+@Slf4j
+final class StatementCache {
+
+    /**
+     * Create an empty cache for a connection.
+     * @param connection the connection on which the statements will be prepared.
+     */
+    StatementCache(final Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Get the calling thread's prepared statement for some SQL, preparing it if this thread has not run the SQL before.
+     * @param sql the SQL of the statement with '?' for each parameter.
+     * @return the prepared statement, or null if the statement could not be prepared.
+     */
+    PreparedStatement get(final String sql) {
+        final Map<String, PreparedStatement> cache = statements.get();
+        if (cache.containsKey(sql)) {
+            return cache.get(sql);
+        }
+
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement(sql);
+        } catch (SQLException e) {
+            log.trace("Could not prepare {} - this is not an error; the table might not be configured. {}",
+                      sql, e.getLocalizedMessage());
+        }
+        cache.put(sql, statement);
+        return statement;
+    }
+
+    /**
+     * Close and forget the statements prepared by the calling thread, e.g. when the lookup object is closed.
+     * Statements prepared by other threads are not affected.
+     */
+    void clear() {
+        final Map<String, PreparedStatement> cache = statements.get();
+        for (final PreparedStatement statement : cache.values()) {
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    log.trace("Could not close statement. {}", e.getLocalizedMessage());
+                }
+            }
+        }
+        cache.clear();
+    }
+
+    private final Connection connection;
+    private final ThreadLocal<Map<String, PreparedStatement>> statements =
+            new ThreadLocal<Map<String, PreparedStatement>>() {
+                @Override
+                protected Map<String, PreparedStatement> initialValue() {
+                    return new HashMap<>();
+                }
+            };
+}
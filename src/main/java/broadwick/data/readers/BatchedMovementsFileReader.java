@@ -20,7 +20,6 @@ import broadwick.config.generated.CustomTags;
 import broadwick.config.generated.DataFiles;
 import broadwick.data.DatabaseImpl;
 import com.google.common.base.Throwables;
-import java.sql.Connection;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
@@ -95,6 +94,12 @@ public class BatchedMovementsFileReader extends DataFileReader {
         final StringBuilder createIndexCommand = new StringBuilder();
         createIndexCommand.append(String.format(" CREATE INDEX IF NOT EXISTS IDX_BATCH_ID ON %s (%s,%s,%s,%s,%s);",
                                                 TABLE_NAME, DEPARTURE_ID, DEPARTURE_DATE, DESTINATION_ID, DESTINATION_DATE, BATCH_SIZE));
+        // the date range queries are range scans of these, the departure (destination) date being bounded on both
+        // sides for all and OFF (ON) movements.
+        createIndexCommand.append(String.format(" CREATE INDEX IF NOT EXISTS IDX_BATCH_DEP_DATE ON %s (%s,%s,%s);",
+                                                TABLE_NAME, DEPARTURE_DATE, DESTINATION_DATE, DEPARTURE_ID));
+        createIndexCommand.append(String.format(" CREATE INDEX IF NOT EXISTS IDX_BATCH_DES_DATE ON %s (%s,%s);",
+                                                TABLE_NAME, DESTINATION_DATE, DESTINATION_ID));
 
         createTableCommand.append(createIndexCommand.toString());
 
@@ -113,10 +118,9 @@ public class BatchedMovementsFileReader extends DataFileReader {
         log.trace("BatchedMovementsFileReader insert");
 
         int inserted = 0;
-         try (Connection connection = database.getConnection()) {  
-         createTable(TABLE_NAME, createTableCommand.toString(), connection);
-
-         inserted = insert(connection, TABLE_NAME, insertString, dataFile, dateFormat,  insertedColInfo, dateFields);
+         try {
+             inserted = insert(database, TABLE_NAME, createTableCommand.toString(), insertString, dataFile, dateFormat,
+                               insertedColInfo, dateFields);
          } catch (Exception ex) {
             log.error("{}", ex.getLocalizedMessage());
             log.error("Error reading movement data. {}", Throwables.getStackTraceAsString(ex));
@@ -15,11 +15,19 @@
  */
 package broadwick.data.readers;
 
-import broadwick.BroadwickConstants;
 import broadwick.BroadwickException;
+import broadwick.data.ColumnTable;
+import broadwick.data.ColumnarDatabase;
+import broadwick.data.DatabaseImpl;
 import broadwick.io.FileInput;
+import broadwick.io.FileInputRow;
+import broadwick.utils.DateConverter;
 import com.google.common.base.Throwables;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
@@ -27,8 +35,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Collection;
-import java.util.List;
 import java.util.Map;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.StopWatch;
 
@@ -161,7 +169,190 @@ public abstract class DataFileReader {
     }
 
     /**
-     * Perform the insertion into the database.
+     * Perform the insertion into the database, creating the table if it does not exist. The rows are read from the file
+     * and, for a SQL database, sent to the database in batches of batchSize rows, each batch being committed once it
+     * has been executed; rows that are rejected by the database as duplicates are ignored. A ColumnarDatabase stores
+     * the rows in memory (in a table whose column types are given by the create table command) without SQL. Rows that
+     * cannot be read (e.g. that have too few columns or a date in the wrong format) are rejected and logged. The
+     * progress of reading the file is published by the IngestionMonitor until the file has been read.
+     * @param database           the database.
+     * @param tableName          the name of the table into which the data will be put.
+     * @param createTableCommand the command to create the table.
+     * @param insertString       the command used to insert a row into the database.
+     * @param dataFile           the [CSV] file that contained the data.
+     * @param dateFormat         the format of the date in the file.
+     * @param insertedColInfo    a map of column name to column in the data file.
+     * @param dateFields         a collection of columns in the csv file that contains date fields.
+     * @return the number of rows inserted.
+     * @throws SQLException if the table cannot be created.
+     */
+    protected final int insert(final DatabaseImpl database, final String tableName,
+                               final String createTableCommand,
+                               final String insertString,
+                               final String dataFile,
+                               final String dateFormat,
+                               final Map<String, Integer> insertedColInfo,
+                               final Collection<Integer> dateFields) throws SQLException {
+
+        final StopWatch sw = new StopWatch();
+        sw.start();
+
+        final IngestionMetrics metrics = IngestionMonitor.start(dataFile, tableName, fileSize(dataFile));
+        int inserted;
+        try {
+            try {
+                if (database instanceof ColumnarDatabase) {
+                    final ColumnTable table = ((ColumnarDatabase) database).createTable(tableName, createTableCommand,
+                                                                                        insertString,
+                                                                                        insertedColInfo.keySet());
+                    inserted = columnInsert(table, dataFile, dateFormat, insertedColInfo, dateFields, metrics);
+                } else {
+                    try (Connection connection = database.getConnection()) {
+                        createTable(tableName, createTableCommand, connection);
+                        inserted = batchInsert(connection, tableName, insertString, dataFile, dateFormat,
+                                               insertedColInfo, dateFields, metrics);
+                    }
+                }
+            } finally {
+                IngestionMonitor.finish(metrics);
+            }
+
+            sw.stop();
+            log.info("Inserted {} rows into {} from {} in {} ({} rows/s).", inserted, tableName, dataFile,
+                     sw.toString(), String.format("%.0f", inserted * 1000.0 / Math.max(1L, sw.getTime())));
+            if (metrics.getDuplicateRows() > 0 || metrics.getRejectedRows() > 0) {
+                log.warn("Ignored {} duplicate and {} rejected rows of {}.", metrics.getDuplicateRows(),
+                         metrics.getRejectedRows(), dataFile);
+            }
+        } finally {
+            // the metrics have been logged (or the file could not be read), they are no longer published with JMX.
+            IngestionMonitor.unregister(metrics);
+        }
+        return inserted;
+    }
+
+    /**
+     * Read the data file row by row, adding each row to a table of a ColumnarDatabase.
+     * @param table           the table into which the data will be put.
+     * @param dataFile        the [CSV] file that contained the data.
+     * @param dateFormat      the format of the date in the file.
+     * @param insertedColInfo a map of column name to column in the data file.
+     * @param dateFields      a collection of columns in the csv file that contains date fields.
+     * @param metrics         the metrics of reading the file.
+     * @return the number of rows inserted.
+     */
+    private int columnInsert(final ColumnTable table, final String dataFile, final String dateFormat,
+                             final Map<String, Integer> insertedColInfo, final Collection<Integer> dateFields,
+                             final IngestionMetrics metrics) {
+        int inserted = 0;
+        try (FileInput instance = openDataFile(dataFile)) {
+            final DateConverter dateConverter = dateFields.isEmpty() ? null : DateConverter.forPattern(dateFormat);
+            final int[] columns = fileColumns(insertedColInfo);
+            final boolean[] isDate = dateColumns(columns, dateFields);
+
+            long rows = 0;
+            long duplicates = 0;
+            long rejected = 0;
+            FileInputRow row = instance.readRow();
+            while (row != null) {
+                rows++;
+                try {
+                    if (table.add(row, columns, isDate, dateConverter)) {
+                        inserted++;
+                    } else {
+                        duplicates++;
+                    }
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    reject(dataFile, rows, e, ++rejected);
+                }
+                if (rows % PROGRESS_ROWS == 0) {
+                    metrics.update(rows, inserted, duplicates, rejected, instance.getBytesRead());
+                }
+                row = instance.readRow();
+            }
+            metrics.update(rows, inserted, duplicates, rejected, instance.getBytesRead());
+        } catch (IOException ex) {
+            log.error("IO error : {}", ex.getLocalizedMessage());
+            log.trace("{}", Throwables.getStackTraceAsString(ex));
+        }
+        return inserted;
+    }
+
+    /**
+     * Log a row of the data file that could not be read, the first few rows of each file are logged in full.
+     * @param dataFile the [CSV] file that contained the data.
+     * @param rowNum   the number of the row (counting from the offset at which reading started).
+     * @param error    the reason the row could not be read.
+     * @param rejected the number of rows of the file that have been rejected.
+     */
+    private static void reject(final String dataFile, final long rowNum, final RuntimeException error,
+                               final long rejected) {
+        if (rejected <= MAX_LOGGED_REJECTIONS) {
+            log.warn("Rejected row {} of {}. {}", rowNum, dataFile, error.getLocalizedMessage());
+        } else if (rejected == MAX_LOGGED_REJECTIONS + 1) {
+            log.warn("Rejected more than {} rows of {}, further rejected rows are only counted.",
+                     MAX_LOGGED_REJECTIONS, dataFile);
+        }
+    }
+
+    /**
+     * Get the size of a data file, for the progress of reading it.
+     * @param dataFile the [CSV] file that contained the data.
+     * @return the size of the file in bytes, or -1 if it cannot be found.
+     */
+    private static long fileSize(final String dataFile) {
+        try {
+            return Files.size(Paths.get(dataFile));
+        } catch (IOException | InvalidPathException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Open the data file, skipping the first offset bytes if only the rows appended to the file since it was last read
+     * are to be inserted.
+     * @param dataFile the [CSV] file that contained the data.
+     * @return the opened file.
+     * @throws IOException if the file cannot be opened.
+     */
+    private FileInput openDataFile(final String dataFile) throws IOException {
+        if (offset > 0) {
+            log.info("Reading {} from byte {}.", dataFile, offset);
+            return new FileInput(dataFile, ",", offset);
+        }
+        return new FileInput(dataFile, ",");
+    }
+
+    /**
+     * Get the column of the data file holding the value of each of the inserted columns.
+     * @param insertedColInfo a map of column name to column in the data file.
+     * @return the (one based) column of the data file of each inserted column, in the order of insertedColInfo.
+     */
+    private static int[] fileColumns(final Map<String, Integer> insertedColInfo) {
+        final int[] columns = new int[insertedColInfo.size()];
+        int col = 0;
+        for (final Integer column : insertedColInfo.values()) {
+            columns[col++] = column;
+        }
+        return columns;
+    }
+
+    /**
+     * Work out which of the inserted columns are dates.
+     * @param columns    the column of the data file of each inserted column.
+     * @param dateFields a collection of columns in the csv file that contains date fields.
+     * @return whether each inserted column is a date.
+     */
+    private static boolean[] dateColumns(final int[] columns, final Collection<Integer> dateFields) {
+        final boolean[] isDate = new boolean[columns.length];
+        for (int col = 0; col < columns.length; col++) {
+            isDate[col] = dateFields.contains(columns[col]);
+        }
+        return isDate;
+    }
+
+    /**
+     * Read the data file row by row, sending the rows to the database in batches of batchSize rows.
      * @param connection      the connection to the database.
      * @param tableName       the name of the table into which the data will be put.
      * @param insertString    the command used to insert a row into the database.
@@ -169,82 +360,70 @@ public abstract class DataFileReader {
      * @param dateFormat      the format of the date in the file.
      * @param insertedColInfo a map of column name to column in the data file.
      * @param dateFields      a collection of columns in the csv file that contains date fields.
+     * @param metrics         the metrics of reading the file.
      * @return the number of rows inserted.
      */
-    protected final int insert(final Connection connection, final String tableName,
-                               final String insertString,
-                               final String dataFile,
-                               final String dateFormat,
-                               final Map<String, Integer> insertedColInfo,
-                               final Collection<Integer> dateFields) {
+    private int batchInsert(final Connection connection, final String tableName,
+                            final String insertString,
+                            final String dataFile,
+                            final String dateFormat,
+                            final Map<String, Integer> insertedColInfo,
+                            final Collection<Integer> dateFields,
+                            final IngestionMetrics metrics) {
 
         int inserted = 0;
-        try {
-            // Now do the insertion.
-            log.trace("Inserting into {} via {}", tableName, insertString);
-            PreparedStatement pstmt = connection.prepareStatement(insertString);
+        log.trace("Inserting into {} via {}", tableName, insertString);
+        try (PreparedStatement pstmt = connection.prepareStatement(insertString);
+             FileInput instance = openDataFile(dataFile)) {
             log.trace("Prepared statement = {}", pstmt.toString());
 
-            try (FileInput instance = new FileInput(dataFile, ",")) {
-                final StopWatch sw = new StopWatch();
-                sw.start();
-                List<String> data = instance.readLine();
-                while (data != null && !data.isEmpty()) {
-                    int parameterIndex = 1;
-                    for (final Map.Entry<String, Integer> entry : insertedColInfo.entrySet()) {
-                        if (entry.getValue() == -1) {
-                            pstmt.setObject(parameterIndex, null);
+            // the date format is the same for every row so compile it once, and work out which of the inserted
+            // columns are dates now rather than for every row.
+            final DateConverter dateConverter = dateFields.isEmpty() ? null : DateConverter.forPattern(dateFormat);
+            final int[] columns = fileColumns(insertedColInfo);
+            final boolean[] isDate = dateColumns(columns, dateFields);
+
+            int batched = 0;
+            long rows = 0;
+            long rejected = 0;
+            FileInputRow row = instance.readRow();
+            while (row != null) {
+                rows++;
+                try {
+                    for (int i = 0; i < columns.length; i++) {
+                        if (columns[i] == -1) {
+                            pstmt.setObject(i + 1, null);
+                        } else if (isDate[i]) {
+                            // missing dates are stored as Integer.MAX_VALUE
+                            pstmt.setObject(i + 1, row.isEmpty(columns[i] - 1) ? Integer.MAX_VALUE
+                                                   : row.getDate(columns[i] - 1, dateConverter));
                         } else {
-                            final String value = data.get(entry.getValue() - 1);
-                            if (dateFields.contains(entry.getValue())) {
-                                int dateField = Integer.MAX_VALUE;
-                                if (value != null && !value.isEmpty()) {
-                                    dateField = BroadwickConstants.getDate(value, dateFormat);
-                                }
-                                pstmt.setObject(parameterIndex, dateField);
-                            } else {
-                                pstmt.setObject(parameterIndex, value);
-                            }
+                            pstmt.setObject(i + 1, row.getString(columns[i] - 1));
                         }
-                        parameterIndex++;
                     }
                     pstmt.addBatch();
-                    try {
-                        pstmt.executeUpdate();
-                        inserted++;
-                    } catch (SQLException ex) {
-                        if ("23505".equals(ex.getSQLState())) {
-                            //Ignore found duplicate from database view
-                            continue;
-                        } else {
-                            log.warn("Duplicate data found for {}: continuing despite errors: {}", data.get(0), ex.getLocalizedMessage());
-                            log.trace("{}", Throwables.getStackTraceAsString(ex));
-                            throw ex;
-                        }
-                    }
-                    if (inserted % 250000 == 0) {
-                        log.trace("Inserted {} rows in {}", inserted, sw.toString());
-                        connection.commit();
-                        pstmt.close();
-                        pstmt = connection.prepareStatement(insertString);
-                    }
+                    batched++;
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    reject(dataFile, rows, e, ++rejected);
+                }
 
-                    data = instance.readLine();
+                if (batched == batchSize) {
+                    inserted += executeBatch(pstmt, connection, metrics);
+                    batched = 0;
+                    log.trace("Inserted {} rows into {}", inserted, tableName);
+                    metrics.update(rows, inserted, rows - rejected - inserted, rejected, instance.getBytesRead());
                 }
-                connection.commit();
-
-            } catch (IOException ex) {
-                log.error("IO error : {}", ex.getLocalizedMessage());
-                log.trace("{}", Throwables.getStackTraceAsString(ex));
-            } catch (SQLException ex) {
-                log.error("SQL Error : {}", ex.getLocalizedMessage());
-                log.trace("{}", Throwables.getStackTraceAsString(ex));
-                throw ex;
-            } finally {
-                pstmt.close();
+                row = instance.readRow();
+            }
+            if (batched > 0) {
+                inserted += executeBatch(pstmt, connection, metrics);
             }
+            metrics.update(rows, inserted, rows - rejected - inserted, rejected, instance.getBytesRead());
+        } catch (IOException ex) {
+            log.error("IO error : {}", ex.getLocalizedMessage());
+            log.trace("{}", Throwables.getStackTraceAsString(ex));
         } catch (SQLException ex) {
-            log.error("{}", ex.getLocalizedMessage());
+            log.error("SQL Error : {}", ex.getLocalizedMessage());
             log.trace("{}", Throwables.getStackTraceAsString(ex));
             throw new BroadwickException(ex);
         }
@@ -252,10 +431,61 @@ public abstract class DataFileReader {
         return inserted;
     }
 
+    /**
+     * Execute and commit the batched rows of a prepared statement. H2 executes every row of a batch before reporting
+     * the rows that failed, rows that failed because they duplicate existing data are ignored, any other failure is
+     * rethrown.
+     * @param pstmt      the prepared statement containing the batch.
+     * @param connection the connection to the database.
+     * @param metrics    the metrics of reading the file, to which the time taken to commit the batch is added.
+     * @return the number of rows inserted.
+     * @throws SQLException if any row failed for a reason other than duplicated data.
+     */
+    private int executeBatch(final PreparedStatement pstmt, final Connection connection,
+                             final IngestionMetrics metrics) throws SQLException {
+        final long start = System.nanoTime();
+        int[] updateCounts;
+        try {
+            updateCounts = pstmt.executeBatch();
+        } catch (BatchUpdateException ex) {
+            // the batch exception carries the state of the first failure (a driver need not chain any others to it),
+            // so it is checked as well as the chained failures.
+            for (SQLException e = ex; e != null; e = e.getNextException()) {
+                if (!DUPLICATE_KEY_STATE.equals(e.getSQLState())) {
+                    log.warn("Could not insert batch: {}", e.getLocalizedMessage());
+                    throw ex;
+                }
+            }
+            updateCounts = ex.getUpdateCounts();
+        }
+        connection.commit();
+        metrics.recordCommit(System.nanoTime() - start);
+
+        int inserted = 0;
+        for (final int count : updateCounts) {
+            if (count != Statement.EXECUTE_FAILED) {
+                inserted++;
+            }
+        }
+        if (inserted < updateCounts.length) {
+            log.debug("Ignored {} duplicate rows", updateCounts.length - inserted);
+        }
+        return inserted;
+    }
+
     /**
      * Insert the data from the input file into the database. The data structure has been read and the database set up
      * already so this method simply reads the file and extracts the relevant information, storing it in the database.
      * @return the number of rows read
      */
     public abstract int insert();
+
+    @Setter
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    @Setter
+    private long offset = 0;
+    private static final int DEFAULT_BATCH_SIZE = 10000;
+    private static final int PROGRESS_ROWS = 10000;
+    private static final int MAX_LOGGED_REJECTIONS = 10;
+    private static final String DUPLICATE_KEY_STATE = "23505";
 }
@@ -20,7 +20,6 @@ import broadwick.config.generated.CustomTags;
 import broadwick.config.generated.DataFiles;
 import broadwick.data.DatabaseImpl;
 import com.google.common.base.Throwables;
-import java.sql.Connection;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
@@ -84,6 +83,11 @@ public class DirectedMovementsFileReader extends DataFileReader {
                                                 TABLE_NAME, ID));
         createIndexCommand.append(String.format(" CREATE INDEX IF NOT EXISTS IDX_DIR_MVMT_ALL ON %s (%s,%s,%s,%s);",
                                                 TABLE_NAME, ID, LOCATION_ID, MOVEMENT_DATE, MOVEMENT_DIRECTION));
+        // the date range queries (for all movements, and for the ON or OFF movements) are range scans of these.
+        createIndexCommand.append(String.format(" CREATE INDEX IF NOT EXISTS IDX_DIR_MVMT_DATE ON %s (%s,%s,%s);",
+                                                TABLE_NAME, MOVEMENT_DATE, MOVEMENT_DIRECTION, LOCATION_ID));
+        createIndexCommand.append(String.format(" CREATE INDEX IF NOT EXISTS IDX_DIR_MVMT_DIR_DATE ON %s (%s,%s,%s);",
+                                                TABLE_NAME, MOVEMENT_DIRECTION, MOVEMENT_DATE, LOCATION_ID));
 
         createTableCommand.append(createIndexCommand.toString());
 
@@ -107,10 +111,9 @@ public class DirectedMovementsFileReader extends DataFileReader {
         log.trace("DirectedMovementsFileReader insert");
 
         int inserted = 0;
-         try (Connection connection = database.getConnection()) {  
-         createTable(TABLE_NAME, createTableCommand.toString(), connection);
-
-         inserted = insert(connection, TABLE_NAME, insertString, dataFile, dateFormat,  insertedColInfo, dateFields);
+         try {
+             inserted = insert(database, TABLE_NAME, createTableCommand.toString(), insertString, dataFile, dateFormat,
+                               insertedColInfo, dateFields);
          } catch (Exception ex) {
             log.error("{}", ex.getLocalizedMessage());
             log.error("Error reading movement data. {}", Throwables.getStackTraceAsString(ex));
@@ -20,7 +20,6 @@ import broadwick.config.generated.CustomTags;
 import broadwick.config.generated.DataFiles;
 import broadwick.data.DatabaseImpl;
 import com.google.common.base.Throwables;
-import java.sql.Connection;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
@@ -97,10 +96,12 @@ public class FullMovementsFileReader extends DataFileReader {
 //                                                TABLE_NAME, ID));
         createIndexCommand.append(String.format(" CREATE INDEX IF NOT EXISTS IDX_FULL_MVMT_ALL ON %s (%s,%s,%s,%s,%s);",
                                                 TABLE_NAME, ID, DEPARTURE_ID, DEPARTURE_DATE, DESTINATION_ID, DESTINATION_DATE));
-        createIndexCommand.append(String.format(" CREATE INDEX IF NOT EXISTS IDX_FULL_MVMT_DEP ON %s (%s);",
-                                                TABLE_NAME, DEPARTURE_DATE));
-        createIndexCommand.append(String.format(" CREATE INDEX IF NOT EXISTS IDX_FULL_MVMT_DES ON %s (%s);",
-                                                TABLE_NAME, DESTINATION_DATE));
+        // the date range queries are range scans of these, the departure (destination) date being bounded on both
+        // sides for all and OFF (ON) movements.
+        createIndexCommand.append(String.format(" CREATE INDEX IF NOT EXISTS IDX_FULL_MVMT_DEP_DATE ON %s (%s,%s,%s);",
+                                                TABLE_NAME, DEPARTURE_DATE, DESTINATION_DATE, DEPARTURE_ID));
+        createIndexCommand.append(String.format(" CREATE INDEX IF NOT EXISTS IDX_FULL_MVMT_DES_DATE ON %s (%s,%s);",
+                                                TABLE_NAME, DESTINATION_DATE, DESTINATION_ID));
 
         createTableCommand.append(createIndexCommand.toString());
 
@@ -119,10 +120,9 @@ public class FullMovementsFileReader extends DataFileReader {
         log.trace("FullMovementsFileReader insert");
 
         int inserted = 0;
-         try (Connection connection = database.getConnection()) {  
-         createTable(TABLE_NAME, createTableCommand.toString(), connection);
-
-         inserted = insert(connection, TABLE_NAME, insertString, dataFile, dateFormat, insertedColInfo, dateFields);
+         try {
+             inserted = insert(database, TABLE_NAME, createTableCommand.toString(), insertString, dataFile, dateFormat,
+                               insertedColInfo, dateFields);
          } catch (Exception ex) {
             log.error("{}", ex.getLocalizedMessage());
             log.error("Error reading movement data. {}", Throwables.getStackTraceAsString(ex));
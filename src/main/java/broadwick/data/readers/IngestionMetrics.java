@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data.readers;
+
+/**
+ * The progress of reading a data file into the internal database. The metrics are updated by the thread reading the
+ * file (after each batch of rows) and may be read by any thread, e.g. over JMX or by the periodic progress log of the
+ * IngestionMonitor.
+ */
+public final class IngestionMetrics implements IngestionMetricsMXBean {
+
+    /**
+     * Create the metrics of a data file that is about to be read.
+     * @param fileName  the name of the data file.
+     * @param tableName the name of the table into which the file is read.
+     * @param fileSize  the size of the file in bytes, or -1 if it is not known.
+     */
+    IngestionMetrics(final String fileName, final String tableName, final long fileSize) {
+        this.fileName = fileName;
+        this.tableName = tableName;
+        this.fileSize = fileSize;
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Update the numbers of rows and bytes that have been read.
+     * @param rows      the number of rows read.
+     * @param inserted  the number of rows stored in the database.
+     * @param duplicate the number of duplicate rows.
+     * @param rejected  the number of rejected rows.
+     * @param bytes     the number of bytes of the file read.
+     */
+    void update(final long rows, final long inserted, final long duplicate, final long rejected, final long bytes) {
+        this.rowsRead = rows;
+        this.rowsInserted = inserted;
+        this.duplicateRows = duplicate;
+        this.rejectedRows = rejected;
+        this.bytesRead = bytes;
+    }
+
+    /**
+     * Record the time taken to execute and commit a batch of rows.
+     * @param nanos the time taken in nanoseconds.
+     */
+    void recordCommit(final long nanos) {
+        // only the thread reading the file updates the metrics.
+        commitTime += nanos;
+        maxCommitTime = Math.max(maxCommitTime, nanos);
+        commits++;
+    }
+
+    /**
+     * Record that the data file has been read.
+     */
+    void finish() {
+        endTime = System.nanoTime();
+        finished = true;
+    }
+
+    @Override
+    public String getFileName() {
+        return fileName;
+    }
+
+    @Override
+    public String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public double getPercentComplete() {
+        if (finished) {
+            return 100.0;
+        }
+        return fileSize > 0 ? Math.min(100.0, 100.0 * bytesRead / fileSize) : 0.0;
+    }
+
+    @Override
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    @Override
+    public long getRowsInserted() {
+        return rowsInserted;
+    }
+
+    @Override
+    public long getDuplicateRows() {
+        return duplicateRows;
+    }
+
+    @Override
+    public long getRejectedRows() {
+        return rejectedRows;
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        final double seconds = getElapsedSeconds();
+        return seconds > 0 ? rowsRead / seconds : 0.0;
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        final double seconds = getElapsedSeconds();
+        return seconds > 0 ? bytesRead / seconds : 0.0;
+    }
+
+    @Override
+    public long getCommits() {
+        return commits;
+    }
+
+    @Override
+    public double getMeanCommitMillis() {
+        final long numCommits = commits;
+        return numCommits > 0 ? commitTime / (numCommits * NANOS_PER_MILLI) : 0.0;
+    }
+
+    @Override
+    public double getMaxCommitMillis() {
+        return maxCommitTime / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getElapsedSeconds() {
+        return ((finished ? endTime : System.nanoTime()) - startTime) / (1000 * NANOS_PER_MILLI);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s: %.1f%% of %s read in %.0f s, %d rows (%.0f rows/s, %.2f MB/s)", fileName,
+                                getPercentComplete(), fileSize < 0 ? "?" : String.format("%.1f MB", fileSize / 1e6),
+                                getElapsedSeconds(), rowsRead, getRowsPerSecond(), getBytesPerSecond() / 1e6));
+        sb.append(String.format(", %d inserted into %s, %d duplicate, %d rejected", rowsInserted, tableName,
+                                duplicateRows, rejectedRows));
+        if (commits > 0) {
+            sb.append(String.format(", %d commits (mean %.1f ms, max %.1f ms)", commits, getMeanCommitMillis(),
+                                    getMaxCommitMillis()));
+        }
+        return sb.toString();
+    }
+
+    private final String fileName;
+    private final String tableName;
+    private final long fileSize;
+    private final long startTime;
+    private volatile long endTime;
+    private volatile boolean finished = false;
+    private volatile long rowsRead = 0;
+    private volatile long rowsInserted = 0;
+    private volatile long duplicateRows = 0;
+    private volatile long rejectedRows = 0;
+    private volatile long bytesRead = 0;
+    private volatile long commits = 0;
+    private volatile long commitTime = 0;
+    private volatile long maxCommitTime = 0;
+    private static final double NANOS_PER_MILLI = 1e6;
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data.readers;
+
+/**
+ * The progress of reading a data file into the internal database, as published over JMX (under the
+ * broadwick.data:type=Ingestion domain) by the IngestionMonitor.
+ */
+public interface IngestionMetricsMXBean {
+
+    /**
+     * Get the name of the data file.
+     * @return the name of the file.
+     */
+    String getFileName();
+
+    /**
+     * Get the name of the table into which the file is read.
+     * @return the name of the table.
+     */
+    String getTableName();
+
+    /**
+     * Get the size of the data file.
+     * @return the size of the file in bytes, or -1 if it is not known.
+     */
+    long getFileSize();
+
+    /**
+     * Get the number of bytes of the data file that have been read.
+     * @return the number of bytes read (including any skipped at the start of the file).
+     */
+    long getBytesRead();
+
+    /**
+     * Get how much of the data file has been read.
+     * @return the percentage of the file that has been read.
+     */
+    double getPercentComplete();
+
+    /**
+     * Get the number of rows that have been read from the data file.
+     * @return the number of rows read.
+     */
+    long getRowsRead();
+
+    /**
+     * Get the number of rows that have been stored in the database.
+     * @return the number of rows inserted.
+     */
+    long getRowsInserted();
+
+    /**
+     * Get the number of rows that were ignored or replaced by a later row because they duplicate existing data.
+     * @return the number of duplicate rows.
+     */
+    long getDuplicateRows();
+
+    /**
+     * Get the number of rows that were rejected because they could not be read (e.g. a missing column or a date in the
+     * wrong format).
+     * @return the number of rejected rows.
+     */
+    long getRejectedRows();
+
+    /**
+     * Get the average rate at which rows have been read from the data file.
+     * @return the number of rows read per second.
+     */
+    double getRowsPerSecond();
+
+    /**
+     * Get the average rate at which the data file has been read.
+     * @return the number of bytes read per second.
+     */
+    double getBytesPerSecond();
+
+    /**
+     * Get the number of batches of rows that have been committed to the database.
+     * @return the number of commits.
+     */
+    long getCommits();
+
+    /**
+     * Get the mean time taken to execute and commit a batch of rows.
+     * @return the mean commit latency in milliseconds.
+     */
+    double getMeanCommitMillis();
+
+    /**
+     * Get the longest time taken to execute and commit a batch of rows.
+     * @return the maximum commit latency in milliseconds.
+     */
+    double getMaxCommitMillis();
+
+    /**
+     * Get the time spent reading the data file.
+     * @return the time in seconds since reading started (until it finished).
+     */
+    double getElapsedSeconds();
+
+    /**
+     * Check if the data file has been read.
+     * @return true if reading the file has finished.
+     */
+    boolean isFinished();
+}
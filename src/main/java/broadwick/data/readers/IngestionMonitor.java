@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data.readers;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the metrics of the data files read into the internal database, so that the progress of reading large files
+ * can be followed. The metrics of each file are available from getMetrics(), are registered as an MXBean named
+ * broadwick.data:type=Ingestion,table=[table],file=[file] while the file is being read (it is unregistered once the
+ * rows read from the file have been logged) and, while any file is being read, are logged at INFO every logInterval
+ * seconds. The metrics of the last read of each file are kept until the file is read again.
+ */
+@Slf4j
+public final class IngestionMonitor {
+
+    /**
+     * Hidden constructor.
+     */
+    private IngestionMonitor() {
+    }
+
+    /**
+     * Get the metrics of the data files that are being, or have been, read.
+     * @return the metrics of each file in the order in which the files started to be read.
+     */
+    public static List<IngestionMetrics> getMetrics() {
+        synchronized (METRICS) {
+            return new ArrayList<>(METRICS.values());
+        }
+    }
+
+    /**
+     * Get the metrics of a data file.
+     * @param fileName the name of the data file.
+     * @return the metrics of the last read of the file, or null if the file has not been read.
+     */
+    public static IngestionMetrics getMetrics(final String fileName) {
+        synchronized (METRICS) {
+            return METRICS.get(fileName);
+        }
+    }
+
+    /**
+     * Set the interval at which the progress of the files being read is logged.
+     * @param seconds the interval in seconds, 0 to stop logging progress.
+     */
+    public static synchronized void setLogInterval(final long seconds) {
+        logInterval = Math.max(0, seconds);
+        if (progressLog != null) {
+            progressLog.cancel(false);
+            progressLog = null;
+        }
+        if (reading > 0) {
+            scheduleProgressLog();
+        }
+    }
+
+    /**
+     * Start monitoring a data file that is about to be read.
+     * @param fileName  the name of the data file.
+     * @param tableName the name of the table into which the file is read.
+     * @param fileSize  the size of the file in bytes, or -1 if it is not known.
+     * @return the metrics of the file, to be updated as the file is read.
+     */
+    static IngestionMetrics start(final String fileName, final String tableName, final long fileSize) {
+        final IngestionMetrics metrics = new IngestionMetrics(fileName, tableName, fileSize);
+        synchronized (METRICS) {
+            METRICS.remove(fileName);
+            METRICS.put(fileName, metrics);
+        }
+        register(metrics);
+        synchronized (IngestionMonitor.class) {
+            if (reading++ == 0) {
+                scheduleProgressLog();
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Record that a data file has been read.
+     * @param metrics the metrics of the file.
+     */
+    static void finish(final IngestionMetrics metrics) {
+        metrics.finish();
+        synchronized (IngestionMonitor.class) {
+            if (--reading == 0 && progressLog != null) {
+                progressLog.cancel(false);
+                progressLog = null;
+            }
+        }
+    }
+
+    /**
+     * Stop publishing the metrics of a data file that has been read with the platform MBean server, unless the file
+     * is being read again. The metrics are still available from getMetrics().
+     * @param metrics the metrics of the file.
+     */
+    static void unregister(final IngestionMetrics metrics) {
+        synchronized (METRICS) {
+            if (METRICS.get(metrics.getFileName()) != metrics) {
+                // the MXBean belongs to a later read of the file.
+                return;
+            }
+            try {
+                final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                final ObjectName name = getObjectName(metrics);
+                synchronized (server) {
+                    if (server.isRegistered(name)) {
+                        server.unregisterMBean(name);
+                    }
+                }
+            } catch (JMException | SecurityException e) {
+                log.debug("Could not unregister the ingestion metrics of {} from JMX. {}", metrics.getFileName(),
+                          e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Register the metrics of a data file with the platform MBean server, replacing those of an earlier read of the
+     * same file. JMX is only used for monitoring so a failure to register the metrics is not an error.
+     * @param metrics the metrics of the file.
+     */
+    private static void register(final IngestionMetrics metrics) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getObjectName(metrics);
+            synchronized (server) {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(metrics, name);
+            }
+        } catch (JMException | SecurityException e) {
+            log.debug("Could not register the ingestion metrics of {} with JMX. {}", metrics.getFileName(),
+                      e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Get the name of the MXBean of the metrics of a data file.
+     * @param metrics the metrics of the file.
+     * @return the name of the MXBean.
+     * @throws JMException if the name is invalid.
+     */
+    private static ObjectName getObjectName(final IngestionMetrics metrics) throws JMException {
+        return new ObjectName(String.format("broadwick.data:type=Ingestion,table=%s,file=%s",
+                                            ObjectName.quote(metrics.getTableName()),
+                                            ObjectName.quote(metrics.getFileName())));
+    }
+
+    /**
+     * Schedule the periodic log of the progress of the files being read, if it is enabled.
+     */
+    private static void scheduleProgressLog() {
+        if (logInterval > 0) {
+            progressLog = SCHEDULER.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    for (final IngestionMetrics metrics : getMetrics()) {
+                        if (!metrics.isFinished()) {
+                            log.info("Reading {}", metrics);
+                        }
+                    }
+                }
+            }, logInterval, logInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    private static final long DEFAULT_LOG_INTERVAL = 30;
+    private static final Map<String, IngestionMetrics> METRICS = new LinkedHashMap<>();
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("IngestionMonitor-%d").setDaemon(true).build());
+    private static ScheduledFuture<?> progressLog = null;
+    private static long logInterval = DEFAULT_LOG_INTERVAL;
+    private static int reading = 0;
+}
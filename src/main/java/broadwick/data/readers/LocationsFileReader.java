@@ -20,7 +20,6 @@ import broadwick.config.generated.CustomTags;
 import broadwick.config.generated.DataFiles;
 import broadwick.data.DatabaseImpl;
 import com.google.common.base.Throwables;
-import java.sql.Connection;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
@@ -94,10 +93,9 @@ public class LocationsFileReader extends DataFileReader {
         log.trace("LocationsFileReader insert");
 
         int inserted = 0;
-        try (Connection connection = database.getConnection()) {
-            createTable(TABLE_NAME, createTableCommand.toString(), connection);
-
-            inserted = insert(connection, TABLE_NAME, insertString, dataFile, dateFormat, insertedColInfo, dateFields);
+        try {
+            inserted = insert(database, TABLE_NAME, createTableCommand.toString(), insertString, dataFile, dateFormat,
+                              insertedColInfo, dateFields);
         } catch (Exception ex) {
             log.error("{}", ex.getLocalizedMessage());
             log.error("Error reading location data. {}", Throwables.getStackTraceAsString(ex));
@@ -20,7 +20,6 @@ import broadwick.config.generated.CustomTags;
 import broadwick.config.generated.DataFiles;
 import broadwick.data.DatabaseImpl;
 import com.google.common.base.Throwables;
-import java.sql.Connection;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
@@ -195,10 +194,9 @@ public class PopulationsFileReader extends DataFileReader {
         log.trace("PopulationFileReader insert");
 
         int inserted = 0;
-        try (Connection connection = database.getConnection()) {
-            createTable(tableName, createTableCommand.toString(), connection);
-
-            inserted = insert(connection, tableName, insertString, dataFile, dateFormat, insertedColInfo, dateFields);
+        try {
+            inserted = insert(database, tableName, createTableCommand.toString(), insertString, dataFile, dateFormat,
+                              insertedColInfo, dateFields);
         } catch (Exception ex) {
             log.error("Error reading population data {}. {}", ex.getLocalizedMessage(), Throwables.getStackTraceAsString(ex));
             throw new BroadwickException(ex);
@@ -214,7 +212,7 @@ public class PopulationsFileReader extends DataFileReader {
     private final Map<String, Integer> insertedColInfo;
     private final Collection<Integer> dateFields;
     private final DataFiles.PopulationFile populationFile;
-    private static String tableName;
+    private String tableName;
     @Getter
     private static final String ID = "ID";
     private static final String LOCATION = "LOCATION";
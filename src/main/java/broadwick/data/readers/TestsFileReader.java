@@ -20,7 +20,6 @@ import broadwick.config.generated.CustomTags;
 import broadwick.config.generated.DataFiles;
 import broadwick.data.DatabaseImpl;
 import com.google.common.base.Throwables;
-import java.sql.Connection;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
@@ -116,10 +115,9 @@ public class TestsFileReader extends DataFileReader {
         log.trace("TestsFileReader insert");
 
         int inserted = 0;
-        try (Connection connection = database.getConnection()) {
-            createTable(TABLE_NAME, createTableCommand.toString(), connection);
-
-            inserted = insert(connection, TABLE_NAME, insertString, dataFile, dateFormat, insertedColInfo, dateFields);
+        try {
+            inserted = insert(database, TABLE_NAME, createTableCommand.toString(), insertString, dataFile, dateFormat,
+                              insertedColInfo, dateFields);
         } catch (Exception ex) {
             log.error("Error reading test data {}. {}", ex.getLocalizedMessage(), Throwables.getStackTraceAsString(ex));
             throw new BroadwickException(ex);
@@ -17,20 +17,31 @@ package broadwick.io;
 
 import com.google.common.base.Splitter;
 import com.google.common.base.Throwables;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Simple interface for reading from a file. It simply wraps the java io classes to simplify the input of data.
+ * Simple interface for reading from a file. It simply wraps the java io classes to simplify the input of data. Files
+ * compressed with gzip or zip (identified by their extension or, failing that, their first bytes) are decompressed as
+ * they are read, on a separate thread so that decompressing and parsing the file overlap.
  */
 @Slf4j
 public class FileInput implements AutoCloseable {
@@ -63,9 +74,123 @@ public class FileInput implements AutoCloseable {
      */
     public FileInput(final String dataFileName, final String sep, final Charset encoding) throws IOException {
         fieldSep = Pattern.compile(sep);
+        separators = toSeparatorChars(sep);
         fileEncoding = encoding;
         path = Paths.get(dataFileName.replace(" ", "\\ "));
-        reader = Files.newBufferedReader(path, fileEncoding);
+        input = new CountingInputStream(Files.newInputStream(path));
+        reader = new BufferedReader(new InputStreamReader(decompress(input, path), fileEncoding.newDecoder()));
+    }
+
+    /**
+     * Open a handle to a file with the given name, starting to read at a given byte offset (e.g. to read only the lines
+     * that have been appended to a file since it was last read). The offset should be the start of a line or, for a
+     * gzip file, the start of a gzip member.
+     * @param dataFileName the name of the file.
+     * @param sep          The single char for the separator (not a list of separator characters).
+     * @param offset       the number of bytes at the start of the file that are skipped.
+     * @throws IOException if the resource can't be found or the offset is beyond the end of the file.
+     */
+    public FileInput(final String dataFileName, final String sep, final long offset) throws IOException {
+        fieldSep = Pattern.compile(sep);
+        separators = toSeparatorChars(sep);
+        fileEncoding = DEFAULT_ENCODING;
+        path = Paths.get(dataFileName.replace(" ", "\\ "));
+        final InputStream stream = Files.newInputStream(path);
+        try {
+            ByteStreams.skipFully(stream, offset);
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+        skipped = offset;
+        input = new CountingInputStream(stream);
+        reader = new BufferedReader(new InputStreamReader(decompress(input, path), fileEncoding.newDecoder()));
+    }
+
+    /**
+     * Check if a file is compressed, i.e. whether it will be decompressed as it is read.
+     * @param dataFileName the name of the file.
+     * @return true if the file is compressed with gzip or zip.
+     * @throws IOException if the file can't be read.
+     */
+    public static boolean isCompressed(final String dataFileName) throws IOException {
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(Paths.get(dataFileName)))) {
+            return getCompression(stream, Paths.get(dataFileName)) != null;
+        }
+    }
+
+    /**
+     * Get the number of bytes of the file that have been read, including any skipped at the start of the file. The
+     * file is decoded (and decompressed) in blocks so this is ahead of the position of the last line returned, it is
+     * intended to measure progress through the file. For a compressed file this is the number of compressed bytes.
+     * @return the number of bytes read.
+     */
+    public final long getBytesRead() {
+        return skipped + (input == null ? 0 : input.getCount());
+    }
+
+    /**
+     * Wrap the stream of a file in a stream that decompresses it, on a separate thread, if the file is compressed.
+     * Only the first entry of a zip file is read.
+     * @param stream the stream of (the rest of) the file.
+     * @param file   the file.
+     * @return the stream of the decompressed file, or of the file itself if it is not compressed.
+     * @throws IOException if the compressed file cannot be read.
+     */
+    private static InputStream decompress(final InputStream stream, final Path file) throws IOException {
+        final BufferedInputStream buffered = new BufferedInputStream(stream, COMPRESSED_BUFFER_SIZE);
+        try {
+            final String compression = getCompression(buffered, file);
+            if (compression == null) {
+                return buffered;
+            }
+            InputStream decompressed;
+            if (GZIP.equals(compression)) {
+                decompressed = new GZIPInputStream(buffered, COMPRESSED_BUFFER_SIZE);
+            } else {
+                final ZipInputStream zip = new ZipInputStream(buffered);
+                if (zip.getNextEntry() == null) {
+                    log.warn("{} is an empty zip file.", file.getFileName());
+                }
+                decompressed = zip;
+            }
+            log.debug("Decompressing {} ({}).", file.getFileName(), compression);
+            return new ReadAheadInputStream(decompressed, file.getFileName().toString(), READ_AHEAD_BUFFER_SIZE,
+                                           READ_AHEAD_BUFFERS);
+        } catch (IOException e) {
+            buffered.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Find how a file is compressed, from the extension of its name or, if that is not a compressed file extension,
+     * from its first few bytes. The stream is reset to where it was before the bytes were read.
+     * @param stream the stream of the file, which must support mark() and reset().
+     * @param file   the file.
+     * @return "gzip" or "zip" for compressed files, or null if the file is not compressed.
+     * @throws IOException if the file can't be read.
+     */
+    private static String getCompression(final InputStream stream, final Path file) throws IOException {
+        final String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz") || name.endsWith(".gzip")) {
+            return GZIP;
+        }
+        if (name.endsWith(".zip")) {
+            return ZIP;
+        }
+
+        final byte[] magic = new byte[4];
+        stream.mark(magic.length);
+        final int read = ByteStreams.read(stream, magic, 0, magic.length);
+        stream.reset();
+        if (read >= 2 && (magic[0] & 0xff) == GZIP_MAGIC[0] && (magic[1] & 0xff) == GZIP_MAGIC[1]) {
+            return GZIP;
+        }
+        if (read == magic.length && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+            return ZIP;
+        }
+        return null;
     }
 
     /**
@@ -103,6 +228,86 @@ public class FileInput implements AutoCloseable {
         return tokens;
     }
 
+    /**
+     * Read the next (non-comment) line from the input file and split it into tokens in the same way as readLine(), but
+     * without creating a String for the line or for each token. The returned row refers to an internal buffer and is
+     * reused by the next call to this method. As this method reads ahead into its own buffer it should not be mixed
+     * with the other read methods on the same object.
+     * @return the row, or null if the end of the file has been reached.
+     * @throws IOException if a line cannot be read, e.g if the object was closed.
+     */
+    public final FileInputRow readRow() throws IOException {
+        if (separators == null) {
+            // we can't scan for the separator regular expression so tokenise the line as readLine() does and copy the
+            // tokens to the buffer.
+            final List<String> tokens = readLine();
+            if (tokens.isEmpty()) {
+                return null;
+            }
+            int length = 0;
+            for (final String token : tokens) {
+                length += token.length();
+            }
+            if (buffer.length < length) {
+                buffer = new char[length];
+            }
+            row.reset(buffer);
+            int pos = 0;
+            for (final String token : tokens) {
+                token.getChars(0, token.length(), buffer, pos);
+                row.addField(pos, pos + token.length());
+                pos += token.length();
+            }
+            return row;
+        }
+
+        try {
+            while (true) {
+                // find the end of the next line, reading more of the file into the buffer as required.
+                int lineStart = position;
+                int scan = position;
+                boolean endOfFile = false;
+                while (!endOfFile && (scan == limit || (buffer[scan] != '\n' && buffer[scan] != '\r'))) {
+                    if (scan < limit) {
+                        scan++;
+                    } else {
+                        if (lineStart > 0) {
+                            System.arraycopy(buffer, lineStart, buffer, 0, limit - lineStart);
+                            scan -= lineStart;
+                            limit -= lineStart;
+                            lineStart = 0;
+                        }
+                        if (limit == buffer.length) {
+                            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                        }
+                        final int read = reader.read(buffer, limit, buffer.length - limit);
+                        if (read < 0) {
+                            endOfFile = true;
+                        } else {
+                            limit += read;
+                        }
+                    }
+                }
+                position = endOfFile ? scan : scan + 1;
+
+                if (endOfFile && scan == lineStart) {
+                    return null;
+                }
+                // empty lines (including the second terminator of a \r\n pair) and comment lines are skipped.
+                if (scan > lineStart && buffer[lineStart] != COMMENT_CHAR) {
+                    tokeniseRow(lineStart, scan);
+                    return row;
+                }
+            }
+        } catch (IOException e) {
+            final StringBuilder sb = new StringBuilder("Unable to read from ");
+            sb.append(path.getFileName()).append(", Reason : ").append(e.getLocalizedMessage());
+            log.error(sb.toString());
+            sb.append("\n").append(Throwables.getStackTraceAsString(e));
+            throw new IOException(sb.toString());
+        }
+    }
+
     /**
      * Get the next (non-comment) line from the file.
      * @return a string of the next non-comment line in the file.
@@ -168,6 +373,109 @@ public class FileInput implements AutoCloseable {
         return tokens;
     }
 
+    /**
+     * Split a line in the buffer into the fields of the row; the line is trimmed, anything after a comment character
+     * is ignored and each token is trimmed, as in tokeniseLine().
+     * @param lineStart the index in the buffer of the first character of the line.
+     * @param lineEnd   the index in the buffer after the last character of the line.
+     */
+    private void tokeniseRow(final int lineStart, final int lineEnd) {
+        int start = lineStart;
+        int end = lineEnd;
+        while (start < end && buffer[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buffer[end - 1] <= ' ') {
+            end--;
+        }
+        for (int i = start + 1; i < end; i++) {
+            if (buffer[i] == COMMENT_CHAR) {
+                end = i;
+                break;
+            }
+        }
+
+        row.reset(buffer);
+        int fieldStart = start;
+        for (int i = start; i < end; i++) {
+            if (isSeparator(buffer[i])) {
+                addTrimmedField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        addTrimmedField(fieldStart, end);
+    }
+
+    /**
+     * Add a field to the row, ignoring any leading or trailing whitespace.
+     * @param start the index in the buffer of the first character of the field.
+     * @param end   the index in the buffer after the last character of the field.
+     */
+    private void addTrimmedField(final int start, final int end) {
+        int first = start;
+        int last = end;
+        while (first < last && buffer[first] <= ' ') {
+            first++;
+        }
+        while (last > first && buffer[last - 1] <= ' ') {
+            last--;
+        }
+        row.addField(first, last);
+    }
+
+    /**
+     * Check if a character is one of the field separators.
+     * @param c the character.
+     * @return true if the character separates fields.
+     */
+    private boolean isSeparator(final char c) {
+        for (final char separator : separators) {
+            if (c == separator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the characters that are matched by a separator, if the separator is a single character or a simple set of
+     * characters (e.g. "," or "[\\s,]"). Any other regular expression cannot be scanned for character by character.
+     * @param sep the separator regular expression.
+     * @return the characters matched by the separator, or null if the separator is not a simple set of characters.
+     */
+    private static char[] toSeparatorChars(final String sep) {
+        if (sep.length() == 1 && REGEX_META_CHARS.indexOf(sep.charAt(0)) < 0) {
+            return new char[]{sep.charAt(0)};
+        }
+        if ("\\t".equals(sep)) {
+            return new char[]{'\t'};
+        }
+        if (sep.length() > 2 && sep.charAt(0) == '[' && sep.charAt(sep.length() - 1) == ']') {
+            final StringBuilder chars = new StringBuilder();
+            for (int i = 1; i < sep.length() - 1; i++) {
+                final char c = sep.charAt(i);
+                if (c == '\\' && i + 1 < sep.length() - 1) {
+                    final char escaped = sep.charAt(++i);
+                    if (escaped == 's') {
+                        chars.append(" \t\n\u000B\f\r");
+                    } else if (escaped == 't') {
+                        chars.append('\t');
+                    } else if (!Character.isLetterOrDigit(escaped)) {
+                        chars.append(escaped);
+                    } else {
+                        return null;
+                    }
+                } else if (c == '^' || c == '-' || c == '[' || c == '&' || c == '\\') {
+                    return null;
+                } else {
+                    chars.append(c);
+                }
+            }
+            return chars.toString().toCharArray();
+        }
+        return null;
+    }
+
     @Override
     public final void close() {
         try {
@@ -188,10 +496,25 @@ public class FileInput implements AutoCloseable {
     
     private Path path;
     protected BufferedReader reader;
+    private CountingInputStream input;
+    private long skipped = 0;
     private Pattern fieldSep;
+    private char[] separators;
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private final FileInputRow row = new FileInputRow();
     private Charset fileEncoding;
     private static final String DEFAULT_SEP = "[\\s,]";
     private static final Charset DEFAULT_ENCODING = StandardCharsets.UTF_8;
     private static final char COMMENT_CHAR = '#';
+    private static final int BUFFER_SIZE = 65536;
+    private static final String REGEX_META_CHARS = ".$|()[]{}^?*+\\";
+    private static final String GZIP = "gzip";
+    private static final String ZIP = "zip";
+    private static final int[] GZIP_MAGIC = {0x1f, 0x8b};
+    private static final int COMPRESSED_BUFFER_SIZE = 65536;
+    private static final int READ_AHEAD_BUFFER_SIZE = 1 << 20;
+    private static final int READ_AHEAD_BUFFERS = 8;
 
 }
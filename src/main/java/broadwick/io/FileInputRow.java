@@ -0,0 +1,271 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.io;
+
+import broadwick.utils.DateConverter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A view of the tokens of a single line of a file read by FileInput.readRow(). The row does not copy the line, it
+ * records where each field starts and ends in the buffer of the FileInput object, so fields can be accessed by index
+ * in constant time and converted to ints, doubles or dates without creating a String. The row (and the buffer it
+ * refers to) is reused by the FileInput object; it is only valid until the next call to readRow(), use getString() or
+ * toList() to keep the values.
+ */
+public final class FileInputRow {
+
+    /**
+     * Create an empty row.
+     */
+    FileInputRow() {
+        this.starts = new int[INITIAL_FIELDS];
+        this.ends = new int[INITIAL_FIELDS];
+    }
+
+    /**
+     * Clear the row so that it can hold the fields of a new line.
+     * @param buffer the buffer containing the line.
+     */
+    void reset(final char[] buffer) {
+        this.chars = buffer;
+        this.numFields = 0;
+    }
+
+    /**
+     * Add a field to the row.
+     * @param start the index in the buffer of the first character of the field.
+     * @param end   the index in the buffer after the last character of the field.
+     */
+    void addField(final int start, final int end) {
+        if (numFields == starts.length) {
+            final int[] newStarts = new int[2 * starts.length];
+            final int[] newEnds = new int[2 * ends.length];
+            System.arraycopy(starts, 0, newStarts, 0, numFields);
+            System.arraycopy(ends, 0, newEnds, 0, numFields);
+            starts = newStarts;
+            ends = newEnds;
+        }
+        starts[numFields] = start;
+        ends[numFields] = end;
+        numFields++;
+    }
+
+    /**
+     * Get the number of fields in the row.
+     * @return the number of fields.
+     */
+    public int size() {
+        return numFields;
+    }
+
+    /**
+     * Check if a field is empty.
+     * @param index the (zero based) index of the field.
+     * @return true if the field contains no characters.
+     */
+    public boolean isEmpty(final int index) {
+        checkIndex(index);
+        return starts[index] == ends[index];
+    }
+
+    /**
+     * Get the number of characters in a field.
+     * @param index the (zero based) index of the field.
+     * @return the length of the field.
+     */
+    public int getLength(final int index) {
+        checkIndex(index);
+        return ends[index] - starts[index];
+    }
+
+    /**
+     * Get the value of a field as a string, this creates a new String object.
+     * @param index the (zero based) index of the field.
+     * @return the value of the field.
+     */
+    public String getString(final int index) {
+        checkIndex(index);
+        return new String(chars, starts[index], ends[index] - starts[index]);
+    }
+
+    /**
+     * Get the value of a field as a CharSequence. The same (mutable) object is returned by every call and refers to the
+     * buffer of the FileInput object so it must not be kept.
+     * @param index the (zero based) index of the field.
+     * @return the value of the field.
+     */
+    public CharSequence getChars(final int index) {
+        checkIndex(index);
+        field.set(starts[index], ends[index]);
+        return field;
+    }
+
+    /**
+     * Get the value of a field as an int.
+     * @param index the (zero based) index of the field.
+     * @return the value of the field.
+     * @throws NumberFormatException if the field is not an int.
+     */
+    public int getInt(final int index) {
+        checkIndex(index);
+        int pos = starts[index];
+        final int end = ends[index];
+        final boolean negative = pos < end && chars[pos] == '-';
+        if (pos < end && (chars[pos] == '-' || chars[pos] == '+')) {
+            pos++;
+        }
+        // up to 9 digits cannot overflow an int, anything longer (or invalid) is left to Integer.parseInt
+        if (pos == end || end - pos > 9) {
+            return Integer.parseInt(getString(index));
+        }
+        int value = 0;
+        for (; pos < end; pos++) {
+            final int digit = chars[pos] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(getString(index));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Get the value of a field as a double. Plain decimal numbers (e.g. -12.345) with up to 15 significant digits are
+     * converted directly (the result is exact as the digits and the power of ten are both exactly representable),
+     * anything else is converted by Double.parseDouble().
+     * @param index the (zero based) index of the field.
+     * @return the value of the field.
+     * @throws NumberFormatException if the field is not a double.
+     */
+    public double getDouble(final int index) {
+        checkIndex(index);
+        int pos = starts[index];
+        final int end = ends[index];
+        final boolean negative = pos < end && chars[pos] == '-';
+        if (pos < end && (chars[pos] == '-' || chars[pos] == '+')) {
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; pos < end; pos++) {
+            final char c = chars[pos];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                break;
+            }
+        }
+        if (pos < end || digits == 0 || digits > 15) {
+            return Double.parseDouble(getString(index));
+        }
+        final double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Get the value of a field as a date (the number of days from 1/1/1900).
+     * @param index     the (zero based) index of the field.
+     * @param converter the converter for the format of the date.
+     * @return the number of days from the 'zero date'.
+     */
+    public int getDate(final int index, final DateConverter converter) {
+        return converter.toDays(getChars(index));
+    }
+
+    /**
+     * Copy the fields of the row to a list of strings, as returned by FileInput.readLine().
+     * @return a list of the values of the fields.
+     */
+    public List<String> toList() {
+        final List<String> tokens = new ArrayList<>(numFields);
+        for (int i = 0; i < numFields; i++) {
+            tokens.add(getString(i));
+        }
+        return tokens;
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    /**
+     * Check that a field exists in the row.
+     * @param index the (zero based) index of the field.
+     */
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= numFields) {
+            throw new IndexOutOfBoundsException(String.format("Field %d requested from a row of %d fields.",
+                                                              index, numFields));
+        }
+    }
+
+    /**
+     * A reusable CharSequence view of a field in the buffer.
+     */
+    private final class Field implements CharSequence {
+
+        /**
+         * Point the view at a field.
+         * @param start the index in the buffer of the first character of the field.
+         * @param end   the index in the buffer after the last character of the field.
+         */
+        private void set(final int start, final int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            return chars[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(final int from, final int to) {
+            return new String(chars, start + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, start, end - start);
+        }
+
+        private int start;
+        private int end;
+    }
+
+    private char[] chars;
+    private int[] starts;
+    private int[] ends;
+    private int numFields;
+    private final Field field = new Field();
+    private static final int INITIAL_FIELDS = 16;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+                                                   1e12, 1e13, 1e14, 1e15};
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.io;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * An input stream that reads its source on a separate thread into a fixed set of buffers, so that the work done in
+ * reading the source (e.g. decompressing a file) overlaps with the work done by the reader of this stream (e.g. parsing
+ * the decompressed lines). The source is closed by the reading thread once it has been read or this stream has been
+ * closed. The reading thread is never interrupted, as interrupting a thread that reads a file channel closes it.
+ */
+@Slf4j
+final class ReadAheadInputStream extends InputStream {
+
+    /**
+     * Start reading a source stream.
+     * @param source     the stream to be read.
+     * @param name       the name of the source, for error messages.
+     * @param bufferSize the size of each buffer.
+     * @param numBuffers the number of buffers, i.e. the number of reads that can be made ahead of the reader.
+     */
+    ReadAheadInputStream(final InputStream source, final String name, final int bufferSize, final int numBuffers) {
+        this.source = source;
+        this.name = name;
+        free = new ArrayBlockingQueue<>(numBuffers);
+        filled = new ArrayBlockingQueue<>(numBuffers + 1);
+        for (int i = 0; i < numBuffers; i++) {
+            free.add(new Buffer(bufferSize));
+        }
+        READERS.execute(new Runnable() {
+            @Override
+            public void run() {
+                readSource();
+            }
+        });
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        final int n = read(b, 0, 1);
+        return n < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (current != null && current.position == current.length) {
+            free.add(current);
+            current = null;
+        }
+        if (current == null) {
+            current = nextBuffer();
+            if (current == END) {
+                current = null;
+                if (error != null) {
+                    throw new IOException(String.format("Could not read %s. %s", name, error.getLocalizedMessage()),
+                                          error);
+                }
+                return -1;
+            }
+        }
+        final int n = Math.min(len, current.length - current.position);
+        System.arraycopy(current.data, current.position, b, off, n);
+        current.position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - current.position;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            // discard the unread buffers, the reading thread sees that the stream is closed when it next looks for a
+            // free buffer, and wait for it to close the source.
+            filled.clear();
+            free.clear();
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Wait for the reading thread to fill the next buffer.
+     * @return the buffer, or END if the whole of the source has been read.
+     * @throws IOException if the wait is interrupted.
+     */
+    private Buffer nextBuffer() throws IOException {
+        if (endOfSource) {
+            return END;
+        }
+        try {
+            final Buffer buffer = filled.take();
+            endOfSource = buffer == END;
+            return buffer;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(String.format("Interrupted while reading %s", name), e);
+        }
+    }
+
+    /**
+     * Read the source into the free buffers until it has all been read, it cannot be read or this stream is closed.
+     */
+    private void readSource() {
+        try {
+            while (!closed) {
+                final Buffer buffer = free.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (buffer != null) {
+                    buffer.length = ByteStreams.read(source, buffer.data, 0, buffer.data.length);
+                    buffer.position = 0;
+                    if (buffer.length == 0) {
+                        break;
+                    }
+                    filled.add(buffer);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            error = e;
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                source.close();
+            } catch (IOException e) {
+                log.error("Failed to close {}.", name);
+            }
+            filled.add(END);
+            finished.countDown();
+        }
+    }
+
+    /**
+     * A buffer of bytes read from the source.
+     */
+    private static final class Buffer {
+
+        /**
+         * Create the buffer.
+         * @param size the size of the buffer.
+         */
+        private Buffer(final int size) {
+            data = new byte[size];
+        }
+        private final byte[] data;
+        private int length;
+        private int position;
+    }
+
+    private final InputStream source;
+    private final String name;
+    private final BlockingQueue<Buffer> free;
+    private final BlockingQueue<Buffer> filled;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private Buffer current = null;
+    private boolean endOfSource = false;
+    private volatile boolean closed = false;
+    private volatile Exception error = null;
+    private static final Buffer END = new Buffer(0);
+    private static final long POLL_INTERVAL = 100;
+    private static final ExecutorService READERS = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("FileInput-%d").setDaemon(true).build());
+}
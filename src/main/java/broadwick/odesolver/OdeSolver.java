@@ -15,19 +15,15 @@
  */
 package broadwick.odesolver;
 
-import com.google.common.collect.Table;
-import com.google.common.collect.TreeBasedTable;
+import broadwick.utils.ThetaQueue;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import lombok.Getter;
 import lombok.Setter;
-import lombok.Synchronized;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
@@ -49,7 +45,7 @@ public abstract class OdeSolver {
         this.independentVariableStart = tStart;
         this.independentVariableEnd = tEnd;
         this.stepSize = stepSize;
-        this.thetaQueue = new ThetaQueue();
+        this.thetaQueue = new ThetaQueue<>();
 
         dependentVariables = new ArrayList<>(ode.getInitialValues());
         log.debug("Created ODE solver");
@@ -78,6 +74,15 @@ public abstract class OdeSolver {
         thetaQueue.pushTheta(thetaTime, obs, event);
     }
 
+    /**
+     * Register a number of theta events at once.
+     * @param obs    the observers which is registering.
+     * @param thetas the theta events, keyed by the time at which they occur.
+     */
+    public final void registerNewThetas(final Observer obs, final Map<Double, ? extends Collection<?>> thetas) {
+        thetaQueue.pushThetas(obs, thetas);
+    }
+
         /**
      * Gets called when the simulator reaches the predetermined time of a theta event. All the observers for the events
      * that are configured for this time are notified and given a list of events that are triggered.
@@ -130,86 +135,6 @@ public abstract class OdeSolver {
      */
     public abstract void run();
 
-    /**
-     * Manages the registered theta events. Each registered theta event is stored in a table containing the time of the
-     * event the list of observers for that event and the list of events for that time.
-     */
-    private static class ThetaQueue {
-
-        /**
-         * Construct an empty theta queue.
-         */
-        public ThetaQueue() {
-            thetas = TreeBasedTable.create();
-        }
-
-        /**
-         * Add a new theta event to the registry, including the time, collection of observers and collection of events.
-         * Each event is stored as an object where it is assumed that the observer
-         * @param time  the time the theta event occurs.
-         * @param obs   the observers.
-         * @param theta the theta event.
-         */
-        @Synchronized
-        public void pushTheta(final double time, final Observer obs, final Object theta) {
-            log.trace("Adding new {} theta event at t={}", theta.getClass(), time);
-
-            Collection<Object> events = thetas.get(time, obs);
-            if (events == null) {
-                try {
-                    log.trace("No theta events registered at t={}; Creating new list", time);
-                    events = new HashSet<>();
-                    events.add(theta);
-                    thetas.put(time, obs, events);
-                } catch (UnsupportedOperationException | ClassCastException |
-                         IllegalArgumentException | IllegalStateException e) {
-                    log.error("Could not register theta. {}", e.getLocalizedMessage());
-                }
-            } else {
-                log.trace("Found {} theta events for t={}; Adding new event", events.size(), time);
-                events.add(theta);
-            }
-            
-            // Now we need to update the nextThetaEventTime
-            if (thetas.rowKeySet().isEmpty()) {
-                nextThetaEventTime = Double.POSITIVE_INFINITY;
-            } else {
-                nextThetaEventTime = Collections.min(thetas.rowKeySet());
-            }
-        }
-
-        /**
-         * Get the next observer and the collection of events they are subscribed to and remove it from the theta queue.
-         * @return a map of the observers and their subscribed data.
-         */
-        public Map<Observer, Collection<Object>> getNextEventDataAndRemove() {
-            final Map<Observer, Collection<Object>> nextEventData = thetas.row(nextThetaEventTime);
-
-            // we have a view of the underlying data that we want to return, copy it first then delete the
-            // underlying data.
-            final Map<Observer, Collection<Object>> eventData = new HashMap<>(nextEventData);
-            log.trace("Found {} configured events and observers at t={}", eventData.size(), nextThetaEventTime);
-
-            for (final Observer obs : eventData.keySet()) {
-                final Collection<Object> removed = thetas.remove(nextThetaEventTime, obs);
-                log.trace("Removed {} items from registered theta list", removed.size());
-            }
-
-            // Now we need to update the nextThetaEventTime
-            if (thetas.rowKeySet().isEmpty()) {
-                nextThetaEventTime = Double.POSITIVE_INFINITY;
-            } else {
-                nextThetaEventTime = Collections.min(thetas.rowKeySet());
-            }
-
-            return eventData;
-        }
-        @Getter
-        private final Table<Double, Observer, Collection<Object>> thetas;
-        @Getter
-        private double nextThetaEventTime;
-    }
-
     protected final List<Double> dependentVariables;
     protected final double stepSize;
     @Getter
@@ -231,5 +156,5 @@ public abstract class OdeSolver {
     @Getter
     @SuppressWarnings("PMD.UnusedPrivateField")
     private final Set<Observer> observers = new HashSet<>(1);
-    private final ThetaQueue thetaQueue;
+    private final ThetaQueue<Observer> thetaQueue;
 }
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic;
+
+/**
+ * An amount manager that can report the population of each state, as needed by simulators (such as adaptive
+ * tau-leaping) that limit how much the populations may change in a step.
+ */
+public interface PopulationManager extends AmountManager {
+
+    /**
+     * Get the number of individuals in a state.
+     * @param state the state.
+     * @return the current population of the state.
+     */
+    int getAmount(SimulationState state);
+}
@@ -15,19 +15,15 @@
  */
 package broadwick.stochastic;
 
+import broadwick.utils.ThetaQueue;
 import com.google.common.base.Throwables;
-import com.google.common.collect.Table;
-import com.google.common.collect.TreeBasedTable;
 import java.io.Serializable;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import lombok.Getter;
 import lombok.Setter;
-import lombok.Synchronized;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.StopWatch;
 
@@ -84,7 +80,7 @@ public abstract class StochasticSimulator implements Serializable {
         this.amountManager = amountManager;
         this.transitionKernel = transitionKernel;
         this.reverseTime = reverseTime;
-        this.thetaQueue = new ThetaQueue();
+        this.thetaQueue = new ThetaQueue<>(reverseTime);
         this.currentTime = 0;
     }
 
@@ -233,108 +229,20 @@ public abstract class StochasticSimulator implements Serializable {
     }
 
     /**
-     * Get the default observer for the stochastic process. The default observer is first one defined.
-     * @return the default observer.
+     * Register a number of theta events at once, e.g. a schedule of movements.
+     * @param obs    the observers which is registering.
+     * @param thetas the theta events, keyed by the time at which they occur.
      */
-    public final Observer getDefaultObserver() {
-        return observers.toArray(new Observer[observers.size()])[0];
+    public final void registerNewThetas(final Observer obs, final Map<Double, ? extends Collection<?>> thetas) {
+        thetaQueue.pushThetas(obs, thetas);
     }
 
     /**
-     * Manages the registered theta events. Each registered theta event is stored in a table containing the time of the
-     * event the list of observers for that event and the list of events for that time.
-     */
-    private class ThetaQueue  implements Serializable {
-
-        /**
-         * Construct an empty theta queue.
-         */
-        public ThetaQueue() {
-            thetas = TreeBasedTable.create();
-            if (reverseTime) {
-                nextThetaEventTime = Double.NEGATIVE_INFINITY;
-            } else {
-                nextThetaEventTime = Double.POSITIVE_INFINITY;
-            }
-        }
-
-        /**
-         * Add a new theta event to the registry, including the time, collection of observers and collection of events.
-         * Each event is stored as an object where it is assumed that the observer
-         * @param time  the time the theta event occurs.
-         * @param obs   the observers.
-         * @param theta the theta event.
-         */
-        @Synchronized
-        public void pushTheta(final double time, final Observer obs, final Object theta) {
-
-            log.trace("Adding new {} theta event at t={}", theta.getClass(), time);
-
-            Collection<Object> events = thetas.get(time, obs);
-            if (events == null) {
-                try {
-                    log.trace("No theta events registered at t={}; Creating new list", time);
-                    events = new HashSet<>();
-                    events.add(theta);
-                    thetas.put(time, obs, events);
-                } catch (UnsupportedOperationException | ClassCastException
-                         | IllegalArgumentException | IllegalStateException e) {
-                    log.error("Could not register theta. {}", e.getLocalizedMessage());
-                }
-            } else {
-                log.trace("Found {} theta events for t={}; Adding new event", events.size(), time);
-                events.add(theta);
-            }
-
-            if (reverseTime) {
-                nextThetaEventTime = Math.max(nextThetaEventTime, time);
-            } else {
-                nextThetaEventTime = Math.min(nextThetaEventTime, time);
-            }
-        }
-
-        /**
-         * Get the next observer and the collection of events they are subscribed to and remove it from the theta queue.
-         * @return a map of the observers and their subscribed data.
-         */
-        public Map<Observer, Collection<Object>> getNextEventDataAndRemove() {
-            final Map<Observer, Collection<Object>> nextEventData = thetas.row(nextThetaEventTime);
-
-            // we have a view of the underlying data that we want to return, copy it first then delete the
-            // underlying data.
-            final Map<Observer, Collection<Object>> eventData = new HashMap<>(nextEventData);
-            log.trace("Found {} configured events and observers at t={}", eventData.size(), nextThetaEventTime);
-
-            for (final Observer obs : eventData.keySet()) {
-                final Collection<Object> removed = thetas.remove(nextThetaEventTime, obs);
-                log.trace("Removed {} items from registered theta list", removed.size());
-            }
-
-            // Now we need to update the nextThetaEventTime
-            if (reverseTime) {
-                if (thetas.rowKeySet().isEmpty()) {
-                    nextThetaEventTime = Double.NEGATIVE_INFINITY;
-                } else {
-                    nextThetaEventTime = Collections.max(thetas.rowKeySet());
-                }
-            } else {
-                if (thetas.rowKeySet().isEmpty()) {
-                    nextThetaEventTime = Double.POSITIVE_INFINITY;
-                } else {
-                    nextThetaEventTime = Collections.min(thetas.rowKeySet());
-                }
-            }
-
-            return eventData;
-        }
-        @Getter
-        private final Table<Double, Observer, Collection<Object>> thetas;
-        @Getter
-        private double nextThetaEventTime;
-    /**
-     * The serialVersionUID.
+     * Get the default observer for the stochastic process. The default observer is first one defined.
+     * @return the default observer.
      */
-    private static final long serialVersionUID = -37227993552224502L;
+    public final Observer getDefaultObserver() {
+        return observers.toArray(new Observer[observers.size()])[0];
     }
 
     /**
@@ -377,7 +285,7 @@ public abstract class StochasticSimulator implements Serializable {
     @Getter
     @Setter
     private SimulationController controller = null;
-    private ThetaQueue thetaQueue;
+    private ThetaQueue<Observer> thetaQueue;
     @Getter
     private final Set<Observer> observers = new HashSet<>(1);
     protected boolean reverseTime = false;
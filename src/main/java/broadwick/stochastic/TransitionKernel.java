@@ -16,17 +16,28 @@
 package broadwick.stochastic;
 
 import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Class that holds the transition kernel for a stochastic simulation. The kernel comprises of a map of SimulationEvents
  * to the probability of that event occurring. This is NOT thread safe.
+ * <p>
+ * Each event is given an integer handle when it is first added to the kernel, and the rates are held in an array
+ * indexed by the handles. A model that keeps the handles of its events can change their rates with setRate() and
+ * addRate() without hashing the events or boxing the rates, and simulators can find the events whose rates have
+ * changed with pollChangedHandles(). The handle of an event stays the same when its rate falls to zero (when it is no
+ * longer in the kernel) until the kernel is cleared or its probabilities replaced, after which the handles must be
+ * obtained again.
  */
-@ToString
 @Slf4j
 public class TransitionKernel implements Cloneable, Serializable {
 
@@ -34,6 +45,7 @@ public class TransitionKernel implements Cloneable, Serializable {
      * Create a transition kernel object to hold the transition probabilities between vents.
      */
     public TransitionKernel() {
+        reset();
     }
 
     /**
@@ -46,8 +58,10 @@ public class TransitionKernel implements Cloneable, Serializable {
     public final Object clone() throws CloneNotSupportedException {
         super.clone();
         final TransitionKernel newKernel = new TransitionKernel();
-        for (final Map.Entry<SimulationEvent, Double> entry : kernel.entrySet()) {
-            newKernel.addToKernel(entry.getKey(), entry.getValue());
+        for (int handle = 0; handle < size; handle++) {
+            if (rates[handle] > 0.0) {
+                newKernel.addToKernel(events[handle], rates[handle]);
+            }
         }
         return newKernel;
     }
@@ -59,51 +73,216 @@ public class TransitionKernel implements Cloneable, Serializable {
      */
     public final void addToKernel(final SimulationEvent event, final Double rate) {
         if (rate > 0.0) {
-            double eventRate = rate;
-            if (kernel.containsKey(event)) {
-                eventRate += kernel.get(event);
-                if (log.isTraceEnabled()) {
+            final int handle = getEventHandle(event);
+            if (log.isTraceEnabled()) {
+                if (rates[handle] > 0.0) {
                     log.trace("Kernel already contains event {}, updating rate by {}", event, rate);
+                } else {
+                    log.trace("Adding event to kernel {} {}", event, rate);
                 }
-            } else if (log.isTraceEnabled()) {
-                log.trace("Adding event to kernel {} {}", event, eventRate);
             }
-            kernel.put(event, eventRate);
+            setRate(handle, rates[handle] + rate);
+        }
+    }
+
+    /**
+     * Set the transition rate for a given event, replacing any rate it already has.
+     * @param event the event.
+     * @param rate  the rate at which this event occurs, the event is removed from the kernel if this is not positive.
+     */
+    public final void setTransitionProbability(final SimulationEvent event, final double rate) {
+        if (rate > 0.0) {
+            setRate(getEventHandle(event), rate);
+        } else {
+            final Integer handle = handles.get(event);
+            if (handle != null) {
+                setRate(handle, 0.0);
+            }
         }
     }
 
     /**
-     * Clear all the events from the kernel.
+     * Get the handle of an event, giving it one (with a zero rate) if it does not have one.
+     * @param event the event.
+     * @return the handle of the event.
+     */
+    public final int getEventHandle(final SimulationEvent event) {
+        final Integer handle = handles.get(event);
+        if (handle != null) {
+            return handle;
+        }
+        if (size == events.length) {
+            final int capacity = 2 * size;
+            events = Arrays.copyOf(events, capacity);
+            rates = Arrays.copyOf(rates, capacity);
+            changed = Arrays.copyOf(changed, capacity);
+        }
+        events[size] = event;
+        rates[size] = 0.0;
+        handles.put(event, size);
+        return size++;
+    }
+
+    /**
+     * Get the event that has been given a handle.
+     * @param handle the handle.
+     * @return the event.
+     */
+    public final SimulationEvent getEvent(final int handle) {
+        checkHandle(handle);
+        return events[handle];
+    }
+
+    /**
+     * Get the number of handles that have been given to events, the handles are the integers from 0 to one less than
+     * this number.
+     * @return the number of handles.
+     */
+    public final int getNumHandles() {
+        return size;
+    }
+
+    /**
+     * Get the rate of the event with a given handle.
+     * @param handle the handle of the event.
+     * @return the rate of the event, 0 if it is not in the kernel.
+     */
+    public final double getRate(final int handle) {
+        checkHandle(handle);
+        return rates[handle];
+    }
+
+    /**
+     * Set the rate of the event with a given handle.
+     * @param handle the handle of the event.
+     * @param rate   the rate at which the event occurs, the event is removed from the kernel if this is not positive.
+     */
+    public final void setRate(final int handle, final double rate) {
+        checkHandle(handle);
+        final double newRate = rate > 0.0 ? rate : 0.0;
+        final double oldRate = rates[handle];
+        if (newRate == oldRate) {
+            return;
+        }
+        if (oldRate == 0.0) {
+            numEvents++;
+        } else if (newRate == 0.0) {
+            numEvents--;
+        }
+        rates[handle] = newRate;
+        if (!changed[handle]) {
+            changed[handle] = true;
+            if (numChanged == changedHandles.length) {
+                changedHandles = Arrays.copyOf(changedHandles, 2 * numChanged);
+            }
+            changedHandles[numChanged++] = handle;
+        }
+    }
+
+    /**
+     * Change the rate of the event with a given handle.
+     * @param handle the handle of the event.
+     * @param delta  the amount by which the rate changes, the event is removed from the kernel if its rate becomes
+     *               non-positive.
+     */
+    public final void addRate(final int handle, final double delta) {
+        setRate(handle, getRate(handle) + delta);
+    }
+
+    /**
+     * Clear all the events from the kernel. The handles of the events are forgotten.
      */
     public final void clear() {
-        kernel.clear();
+        reset();
+    }
+
+    /**
+     * Move the events whose rates have been changed since the last call to this method (or to pollChangedHandles())
+     * into a collection, so that a simulator can update only the rates that have changed. This is intended to be
+     * called by the (single) simulator using the kernel.
+     * @param changes the collection to which the changed events are added.
+     * @return false if the kernel has been cleared or its probabilities replaced since the last call, in which case
+     *         every rate may have changed and the collection is left unchanged.
+     */
+    public final boolean pollChangedEvents(final Collection<SimulationEvent> changes) {
+        if (replaced) {
+            replaced = false;
+            clearChangedHandles();
+            return false;
+        }
+        for (int i = 0; i < numChanged; i++) {
+            changes.add(events[changedHandles[i]]);
+        }
+        clearChangedHandles();
+        return true;
+    }
+
+    /**
+     * Get the handles of the events whose rates have been changed since the last call to this method (or to
+     * pollChangedEvents()), so that a simulator can update only the rates that have changed. This is intended to be
+     * called by the (single) simulator using the kernel.
+     * @return the handles of the changed events (in the order they were first changed), or null if the kernel has been
+     *         cleared or its probabilities replaced since the last call, in which case every rate may have changed.
+     */
+    public final int[] pollChangedHandles() {
+        if (replaced) {
+            replaced = false;
+            clearChangedHandles();
+            return null;
+        }
+        final int[] changes = Arrays.copyOf(changedHandles, numChanged);
+        clearChangedHandles();
+        return changes;
+    }
+
+    /**
+     * Forget the changed events.
+     */
+    private void clearChangedHandles() {
+        for (int i = 0; i < numChanged; i++) {
+            changed[changedHandles[i]] = false;
+        }
+        numChanged = 0;
     }
 
     /**
-     * Get the collection of events stored in the transition kernel. This actually returns the keyset from the
-     * transition rates since they are always present and will always be in the kernel.
+     * Get the collection of events stored in the transition kernel, i.e. the events with a positive rate. This is a
+     * view of the kernel, so it changes as the rates change and removing an event from it removes it from the kernel.
      * @return the events in the kernel.
      */
     public final Set<SimulationEvent> getTransitionEvents() {
-        return kernel.keySet();
+        if (eventSet == null) {
+            eventSet = new EventSet();
+        }
+        return eventSet;
     }
 
     /**
      * Get the probability of an event occurring.
      * @param event the event
-     * @return the probability of the event occurring.
+     * @return the probability of the event occurring, or null if the event is not in the kernel.
      */
     public final Double getTransitionProbability(final SimulationEvent event) {
-        return kernel.get(event);
+        final Integer handle = handles.get(event);
+        if (handle == null || rates[handle] == 0.0) {
+            return null;
+        }
+        return rates[handle];
     }
 
     /**
-     * Set the transition probabilities between states.
+     * Set the transition probabilities between states. The handles of the events are forgotten and events without a
+     * positive probability are not added to the kernel.
      * @param probabilities the new set of probabilities.
      */
     public final void setTransitionProbabilities(final Map<SimulationEvent, Double> probabilities) {
-        kernel.clear();
-        kernel.putAll(probabilities);
+        reset();
+        for (final Map.Entry<SimulationEvent, Double> entry : probabilities.entrySet()) {
+            if (entry.getValue() != null) {
+                setTransitionProbability(entry.getKey(), entry.getValue());
+            }
+        }
+        clearChangedHandles();
     }
 
     /**
@@ -122,10 +301,120 @@ public class TransitionKernel implements Cloneable, Serializable {
         return cumulativeDistFn;
     }
 
-    // A collection of probabilities of progressing from one state to another.
-    private Map<SimulationEvent, Double> kernel = new LinkedHashMap<>(5);
+    @Override
+    public final String toString() {
+        final StringBuilder sb = new StringBuilder(100);
+        sb.append("TransitionKernel(kernel={");
+        String separator = "";
+        for (int handle = 0; handle < size; handle++) {
+            if (rates[handle] > 0.0) {
+                sb.append(separator).append(events[handle]).append('=').append(rates[handle]);
+                separator = ", ";
+            }
+        }
+        return sb.append("})").toString();
+    }
+
+    /**
+     * Forget all the events and their handles.
+     */
+    private void reset() {
+        handles = new HashMap<>(5);
+        events = new SimulationEvent[INITIAL_CAPACITY];
+        rates = new double[INITIAL_CAPACITY];
+        changed = new boolean[INITIAL_CAPACITY];
+        changedHandles = new int[INITIAL_CAPACITY];
+        size = 0;
+        numEvents = 0;
+        numChanged = 0;
+        replaced = true;
+    }
+
+    /**
+     * Check that a handle has been given to an event.
+     * @param handle the handle.
+     */
+    private void checkHandle(final int handle) {
+        if (handle < 0 || handle >= size) {
+            throw new IllegalArgumentException(String.format("Unknown event handle %d, the kernel has %d handles.",
+                                                             handle, size));
+        }
+    }
+
+    /**
+     * The events with a positive rate, in the order of their handles.
+     */
+    private final class EventSet extends AbstractSet<SimulationEvent> {
+
+        @Override
+        public int size() {
+            return numEvents;
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return o instanceof SimulationEvent && getTransitionProbability((SimulationEvent) o) != null;
+        }
+
+        @Override
+        public boolean remove(final Object o) {
+            if (contains(o)) {
+                setTransitionProbability((SimulationEvent) o, 0.0);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Iterator<SimulationEvent> iterator() {
+            return new Iterator<SimulationEvent>() {
+                @Override
+                public boolean hasNext() {
+                    while (next < size && rates[next] == 0.0) {
+                        next++;
+                    }
+                    return next < size;
+                }
+
+                @Override
+                public SimulationEvent next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next++;
+                    return events[last];
+                }
+
+                @Override
+                public void remove() {
+                    if (last < 0) {
+                        throw new IllegalStateException();
+                    }
+                    setRate(last, 0.0);
+                    last = -1;
+                }
+                private int next = 0;
+                private int last = -1;
+            };
+        }
+    }
+
+    // the handle of each event and the event, its rate and whether its rate has changed for each handle.
+    private Map<SimulationEvent, Integer> handles;
+    private SimulationEvent[] events;
+    private double[] rates;
+    private boolean[] changed;
+    private int size;
+    // the number of events with a positive rate.
+    private int numEvents;
+    // the handles of the events whose rates have changed since they were last polled.
+    private int[] changedHandles;
+    private int numChanged;
+    private boolean replaced;
+    private transient Set<SimulationEvent> eventSet = null;
+    private static final int INITIAL_CAPACITY = 16;
     /**
      * The serialVersionUID.
      */
-    private static final long serialVersionUID = -953479930339424502L;
+    private static final long serialVersionUID = -953479930339424503L;
 }
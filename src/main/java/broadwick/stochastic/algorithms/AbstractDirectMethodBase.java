@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic.algorithms;
+
+import broadwick.rng.RNG;
+import broadwick.stochastic.AmountManager;
+import broadwick.stochastic.SimulationEvent;
+import broadwick.stochastic.SimulationException;
+import broadwick.stochastic.StochasticSimulator;
+import broadwick.stochastic.TransitionKernel;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Abstract base class for implementations of Gillespie's Direct method that keep the rates of the events in a
+ * structure from which an event can be selected without going through the whole kernel. The structure is updated from
+ * the events whose rates have changed in the transition kernel (see TransitionKernel.pollChangedHandles()), so the
+ * kernel should be updated with setRate(), addToKernel() or setTransitionProbability() rather than cleared and
+ * refilled at each step (which works but makes each step O(n) again).
+ */
+@ToString(of = "changed")
+@Slf4j
+public abstract class AbstractDirectMethodBase extends StochasticSimulator {
+
+    /**
+     * Create the direct method simulator without an amount manager or kernel, which must be set before it is run. This
+     * is used by the no args constructors of the subclasses.
+     * @param rates the structure that holds the rates of the events.
+     */
+    AbstractDirectMethodBase(final EventSelector rates) {
+        super();
+        this.rates = rates;
+    }
+
+    /**
+     * Create the direct method simulator.
+     * @param amountManager    the amount manager used in the simulator.
+     * @param transitionKernel the transition kernel to be used with the stochastic solver.
+     * @param reverseTime      true if we wish to go backwards in time.
+     * @param rates            the structure that holds the rates of the events.
+     */
+    AbstractDirectMethodBase(final AmountManager amountManager, final TransitionKernel transitionKernel,
+                             final boolean reverseTime, final EventSelector rates) {
+        super(amountManager, transitionKernel, reverseTime);
+        this.rates = rates;
+    }
+
+    @Override
+    public final void reinitialize() {
+        changed = true;
+    }
+
+    @Override
+    public final void performStep() {
+        updateRates();
+        final double rTotal = rates.getTotal();
+
+        // obtain mu and tau by the direct method described in chapter 5A page 417ff
+        final double tau = directMCTau(rTotal);
+        if ((tau != Double.NEGATIVE_INFINITY) && (tau != Double.POSITIVE_INFINITY)) {
+            changed = false;
+            while (isThetaEventInCurrentStep(tau) && !changed) {
+                doThetaEvent();
+            }
+
+            if (changed) {
+                performStep();
+                return;
+            }
+
+            if (Double.compare(rTotal, 0.0) != 0) {
+                final SimulationEvent mu = directMCReaction();
+                doEvent(mu, getCurrentTime() + tau);
+            }
+        }
+
+        // advance the time
+        setCurrentTime(getCurrentTime() + tau);
+
+        if ((tau != Double.NEGATIVE_INFINITY) && (tau != Double.POSITIVE_INFINITY)) {
+            doThetaEvent();
+        }
+    }
+
+    @Override
+    public final void setRngSeed(final int seed) {
+        GENERATOR.seed(seed);
+    }
+
+    /**
+     * Bring the rates up to date with the transition kernel, updating only the events whose rates have changed unless
+     * the kernel has been replaced or refilled.
+     */
+    private void updateRates() {
+        final TransitionKernel kernel = getTransitionKernel();
+        final int[] changedHandles = kernel.pollChangedHandles();
+        if (kernel != trackedKernel || changedHandles == null) {
+            // the changes recorded before we started tracking this kernel are included in the rates read here.
+            trackedKernel = kernel;
+            rates.clear();
+            for (int handle = 0; handle < kernel.getNumHandles(); handle++) {
+                final double rate = kernel.getRate(handle);
+                if (rate > 0.0) {
+                    rates.setRate(kernel.getEvent(handle), rate);
+                }
+            }
+        } else {
+            for (final int handle : changedHandles) {
+                rates.setRate(kernel.getEvent(handle), kernel.getRate(handle));
+            }
+        }
+    }
+
+    /**
+     * Determine of there is a theta event in the current time step, taking into account possible reverse time jumps.
+     * @param tau the time interval (will be negative for reverse time).
+     * @return true if a theta event is found.
+     */
+    private boolean isThetaEventInCurrentStep(final double tau) {
+        final double nextEventTime = getNextThetaEventTime();
+        if (reverseTime) {
+            return getCurrentTime() >= nextEventTime && getCurrentTime() + tau < nextEventTime;
+        } else {
+            return getCurrentTime() <= nextEventTime && getCurrentTime() + tau > nextEventTime;
+        }
+    }
+
+    /**
+     * obtains a random (but following a specific distribution) reaction as described by the direct method in chapter 5A
+     * page 417ff, selecting from the rates held by this simulator rather than the kernel.
+     * @return the simulation event selected.
+     */
+    private SimulationEvent directMCReaction() {
+        // the theta events may have changed the kernel.
+        updateRates();
+        final SimulationEvent event = rates.select(GENERATOR);
+        if (event == null) {
+            final StringBuilder sb = new StringBuilder(100);
+            sb.append("No reaction could be selected!\n");
+            sb.append(this.getTransitionKernel().getTransitionEvents().toString());
+            throw new SimulationException(sb.toString());
+        }
+        return event;
+    }
+
+    /**
+     * obtains a random (but following a specific distribution) timestep as described by the direct method in chapter 5A
+     * page 417ff.
+     * @param sum sum of the propensities
+     * @return tau
+     */
+    protected final double directMCTau(final double sum) {
+        if (Double.compare(sum, 0.0) == 0) {
+            return getNextThetaEventTime();
+        }
+        final double r1 = GENERATOR.getDouble();
+        final double tau = (1 / sum) * Math.log(1 / r1);
+        if (reverseTime) {
+            return -1.0 * tau;
+        }
+        return tau;
+    }
+
+    private boolean changed = false;
+    private final EventSelector rates;
+    private TransitionKernel trackedKernel = null;
+    private static final RNG GENERATOR = new RNG(RNG.Generator.Well19937c);
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 2931867250417224152L;
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic.algorithms;
+
+import broadwick.stochastic.PopulationManager;
+import broadwick.stochastic.SimulationEvent;
+import broadwick.stochastic.SimulationState;
+import broadwick.stochastic.TransitionKernel;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Implementation of tau-leaping with the step size selection of Cao, Gillespie and Petzold (J. Chem. Phys. 124, 044109
+ * (2006)). The step is chosen so that the expected change in the population of every state affected by the leap, and
+ * its standard deviation, are no more than a fraction epsilon of the population (or one individual, whichever is
+ * larger), so that the rates change little during the step.
+ * <p>
+ * Each event moves one individual from its initial state to its final state. An event is critical if there are fewer
+ * than criticalThreshold individuals in its initial state: critical events are not leaped but fired exactly, at most
+ * one of them in a step, at the time given by their total rate. A leap that would still make a population negative is
+ * abandoned and tried again with half the step. If the step is less than a few (ssaThreshold) mean times between events
+ * leaping gains nothing, so a single event is performed as in Gillespie's direct method instead.
+ * <p>
+ * The populations are read from the amount manager, which must therefore be a PopulationManager. The changes in the
+ * populations of the initial states of the non-critical events are bounded, using the highestOrder of the rates in the
+ * populations (2 by default, i.e. rates that are at most quadratic in the populations, as in density dependent
+ * infection) since the kernel does not say how its rates depend on the populations.
+ */
+@Slf4j
+public class AdaptiveTauLeaping extends AbstractTauLeapingBase implements Serializable {
+
+    /**
+     * Create the adaptive tau-leaping object.
+     * @param amountManager    the amount manager used in the simulator, which gives the populations of the states.
+     * @param transitionKernel the transition kernel to be used with the stochastic solver.
+     */
+    public AdaptiveTauLeaping(final PopulationManager amountManager, final TransitionKernel transitionKernel) {
+        super(amountManager, transitionKernel);
+        this.populations = amountManager;
+    }
+
+    @Override
+    public final String getName() {
+        return "Adaptive Tau Leap";
+    }
+
+    @Override
+    public final void setRngSeed(final int seed) {
+        GENERATOR.seed(seed);
+    }
+
+    @Override
+    public final void reinitialize() {
+        // nothing to do, the rates and populations are read at every step.
+    }
+
+    @Override
+    public final void performStep() {
+        final double now = getCurrentTime();
+        final double rTotal = readRates();
+        if (rTotal <= 0.0) {
+            // nothing can happen before the next theta event (if there is one).
+            final double nextThetaTime = getNextThetaEventTime();
+            setCurrentTime(Math.max(now, nextThetaTime));
+            if (nextThetaTime != Double.POSITIVE_INFINITY) {
+                doThetaEvent();
+            }
+            return;
+        }
+
+        double leapTau = selectLeapTau();
+        if (leapTau < ssaThreshold / rTotal || leapTau == Double.POSITIVE_INFINITY && criticalTotal == 0.0) {
+            // the latter happens only if no event changes a population.
+            performSingleEvent(rTotal);
+            return;
+        }
+
+        while (true) {
+            final double criticalTau = criticalTotal > 0.0
+                                       ? Math.log(1 / GENERATOR.getDouble()) / criticalTotal : Double.POSITIVE_INFINITY;
+            boolean fireCritical = criticalTau <= leapTau;
+            double tau = Math.min(leapTau, criticalTau);
+
+            // stop at the next theta event, the critical event (if any) then fires after it.
+            final double nextThetaTime = getNextThetaEventTime();
+            final boolean theta = now + tau >= nextThetaTime;
+            if (theta) {
+                tau = Math.max(nextThetaTime - now, 0.0);
+                fireCritical = false;
+            }
+
+            if (drawFirings(tau, fireCritical)) {
+                log.trace("AdaptiveTauLeaping: leaping from {} with a step size of {}", now, tau);
+                leaping = true;
+                for (int i = 0; i < events.size(); i++) {
+                    if (firings[i] > 0) {
+                        doEvent(events.get(i), now + tau, firings[i]);
+                    }
+                }
+                setCurrentTime(now + tau);
+                if (theta) {
+                    doThetaEvent();
+                }
+                return;
+            }
+            // a population would have become negative, try again with a smaller step.
+            leapTau /= 2;
+        }
+    }
+
+    /**
+     * Read the rates of the events with a positive rate from the kernel, and the populations of their states, and find
+     * the critical events.
+     * @return the sum of the rates of all events.
+     */
+    private double readRates() {
+        final TransitionKernel kernel = getTransitionKernel();
+        events.clear();
+        amounts.clear();
+        criticalTotal = 0.0;
+        double rTotal = 0.0;
+        for (final SimulationEvent event : kernel.getTransitionEvents()) {
+            final Double rate = kernel.getTransitionProbability(event);
+            if (rate == null || rate <= 0.0) {
+                continue;
+            }
+            final int index = events.size();
+            if (index == rates.length) {
+                rates = Arrays.copyOf(rates, 2 * index);
+                critical = Arrays.copyOf(critical, 2 * index);
+                firings = Arrays.copyOf(firings, 2 * index);
+            }
+            events.add(event);
+            rates[index] = rate;
+            critical[index] = getAmount(event.getInitialState()) < criticalThreshold;
+            getAmount(event.getFinalState());
+            rTotal += rate;
+            if (critical[index]) {
+                criticalTotal += rate;
+            }
+        }
+        return rTotal;
+    }
+
+    /**
+     * Select the step size for the non-critical events, from the mean and variance of the change in the population of
+     * each state they remove individuals from (equation 33 of Cao, Gillespie and Petzold).
+     * @return the largest step that keeps the relative changes in the populations within epsilon.
+     */
+    private double selectLeapTau() {
+        // the mean and variance of the rate of change of the population of each state, and whether it is the initial
+        // state of a non-critical event.
+        final Map<SimulationState, double[]> moments = new HashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            final SimulationEvent event = events.get(i);
+            if (!critical[i] && !event.getInitialState().equals(event.getFinalState())) {
+                addMoments(moments, event.getInitialState(), -rates[i]);
+                addMoments(moments, event.getFinalState(), rates[i]);
+            }
+        }
+
+        double tau = Double.POSITIVE_INFINITY;
+        for (final Map.Entry<SimulationState, double[]> entry : moments.entrySet()) {
+            if (entry.getValue()[2] == 0.0) {
+                continue;
+            }
+            final double bound = Math.max(epsilon * amounts.get(entry.getKey()) / highestOrder, 1.0);
+            final double mean = Math.abs(entry.getValue()[0]);
+            final double variance = entry.getValue()[1];
+            if (mean > 0.0) {
+                tau = Math.min(tau, bound / mean);
+            }
+            if (variance > 0.0) {
+                tau = Math.min(tau, bound * bound / variance);
+            }
+        }
+        return tau;
+    }
+
+    /**
+     * Add the contribution of an event to the mean and variance of the rate of change of the population of a state.
+     * @param moments the mean and variance for each state.
+     * @param state   the state.
+     * @param rate    the rate of the event, negative if it removes an individual from the state.
+     */
+    private static void addMoments(final Map<SimulationState, double[]> moments, final SimulationState state,
+                                   final double rate) {
+        double[] moment = moments.get(state);
+        if (moment == null) {
+            moment = new double[3];
+            moments.put(state, moment);
+        }
+        moment[0] += rate;
+        moment[1] += Math.abs(rate);
+        if (rate < 0.0) {
+            moment[2] = 1.0;
+        }
+    }
+
+    /**
+     * Draw the number of times each event fires in a leap and check that no population becomes negative.
+     * @param tau          the step size.
+     * @param fireCritical true if one of the critical events fires in the step.
+     * @return true if the firings leave every population non-negative.
+     */
+    private boolean drawFirings(final double tau, final boolean fireCritical) {
+        for (int i = 0; i < events.size(); i++) {
+            firings[i] = critical[i] ? 0 : (int) Math.min(GENERATOR.getPoisson(rates[i] * tau), Integer.MAX_VALUE);
+        }
+        if (fireCritical) {
+            firings[selectEvent(GENERATOR.getDouble() * criticalTotal, true)]++;
+        }
+
+        final Map<SimulationState, Long> changes = new HashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            if (firings[i] > 0) {
+                addChange(changes, events.get(i).getInitialState(), -firings[i]);
+                addChange(changes, events.get(i).getFinalState(), firings[i]);
+            }
+        }
+        for (final Map.Entry<SimulationState, Long> entry : changes.entrySet()) {
+            if (amounts.get(entry.getKey()) + entry.getValue() < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add a change to the population of a state.
+     * @param changes the changes in the populations of the states.
+     * @param state   the state.
+     * @param change  the change in its population.
+     */
+    private static void addChange(final Map<SimulationState, Long> changes, final SimulationState state,
+                                  final long change) {
+        final Long current = changes.get(state);
+        changes.put(state, current == null ? change : current + change);
+    }
+
+    /**
+     * Perform a single event, selected with probability proportional to its rate, after an exponentially distributed
+     * time as in Gillespie's direct method, unless a theta event comes first.
+     * @param rTotal the sum of the rates of all the events.
+     */
+    private void performSingleEvent(final double rTotal) {
+        final double now = getCurrentTime();
+        final double tau = Math.log(1 / GENERATOR.getDouble()) / rTotal;
+        final double nextThetaTime = getNextThetaEventTime();
+        if (now + tau > nextThetaTime) {
+            // the time to the next event is memoryless so we can stop at the theta event and draw it again after.
+            setCurrentTime(Math.max(now, nextThetaTime));
+            doThetaEvent();
+            return;
+        }
+        leaping = false;
+        doEvent(events.get(selectEvent(GENERATOR.getDouble() * rTotal, false)), now + tau);
+        setCurrentTime(now + tau);
+    }
+
+    /**
+     * Select an event with probability proportional to its rate.
+     * @param value        a uniform random number multiplied by the sum of the rates of the events to choose from.
+     * @param criticalOnly true if only critical events are to be chosen from.
+     * @return the index of the selected event.
+     */
+    private int selectEvent(final double value, final boolean criticalOnly) {
+        double remaining = value;
+        int selected = -1;
+        for (int i = 0; i < events.size(); i++) {
+            if (!criticalOnly || critical[i]) {
+                selected = i;
+                remaining -= rates[i];
+                if (remaining < 0.0) {
+                    break;
+                }
+            }
+        }
+        // if rounding takes us past the last event we use it.
+        return selected;
+    }
+
+    /**
+     * Find whether the event being performed fires in a leap or, if not, individually as in Gillespie's direct method.
+     * The observers are told of each event before it is performed, so they can use this to find how it was performed.
+     * @return true if the event fires in a leap.
+     */
+    final boolean isLeaping() {
+        return leaping;
+    }
+
+    /**
+     * Get the population of a state, reading it from the amount manager the first time it is needed in a step.
+     * @param state the state.
+     * @return the population of the state.
+     */
+    private int getAmount(final SimulationState state) {
+        Integer amount = amounts.get(state);
+        if (amount == null) {
+            amount = populations.getAmount(state);
+            amounts.put(state, amount);
+        }
+        return amount;
+    }
+
+    private final PopulationManager populations;
+    @Getter
+    @Setter
+    private double epsilon = 0.03;
+    @Getter
+    @Setter
+    private int criticalThreshold = 10;
+    @Getter
+    @Setter
+    private double ssaThreshold = 10.0;
+    @Getter
+    @Setter
+    private double highestOrder = 2.0;
+    // the events with positive rates, their rates and whether they are critical, and the populations of their states.
+    private final List<SimulationEvent> events = new ArrayList<>();
+    private double[] rates = new double[INITIAL_CAPACITY];
+    private boolean[] critical = new boolean[INITIAL_CAPACITY];
+    private int[] firings = new int[INITIAL_CAPACITY];
+    private boolean leaping = false;
+    private final Map<SimulationState, Integer> amounts = new HashMap<>();
+    private double criticalTotal;
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = -5127609346211224152L;
+}
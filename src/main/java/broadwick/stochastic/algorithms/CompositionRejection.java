@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic.algorithms;
+
+import broadwick.stochastic.AmountManager;
+import broadwick.stochastic.TransitionKernel;
+import java.io.Serializable;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Implementation of Gillespie's Direct method using the composition-rejection method of Slepoy, Thompson and Plimpton
+ * (J. Chem. Phys. 128, 205101 (2008)) to select events. The events are grouped into bins of rates that differ by at
+ * most a factor of two, a bin is chosen in proportion to its total rate and an event within it by rejection, so an
+ * event is selected in O(1) expected time however many events there are and however widely their rates range. This
+ * makes it suited to very large kernels; for small kernels GillespieSimple is as fast.
+ * <p>
+ * The bins are updated from the events whose rates have changed in the transition kernel (see
+ * TransitionKernel.pollChangedHandles()), so the kernel should be updated with setRate(), addToKernel() or
+ * setTransitionProbability() rather than cleared and refilled at each step (which works but makes each step O(n)).
+ */
+@Slf4j
+public class CompositionRejection extends AbstractDirectMethodBase implements Serializable {
+
+    /**
+     * No args constructor. Do not use, it is added so that the class can be deserialised if needed.
+     */
+    public CompositionRejection() {
+        super(new EventRateBins());
+    }
+
+    /**
+     * Implementation of Gillespie's Direct method with composition-rejection event selection.
+     * @param amountManager    the amount manager used in the simulator.
+     * @param transitionKernel the transition kernel to be used with the stochastic solver.
+     */
+    public CompositionRejection(final AmountManager amountManager, final TransitionKernel transitionKernel) {
+        this(amountManager, transitionKernel, false);
+    }
+
+    /**
+     * Implementation of Gillespie's Direct method with composition-rejection event selection.
+     * @param amountManager    the amount manager used in the simulator.
+     * @param transitionKernel the transition kernel to be used with the stochastic solver.
+     * @param reverseTime      true if we wish to go backwards in time.
+     */
+    public CompositionRejection(final AmountManager amountManager,
+                                final TransitionKernel transitionKernel, final boolean reverseTime) {
+        super(amountManager, transitionKernel, reverseTime, new EventRateBins());
+    }
+
+    @Override
+    public final String getName() {
+        return "Composition-Rejection Direct Method";
+    }
+
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 6650237718489224152L;
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic.algorithms;
+
+import broadwick.rng.RNG;
+import broadwick.stochastic.SimulationEvent;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The rates of a set of events grouped into bins by their binary exponent, i.e. an event with a rate in [2^k, 2^(k+1))
+ * is held in bin k, for the composition-rejection method of Slepoy, Thompson and Plimpton (J. Chem. Phys. 128, 205101
+ * (2008)). An event is selected by choosing a bin with probability proportional to the sum of its rates (by a linear
+ * search of the bins in use, of which there are at most a few tens however many events there are) and then an event
+ * in the bin by rejection: an event is picked uniformly and accepted with probability rate/2^(k+1), which is at least
+ * one half. Selecting an event and changing a rate therefore take O(1) time on average, independent of the number of
+ * events. The sums of the bins are recalculated after a number of updates proportional to the number of events, to
+ * discard the rounding errors that accumulate in them.
+ */
+final class EventRateBins implements EventSelector {
+
+    /**
+     * Create an empty set of bins.
+     */
+    EventRateBins() {
+        clear();
+    }
+
+    @Override
+    public void clear() {
+        indices = new HashMap<>();
+        events = new SimulationEvent[INITIAL_CAPACITY];
+        rates = new double[INITIAL_CAPACITY];
+        positions = new int[INITIAL_CAPACITY];
+        bins = new Bin[NUM_BINS];
+        activeBins = new int[NUM_BINS];
+        numActiveBins = 0;
+        size = 0;
+        total = 0.0;
+        updates = 0;
+    }
+
+    @Override
+    public double getTotal() {
+        return total;
+    }
+
+    /**
+     * Get the number of events with a positive rate.
+     * @return the number of events that can be selected.
+     */
+    int getNumEvents() {
+        return size;
+    }
+
+    /**
+     * Get the number of bins that contain events.
+     * @return the number of bins in use.
+     */
+    int getNumBins() {
+        return numActiveBins;
+    }
+
+    @Override
+    public double getRate(final SimulationEvent event) {
+        final Integer index = indices.get(event);
+        return index == null ? 0.0 : rates[index];
+    }
+
+    @Override
+    public void setRate(final SimulationEvent event, final double rate) {
+        final Integer index = indices.get(event);
+        if (rate <= 0.0) {
+            if (index != null) {
+                remove(index);
+            }
+        } else if (index == null) {
+            add(event, rate);
+        } else {
+            final double oldRate = rates[index];
+            if (rate == oldRate) {
+                return;
+            }
+            final int bin = binOf(rate);
+            if (bin == binOf(oldRate)) {
+                bins[bin].sum += rate - oldRate;
+                total += rate - oldRate;
+                rates[index] = rate;
+            } else {
+                removeFromBin(index);
+                rates[index] = rate;
+                addToBin(index);
+            }
+        }
+
+        updates++;
+        if (updates > RESUM_FACTOR * Math.max(size, INITIAL_CAPACITY)) {
+            resum();
+        }
+    }
+
+    @Override
+    public SimulationEvent select(final RNG generator) {
+        if (size == 0) {
+            return null;
+        }
+        // choose the bin, if rounding takes us past the last bin we use the last one.
+        double remaining = generator.getDouble() * total;
+        Bin bin = null;
+        for (int i = 0; i < numActiveBins; i++) {
+            bin = bins[activeBins[i]];
+            if (remaining < bin.sum) {
+                break;
+            }
+            remaining -= bin.sum;
+        }
+
+        // then an event in the bin, accepted with probability rate/2^(k+1) (which is written so that it does not
+        // overflow for the largest rates).
+        while (true) {
+            final int index = bin.members[(int) (generator.getDouble() * bin.size)];
+            if (generator.getDouble() * bin.lower < 0.5 * rates[index]) {
+                return events[index];
+            }
+        }
+    }
+
+    /**
+     * Get the bin that holds a rate.
+     * @param rate the (positive) rate.
+     * @return the index of the bin, i.e. the binary exponent of the rate offset so that it is not negative.
+     */
+    private static int binOf(final double rate) {
+        return Math.min(Math.getExponent(rate), Double.MAX_EXPONENT) - Double.MIN_EXPONENT + 1;
+    }
+
+    /**
+     * Add an event in a new slot.
+     * @param event the event.
+     * @param rate  the (positive) rate of the event.
+     */
+    private void add(final SimulationEvent event, final double rate) {
+        if (size == events.length) {
+            events = Arrays.copyOf(events, 2 * size);
+            rates = Arrays.copyOf(rates, 2 * size);
+            positions = Arrays.copyOf(positions, 2 * size);
+        }
+        final int index = size++;
+        events[index] = event;
+        rates[index] = rate;
+        indices.put(event, index);
+        addToBin(index);
+    }
+
+    /**
+     * Remove the event in a slot, moving the event in the last slot into it so that the slots stay compact.
+     * @param index the slot of the event.
+     */
+    private void remove(final int index) {
+        removeFromBin(index);
+        indices.remove(events[index]);
+        final int last = --size;
+        if (index != last) {
+            events[index] = events[last];
+            rates[index] = rates[last];
+            positions[index] = positions[last];
+            bins[binOf(rates[index])].members[positions[index]] = index;
+            indices.put(events[index], index);
+        }
+        events[last] = null;
+        rates[last] = 0.0;
+        if (size == 0) {
+            total = 0.0;
+        }
+    }
+
+    /**
+     * Add the event in a slot to the bin for its rate.
+     * @param index the slot of the event.
+     */
+    private void addToBin(final int index) {
+        final int binIndex = binOf(rates[index]);
+        Bin bin = bins[binIndex];
+        if (bin == null) {
+            bin = new Bin(Math.scalb(1.0, binIndex + Double.MIN_EXPONENT - 1));
+            bins[binIndex] = bin;
+        }
+        if (bin.size == 0) {
+            bin.active = numActiveBins;
+            activeBins[numActiveBins++] = binIndex;
+        }
+        if (bin.size == bin.members.length) {
+            bin.members = Arrays.copyOf(bin.members, 2 * bin.size);
+        }
+        positions[index] = bin.size;
+        bin.members[bin.size++] = index;
+        bin.sum += rates[index];
+        total += rates[index];
+    }
+
+    /**
+     * Remove the event in a slot from the bin for its rate.
+     * @param index the slot of the event.
+     */
+    private void removeFromBin(final int index) {
+        final Bin bin = bins[binOf(rates[index])];
+        final int last = bin.members[--bin.size];
+        bin.members[positions[index]] = last;
+        positions[last] = positions[index];
+        bin.sum -= rates[index];
+        total -= rates[index];
+        if (bin.size == 0) {
+            // the bin is empty so its sum is exactly zero, and it is removed from the bins in use.
+            bin.sum = 0.0;
+            final int moved = activeBins[--numActiveBins];
+            activeBins[bin.active] = moved;
+            bins[moved].active = bin.active;
+        }
+    }
+
+    /**
+     * Recalculate the sums of the rates in each bin and the total rate.
+     */
+    private void resum() {
+        total = 0.0;
+        for (int i = 0; i < numActiveBins; i++) {
+            final Bin bin = bins[activeBins[i]];
+            bin.sum = 0.0;
+            for (int j = 0; j < bin.size; j++) {
+                bin.sum += rates[bin.members[j]];
+            }
+            total += bin.sum;
+        }
+        updates = 0;
+    }
+
+    /**
+     * The slots of the events whose rates lie in [lower, 2 * lower).
+     */
+    private static final class Bin implements Serializable {
+
+        /**
+         * Create an empty bin.
+         * @param lower the lower bound of the rates in the bin.
+         */
+        private Bin(final double lower) {
+            this.lower = lower;
+        }
+        private final double lower;
+        private int[] members = new int[INITIAL_CAPACITY];
+        private int size = 0;
+        private double sum = 0.0;
+        // the position of the bin in the list of bins in use.
+        private int active;
+        /**
+         * The serialVersionUID.
+         */
+        private static final long serialVersionUID = 8046393207166224152L;
+    }
+
+    private Map<SimulationEvent, Integer> indices;
+    // the event and rate in each slot, and the position of the slot in its bin; the first size slots are used.
+    private SimulationEvent[] events;
+    private double[] rates;
+    private int[] positions;
+    private int size;
+    // the bins, indexed by binOf(), and the indices of those that contain events.
+    private Bin[] bins;
+    private int[] activeBins;
+    private int numActiveBins;
+    private double total;
+    private int updates;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NUM_BINS = Double.MAX_EXPONENT - Double.MIN_EXPONENT + 2;
+    private static final int RESUM_FACTOR = 4;
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = -1187412052968224152L;
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic.algorithms;
+
+import broadwick.rng.RNG;
+import broadwick.stochastic.SimulationEvent;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The rates of a set of events held in a Fenwick (binary indexed) tree, so that the rate of an event can be changed and
+ * an event selected with probability proportional to its rate in O(log n) time, and the total rate is known in O(1).
+ * Events are given a slot in the tree when they are first seen; an event whose rate falls to zero keeps its slot (so
+ * that it can be reused cheaply) until more than half of the slots are empty, when the tree is rebuilt without them.
+ * The tree is also rebuilt after a number of updates proportional to its size, to discard the rounding errors that
+ * accumulate in the sums.
+ */
+final class EventRateTree implements EventSelector {
+
+    /**
+     * Create an empty tree.
+     */
+    EventRateTree() {
+        clear();
+    }
+
+    @Override
+    public void clear() {
+        indices = new HashMap<>();
+        events = new SimulationEvent[INITIAL_CAPACITY];
+        rates = new double[INITIAL_CAPACITY];
+        tree = new double[INITIAL_CAPACITY + 1];
+        size = 0;
+        numPositive = 0;
+        total = 0.0;
+        updates = 0;
+    }
+
+    @Override
+    public double getTotal() {
+        return total;
+    }
+
+    /**
+     * Get the number of events with a positive rate.
+     * @return the number of events that can be selected.
+     */
+    int getNumEvents() {
+        return numPositive;
+    }
+
+    @Override
+    public double getRate(final SimulationEvent event) {
+        final Integer index = indices.get(event);
+        return index == null ? 0.0 : rates[index];
+    }
+
+    @Override
+    public void setRate(final SimulationEvent event, final double rate) {
+        final double newRate = rate > 0.0 ? rate : 0.0;
+        Integer index = indices.get(event);
+        if (index == null) {
+            if (newRate == 0.0) {
+                return;
+            }
+            index = append(event);
+        }
+        final double delta = newRate - rates[index];
+        if (delta == 0.0) {
+            return;
+        }
+        if (rates[index] == 0.0) {
+            numPositive++;
+        } else if (newRate == 0.0) {
+            numPositive--;
+        }
+        rates[index] = newRate;
+        total += delta;
+        for (int i = index + 1; i <= size; i += i & -i) {
+            tree[i] += delta;
+        }
+
+        updates++;
+        if (updates > REBUILD_FACTOR * Math.max(size, INITIAL_CAPACITY)) {
+            rebuild();
+        }
+    }
+
+    @Override
+    public SimulationEvent select(final RNG generator) {
+        return select(generator.getDouble() * total);
+    }
+
+    /**
+     * Select the event whose range of the cumulative rates (in the order of the slots of the tree) contains a value.
+     * @param value a value between 0 and the total rate, e.g. a uniform random number multiplied by the total rate.
+     * @return the selected event, or null if no event has a positive rate.
+     */
+    SimulationEvent select(final double value) {
+        if (numPositive == 0) {
+            return null;
+        }
+        // find the last slot whose cumulative rate is not greater than the value, the event in the following slot is
+        // the one selected. Slots with a zero rate are passed over.
+        int position = 0;
+        double remaining = value;
+        for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+            final int next = position + step;
+            if (next <= size && tree[next] <= remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        // rounding may leave us beyond the last event with a positive rate (or on an empty slot).
+        if (position >= size || rates[position] == 0.0) {
+            position = Math.min(position, size - 1);
+            while (rates[position] == 0.0) {
+                position = position == 0 ? size - 1 : position - 1;
+            }
+        }
+        return events[position];
+    }
+
+    /**
+     * Add an event with a zero rate in a new slot at the end of the tree.
+     * @param event the event.
+     * @return the index of the slot.
+     */
+    private int append(final SimulationEvent event) {
+        if (size == events.length) {
+            events = Arrays.copyOf(events, 2 * size);
+            rates = Arrays.copyOf(rates, 2 * size);
+            tree = new double[2 * size + 1];
+            build();
+        }
+        final int index = size++;
+        events[index] = event;
+        rates[index] = 0.0;
+        indices.put(event, index);
+
+        // the new node holds the sum of the rates of the slots it covers, all of which precede the new slot.
+        final int node = index + 1;
+        tree[node] = prefixSum(index) - prefixSum(node - (node & -node));
+        return index;
+    }
+
+    /**
+     * Get the sum of the rates of the first slots of the tree.
+     * @param count the number of slots.
+     * @return the sum of their rates.
+     */
+    private double prefixSum(final int count) {
+        double sum = 0.0;
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Rebuild the tree from the rates of its events, removing the slots of events that have a zero rate if they make up
+     * more than half of the tree.
+     */
+    private void rebuild() {
+        if (size > INITIAL_CAPACITY && numPositive < size / 2) {
+            int compacted = 0;
+            indices.clear();
+            for (int i = 0; i < size; i++) {
+                if (rates[i] > 0.0) {
+                    events[compacted] = events[i];
+                    rates[compacted] = rates[i];
+                    indices.put(events[compacted], compacted);
+                    compacted++;
+                }
+            }
+            Arrays.fill(events, compacted, size, null);
+            Arrays.fill(rates, compacted, size, 0.0);
+            size = compacted;
+        }
+        build();
+        updates = 0;
+    }
+
+    /**
+     * Build the tree (and the total rate) from the rates of its events in O(n) time.
+     */
+    private void build() {
+        Arrays.fill(tree, 0.0);
+        total = 0.0;
+        for (int i = 1; i <= size; i++) {
+            tree[i] += rates[i - 1];
+            total += rates[i - 1];
+            final int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private Map<SimulationEvent, Integer> indices;
+    private SimulationEvent[] events;
+    private double[] rates;
+    // tree[i] is the sum of the rates of the slots i - (i & -i) to i - 1.
+    private double[] tree;
+    private int size;
+    private int numPositive;
+    private double total;
+    private int updates;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int REBUILD_FACTOR = 4;
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 4410982377615224152L;
+}
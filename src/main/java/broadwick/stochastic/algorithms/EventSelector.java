@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic.algorithms;
+
+import broadwick.rng.RNG;
+import broadwick.stochastic.SimulationEvent;
+import java.io.Serializable;
+
+/**
+ * The rates of the events of a direct method simulator, held so that the rate of an event can be updated and an event
+ * selected (with probability proportional to its rate) without going through every event.
+ */
+interface EventSelector extends Serializable {
+
+    /**
+     * Remove all the events.
+     */
+    void clear();
+
+    /**
+     * Get the sum of the rates of all the events.
+     * @return the total rate.
+     */
+    double getTotal();
+
+    /**
+     * Get the rate of an event.
+     * @param event the event.
+     * @return the rate of the event, 0 if it is not held.
+     */
+    double getRate(SimulationEvent event);
+
+    /**
+     * Set the rate of an event, adding it if required.
+     * @param event the event.
+     * @param rate  the rate of the event, an event with a rate that is not positive is removed.
+     */
+    void setRate(SimulationEvent event, double rate);
+
+    /**
+     * Select an event with probability proportional to its rate.
+     * @param generator the random number generator.
+     * @return the selected event, or null if no event has a positive rate.
+     */
+    SimulationEvent select(RNG generator);
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic.algorithms;
+
+import broadwick.stochastic.SimulationEvent;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An indexed binary min-heap of the (putative) times at which events fire, each event with its current rate, as used by
+ * the Next Reaction Method. The time and rate of any event can be changed in O(log n) time and the earliest event is
+ * found in O(1).
+ */
+final class EventTimeQueue implements Serializable {
+
+    /**
+     * Create an empty queue.
+     */
+    EventTimeQueue() {
+        clear();
+    }
+
+    /**
+     * Remove all the events from the queue.
+     */
+    void clear() {
+        indices = new HashMap<>();
+        events = new SimulationEvent[INITIAL_CAPACITY];
+        rates = new double[INITIAL_CAPACITY];
+        times = new double[INITIAL_CAPACITY];
+        heap = new int[INITIAL_CAPACITY];
+        positions = new int[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * Get the number of events in the queue.
+     * @return the number of events.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the event that fires first.
+     * @return the earliest event, or null if the queue is empty.
+     */
+    SimulationEvent peek() {
+        return size == 0 ? null : events[heap[0]];
+    }
+
+    /**
+     * Get the time at which the first event fires.
+     * @return the earliest time, or positive infinity if the queue is empty.
+     */
+    double peekTime() {
+        return size == 0 ? Double.POSITIVE_INFINITY : times[heap[0]];
+    }
+
+    /**
+     * Check if an event is in the queue.
+     * @param event the event.
+     * @return true if the queue contains the event.
+     */
+    boolean contains(final SimulationEvent event) {
+        return indices.containsKey(event);
+    }
+
+    /**
+     * Get the rate of an event.
+     * @param event the event.
+     * @return the rate of the event, 0 if it is not in the queue.
+     */
+    double getRate(final SimulationEvent event) {
+        final Integer index = indices.get(event);
+        return index == null ? 0.0 : rates[index];
+    }
+
+    /**
+     * Get the time at which an event fires.
+     * @param event the event.
+     * @return the time of the event, positive infinity if it is not in the queue.
+     */
+    double getTime(final SimulationEvent event) {
+        final Integer index = indices.get(event);
+        return index == null ? Double.POSITIVE_INFINITY : times[index];
+    }
+
+    /**
+     * Add an event to the queue or change its rate and time.
+     * @param event the event.
+     * @param rate  the rate of the event.
+     * @param time  the time at which the event fires.
+     */
+    void put(final SimulationEvent event, final double rate, final double time) {
+        Integer index = indices.get(event);
+        if (index == null) {
+            if (size == heap.length) {
+                grow();
+            }
+            // the slots of the events are kept compact, so the first free slot is the one after the last event.
+            index = size;
+            indices.put(event, index);
+            events[index] = event;
+            rates[index] = rate;
+            times[index] = time;
+            heap[size] = index;
+            positions[index] = size;
+            size++;
+            siftUp(positions[index]);
+        } else {
+            final double oldTime = times[index];
+            rates[index] = rate;
+            times[index] = time;
+            if (time < oldTime) {
+                siftUp(positions[index]);
+            } else {
+                siftDown(positions[index]);
+            }
+        }
+    }
+
+    /**
+     * Remove an event from the queue.
+     * @param event the event.
+     */
+    void remove(final SimulationEvent event) {
+        final Integer index = indices.remove(event);
+        if (index == null) {
+            return;
+        }
+        // move the last event of the heap into the hole left by the event.
+        final int position = positions[index];
+        final int last = heap[--size];
+        if (position < size) {
+            heap[position] = last;
+            positions[last] = position;
+            siftDown(position);
+            siftUp(positions[last]);
+        }
+        // and move the event in the last slot into the slot of the removed event so that the slots stay compact.
+        if (index != size) {
+            events[index] = events[size];
+            rates[index] = rates[size];
+            times[index] = times[size];
+            positions[index] = positions[size];
+            heap[positions[index]] = index;
+            indices.put(events[index], index);
+        }
+        events[size] = null;
+    }
+
+    /**
+     * Get the events in the queue (in no particular order).
+     * @return a copy of the events.
+     */
+    SimulationEvent[] getEvents() {
+        return Arrays.copyOf(events, size);
+    }
+
+    /**
+     * Move an entry of the heap towards the root until its parent fires before it.
+     * @param start the position of the entry in the heap.
+     */
+    private void siftUp(final int start) {
+        int position = start;
+        final int index = heap[position];
+        final double time = times[index];
+        while (position > 0) {
+            final int parent = (position - 1) >>> 1;
+            if (times[heap[parent]] <= time) {
+                break;
+            }
+            heap[position] = heap[parent];
+            positions[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = index;
+        positions[index] = position;
+    }
+
+    /**
+     * Move an entry of the heap towards the leaves until it fires before its children.
+     * @param start the position of the entry in the heap.
+     */
+    private void siftDown(final int start) {
+        int position = start;
+        final int index = heap[position];
+        final double time = times[index];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && times[heap[child + 1]] < times[heap[child]]) {
+                child++;
+            }
+            if (time <= times[heap[child]]) {
+                break;
+            }
+            heap[position] = heap[child];
+            positions[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = index;
+        positions[index] = position;
+    }
+
+    /**
+     * Double the capacity of the queue.
+     */
+    private void grow() {
+        final int capacity = 2 * heap.length;
+        events = Arrays.copyOf(events, capacity);
+        rates = Arrays.copyOf(rates, capacity);
+        times = Arrays.copyOf(times, capacity);
+        heap = Arrays.copyOf(heap, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+    }
+
+    private Map<SimulationEvent, Integer> indices;
+    // the event, rate and time in each slot, the first size slots are used.
+    private SimulationEvent[] events;
+    private double[] rates;
+    private double[] times;
+    // heap[i] is the slot at position i of the heap and positions[slot] is the position of a slot in the heap.
+    private int[] heap;
+    private int[] positions;
+    private int size;
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = -6628813394156224152L;
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic.algorithms;
+
+import broadwick.stochastic.AmountManager;
+import broadwick.stochastic.TransitionKernel;
+import java.io.Serializable;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Implementation of Gillespie's Direct method that keeps the rates of the events in a Fenwick tree, so that the total
+ * rate is known without summing the kernel and an event is selected in O(log n) time. The tree is updated from the
+ * events whose rates have changed in the transition kernel (see TransitionKernel.pollChangedHandles()), so the kernel
+ * should be updated with setRate(), addToKernel() or setTransitionProbability() rather than cleared and refilled at
+ * each step (which works but makes each step O(n) again).
+ */
+@Slf4j
+public class GillespieLogDirect extends AbstractDirectMethodBase implements Serializable {
+
+    /**
+     * No args constructor. Do not use, it is added so that the class can be deserialised if needed.
+     */
+    public GillespieLogDirect() {
+        super(new EventRateTree());
+    }
+
+    /**
+     * Implementation of Gillespie's Direct method with logarithmic event selection.
+     * @param amountManager    the amount manager used in the simulator.
+     * @param transitionKernel the transition kernel to be used with the stochastic solver.
+     */
+    public GillespieLogDirect(final AmountManager amountManager, final TransitionKernel transitionKernel) {
+        this(amountManager, transitionKernel, false);
+    }
+
+    /**
+     * Implementation of Gillespie's Direct method with logarithmic event selection.
+     * @param amountManager    the amount manager used in the simulator.
+     * @param transitionKernel the transition kernel to be used with the stochastic solver.
+     * @param reverseTime      true if we wish to go backwards in time.
+     */
+    public GillespieLogDirect(final AmountManager amountManager,
+                              final TransitionKernel transitionKernel, final boolean reverseTime) {
+        super(amountManager, transitionKernel, reverseTime, new EventRateTree());
+    }
+
+    @Override
+    public final String getName() {
+        return "Gillespie Logarithmic Direct Method";
+    }
+
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = -3172450946322224152L;
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic.algorithms;
+
+import broadwick.rng.RNG;
+import broadwick.stochastic.AmountManager;
+import broadwick.stochastic.SimulationEvent;
+import broadwick.stochastic.StochasticSimulator;
+import broadwick.stochastic.TransitionKernel;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Implementation of the Next Reaction Method of Gibson and Bruck (J. Phys. Chem. A 2000, 104, 1876-1889). Each event
+ * has a putative (absolute) firing time, kept in an indexed binary heap; at each step the earliest event fires and only
+ * the events whose rates it changed are updated: the fired event is given a new random time and the times of the
+ * others are rescaled by the ratio of their old and new rates, so each step takes O(d log n) time where d is the number
+ * of rates changed by an event.
+ * <p>
+ * The events whose rates have changed are found from the transition kernel (see TransitionKernel.pollChangedEvents())
+ * and, if one has been given, from the dependency graph of the events. A model that clears and refills the kernel after
+ * every event should give the dependency graph (listing, for each event, every event whose rate it can change),
+ * otherwise every event in the kernel is checked after each event.
+ * <p>
+ * Theta events are performed when the simulation time reaches them, before any event that would fire after them.
+ */
+@ToString(of = "resync")
+@Slf4j
+public class NextReactionMethod extends StochasticSimulator implements Serializable {
+
+    /**
+     * No args constructor. Do not use, it is added so that the class can be deserialised if needed.
+     */
+    public NextReactionMethod() {
+        super();
+    }
+
+    /**
+     * Implementation of the Next Reaction Method.
+     * @param amountManager    the amount manager used in the simulator.
+     * @param transitionKernel the transition kernel to be used with the stochastic solver.
+     */
+    public NextReactionMethod(final AmountManager amountManager, final TransitionKernel transitionKernel) {
+        super(amountManager, transitionKernel);
+    }
+
+    /**
+     * Set the dependency graph of the events, i.e. the events whose rates may change when each event fires. The rate of
+     * an event that fires is always read from the kernel again so it need not be included in its own dependencies.
+     * @param dependencies the events whose rates each event may change, keyed by the event.
+     */
+    public final void setDependencyGraph(
+            final Map<SimulationEvent, ? extends Collection<SimulationEvent>> dependencies) {
+        dependencyGraph = new HashMap<>();
+        for (final Map.Entry<SimulationEvent, ? extends Collection<SimulationEvent>> entry : dependencies.entrySet()) {
+            dependencyGraph.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+    }
+
+    @Override
+    public final void reinitialize() {
+        resync = true;
+    }
+
+    @Override
+    public final void performStep() {
+        updateRates();
+
+        final double nextEventTime = queue.peekTime();
+        final double nextThetaTime = getNextThetaEventTime();
+        if (nextThetaTime <= nextEventTime && nextThetaTime != Double.POSITIVE_INFINITY) {
+            // the observers may change the kernel so the rates are brought up to date at the start of the next step.
+            setCurrentTime(Math.max(getCurrentTime(), nextThetaTime));
+            doThetaEvent();
+            return;
+        }
+
+        if (nextEventTime == Double.POSITIVE_INFINITY) {
+            // nothing can happen, we are done.
+            setCurrentTime(Double.POSITIVE_INFINITY);
+            return;
+        }
+
+        lastEvent = queue.peek();
+        doEvent(lastEvent, nextEventTime);
+        setCurrentTime(nextEventTime);
+    }
+
+    /**
+     * Bring the rates and firing times of the events up to date with the transition kernel, after an event has fired
+     * or the kernel has been changed by an observer.
+     */
+    private void updateRates() {
+        final TransitionKernel kernel = getTransitionKernel();
+        final boolean tracked = kernel == trackedKernel && !resync;
+        final boolean journal = kernel.pollChangedEvents(changedEvents);
+        if (!tracked || !journal && (dependencyGraph == null || lastEvent == null)) {
+            // we don't know which rates have changed (the kernel is new or has been replaced and we have no
+            // dependency graph) so check them all.
+            changedEvents.clear();
+            Collections.addAll(changedEvents, queue.getEvents());
+            changedEvents.addAll(kernel.getTransitionEvents());
+            trackedKernel = kernel;
+            resync = false;
+        } else if (dependencyGraph != null && lastEvent != null) {
+            final List<SimulationEvent> dependencies = dependencyGraph.get(lastEvent);
+            if (dependencies != null) {
+                changedEvents.addAll(dependencies);
+            }
+        }
+
+        for (final SimulationEvent event : changedEvents) {
+            final Double rate = kernel.getTransitionProbability(event);
+            updateRate(event, rate == null ? 0.0 : rate, false);
+        }
+        changedEvents.clear();
+
+        if (lastEvent != null) {
+            final Double rate = kernel.getTransitionProbability(lastEvent);
+            updateRate(lastEvent, rate == null ? 0.0 : rate, true);
+            lastEvent = null;
+        }
+    }
+
+    /**
+     * Update the rate of an event and its firing time.
+     * @param event  the event.
+     * @param rate   the new rate of the event.
+     * @param redraw true if the event has just fired, so it needs a new firing time even if its rate has not changed.
+     */
+    private void updateRate(final SimulationEvent event, final double rate, final boolean redraw) {
+        if (rate <= 0.0) {
+            queue.remove(event);
+            return;
+        }
+        final double oldRate = queue.getRate(event);
+        if (redraw || oldRate == 0.0) {
+            queue.put(event, rate, getCurrentTime() + Math.log(1 / GENERATOR.getDouble()) / rate);
+        } else if (rate != oldRate) {
+            // the time to the event is exponentially distributed so we can rescale the time remaining (Gibson and
+            // Bruck, section 5).
+            final double remaining = queue.getTime(event) - getCurrentTime();
+            queue.put(event, rate, getCurrentTime() + remaining * oldRate / rate);
+        }
+    }
+
+    @Override
+    public final String getName() {
+        return "Next Reaction Method";
+    }
+
+    @Override
+    public final void setRngSeed(final int seed) {
+        GENERATOR.seed(seed);
+    }
+
+    private boolean resync = true;
+    private final EventTimeQueue queue = new EventTimeQueue();
+    private final List<SimulationEvent> changedEvents = new ArrayList<>();
+    private Map<SimulationEvent, List<SimulationEvent>> dependencyGraph = null;
+    private SimulationEvent lastEvent = null;
+    private TransitionKernel trackedKernel = null;
+    private static final RNG GENERATOR = new RNG(RNG.Generator.Well19937c);
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 5516930374721224152L;
+}
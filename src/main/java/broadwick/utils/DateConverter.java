@@ -0,0 +1,219 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.utils;
+
+import broadwick.BroadwickConstants;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import lombok.Getter;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * Convert dates in a given format to the integer dates (the number of days from 1/1/1900) used by Broadwick. Converters
+ * are compiled once per format and cached, use forPattern() to obtain one. Purely numeric formats made of a four digit
+ * year (yyyy), two digit month (MM) and two digit day (dd) separated by fixed characters (e.g. dd/MM/yyyy or
+ * yyyy-MM-dd) are converted directly without creating any objects; any other format, or a date that does not match
+ * the fixed width layout of the format, is parsed by Joda time. Converters are immutable and may be shared between
+ * threads.
+ */
+public final class DateConverter {
+
+    /**
+     * Create the converter for a date format.
+     * @param pattern the date format (in Joda time/SimpleDateFormat notation).
+     */
+    private DateConverter(final String pattern) {
+        this.pattern = pattern;
+        this.formatter = DateTimeFormat.forPattern(pattern);
+
+        // work out where the year, month and day are in the (fixed width) pattern, if the pattern contains anything
+        // else we will use Joda to parse it.
+        int yearIdx = -1;
+        int monthIdx = -1;
+        int dayIdx = -1;
+        boolean numeric = true;
+        int i = 0;
+        while (i < pattern.length() && numeric) {
+            final char c = pattern.charAt(i);
+            if (pattern.startsWith("yyyy", i) && yearIdx < 0) {
+                yearIdx = i;
+                i += 4;
+            } else if (pattern.startsWith("MM", i) && monthIdx < 0) {
+                monthIdx = i;
+                i += 2;
+            } else if (pattern.startsWith("dd", i) && dayIdx < 0) {
+                dayIdx = i;
+                i += 2;
+            } else if (Character.isLetter(c) || c == '\'') {
+                numeric = false;
+            } else {
+                i++;
+            }
+        }
+        if (numeric && yearIdx >= 0 && monthIdx >= 0 && dayIdx >= 0) {
+            this.fixedWidth = true;
+            this.yearIndex = yearIdx;
+            this.monthIndex = monthIdx;
+            this.dayIndex = dayIdx;
+        } else {
+            this.fixedWidth = false;
+            this.yearIndex = -1;
+            this.monthIndex = -1;
+            this.dayIndex = -1;
+        }
+    }
+
+    /**
+     * Get the (cached) converter for a date format.
+     * @param pattern the date format (in Joda time/SimpleDateFormat notation).
+     * @return the converter.
+     */
+    public static DateConverter forPattern(final String pattern) {
+        DateConverter converter = CONVERTERS.get(pattern);
+        if (converter == null) {
+            converter = new DateConverter(pattern);
+            final DateConverter existing = CONVERTERS.putIfAbsent(pattern, converter);
+            if (existing != null) {
+                converter = existing;
+            }
+        }
+        return converter;
+    }
+
+    /**
+     * Convert a date to the number of days from a fixed 'zero date' (1/1/1900).
+     * @param date the date in the format of this converter.
+     * @return the number of days from the 'zero date'.
+     */
+    public int toDays(final CharSequence date) {
+        if (fixedWidth && date.length() == pattern.length()) {
+            final int year = parseDigits(date, yearIndex, 4);
+            final int month = parseDigits(date, monthIndex, 2);
+            final int day = parseDigits(date, dayIndex, 2);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= daysInMonth(year, month)
+                && separatorsMatch(date)) {
+                return daysFromCivil(year, month, day) - ZERO_DAYS;
+            }
+        }
+        return BroadwickConstants.getDate(formatter.parseDateTime(date.toString()));
+    }
+
+    /**
+     * Convert a column of dates to the number of days from a fixed 'zero date' (1/1/1900).
+     * @param dates   the dates in the format of this converter.
+     * @param missing the value to use for missing (null or empty) dates.
+     * @return the number of days from the 'zero date' for each date, in the same order as the dates.
+     */
+    public int[] toDays(final List<? extends CharSequence> dates, final int missing) {
+        final int[] days = new int[dates.size()];
+        int i = 0;
+        for (final CharSequence date : dates) {
+            days[i++] = (date == null || date.length() == 0) ? missing : toDays(date);
+        }
+        return days;
+    }
+
+    /**
+     * Convert a column of dates to the number of days from a fixed 'zero date' (1/1/1900).
+     * @param dates   the dates in the format of this converter.
+     * @param missing the value to use for missing (null or empty) dates.
+     * @return the number of days from the 'zero date' for each date, in the same order as the dates.
+     */
+    public int[] toDays(final CharSequence[] dates, final int missing) {
+        final int[] days = new int[dates.length];
+        for (int i = 0; i < dates.length; i++) {
+            days[i] = (dates[i] == null || dates[i].length() == 0) ? missing : toDays(dates[i]);
+        }
+        return days;
+    }
+
+    /**
+     * Check that the characters of a date that are not part of the year, month or day are those in the pattern.
+     * @param date the date.
+     * @return true if the separators in the date match the pattern.
+     */
+    private boolean separatorsMatch(final CharSequence date) {
+        for (int i = 0; i < pattern.length(); i++) {
+            final boolean isField = (i >= yearIndex && i < yearIndex + 4) || (i >= monthIndex && i < monthIndex + 2)
+                                    || (i >= dayIndex && i < dayIndex + 2);
+            if (!isField && date.charAt(i) != pattern.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse a fixed number of decimal digits from a date.
+     * @param date   the date.
+     * @param offset the position of the first digit.
+     * @param length the number of digits.
+     * @return the value of the digits or -1 if any of the characters is not a digit.
+     */
+    private static int parseDigits(final CharSequence date, final int offset, final int length) {
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            final int digit = date.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Get the number of days in a month of the (proleptic) Gregorian calendar.
+     * @param year  the year.
+     * @param month the month (1-12).
+     * @return the number of days in the month.
+     */
+    private static int daysInMonth(final int year, final int month) {
+        if (month == 2) {
+            final boolean leap = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+            return leap ? 29 : 28;
+        }
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+
+    /**
+     * Calculate the number of days between 1/1/1970 and a date in the (proleptic) Gregorian calendar.
+     * @param year  the year.
+     * @param month the month (1-12).
+     * @param day   the day of the month.
+     * @return the number of days since 1/1/1970.
+     */
+    private static int daysFromCivil(final int year, final int month, final int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    @Getter
+    private final String pattern;
+    private final DateTimeFormatter formatter;
+    private final boolean fixedWidth;
+    private final int yearIndex;
+    private final int monthIndex;
+    private final int dayIndex;
+    private static final int ZERO_DAYS = daysFromCivil(1900, 1, 1);
+    private static final ConcurrentMap<String, DateConverter> CONVERTERS = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A queue of theta events, i.e. objects that observers have registered to be given to them at a set time of a
+ * simulation. The events for each time are held together in a binary heap ordered by time (the latest first if time
+ * runs backwards), with an index of the times, so registering events and removing those for the next time take
+ * O(log n) time where n is the number of distinct times.
+ * <p>
+ * Events may be registered from any thread without locking: they are added to a lock-free queue and moved into the heap
+ * by the thread that reads the queue (the simulation thread) the next time it does so. The queue must only be read by
+ * one thread at a time.
+ * @param <T> the type of the observers.
+ */
+@Slf4j
+public class ThetaQueue<T> implements Serializable {
+
+    /**
+     * Construct an empty theta queue for a simulation that runs forwards in time.
+     */
+    public ThetaQueue() {
+        this(false);
+    }
+
+    /**
+     * Construct an empty theta queue.
+     * @param reverseTime true if the simulation runs backwards in time, so the latest events are taken first.
+     */
+    public ThetaQueue(final boolean reverseTime) {
+        this.reverseTime = reverseTime;
+    }
+
+    /**
+     * Add a new theta event to the queue.
+     * @param time     the time the theta event occurs.
+     * @param observer the observer to be given the event.
+     * @param theta    the theta event.
+     */
+    public final void pushTheta(final double time, final T observer, final Object theta) {
+        log.trace("Adding new {} theta event at t={}", theta.getClass(), time);
+        pending.add(new Registration<>(time, observer, Collections.singletonList(theta)));
+    }
+
+    /**
+     * Add a number of theta events to the queue, e.g. a schedule of movements, at once. Adding many events this way
+     * builds the heap in time proportional to the number of distinct times.
+     * @param observer the observer to be given the events.
+     * @param thetas   the theta events to be added, keyed by the time at which they occur.
+     */
+    public final void pushThetas(final T observer, final Map<Double, ? extends Collection<?>> thetas) {
+        log.trace("Adding theta events at {} times", thetas.size());
+        for (final Map.Entry<Double, ? extends Collection<?>> entry : thetas.entrySet()) {
+            pending.add(new Registration<>(entry.getKey(), observer, new ArrayList<>(entry.getValue())));
+        }
+    }
+
+    /**
+     * Get the time of the next theta event.
+     * @return the time of the next theta event, or positive (negative if time runs backwards) infinity if there are
+     *         none.
+     */
+    public final double getNextThetaEventTime() {
+        addPendingEvents();
+        if (size == 0) {
+            return reverseTime ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        return heap[0].time;
+    }
+
+    /**
+     * Get the number of distinct times at which there are theta events.
+     * @return the number of times.
+     */
+    public final int size() {
+        addPendingEvents();
+        return size;
+    }
+
+    /**
+     * Get the observers and the collection of events they are subscribed to for the next time, removing them from the
+     * theta queue.
+     * @return a map of the observers and their subscribed data, empty if there are no theta events.
+     */
+    public final Map<T, Collection<Object>> getNextEventDataAndRemove() {
+        addPendingEvents();
+        if (size == 0) {
+            return new HashMap<>();
+        }
+        final Slot<T> next = heap[0];
+        index.remove(next.time);
+        heap[0] = heap[--size];
+        heap[size] = null;
+        if (size > 0) {
+            siftDown(0);
+        }
+        log.trace("Found {} configured events and observers at t={}", next.events.size(), next.time);
+        return next.events;
+    }
+
+    /**
+     * Move the registered events into the heap. The new times are appended to the heap and moved up to their places
+     * one at a time, unless there are many of them when the whole heap is rebuilt.
+     */
+    private void addPendingEvents() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final int oldSize = size;
+        Registration<T> registration = pending.poll();
+        while (registration != null) {
+            Slot<T> slot = index.get(registration.time);
+            if (slot == null) {
+                if (size == heap.length) {
+                    heap = Arrays.copyOf(heap, 2 * size);
+                }
+                slot = new Slot<>(registration.time);
+                index.put(registration.time, slot);
+                heap[size++] = slot;
+            }
+            Collection<Object> events = slot.events.get(registration.observer);
+            if (events == null) {
+                events = new LinkedHashSet<>();
+                slot.events.put(registration.observer, events);
+            }
+            events.addAll(registration.thetas);
+            registration = pending.poll();
+        }
+
+        if (size - oldSize > oldSize / 2) {
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        } else {
+            for (int i = oldSize; i < size; i++) {
+                siftUp(i);
+            }
+        }
+    }
+
+    /**
+     * Check if the events at one time are taken before those at another.
+     * @param time  the first time.
+     * @param other the second time.
+     * @return true if the events at the first time are taken first.
+     */
+    private boolean before(final double time, final double other) {
+        return reverseTime ? time > other : time < other;
+    }
+
+    /**
+     * Move a slot of the heap towards the root until its parent is taken before it.
+     * @param start the position of the slot in the heap.
+     */
+    private void siftUp(final int start) {
+        int position = start;
+        final Slot<T> slot = heap[position];
+        while (position > 0) {
+            final int parent = (position - 1) >>> 1;
+            if (!before(slot.time, heap[parent].time)) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = slot;
+    }
+
+    /**
+     * Move a slot of the heap towards the leaves until it is taken before its children.
+     * @param start the position of the slot in the heap.
+     */
+    private void siftDown(final int start) {
+        int position = start;
+        final Slot<T> slot = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(heap[child + 1].time, heap[child].time)) {
+                child++;
+            }
+            if (!before(heap[child].time, slot.time)) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = slot;
+    }
+
+    /**
+     * Create an empty array for the heap.
+     * @param <T>      the type of the observers.
+     * @param capacity the size of the array.
+     * @return the array.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Slot<T>[] newHeap(final int capacity) {
+        return (Slot<T>[]) new Slot<?>[capacity];
+    }
+
+    /**
+     * The theta events for one time, for each observer in the order they were first registered.
+     * @param <T> the type of the observers.
+     */
+    private static final class Slot<T> implements Serializable {
+
+        /**
+         * Create an empty slot.
+         * @param time the time of the events.
+         */
+        private Slot(final double time) {
+            this.time = time;
+        }
+        private final double time;
+        private final Map<T, Collection<Object>> events = new LinkedHashMap<>();
+        /**
+         * The serialVersionUID.
+         */
+        private static final long serialVersionUID = 3349066851935224152L;
+    }
+
+    /**
+     * Theta events registered by an observer for a time that have not yet been added to the heap.
+     * @param <T> the type of the observers.
+     */
+    private static final class Registration<T> implements Serializable {
+
+        /**
+         * Create the registration.
+         * @param time     the time of the events.
+         * @param observer the observer to be given the events.
+         * @param thetas   the events.
+         */
+        private Registration(final double time, final T observer, final Collection<?> thetas) {
+            this.time = time;
+            this.observer = observer;
+            this.thetas = thetas;
+        }
+        private final double time;
+        private final T observer;
+        private final Collection<?> thetas;
+        /**
+         * The serialVersionUID.
+         */
+        private static final long serialVersionUID = -7781546312504224152L;
+    }
+
+    private final boolean reverseTime;
+    private final Queue<Registration<T>> pending = new ConcurrentLinkedQueue<>();
+    private final Map<Double, Slot<T>> index = new HashMap<>();
+    private Slot<T>[] heap = newHeap(INITIAL_CAPACITY);
+    private int size = 0;
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * The serialVersionUID.
+     */
+    private static final long serialVersionUID = 4821920167003224152L;
+}
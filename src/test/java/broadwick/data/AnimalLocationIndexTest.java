@@ -0,0 +1,300 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.config.generated.DataFiles;
+import broadwick.config.generated.DataOptions;
+import broadwick.config.generated.LifeHistoryType;
+import broadwick.config.generated.Project;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import lombok.extern.slf4j.Slf4j;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for broadwick.data.AnimalLocationIndex class.
+ */
+@Slf4j
+public class AnimalLocationIndexTest {
+
+    public AnimalLocationIndexTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    @Rule
+    public TemporaryDatabases databases = new TemporaryDatabases();
+
+    /**
+     * Test the location of animals that are born, move (by full and directed movements, including several changes on
+     * the same day) and die, for both backends.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test
+    public void testGetLocationIdAtDate() throws IOException {
+        final List<String> animals = Arrays.asList(
+                // A1 never moves.
+                String.format("A1,cattle,%s,L1,,", date(10)),
+                // A2 makes a full movement that leaves L1 on day 20 and arrives on L2 on day 21.
+                String.format("A2,cattle,%s,L1,,", date(10)),
+                // A3 moves OFF L1 on day 20 and ON to L3 on day 25.
+                String.format("A3,cattle,%s,L1,,", date(10)),
+                // A4 is born on L1 and moves to L2 on the same day, then moves ON to L3 and dies on L4 on day 30.
+                String.format("A4,cattle,%s,L1,%s,L4", date(10), date(30)),
+                // A5 dies on L5 on day 40.
+                String.format("A5,cattle,%s,L1,%s,L5", date(10), date(40)));
+        final List<String> fullMovements = Arrays.asList(
+                String.format("A2,cattle,L1,%s,L2,%s", date(20), date(21)),
+                String.format("A4,cattle,L1,%s,L2,%s", date(10), date(10)));
+        final List<String> directedMovements = Arrays.asList(
+                String.format("A3,cattle,L1,%s,OFF", date(20)),
+                String.format("A3,cattle,L3,%s,ON", date(25)),
+                String.format("A4,cattle,L3,%s,ON", date(30)));
+
+        for (final String backend : new String[]{null, "memory"}) {
+            final Project.Data data = createData(animals, fullMovements, directedMovements);
+            data.getOptions().setBackend(backend);
+            try (DataReader reader = databases.track(new DataReader(data))) {
+                final Lookup lookup = reader.getLookup();
+                final AnimalLocationIndex index = new AnimalLocationIndex(lookup, 2);
+                assertEquals(5, index.getNumAnimals());
+
+                // birth: the animal is on its location of birth, even before it is born.
+                assertEquals("L1", index.getLocationIdAtDate("A1", FIRST_DATE + 5));
+                assertEquals("L1", index.getLocationIdAtDate("A1", FIRST_DATE + 10));
+                assertEquals("L1", index.getLocationIdAtDate("A1", FIRST_DATE + 100));
+
+                // full movement: the animal is on the destination from the departure date.
+                assertEquals("L1", index.getLocationIdAtDate("A2", FIRST_DATE + 19));
+                assertEquals("L2", index.getLocationIdAtDate("A2", FIRST_DATE + 20));
+                assertEquals("L2", index.getLocationIdAtDate("A2", FIRST_DATE + 21));
+
+                // directed movements: OFF leaves the animal on the location it moved off until it moves ON.
+                assertEquals("L1", index.getLocationIdAtDate("A3", FIRST_DATE + 22));
+                assertEquals("L1", index.getLocationIdAtDate("A3", FIRST_DATE + 24));
+                assertEquals("L3", index.getLocationIdAtDate("A3", FIRST_DATE + 25));
+
+                // changes on the same day are applied in the order birth, movements, death.
+                assertEquals("L2", index.getLocationIdAtDate("A4", FIRST_DATE + 10));
+                assertEquals("L2", index.getLocationIdAtDate("A4", FIRST_DATE + 29));
+                assertEquals("L4", index.getLocationIdAtDate("A4", FIRST_DATE + 30));
+
+                // death: the animal stays on its location of death.
+                assertEquals("L1", index.getLocationIdAtDate("A5", FIRST_DATE + 39));
+                assertEquals("L5", index.getLocationIdAtDate("A5", FIRST_DATE + 40));
+                assertEquals("L5", index.getLocationIdAtDate("A5", FIRST_DATE + 50));
+
+                assertNull(index.getLocationIdAtDate("unknown", FIRST_DATE + 10));
+
+                // the lookup agrees with the index for the animals that have not died and have a single change on each
+                // day.
+                for (final String animal : new String[]{"A1", "A2", "A3"}) {
+                    for (int day = FIRST_DATE + 10; day < FIRST_DATE + 50; day++) {
+                        assertEquals(lookup.getAnimalLocationIdAtDate(animal, day),
+                                     index.getLocationIdAtDate(animal, day));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that the index agrees with Lookup.getAnimalLocationIdAtDate() for random animals that move by full and
+     * directed movements (each on a different day), for both backends.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test
+    public void testCompareWithLookup() throws IOException {
+        final Random random = new Random(2013L);
+        final List<String> animals = new ArrayList<>();
+        final List<String> fullMovements = new ArrayList<>();
+        final List<String> directedMovements = new ArrayList<>();
+        for (int animal = 0; animal < NUM_ANIMALS; animal++) {
+            int day = random.nextInt(NUM_DAYS / 4);
+            animals.add(String.format("A%d,cattle,%s,L%d,,", animal, date(day), random.nextInt(NUM_LOCATIONS)));
+            for (int m = 0; m < 6; m++) {
+                day += 1 + random.nextInt(NUM_DAYS / 8);
+                final int location = random.nextInt(NUM_LOCATIONS);
+                if (random.nextBoolean()) {
+                    fullMovements.add(String.format("A%d,cattle,L%d,%s,L%d,%s", animal, random.nextInt(NUM_LOCATIONS),
+                                                    date(day), location, date(day)));
+                } else {
+                    directedMovements.add(String.format("A%d,cattle,L%d,%s,%s", animal, location, date(day),
+                                                        random.nextBoolean() ? "OFF" : "ON"));
+                }
+            }
+        }
+
+        for (final String backend : new String[]{null, "memory"}) {
+            final Project.Data data = createData(animals, fullMovements, directedMovements);
+            data.getOptions().setBackend(backend);
+            try (DataReader reader = databases.track(new DataReader(data))) {
+                final Lookup lookup = reader.getLookup();
+                final AnimalLocationIndex index = new AnimalLocationIndex(lookup, 3);
+                assertEquals(NUM_ANIMALS, index.getNumAnimals());
+                for (int animal = 0; animal < NUM_ANIMALS; animal++) {
+                    for (int day = FIRST_DATE; day < FIRST_DATE + NUM_DAYS; day += 3) {
+                        assertEquals(lookup.getAnimalLocationIdAtDate("A" + animal, day),
+                                     index.getLocationIdAtDate("A" + animal, day));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the data section of a configuration file that reads life histories, full movements and directed
+     * movements.
+     * @param animals           the lines of the life histories file (id, species, date and location of birth, date
+     *                          and location of death).
+     * @param fullMovements     the lines of the full movements file (id, species, departure location and date,
+     *                          destination location and date).
+     * @param directedMovements the lines of the directed movements file (id, species, location, date, direction).
+     * @return the data section.
+     * @throws IOException if the files cannot be written.
+     */
+    private Project.Data createData(final List<String> animals, final List<String> fullMovements,
+                                    final List<String> directedMovements) throws IOException {
+        final LifeHistoryType lifeHistory = new LifeHistoryType();
+        lifeHistory.setIdColumn(1);
+        lifeHistory.setSpeciesColumn(2);
+        lifeHistory.setDateOfBirthColumn(3);
+        lifeHistory.setLocationOfBirthColumn(4);
+        lifeHistory.setDateOfDeathColumn(5);
+        lifeHistory.setLocationOfDeathColumn(6);
+        final DataFiles.PopulationFile lifeHistoryFile = new DataFiles.PopulationFile();
+        lifeHistoryFile.setName(write("animals.csv", animals).toString());
+        lifeHistoryFile.setAlias("animals");
+        lifeHistoryFile.setSeparator(",");
+        lifeHistoryFile.setLifeHistory(lifeHistory);
+        lifeHistoryFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles.FullMovementFile fullMovementFile = new DataFiles.FullMovementFile();
+        fullMovementFile.setName(write("full.csv", fullMovements).toString());
+        fullMovementFile.setAlias("full");
+        fullMovementFile.setSeparator(",");
+        fullMovementFile.setIdColumn(1);
+        fullMovementFile.setSpeciesColumn(2);
+        fullMovementFile.setDepartureLocationIdColumn(3);
+        fullMovementFile.setDepartureDateColumn(4);
+        fullMovementFile.setDestinationLocationIdColumn(5);
+        fullMovementFile.setDestinationDateColumn(6);
+        fullMovementFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles.DirectedMovementFile directedMovementFile = new DataFiles.DirectedMovementFile();
+        directedMovementFile.setName(write("directed.csv", directedMovements).toString());
+        directedMovementFile.setAlias("directed");
+        directedMovementFile.setSeparator(",");
+        directedMovementFile.setIdColumn(1);
+        directedMovementFile.setSpeciesColumn(2);
+        directedMovementFile.setLocationColumn(3);
+        directedMovementFile.setMovementDateColumn(4);
+        directedMovementFile.setMovementDirectionColumn(5);
+        directedMovementFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles files = new DataFiles();
+        files.getPopulationFile().add(lifeHistoryFile);
+        files.getFullMovementFile().add(fullMovementFile);
+        files.getDirectedMovementFile().add(directedMovementFile);
+
+        final Project.Data data = new Project.Data();
+        data.setDatafiles(files);
+        data.setOptions(new DataOptions());
+        return data;
+    }
+
+    /**
+     * Format a date as it is written in the data files.
+     * @param day the number of days after the first day of the data.
+     * @return the date.
+     */
+    private static String date(final int day) {
+        return FIRST_DAY.plusDays(day).toString(DATE_FORMAT);
+    }
+
+    /**
+     * Write lines to a file in the test folder, replacing any file of the same name.
+     * @param name  the name of the file.
+     * @param lines the lines.
+     * @return the path of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private Path write(final String name, final List<String> lines) throws IOException {
+        final Path path = folder.getRoot().toPath().resolve(name);
+        Files.write(path, lines, StandardCharsets.UTF_8);
+        return path;
+    }
+
+    private static final int NUM_ANIMALS = 200;
+    private static final int NUM_LOCATIONS = 6;
+    private static final int NUM_DAYS = 400;
+    private static final int FIRST_DATE = 40177;
+    private static final LocalDate FIRST_DAY = new LocalDate(2010, 1, 1);
+    private static final String DATE_FORMAT = "yyyy-MM-dd";
+}
@@ -27,7 +27,12 @@ import org.junit.runners.Suite;
  */
 @RunWith(Suite.class)
 //@Suite.SuiteClasses({broadwick.data.DataReader.class})
-@Suite.SuiteClasses({})
+@Suite.SuiteClasses({broadwick.data.MovementIndexTest.class, broadwick.data.MovementStoreTest.class,
+                     broadwick.data.ColumnarDatabaseTest.class, broadwick.data.IngestManifestTest.class,
+                     broadwick.data.PopulationCubeTest.class, broadwick.data.IngestionMonitorTest.class,
+                     broadwick.data.AnimalLocationIndexTest.class, broadwick.data.DataSnapshotTest.class,
+                     broadwick.data.DataReaderSectionsTest.class, broadwick.data.DataFileReaderTest.class,
+                     broadwick.data.LookupStreamingTest.class, broadwick.data.LookupCacheTest.class})
 public class BroadwickDataTestSuite {
     
 
@@ -0,0 +1,452 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.config.generated.DataFiles;
+import broadwick.config.generated.DataOptions;
+import broadwick.config.generated.LifeHistoryType;
+import broadwick.config.generated.Project;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for broadwick.data.ColumnarDatabase class, the lookup of data read into a ColumnarDatabase is compared with
+ * the lookup of the same data read into a H2 database.
+ */
+@Slf4j
+public class ColumnarDatabaseTest {
+
+    public ColumnarDatabaseTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        directory = Files.createTempDirectory("columnar");
+        final Random random = new Random(2013L);
+        final Path locations = write("locations.csv", "L0,100.5,200.25", "L1,101,201", "L2,102.5,202", "L3,103,203");
+        final List<String> animals = new ArrayList<>();
+        final List<String> directed = new ArrayList<>();
+        final List<String> full = new ArrayList<>();
+        final List<String> tests = new ArrayList<>();
+        for (int animal = 0; animal < NUM_ANIMALS; animal++) {
+            // every other animal dies, the first animals appear twice (the last row read is kept).
+            final String death = animal % 2 == 0 ? "" : String.format("2011-12-%02d", 1 + animal % 28);
+            animals.add(String.format("A%d,cattle,2010-01-%02d,L%d,%s,L1", animal, 1 + animal % 28, animal % 4, death));
+            if (animal < 5) {
+                animals.add(String.format("A%d,sheep,2009-01-01,L3,,", animal));
+            }
+            // movements on distinct days, alternating directed and full movements.
+            for (int m = 0; m < 5; m++) {
+                final String date = String.format("2010-%02d-%02d", 2 + 2 * m, 1 + random.nextInt(28));
+                final String location = "L" + random.nextInt(4);
+                directed.add(String.format("A%d,cattle,%s,%s,%s", animal, location, date, m % 2 == 0 ? "OFF" : "ON"));
+                final String arrival = String.format("2010-%02d-%02d", 3 + 2 * m, 1 + random.nextInt(28));
+                full.add(String.format("A%d,%s,L%d,%s,%s,cattle", animal, date, random.nextInt(4), arrival, location));
+            }
+            tests.add(String.format("A%d,G%d,L%d,2010-%02d-01,%d,%d", animal, animal % 3, animal % 4, 1 + animal % 12,
+                                    animal % 2, 1 - animal % 2));
+        }
+
+        h2 = databases.track(new DataReader(createData(locations, write("animals.csv", animals),
+                                                       write("directed.csv", directed), write("full.csv", full),
+                                                       write("tests.csv", tests), null)));
+        memory = databases.track(new DataReader(createData(locations, write("animals.csv", animals),
+                                                           write("directed.csv", directed), write("full.csv", full),
+                                                           write("tests.csv", tests), "memory")));
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws IOException {
+        if (h2 != null) {
+            h2.close();
+        }
+        if (memory != null) {
+            memory.close();
+        }
+        for (final String file : new String[]{"locations.csv", "animals.csv", "directed.csv", "full.csv", "tests.csv",
+                                              "mixed_locations.csv", "mixed_animals.csv", "mixed_empty.csv"}) {
+            Files.deleteIfExists(directory.resolve(file));
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    @ClassRule
+    public static TemporaryDatabases databases = new TemporaryDatabases();
+
+    /**
+     * Test that the numbers of rows in each table are the same for both databases.
+     */
+    @Test
+    public void testCounts() {
+        final Lookup expected = h2.getLookup();
+        final Lookup lookup = memory.getLookup();
+        assertEquals(NUM_ANIMALS, lookup.getNumAnimals());
+        assertEquals(expected.getNumAnimals(), lookup.getNumAnimals());
+        assertEquals(expected.getNumLocations(), lookup.getNumLocations());
+        assertEquals(expected.getNumTests(), lookup.getNumTests());
+        assertEquals(expected.getNumMovements(), lookup.getNumMovements());
+        for (int date = FIRST_DATE; date < FIRST_DATE + 400; date += 50) {
+            assertEquals(expected.getNumMovements(date, date + 60), lookup.getNumMovements(date, date + 60));
+        }
+    }
+
+    /**
+     * Test that the movements, animals, locations and tests read from each database are the same.
+     */
+    @Test
+    public void testCollections() {
+        final Lookup expected = h2.getLookup();
+        final Lookup lookup = memory.getLookup();
+        assertSameMovements(expected.getMovements(), lookup.getMovements());
+        assertEquals(expected.getAnimals(), lookup.getAnimals());
+        assertEquals(new HashSet<>(expected.getLocations()), new HashSet<>(lookup.getLocations()));
+        assertEquals(new HashSet<>(expected.getTests()), new HashSet<>(lookup.getTests()));
+        for (int date = FIRST_DATE; date < FIRST_DATE + 700; date += 50) {
+            assertSameMovements(expected.getMovements(date, date + 60), lookup.getMovements(date, date + 60));
+            assertSameMovements(expected.getOffMovements(date, date + 30), lookup.getOffMovements(date, date + 30));
+            assertSameMovements(expected.getOnMovements(date, date + 30), lookup.getOnMovements(date, date + 30));
+            assertEquals(expected.getAnimals(date), lookup.getAnimals(date));
+            assertEquals(new HashSet<>(expected.getTests(date, date + 30)),
+                         new HashSet<>(lookup.getTests(date, date + 30)));
+        }
+    }
+
+    /**
+     * Test that bounding the departure date of the movements in a date range by the end of the range does not change
+     * the movements found, as no movement in the test data arrives before it departs.
+     */
+    @Test
+    public void testMovementsBetween() {
+        for (final DataReader reader : new DataReader[]{h2, memory}) {
+            final Lookup lookup = reader.getLookup();
+            final Collection<Movement> all = lookup.getMovements();
+            for (int date = FIRST_DATE; date < FIRST_DATE + 700; date += 50) {
+                final List<Movement> expected = new ArrayList<>();
+                for (final Movement movement : all) {
+                    final Integer departure = movement.getDepartureDate();
+                    final Integer destination = movement.getDestinationDate();
+                    if (departure != null && destination != null) {
+                        assertTrue(departure <= destination);
+                    }
+                    // the range condition before the departure date was bounded by the end of the range.
+                    if ((departure == null ? destination >= date : departure >= date)
+                        && (destination == null ? departure <= date + 60 : destination <= date + 60)) {
+                        expected.add(movement);
+                    }
+                }
+                assertSameMovements(expected, lookup.getMovements(date, date + 60));
+                assertEquals(expected.size(), lookup.getNumMovements(date, date + 60));
+            }
+        }
+    }
+
+    /**
+     * Test the lookup of locations, animals and the movements and locations of animals.
+     */
+    @Test
+    public void testPointQueries() {
+        final Lookup expected = h2.getLookup();
+        final Lookup lookup = memory.getLookup();
+        assertEquals(expected.getLocation("L2"), lookup.getLocation("L2"));
+        assertEquals(Double.valueOf(100.5), lookup.getLocation("L0").getEasting());
+        assertNull(lookup.getLocation("L9"));
+        assertEquals(new Animal("A3", "sheep", FIRST_DATE - 365, "L3", Integer.MAX_VALUE, ""), lookup.getAnimal("A3"));
+        assertNull(lookup.getAnimal("B1"));
+
+        final List<String> animalIds = new ArrayList<>();
+        for (int animal = 0; animal < NUM_ANIMALS; animal++) {
+            final String animalId = "A" + animal;
+            animalIds.add(animalId);
+            assertEquals(expected.getAnimal(animalId), lookup.getAnimal(animalId));
+            assertEquals(expected.getMovementsForAnimal(animalId), lookup.getMovementsForAnimal(animalId));
+            for (int date = FIRST_DATE - 10; date < FIRST_DATE + 400; date += 7) {
+                assertEquals(expected.getAnimalLocationIdAtDate(animalId, date),
+                             lookup.getAnimalLocationIdAtDate(animalId, date));
+            }
+        }
+        assertEquals(expected.getAnimals(animalIds), lookup.getAnimals(animalIds));
+        assertEquals(expected.getMovementsForAnimals(animalIds), lookup.getMovementsForAnimals(animalIds));
+        assertEquals(expected.getAnimalLocationsAtDate(animalIds, FIRST_DATE + 100),
+                     lookup.getAnimalLocationsAtDate(animalIds, FIRST_DATE + 100));
+    }
+
+    /**
+     * Test that ids are compared ignoring case by both databases, and that when several rows have ids that differ only
+     * in case both databases use the same row.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test
+    public void testMixedCaseIds() throws IOException {
+        final Lookup expected = h2.getLookup();
+        final Lookup lookup = memory.getLookup();
+        assertEquals(expected.getLocation("l2"), lookup.getLocation("l2"));
+        assertEquals(lookup.getLocation("L2"), lookup.getLocation("l2"));
+        assertEquals(expected.getAnimal("a3"), lookup.getAnimal("a3"));
+        assertEquals(lookup.getAnimal("A3"), lookup.getAnimal("a3"));
+        assertEquals(expected.getMovementsForAnimal("a3"), lookup.getMovementsForAnimal("a3"));
+        assertEquals(10, lookup.getMovementsForAnimal("a3").size());
+        for (int date = FIRST_DATE - 10; date < FIRST_DATE + 400; date += 7) {
+            assertEquals(expected.getAnimalLocationIdAtDate("a7", date), lookup.getAnimalLocationIdAtDate("a7", date));
+        }
+
+        final Path locations = write("mixed_locations.csv", "L1,1,2", "l1,3,4");
+        final Path animals = write("mixed_animals.csv", "A1,cattle,2010-01-01,L1,,L1", "a1,sheep,2010-01-02,l1,,l1");
+        final Path empty = write("mixed_empty.csv");
+        final Project.Data[] data = {createData(locations, animals, empty, empty, empty, null),
+                                     createData(locations, animals, empty, empty, empty, "memory")};
+        try (DataReader h2Reader = databases.track(new DataReader(data[0]));
+             DataReader memoryReader = databases.track(new DataReader(data[1]))) {
+            for (final String id : new String[]{"L1", "l1"}) {
+                final Location location = memoryReader.getLookup().getLocation(id);
+                assertEquals(h2Reader.getLookup().getLocation(id), location);
+                assertEquals(Double.valueOf(3.0), location.getEasting());
+            }
+            assertEquals(1, h2Reader.getLookup().getNumAnimals());
+            assertEquals(1, memoryReader.getLookup().getNumAnimals());
+            for (final String id : new String[]{"A1", "a1"}) {
+                final Animal animal = memoryReader.getLookup().getAnimal(id);
+                assertEquals(h2Reader.getLookup().getAnimal(id), animal);
+                assertEquals("sheep", animal.getSpecies());
+            }
+        }
+    }
+
+    /**
+     * Test that custom SQL queries are run on a copy of the in-memory tables.
+     */
+    @Test
+    public void testCustomQuery() {
+        final String query = "SELECT * FROM DirectedMovements WHERE LocationId = 'L1'";
+        assertEquals(h2.getLookup().runCustomQuery(query).size(), memory.getLookup().runCustomQuery(query).size());
+        final Object count = memory.getLookup().runCustomQuery("SELECT COUNT(*) FROM LIFEHISTORIES").getValue(0, 0);
+        assertEquals(NUM_ANIMALS, ((Number) count).intValue());
+    }
+
+    /**
+     * Test that the movements tables read concurrently by the H2 lookup are all passed to the handler and that the
+     * tables stop being read if the handler throws an exception.
+     */
+    @Test
+    public void testForEachMovement() {
+        final Lookup lookup = h2.getLookup();
+        final int fetchSize = lookup.getFetchSize();
+        lookup.setFetchSize(10);
+        try {
+            final List<Movement> movements = new ArrayList<>();
+            assertEquals(lookup.getNumMovements(), lookup.forEachMovement(new ResultHandler<Movement>() {
+                @Override
+                public void handle(final Movement movement) {
+                    movements.add(movement);
+                }
+            }));
+            assertEquals(10 * NUM_ANIMALS, movements.size());
+
+            try {
+                lookup.forEachMovement(new ResultHandler<Movement>() {
+                    @Override
+                    public void handle(final Movement movement) {
+                        throw new IllegalStateException("stop");
+                    }
+                });
+                fail("The exception thrown by the handler was not passed on.");
+            } catch (IllegalStateException e) {
+                assertEquals("stop", e.getMessage());
+            }
+            assertEquals(10 * NUM_ANIMALS, lookup.getNumMovements());
+            assertEquals(memory.getLookup().getNumMovements(FIRST_DATE, FIRST_DATE + 100),
+                         lookup.getNumMovements(FIRST_DATE, FIRST_DATE + 100));
+        } finally {
+            lookup.setFetchSize(fetchSize);
+        }
+    }
+
+    /**
+     * Create the data section of a configuration file that reads the test files.
+     * @param locations the locations file.
+     * @param animals   the life histories file.
+     * @param directed  the directed movements file.
+     * @param full      the full movements file.
+     * @param tests     the tests file.
+     * @param backend   the backend option, or null for the default.
+     * @return the data section.
+     */
+    private static Project.Data createData(final Path locations, final Path animals, final Path directed,
+                                           final Path full, final Path tests, final String backend) {
+        final DataFiles.LocationsFile locationsFile = new DataFiles.LocationsFile();
+        locationsFile.setName(locations.toString());
+        locationsFile.setAlias("locations");
+        locationsFile.setSeparator(",");
+        locationsFile.setLocationIdColumn(1);
+        locationsFile.setEastingColumn(2);
+        locationsFile.setNorthingColumn(3);
+
+        final LifeHistoryType lifeHistory = new LifeHistoryType();
+        lifeHistory.setIdColumn(1);
+        lifeHistory.setSpeciesColumn(2);
+        lifeHistory.setDateOfBirthColumn(3);
+        lifeHistory.setLocationOfBirthColumn(4);
+        lifeHistory.setDateOfDeathColumn(5);
+        lifeHistory.setLocationOfDeathColumn(6);
+        final DataFiles.PopulationFile populationFile = new DataFiles.PopulationFile();
+        populationFile.setName(animals.toString());
+        populationFile.setAlias("animals");
+        populationFile.setSeparator(",");
+        populationFile.setLifeHistory(lifeHistory);
+        populationFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles.DirectedMovementFile directedFile = new DataFiles.DirectedMovementFile();
+        directedFile.setName(directed.toString());
+        directedFile.setAlias("directed");
+        directedFile.setSeparator(",");
+        directedFile.setIdColumn(1);
+        directedFile.setSpeciesColumn(2);
+        directedFile.setLocationColumn(3);
+        directedFile.setMovementDateColumn(4);
+        directedFile.setMovementDirectionColumn(5);
+        directedFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles.FullMovementFile fullFile = new DataFiles.FullMovementFile();
+        fullFile.setName(full.toString());
+        fullFile.setAlias("full");
+        fullFile.setSeparator(",");
+        fullFile.setIdColumn(1);
+        fullFile.setDepartureDateColumn(2);
+        fullFile.setDepartureLocationIdColumn(3);
+        fullFile.setDestinationDateColumn(4);
+        fullFile.setDestinationLocationIdColumn(5);
+        fullFile.setSpeciesColumn(6);
+        fullFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles.TestsFile testsFile = new DataFiles.TestsFile();
+        testsFile.setName(tests.toString());
+        testsFile.setAlias("tests");
+        testsFile.setSeparator(",");
+        testsFile.setIdColumn(1);
+        testsFile.setGroupIdColumn(2);
+        testsFile.setLocationIdColumn(3);
+        testsFile.setTestDateColumn(4);
+        testsFile.setPostiveResultColumn(5);
+        testsFile.setNegativeResultColumn(6);
+        testsFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles files = new DataFiles();
+        files.getLocationsFile().add(locationsFile);
+        files.getPopulationFile().add(populationFile);
+        files.getDirectedMovementFile().add(directedFile);
+        files.getFullMovementFile().add(fullFile);
+        files.getTestsFile().add(testsFile);
+        final DataOptions options = new DataOptions();
+        options.setBackend(backend);
+        final Project.Data data = new Project.Data();
+        data.setDatafiles(files);
+        data.setOptions(options);
+        return data;
+    }
+
+    /**
+     * Check that two collections hold the same movements, in any order.
+     * @param expected the expected movements.
+     * @param actual   the movements found.
+     */
+    private static void assertSameMovements(final Collection<Movement> expected, final Collection<Movement> actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+    }
+
+    /**
+     * Write lines to a file in the test directory.
+     * @param name  the name of the file.
+     * @param lines the lines.
+     * @return the path of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private static Path write(final String name, final String... lines) throws IOException {
+        return write(name, Arrays.asList(lines));
+    }
+
+    /**
+     * Write lines to a file in the test directory.
+     * @param name  the name of the file.
+     * @param lines the lines.
+     * @return the path of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private static Path write(final String name, final List<String> lines) throws IOException {
+        final Path path = directory.resolve(name);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (final String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        return path;
+    }
+
+    private static Path directory;
+    private static DataReader h2;
+    private static DataReader memory;
+    private static final int NUM_ANIMALS = 200;
+    private static final int FIRST_DATE = 40177;
+    private static final String DATE_FORMAT = "yyyy-MM-dd";
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.BroadwickException;
+import broadwick.data.readers.DataFileReader;
+import broadwick.data.readers.IngestionMetrics;
+import broadwick.data.readers.IngestionMonitor;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.read.ListAppender;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for the batched insertion of broadwick.data.readers.DataFileReader class.
+ */
+@Slf4j
+public class DataFileReaderTest {
+
+    public DataFileReaderTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test inserting a file into a H2 table in batches when the number of rows sent to the database is not a multiple
+     * of the batch size, the file duplicates some keys (within a batch and across batches) and has rows that cannot be
+     * read. Duplicates are ignored, rejected rows are counted and the first few are logged.
+     * @throws IOException  if the test file cannot be written.
+     * @throws SQLException if the table cannot be read.
+     */
+    @Test
+    public void testInsert() throws IOException, SQLException {
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            lines.add(String.format("A%d,%d,2010-01-%02d", i, i, 1 + i));
+            if (i == 2) {
+                // a duplicate in the same batch as the original row.
+                lines.add("A1,100,2010-02-01");
+            }
+        }
+        // a duplicate sent in a later batch than the original row.
+        lines.add("A0,100,2010-02-01");
+        for (int i = 0; i < 11; i++) {
+            lines.add(String.format("B%d,%d,2010-13-45", i, i));
+        }
+        lines.add("B11");
+        final Path file = folder.newFile("rows.csv").toPath();
+        Files.write(file, lines, StandardCharsets.UTF_8);
+
+        final H2Database database = new H2Database(folder.getRoot().toPath().resolve("rows_db").toString(), true);
+        final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        final LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        final List<TurboFilter> filters = new ArrayList<>(context.getTurboFilterList());
+        final ch.qos.logback.classic.Logger logger = context.getLogger(DataFileReader.class);
+        // the test configuration only logs TEST messages, the warnings of the reader are needed here.
+        context.getTurboFilterList().clear();
+        appender.start();
+        logger.addAppender(appender);
+        try {
+            final RowsFileReader reader = new RowsFileReader(database, file.toString());
+            reader.setBatchSize(4);
+            assertEquals(11, reader.insert());
+        } finally {
+            logger.detachAppender(appender);
+            context.getTurboFilterList().addAll(filters);
+        }
+
+        try (Connection connection = database.getConnection();
+             java.sql.Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT ID, VAL FROM ROWS ORDER BY VAL")) {
+            for (int i = 0; i < 11; i++) {
+                assertTrue(rs.next());
+                assertEquals("A" + i, rs.getString(1));
+                assertEquals(i, rs.getInt(2));
+            }
+            assertFalse(rs.next());
+        } finally {
+            database.close();
+        }
+
+        final IngestionMetrics metrics = IngestionMonitor.getMetrics(file.toString());
+        assertEquals(lines.size(), metrics.getRowsRead());
+        assertEquals(11, metrics.getRowsInserted());
+        assertEquals(2, metrics.getDuplicateRows());
+        assertEquals(12, metrics.getRejectedRows());
+        // 13 rows are sent to the database, in batches of 4, 4, 4 and 1 rows.
+        assertEquals(4, metrics.getCommits());
+
+        int rejections = 0;
+        int suppressed = 0;
+        for (final ILoggingEvent event : appender.list) {
+            if (event.getLevel() == Level.WARN && event.getFormattedMessage().startsWith("Rejected row ")) {
+                assertTrue(event.getFormattedMessage().contains(file.toString()));
+                rejections++;
+            } else if (event.getLevel() == Level.WARN && event.getFormattedMessage().startsWith("Rejected more than")) {
+                suppressed++;
+            }
+        }
+        assertEquals(10, rejections);
+        assertEquals(1, suppressed);
+    }
+
+    /**
+     * Test that a batch that fails for a reason other than a duplicated key stops the file being read.
+     * @throws IOException if the test file cannot be written.
+     */
+    @Test
+    public void testInsertFailure() throws IOException {
+        final Path file = folder.newFile("rows.csv").toPath();
+        Files.write(file, Arrays.asList("A0,0,2010-01-01", "A1,one,2010-01-02"), StandardCharsets.UTF_8);
+
+        final H2Database database = new H2Database(folder.getRoot().toPath().resolve("rows_db").toString(), true);
+        try {
+            new RowsFileReader(database, file.toString()).insert();
+            fail("The row that could not be inserted was ignored.");
+        } catch (BroadwickException e) {
+            assertNotNull(e.getCause());
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * A reader of a file of (id, value, date) rows into a table keyed by the id.
+     */
+    private static final class RowsFileReader extends DataFileReader {
+
+        /**
+         * Create the reader.
+         * @param database the database.
+         * @param dataFile the file to be read.
+         */
+        RowsFileReader(final DatabaseImpl database, final String dataFile) {
+            this.database = database;
+            this.dataFile = dataFile;
+            columns.put("ID", 1);
+            columns.put("VAL", 2);
+            columns.put("DAY", 3);
+        }
+
+        @Override
+        public int insert() {
+            try {
+                return insert(database, "ROWS", "CREATE TABLE ROWS (ID VARCHAR(128), VAL INT, DAY INT, PRIMARY KEY (ID))",
+                              "INSERT INTO ROWS (ID,VAL,DAY) VALUES (?,?,?)", dataFile, "yyyy-MM-dd", columns,
+                              Arrays.asList(3));
+            } catch (SQLException e) {
+                throw new BroadwickException(e);
+            }
+        }
+
+        private final DatabaseImpl database;
+        private final String dataFile;
+        private final Map<String, Integer> columns = new LinkedHashMap<>();
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.BroadwickException;
+import broadwick.config.generated.DataFiles;
+import broadwick.config.generated.DataOptions;
+import broadwick.config.generated.LifeHistoryType;
+import broadwick.config.generated.Project;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for reading the data file sections of the broadwick.data.DataReader class, serially and concurrently.
+ */
+@Slf4j
+public class DataReaderSectionsTest {
+
+    public DataReaderSectionsTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that the sections are read at the same time when more than one thread is used; each section waits until
+     * every section has started so the sections can only all finish if they are run concurrently.
+     */
+    @Test
+    public void testReadSectionsConcurrently() {
+        final CountDownLatch started = new CountDownLatch(3);
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        final Map<String, Callable<Integer>> sections = new LinkedHashMap<>();
+        for (final String name : Arrays.asList("LocationsFile", "PopulationFile", "TestsFile")) {
+            sections.put(name, new Callable<Integer>() {
+                @Override
+                public Integer call() throws InterruptedException {
+                    threads.add(Thread.currentThread().getName());
+                    started.countDown();
+                    if (!started.await(TIMEOUT, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("The sections were not read concurrently.");
+                    }
+                    return 1;
+                }
+            });
+        }
+
+        DataReader.readSections(sections, 3);
+        assertEquals(3, threads.size());
+        for (final String thread : threads) {
+            assertTrue(thread.startsWith("DataReader-"));
+        }
+    }
+
+    /**
+     * Test that a single thread reads the sections in order on the calling thread and stops at the first section that
+     * fails.
+     */
+    @Test
+    public void testReadSectionsSerially() {
+        final List<String> read = new ArrayList<>();
+        final Map<String, Callable<Integer>> sections = new LinkedHashMap<>();
+        sections.put("LocationsFile", new Section("LocationsFile", read, null));
+        sections.put("PopulationFile", new Section("PopulationFile", read, null));
+        sections.put("TestsFile", new Section("TestsFile", read, null));
+
+        DataReader.readSections(sections, 1);
+        assertEquals(Arrays.asList("LocationsFile", "PopulationFile", "TestsFile"), read);
+
+        read.clear();
+        sections.put("PopulationFile", new Section("PopulationFile", read, new IllegalStateException("bad file")));
+        try {
+            DataReader.readSections(sections, 1);
+            fail("The failing section was not reported.");
+        } catch (BroadwickException e) {
+            assertTrue(e.getMessage().endsWith("[PopulationFile] bad file"));
+        }
+        assertEquals(Arrays.asList("LocationsFile", "PopulationFile"), read);
+    }
+
+    /**
+     * Test that every section is read when using several threads, even after a section has failed, and that the
+     * failures are reported in the order of the sections rather than the order in which they failed. A failure without
+     * a message is described by its exception.
+     */
+    @Test
+    public void testReadSectionsConcurrentlyWithFailures() {
+        final CountDownLatch testsFailed = new CountDownLatch(1);
+        final List<String> read = Collections.synchronizedList(new ArrayList<String>());
+        final Map<String, Callable<Integer>> sections = new LinkedHashMap<>();
+        sections.put("LocationsFile", new Section("LocationsFile", read, null));
+        sections.put("PopulationFile", new Callable<Integer>() {
+            @Override
+            public Integer call() throws InterruptedException {
+                // wait for the tests section to fail first.
+                testsFailed.await(TIMEOUT, TimeUnit.SECONDS);
+                read.add("PopulationFile");
+                throw new NullPointerException();
+            }
+        });
+        sections.put("TestsFile", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                read.add("TestsFile");
+                testsFailed.countDown();
+                throw new IllegalStateException("bad tests");
+            }
+        });
+        sections.put("FullMovementFile", new Section("FullMovementFile", read, null));
+
+        try {
+            DataReader.readSections(sections, 4);
+            fail("The failing sections were not reported.");
+        } catch (BroadwickException e) {
+            assertEquals("Failure reading data file section. [PopulationFile] java.lang.NullPointerException; "
+                         + "[TestsFile] bad tests", e.getMessage());
+        }
+        assertEquals(4, read.size());
+        assertTrue(read.indexOf("TestsFile") < read.indexOf("PopulationFile"));
+    }
+
+    /**
+     * Test that a data file section that cannot be read (the locations section has no easting column) is reported by
+     * the DataReader whether the sections are read serially or concurrently.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test
+    public void testFailingSection() throws IOException {
+        final Path locations = folder.newFile("locations.csv").toPath();
+        Files.write(locations, Arrays.asList("L1,1.0,2.0"), StandardCharsets.UTF_8);
+        final Path animals = folder.newFile("animals.csv").toPath();
+        Files.write(animals, Arrays.asList("A1,cattle,2010-01-01,L1,,L1"), StandardCharsets.UTF_8);
+
+        for (final int parallelism : new int[]{1, 2}) {
+            final Project.Data data = createData(locations, animals);
+            data.getOptions().setParallelism(parallelism);
+            data.getOptions().setDatabaseDirectory(folder.newFolder().toString());
+            try (DataReader reader = new DataReader(data)) {
+                fail(String.format("The locations section was read by %s.", reader.getDbName()));
+            } catch (BroadwickException e) {
+                assertTrue(e.getMessage().contains("[LocationsFile] "));
+                assertTrue(e.getMessage().contains("EASTING"));
+                assertFalse(e.getMessage().contains("[PopulationFile]"));
+            }
+        }
+    }
+
+    /**
+     * Create the data section of a configuration file that reads a locations file without an easting column and a
+     * life history file.
+     * @param locations the locations file.
+     * @param animals   the life histories file.
+     * @return the data section.
+     */
+    private static Project.Data createData(final Path locations, final Path animals) {
+        final DataFiles.LocationsFile locationsFile = new DataFiles.LocationsFile();
+        locationsFile.setName(locations.toString());
+        locationsFile.setAlias("locations");
+        locationsFile.setSeparator(",");
+        locationsFile.setLocationIdColumn(1);
+        locationsFile.setEastingColumn(0);
+        locationsFile.setNorthingColumn(3);
+
+        final LifeHistoryType lifeHistory = new LifeHistoryType();
+        lifeHistory.setIdColumn(1);
+        lifeHistory.setSpeciesColumn(2);
+        lifeHistory.setDateOfBirthColumn(3);
+        lifeHistory.setLocationOfBirthColumn(4);
+        lifeHistory.setDateOfDeathColumn(5);
+        lifeHistory.setLocationOfDeathColumn(6);
+        final DataFiles.PopulationFile populationFile = new DataFiles.PopulationFile();
+        populationFile.setName(animals.toString());
+        populationFile.setAlias("animals");
+        populationFile.setSeparator(",");
+        populationFile.setLifeHistory(lifeHistory);
+        populationFile.setDateFormat("yyyy-MM-dd");
+
+        final DataFiles files = new DataFiles();
+        files.getLocationsFile().add(locationsFile);
+        files.getPopulationFile().add(populationFile);
+        final Project.Data data = new Project.Data();
+        data.setDatafiles(files);
+        data.setOptions(new DataOptions());
+        return data;
+    }
+
+    /**
+     * A data file section that records that it was read and optionally fails.
+     */
+    private static final class Section implements Callable<Integer> {
+
+        /**
+         * Create the section.
+         * @param name    the name of the section.
+         * @param read    the names of the sections that have been read.
+         * @param failure the exception thrown reading the section, or null if the section is read.
+         */
+        Section(final String name, final List<String> read, final RuntimeException failure) {
+            this.name = name;
+            this.read = read;
+            this.failure = failure;
+        }
+
+        @Override
+        public Integer call() {
+            read.add(name);
+            if (failure != null) {
+                throw failure;
+            }
+            return 1;
+        }
+
+        private final String name;
+        private final List<String> read;
+        private final RuntimeException failure;
+    }
+
+    private static final long TIMEOUT = 10;
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.config.generated.DataFiles;
+import broadwick.config.generated.DataOptions;
+import broadwick.config.generated.LifeHistoryType;
+import broadwick.config.generated.Project;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import lombok.extern.slf4j.Slf4j;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for broadwick.data.DataSnapshot class.
+ */
+@Slf4j
+public class DataSnapshotTest {
+
+    public DataSnapshotTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    @Rule
+    public TemporaryDatabases databases = new TemporaryDatabases();
+
+    /**
+     * Test that a table with null ints, doubles and strings is written and read, and restored into both a H2 and a
+     * columnar database (from which a snapshot with the same values is written).
+     * @throws Exception if the test database cannot be created.
+     */
+    @Test
+    public void testWriteAndRead() throws Exception {
+        final H2Database h2 = new H2Database(dbName("source"), true);
+        try (Connection connection = h2.getConnection();
+             java.sql.Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE ANIMALS (ID VARCHAR(32) PRIMARY KEY, BORN INT, WEIGHT DOUBLE, "
+                         + "FARM VARCHAR(32))");
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO ANIMALS VALUES (?, ?, ?, ?)")) {
+                for (final Object[] row : ROWS) {
+                    for (int i = 0; i < row.length; i++) {
+                        insert.setObject(i + 1, row[i]);
+                    }
+                    insert.execute();
+                }
+            }
+            connection.commit();
+        }
+        final Path file = folder.getRoot().toPath().resolve("snapshot");
+        DataSnapshot.write(h2, file, "key");
+        h2.close();
+
+        final DataSnapshot snapshot = DataSnapshot.read(file, "key");
+        assertNotNull(snapshot);
+        assertEquals("key", snapshot.getKey());
+        assertTables(snapshot);
+
+        // restore into a new H2 database.
+        final H2Database restored = new H2Database(dbName("restored"), true);
+        snapshot.restore(restored);
+        try (Connection connection = restored.getConnection();
+             java.sql.Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT ID, BORN, WEIGHT, FARM FROM ANIMALS ORDER BY ID")) {
+            for (final Object[] row : ROWS) {
+                assertTrue(rs.next());
+                for (int i = 0; i < row.length; i++) {
+                    assertEquals(row[i], rs.getObject(i + 1));
+                }
+            }
+            assertFalse(rs.next());
+        }
+        restored.close();
+
+        // restore into a columnar database and write it to a new snapshot.
+        final ColumnarDatabase columnar = new ColumnarDatabase(dbName("columnar"));
+        snapshot.restore(columnar);
+        final ColumnTable table = columnar.getTables().get(0);
+        assertEquals(ROWS.length, table.size());
+        for (int row = 0; row < ROWS.length; row++) {
+            for (int col = 0; col < ROWS[row].length; col++) {
+                assertEquals(ROWS[row][col], table.getValue(col, row, null));
+            }
+        }
+        final Path columnarFile = folder.getRoot().toPath().resolve("columnar");
+        DataSnapshot.write(columnar, columnarFile, "key");
+        columnar.close();
+        assertTables(DataSnapshot.read(columnarFile, "key"));
+    }
+
+    /**
+     * Test that a snapshot is not read if it does not exist, was written for other data files or by another version of
+     * the class, or is not a snapshot at all.
+     * @throws Exception if the test database cannot be created.
+     */
+    @Test
+    public void testRejected() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("snapshot");
+        assertNull(DataSnapshot.read(file, "key"));
+
+        final H2Database h2 = new H2Database(dbName("source"), true);
+        try (Connection connection = h2.getConnection();
+             java.sql.Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE NUMBERS (N INT)");
+            stmt.execute("INSERT INTO NUMBERS VALUES (1)");
+            connection.commit();
+        }
+        DataSnapshot.write(h2, file, "key");
+        h2.close();
+        assertNotNull(DataSnapshot.read(file, "key"));
+        assertNull(DataSnapshot.read(file, "other key"));
+
+        // change the version (the second int of the file).
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            final ByteBuffer version = ByteBuffer.allocate(Integer.BYTES);
+            version.putInt(1).flip();
+            channel.write(version, Integer.BYTES);
+        }
+        assertNull(DataSnapshot.read(file, "key"));
+
+        Files.write(file, "not a snapshot".getBytes(StandardCharsets.UTF_8));
+        assertNull(DataSnapshot.read(file, "key"));
+    }
+
+    /**
+     * Test that the data restored from a snapshot, written with either backend, by either backend gives the same
+     * results from the Lookup object as the data read from the files.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test
+    public void testRestoreLookup() throws IOException {
+        final Project.Data data = createData();
+        final String key = DataSnapshot.checksum(data.getDatafiles());
+        final Path snapshotDirectory = folder.newFolder("snapshots").toPath();
+        final Path file = snapshotDirectory.resolve(key);
+
+        for (final String writer : new String[]{null, "memory"}) {
+            Files.deleteIfExists(file);
+            data.getOptions().setBackend(writer);
+            data.getOptions().setSnapshotDirectory(snapshotDirectory.toString());
+            try (DataReader reader = databases.track(new DataReader(data))) {
+                assertTrue(Files.exists(file));
+                final Lookup expected = reader.getLookup();
+
+                final DataSnapshot snapshot = DataSnapshot.read(file, key);
+                assertNotNull(snapshot);
+                for (final DatabaseImpl db : new DatabaseImpl[]{new H2Database(dbName("h2"), true),
+                                                                new ColumnarDatabase(dbName("columnar"))}) {
+                    snapshot.restore(db);
+                    final Lookup lookup = new Lookup(db);
+                    assertLookupsEqual(expected, lookup);
+                    lookup.close();
+                }
+
+                // a second run with the same backend restores the snapshot.
+                try (DataReader restored = databases.track(new DataReader(data))) {
+                    assertLookupsEqual(expected, restored.getLookup());
+                }
+            }
+        }
+    }
+
+    /**
+     * Check the table of the snapshot written in testWriteAndRead().
+     * @param snapshot the snapshot.
+     */
+    private static void assertTables(final DataSnapshot snapshot) {
+        assertNotNull(snapshot);
+        assertEquals(1, snapshot.getTables().size());
+        final DataSnapshot.Table table = snapshot.getTables().get("ANIMALS");
+        assertEquals(ROWS.length, table.getNumRows());
+        assertEquals(Arrays.asList("ID", "BORN", "WEIGHT", "FARM"), new ArrayList<>(table.getColumns().keySet()));
+        final DataSnapshot.Column[] columns = table.getColumns().values().toArray(new DataSnapshot.Column[0]);
+        assertEquals(DataSnapshot.ColumnType.STRING, columns[0].getType());
+        assertEquals(DataSnapshot.ColumnType.INT, columns[1].getType());
+        assertEquals(DataSnapshot.ColumnType.DOUBLE, columns[2].getType());
+        assertEquals(DataSnapshot.ColumnType.STRING, columns[3].getType());
+        for (int row = 0; row < ROWS.length; row++) {
+            for (int col = 0; col < columns.length; col++) {
+                assertEquals(ROWS[row][col], columns[col].getValue(row));
+            }
+        }
+        assertEquals(Integer.MIN_VALUE, columns[1].getInt(1));
+        assertTrue(Double.isNaN(columns[2].getDouble(2)));
+        assertNull(columns[3].getString(3));
+        assertEquals(new HashSet<>(Arrays.asList("F1", "F2")),
+                     new HashSet<>(Arrays.asList(columns[3].getDictionary())));
+    }
+
+    /**
+     * Check that two lookup objects give the same animals, locations, movements and locations of animals.
+     * @param expected the lookup object for the data read from the files.
+     * @param actual   the lookup object for the data restored from a snapshot.
+     */
+    private static void assertLookupsEqual(final Lookup expected, final Lookup actual) {
+        assertEquals(NUM_ANIMALS, actual.getNumAnimals());
+        assertEquals(new HashSet<>(expected.getAnimals()), new HashSet<>(actual.getAnimals()));
+        assertEquals(new HashSet<>(expected.getLocations()), new HashSet<>(actual.getLocations()));
+        assertEquals(new HashSet<>(expected.getMovements()), new HashSet<>(actual.getMovements()));
+        for (int day = FIRST_DATE; day < FIRST_DATE + NUM_DAYS; day += 10) {
+            assertEquals(expected.getNumMovements(day, day + 9), actual.getNumMovements(day, day + 9));
+            assertEquals(new HashSet<>(expected.getAnimals(day)), new HashSet<>(actual.getAnimals(day)));
+            for (int animal = 0; animal < NUM_ANIMALS; animal += 7) {
+                assertEquals(expected.getAnimalLocationIdAtDate("A" + animal, day),
+                             actual.getAnimalLocationIdAtDate("A" + animal, day));
+            }
+        }
+    }
+
+    /**
+     * Create the data section of a configuration file that reads the locations, life histories and directed
+     * movements of random animals.
+     * @return the data section.
+     * @throws IOException if the files cannot be written.
+     */
+    private Project.Data createData() throws IOException {
+        final Random random = new Random(2013L);
+        final List<String> locations = new ArrayList<>();
+        for (int location = 0; location < NUM_LOCATIONS; location++) {
+            locations.add(String.format("L%d,%d.5,%d.25", location, random.nextInt(1000), random.nextInt(1000)));
+        }
+        final List<String> animals = new ArrayList<>();
+        final List<String> movements = new ArrayList<>();
+        for (int animal = 0; animal < NUM_ANIMALS; animal++) {
+            final int born = random.nextInt(NUM_DAYS / 2);
+            final String death = animal % 3 == 0 ? "" : date(born + random.nextInt(NUM_DAYS / 2));
+            animals.add(String.format("A%d,cattle,%s,L%d,%s,L%d", animal, date(born),
+                                      random.nextInt(NUM_LOCATIONS), death, random.nextInt(NUM_LOCATIONS)));
+            int day = born;
+            for (int m = 0; m < 4; m++) {
+                day += 1 + random.nextInt(NUM_DAYS / 8);
+                movements.add(String.format("A%d,cattle,L%d,%s,%s", animal, random.nextInt(NUM_LOCATIONS), date(day),
+                                            m % 2 == 0 ? "OFF" : "ON"));
+            }
+        }
+
+        final DataFiles.LocationsFile locationsFile = new DataFiles.LocationsFile();
+        locationsFile.setName(write("locations.csv", locations).toString());
+        locationsFile.setAlias("locations");
+        locationsFile.setSeparator(",");
+        locationsFile.setLocationIdColumn(1);
+        locationsFile.setEastingColumn(2);
+        locationsFile.setNorthingColumn(3);
+        locationsFile.setDateFormat(DATE_FORMAT);
+
+        final LifeHistoryType lifeHistory = new LifeHistoryType();
+        lifeHistory.setIdColumn(1);
+        lifeHistory.setSpeciesColumn(2);
+        lifeHistory.setDateOfBirthColumn(3);
+        lifeHistory.setLocationOfBirthColumn(4);
+        lifeHistory.setDateOfDeathColumn(5);
+        lifeHistory.setLocationOfDeathColumn(6);
+        final DataFiles.PopulationFile lifeHistoryFile = new DataFiles.PopulationFile();
+        lifeHistoryFile.setName(write("animals.csv", animals).toString());
+        lifeHistoryFile.setAlias("animals");
+        lifeHistoryFile.setSeparator(",");
+        lifeHistoryFile.setLifeHistory(lifeHistory);
+        lifeHistoryFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles.DirectedMovementFile movementFile = new DataFiles.DirectedMovementFile();
+        movementFile.setName(write("movements.csv", movements).toString());
+        movementFile.setAlias("movements");
+        movementFile.setSeparator(",");
+        movementFile.setIdColumn(1);
+        movementFile.setSpeciesColumn(2);
+        movementFile.setLocationColumn(3);
+        movementFile.setMovementDateColumn(4);
+        movementFile.setMovementDirectionColumn(5);
+        movementFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles files = new DataFiles();
+        files.getLocationsFile().add(locationsFile);
+        files.getPopulationFile().add(lifeHistoryFile);
+        files.getDirectedMovementFile().add(movementFile);
+
+        final Project.Data data = new Project.Data();
+        data.setDatafiles(files);
+        data.setOptions(new DataOptions());
+        return data;
+    }
+
+    /**
+     * Get the name of a H2 database in the test folder.
+     * @param name the name of the database.
+     * @return the name of the database, including its folder.
+     */
+    private String dbName(final String name) {
+        return folder.getRoot().toPath().resolve(name + "_" + ++numDatabases).toString();
+    }
+
+    /**
+     * Format a date as it is written in the data files.
+     * @param day the number of days after the first day of the data.
+     * @return the date.
+     */
+    private static String date(final int day) {
+        return FIRST_DAY.plusDays(day).toString(DATE_FORMAT);
+    }
+
+    /**
+     * Write lines to a file in the test folder.
+     * @param name  the name of the file.
+     * @param lines the lines.
+     * @return the path of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private Path write(final String name, final List<String> lines) throws IOException {
+        final Path path = folder.getRoot().toPath().resolve(name);
+        Files.write(path, lines, StandardCharsets.UTF_8);
+        return path;
+    }
+
+    private int numDatabases = 0;
+    private static final Object[][] ROWS = {{"A1", 10, 1.5, "F1"},
+                                            {"A2", null, 2.5, "F1"},
+                                            {"A3", 30, null, "F2"},
+                                            {"A4", 40, 4.5, null},
+                                            {"A5", null, null, null}};
+    private static final int NUM_ANIMALS = 100;
+    private static final int NUM_LOCATIONS = 6;
+    private static final int NUM_DAYS = 200;
+    private static final int FIRST_DATE = 40177;
+    private static final LocalDate FIRST_DAY = new LocalDate(2010, 1, 1);
+    private static final String DATE_FORMAT = "yyyy-MM-dd";
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.config.generated.DataFiles;
+import broadwick.config.generated.DataOptions;
+import broadwick.config.generated.Project;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for broadwick.data.IngestManifest class and the reuse of the databases kept in a databaseDirectory.
+ */
+@Slf4j
+public class IngestManifestTest {
+
+    public IngestManifestTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test the offsets from which changed files are read.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test
+    public void testGetReadOffsets() throws IOException {
+        final Path file = folder.newFile("data.csv").toPath();
+        write(file, "a,1\nb,2\n", false);
+        final IngestManifest previous = IngestManifest.create(Collections.singletonList(file.toString()));
+        final Path manifestFile = folder.getRoot().toPath().resolve("data.manifest");
+        previous.write(manifestFile);
+        final IngestManifest read = IngestManifest.read(manifestFile);
+
+        // unchanged
+        IngestManifest current = IngestManifest.create(Collections.singletonList(file.toString()));
+        Map<String, Long> offsets = current.getReadOffsets(read);
+        assertEquals(Long.valueOf(8), offsets.get(file.toString()));
+        assertTrue(current.isUpToDate(offsets));
+
+        // appended to
+        write(file, "c,3\n", true);
+        current = IngestManifest.create(Collections.singletonList(file.toString()));
+        offsets = current.getReadOffsets(read);
+        assertEquals(Long.valueOf(8), offsets.get(file.toString()));
+        assertFalse(current.isUpToDate(offsets));
+
+        // changed
+        write(file, "a,9\nb,2\nc,3\n", false);
+        current = IngestManifest.create(Collections.singletonList(file.toString()));
+        assertNull(current.getReadOffsets(read));
+
+        // shorter
+        write(file, "a,1\n", false);
+        current = IngestManifest.create(Collections.singletonList(file.toString()));
+        assertNull(current.getReadOffsets(read));
+
+        assertNull(IngestManifest.read(folder.getRoot().toPath().resolve("missing.manifest")));
+    }
+
+    /**
+     * Test that a database kept in a databaseDirectory is reused, appended to and recreated as the data file changes.
+     * @throws IOException  if the test files cannot be written.
+     * @throws SQLException if the database cannot be queried.
+     */
+    @Test
+    public void testDatabaseDirectory() throws IOException, SQLException {
+        final Path movements = folder.newFile("movements.csv").toPath();
+        write(movements, "A1,cattle,L1,2010-01-01,OFF\nA1,cattle,L2,2010-01-01,ON\nA2,cattle,L1,2010-02-01,ON\n", false);
+        final Project.Data data = createData(movements, folder.newFolder("db").toPath());
+
+        try (DataReader reader = new DataReader(data)) {
+            assertEquals(3, reader.getLookup().getNumMovements());
+            assertFalse(reader.getLookup().getConnection().isReadOnly());
+        }
+
+        // the files have not changed so the database is reused.
+        try (DataReader reader = new DataReader(data)) {
+            assertEquals(3, reader.getLookup().getNumMovements());
+            assertTrue(reader.getLookup().getConnection().isReadOnly());
+        }
+
+        // only the appended rows are read.
+        write(movements, "A2,cattle,L1,2010-03-01,OFF\n", true);
+        try (DataReader reader = new DataReader(data)) {
+            assertEquals(4, reader.getLookup().getNumMovements());
+            assertFalse(reader.getLookup().getConnection().isReadOnly());
+        }
+        try (DataReader reader = new DataReader(data)) {
+            assertEquals(4, reader.getLookup().getNumMovements());
+            assertTrue(reader.getLookup().getConnection().isReadOnly());
+        }
+
+        // the file has been rewritten so the database is recreated.
+        write(movements, "A3,cattle,L3,2010-01-01,ON\n", false);
+        try (DataReader reader = new DataReader(data)) {
+            assertEquals(1, reader.getLookup().getNumMovements());
+            assertEquals("A3", reader.getLookup().getMovements().iterator().next().getId());
+        }
+    }
+
+    /**
+     * Write (or append) text to a file.
+     * @param file   the file.
+     * @param text   the text to be written.
+     * @param append true to append the text to the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private static void write(final Path file, final String text, final boolean append) throws IOException {
+        if (append) {
+            Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        } else {
+            Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Create the data section of a configuration file that reads a directed movements file into a database kept in a
+     * directory.
+     * @param movements the directed movements file.
+     * @param directory the directory in which the database is kept.
+     * @return the data section.
+     */
+    private static Project.Data createData(final Path movements, final Path directory) {
+        final DataFiles.DirectedMovementFile movementFile = new DataFiles.DirectedMovementFile();
+        movementFile.setName(movements.toString());
+        movementFile.setAlias("movements");
+        movementFile.setSeparator(",");
+        movementFile.setIdColumn(1);
+        movementFile.setSpeciesColumn(2);
+        movementFile.setLocationColumn(3);
+        movementFile.setMovementDateColumn(4);
+        movementFile.setMovementDirectionColumn(5);
+        movementFile.setDateFormat("yyyy-MM-dd");
+
+        final DataFiles files = new DataFiles();
+        files.getDirectedMovementFile().add(movementFile);
+        final DataOptions options = new DataOptions();
+        options.setDatabaseDirectory(directory.toString());
+        final Project.Data data = new Project.Data();
+        data.setDatafiles(files);
+        data.setOptions(options);
+        return data;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.config.generated.DataFiles;
+import broadwick.config.generated.DataOptions;
+import broadwick.config.generated.LifeHistoryType;
+import broadwick.config.generated.Project;
+import broadwick.data.readers.IngestionMetrics;
+import broadwick.data.readers.IngestionMonitor;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for broadwick.data.readers.IngestionMonitor class.
+ */
+@Slf4j
+public class IngestionMonitorTest {
+
+    public IngestionMonitorTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    @Rule
+    public TemporaryDatabases databases = new TemporaryDatabases();
+
+    /**
+     * Test the metrics of reading a life history file that contains a duplicated animal and rows that cannot be read,
+     * for both backends, and that they are only published with JMX while the file is read.
+     * @throws IOException if the test file cannot be written.
+     * @throws JMException if the name of the MXBean is invalid or the MBean server cannot be listened to.
+     */
+    @Test
+    public void testGetMetrics() throws IOException, JMException {
+        final Path file = folder.getRoot().toPath().resolve("animals.csv");
+        Files.write(file, Arrays.asList("A1,cattle,2010-01-01,L1,,L1",
+                                        "A2,cattle,2010-01-02,L1,,L2",
+                                        "A3,cattle,2010-13-45,L2,,L2",
+                                        "A4,cattle",
+                                        "A2,cattle,2010-01-03,L2,,L2",
+                                        "A5,cattle,2010-01-04,L3,,L3"), StandardCharsets.UTF_8);
+        final Project.Data data = createData(file.toString());
+        final ObjectName name = new ObjectName(String.format("broadwick.data:type=Ingestion,table=%s,file=%s",
+                                                             ObjectName.quote("LIFEHISTORIES"),
+                                                             ObjectName.quote(file.toString())));
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        // the registration and unregistration of the MXBean of the file.
+        final List<String> notifications = new ArrayList<>();
+        final NotificationListener listener = new NotificationListener() {
+            @Override
+            public void handleNotification(final Notification notification, final Object handback) {
+                if (notification instanceof MBeanServerNotification
+                    && name.equals(((MBeanServerNotification) notification).getMBeanName())) {
+                    notifications.add(notification.getType());
+                }
+            }
+        };
+
+        for (final String backend : new String[]{null, "memory"}) {
+            data.getOptions().setBackend(backend);
+            notifications.clear();
+            server.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener, null, null);
+            try (DataReader reader = databases.track(new DataReader(data))) {
+                assertEquals(3, reader.getLookup().getAnimals().size());
+
+                final IngestionMetrics metrics = IngestionMonitor.getMetrics(file.toString());
+                assertNotNull(metrics);
+                assertTrue(IngestionMonitor.getMetrics().contains(metrics));
+                assertTrue(metrics.isFinished());
+                assertEquals("LIFEHISTORIES", metrics.getTableName().toUpperCase());
+                assertEquals(Files.size(file), metrics.getFileSize());
+                assertEquals(Files.size(file), metrics.getBytesRead());
+                assertEquals(100.0, metrics.getPercentComplete(), 1e-9);
+                assertEquals(6, metrics.getRowsRead());
+                assertEquals(2, metrics.getRejectedRows());
+                if (backend == null) {
+                    // life histories are merged into the H2 table so the duplicate replaces the first row unseen.
+                    assertEquals(4, metrics.getRowsInserted());
+                    assertEquals(0, metrics.getDuplicateRows());
+                    assertTrue(metrics.getCommits() > 0);
+                } else {
+                    assertEquals(3, metrics.getRowsInserted());
+                    assertEquals(1, metrics.getDuplicateRows());
+                }
+                assertTrue(metrics.toString().contains("2 rejected"));
+
+                // the MXBean was only registered while the file was read.
+                assertEquals(Arrays.asList(MBeanServerNotification.REGISTRATION_NOTIFICATION,
+                                           MBeanServerNotification.UNREGISTRATION_NOTIFICATION), notifications);
+                assertFalse(server.isRegistered(name));
+            } finally {
+                server.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener);
+            }
+        }
+    }
+
+    /**
+     * Create the data section of a configuration file that reads a life history file.
+     * @param fileName the name of the life history file.
+     * @return the data section.
+     */
+    private static Project.Data createData(final String fileName) {
+        final LifeHistoryType lifeHistory = new LifeHistoryType();
+        lifeHistory.setIdColumn(1);
+        lifeHistory.setSpeciesColumn(2);
+        lifeHistory.setDateOfBirthColumn(3);
+        lifeHistory.setLocationOfBirthColumn(4);
+        lifeHistory.setDateOfDeathColumn(5);
+        lifeHistory.setLocationOfDeathColumn(6);
+        final DataFiles.PopulationFile lifeHistoryFile = new DataFiles.PopulationFile();
+        lifeHistoryFile.setName(fileName);
+        lifeHistoryFile.setAlias("animals");
+        lifeHistoryFile.setSeparator(",");
+        lifeHistoryFile.setLifeHistory(lifeHistory);
+        lifeHistoryFile.setDateFormat("yyyy-MM-dd");
+
+        final DataFiles files = new DataFiles();
+        files.getPopulationFile().add(lifeHistoryFile);
+        final Project.Data data = new Project.Data();
+        data.setDatafiles(files);
+        data.setOptions(new DataOptions());
+        return data;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.config.generated.DataFiles;
+import broadwick.config.generated.Project;
+import broadwick.data.readers.DirectedMovementsFileReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.jooq.DSLContext;
+import org.jooq.Record2;
+import org.jooq.Result;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+
+/**
+ * Micro-benchmark of Lookup.getAnimalLocationIdAtDate(), comparing the parameterised statements used by the Lookup
+ * class with building the SQL for each call (as the Lookup class used to) and with finding the locations of many
+ * animals at once with getAnimalLocationsAtDate() and with an AnimalLocationIndex. This is not a unit test (it is not in any
+ * test suite), run it with
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; broadwick.data.LookupBenchmark [calls]
+ * </pre>
+ * where calls is the number of lookups to time (default 1,000,000).
+ */
+public final class LookupBenchmark {
+
+    /**
+     * Hidden constructor.
+     */
+    private LookupBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     * @param args the number of calls to make (optional).
+     * @throws IOException if the movements file cannot be created.
+     */
+    public static void main(final String[] args) throws IOException {
+        final int calls = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CALLS;
+        final Path movementsFile = createMovementsFile();
+
+        final DataFiles.DirectedMovementFile movements = new DataFiles.DirectedMovementFile();
+        movements.setName(movementsFile.toString());
+        movements.setAlias("benchmark");
+        movements.setSeparator(",");
+        movements.setIdColumn(1);
+        movements.setSpeciesColumn(2);
+        movements.setLocationColumn(3);
+        movements.setMovementDateColumn(4);
+        movements.setMovementDirectionColumn(5);
+        movements.setDateFormat("yyyy-MM-dd");
+        final DataFiles files = new DataFiles();
+        files.getDirectedMovementFile().add(movements);
+        final Project.Data data = new Project.Data();
+        data.setDatafiles(files);
+
+        String dbName = null;
+        try (DataReader reader = new DataReader(data)) {
+            dbName = reader.getDbName();
+            final Lookup lookup = reader.getLookup();
+            final DSLContext jooq = DSL.using(lookup.getConnection(), SQLDialect.H2);
+
+            // warm up both methods before timing them.
+            run(lookup, jooq, calls / 10, true);
+            run(lookup, jooq, calls / 10, false);
+
+            final double formatted = run(lookup, jooq, calls, false);
+            final double prepared = run(lookup, jooq, calls, true);
+            System.out.printf("getAnimalLocationIdAtDate x %d: SQL built per call %.1f s (%.1f us/call), "
+                              + "prepared statements %.1f s (%.1f us/call), speedup %.1fx%n",
+                              calls, formatted, 1e6 * formatted / calls, prepared, 1e6 * prepared / calls,
+                              formatted / prepared);
+
+            final double bulk = runBulk(lookup, calls);
+            System.out.printf("getAnimalLocationsAtDate for %d animals at a time: %.1f s (%.1f us/animal), "
+                              + "speedup %.1fx over SQL built per call, %.1fx over prepared statements%n",
+                              BULK_SIZE, bulk, 1e6 * bulk / calls, formatted / bulk, prepared / bulk);
+
+            final long start = System.nanoTime();
+            final AnimalLocationIndex index = new AnimalLocationIndex(lookup);
+            final double build = (System.nanoTime() - start) / 1e9;
+            final double indexed = runIndexed(lookup, index, calls);
+            System.out.printf("AnimalLocationIndex built in %.1f s, getLocationIdAtDate x %d: %.2f s (%.2f us/call), "
+                              + "speedup %.0fx over prepared statements%n",
+                              build, calls, indexed, 1e6 * indexed / calls, prepared / indexed);
+        } finally {
+            TemporaryDatabases.delete(dbName);
+            Files.deleteIfExists(movementsFile);
+        }
+    }
+
+    /**
+     * Time a number of lookups of the location of random animals on random dates.
+     * @param lookup   the lookup object.
+     * @param jooq     the jooq context used to run the SQL built for each call.
+     * @param calls    the number of lookups.
+     * @param prepared true to use Lookup.getAnimalLocationIdAtDate(), false to build the SQL for each call.
+     * @return the time taken in seconds.
+     */
+    private static double run(final Lookup lookup, final DSLContext jooq, final int calls, final boolean prepared) {
+        final Random random = new Random(SEED);
+        int found = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            final String animalId = Integer.toString(random.nextInt(NUM_ANIMALS));
+            final int date = FIRST_DATE + random.nextInt(NUM_DAYS);
+            final String location = prepared ? lookup.getAnimalLocationIdAtDate(animalId, date)
+                                    : locationAtDate(jooq, animalId, date);
+            if (location != null) {
+                found++;
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        if (found == 0) {
+            System.out.println("No locations found.");
+        }
+        return seconds;
+    }
+
+    /**
+     * Time the lookup of the locations of the same animals as run() using getAnimalLocationsAtDate() for BULK_SIZE
+     * animals (on the same date) at a time, checking the locations are the same as getAnimalLocationIdAtDate().
+     * @param lookup the lookup object.
+     * @param calls  the number of animals whose location is found.
+     * @return the time taken in seconds.
+     */
+    private static double runBulk(final Lookup lookup, final int calls) {
+        final Random random = new Random(SEED);
+        final List<String> animalIds = new ArrayList<>(BULK_SIZE);
+        long elapsed = 0;
+        for (int i = 0; i < calls; i += BULK_SIZE) {
+            animalIds.clear();
+            final int date = FIRST_DATE + random.nextInt(NUM_DAYS);
+            for (int j = 0; j < BULK_SIZE; j++) {
+                animalIds.add(Integer.toString(random.nextInt(NUM_ANIMALS)));
+            }
+            final long start = System.nanoTime();
+            final Map<String, String> locations = lookup.getAnimalLocationsAtDate(animalIds, date);
+            elapsed += System.nanoTime() - start;
+
+            if (i == 0) {
+                for (final String animalId : animalIds) {
+                    final String location = lookup.getAnimalLocationIdAtDate(animalId, date);
+                    if (location != null && !location.equals(locations.get(animalId))) {
+                        System.out.printf("Location of %s on %d differs: %s != %s%n",
+                                          animalId, date, location, locations.get(animalId));
+                    }
+                }
+            }
+        }
+        return elapsed / 1e9;
+    }
+
+    /**
+     * Time the lookup of the locations of the same animals as run() using an AnimalLocationIndex, comparing the first
+     * locations with getAnimalLocationIdAtDate().
+     * @param lookup the lookup object.
+     * @param index  the location index.
+     * @param calls  the number of lookups.
+     * @return the time taken in seconds.
+     */
+    private static double runIndexed(final Lookup lookup, final AnimalLocationIndex index, final int calls) {
+        final Random random = new Random(SEED);
+        long elapsed = 0;
+        int differences = 0;
+        for (int i = 0; i < calls; i++) {
+            final String animalId = Integer.toString(random.nextInt(NUM_ANIMALS));
+            final int date = FIRST_DATE + random.nextInt(NUM_DAYS);
+            final long start = System.nanoTime();
+            final String location = index.getLocationIdAtDate(animalId, date);
+            elapsed += System.nanoTime() - start;
+
+            if (i < BULK_SIZE) {
+                final String expected = lookup.getAnimalLocationIdAtDate(animalId, date);
+                if (expected != null && !expected.equals(location)) {
+                    differences++;
+                }
+            }
+        }
+        // the index orders an animal's movements on the same day (ON after OFF) where the database query does not.
+        System.out.printf("%d of the first %d locations differ from getAnimalLocationIdAtDate() "
+                          + "(animals moved more than once on the day)%n", differences, BULK_SIZE);
+        return elapsed / 1e9;
+    }
+
+    /**
+     * Find the location of an animal on a date by building the SQL for the query, as Lookup did before it used
+     * prepared statements.
+     * @param jooq     the jooq context.
+     * @param animalId the id of the animal.
+     * @param date     the date.
+     * @return the id of the location.
+     */
+    private static String locationAtDate(final DSLContext jooq, final String animalId, final int date) {
+        final Result<Record2<Object, Object>> records = jooq
+                .select(DSL.field(DSL.name(DirectedMovementsFileReader.getLOCATION_ID())),
+                        DSL.field(DSL.name(DirectedMovementsFileReader.getMOVEMENT_DATE())))
+                .from(DirectedMovementsFileReader.getTABLE_NAME())
+                .where(String.format("%s = '%s' and %s <= %d",
+                                     DirectedMovementsFileReader.getID(), animalId,
+                                     DirectedMovementsFileReader.getMOVEMENT_DATE(), date))
+                .orderBy(DSL.field(DSL.name(DirectedMovementsFileReader.getMOVEMENT_DATE())).desc())
+                .limit(1)
+                .fetch();
+        return records.isNotEmpty() ? (String) records.getValue(0, 0) : null;
+    }
+
+    /**
+     * Write a file of random directed movements.
+     * @return the path of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private static Path createMovementsFile() throws IOException {
+        final Path path = Files.createTempFile("movements", ".csv");
+        final Random random = new Random(SEED);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (int animal = 0; animal < NUM_ANIMALS; animal++) {
+                for (int m = 0; m < MOVEMENTS_PER_ANIMAL; m++) {
+                    writer.write(String.format("%d,cattle,%d/%d/%d,2010-%02d-%02d,%s%n", animal,
+                                               random.nextInt(99), random.nextInt(99), random.nextInt(999),
+                                               1 + random.nextInt(12), 1 + random.nextInt(28),
+                                               m % 2 == 0 ? "OFF" : "ON"));
+                }
+            }
+        }
+        return path;
+    }
+
+    private static final int DEFAULT_CALLS = 1000000;
+    private static final int BULK_SIZE = 1000;
+    private static final int NUM_ANIMALS = 20000;
+    private static final int MOVEMENTS_PER_ANIMAL = 10;
+    private static final int FIRST_DATE = 40177;
+    private static final int NUM_DAYS = 365;
+    private static final long SEED = 2013L;
+}
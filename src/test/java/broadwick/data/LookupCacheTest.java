@@ -0,0 +1,284 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.BroadwickException;
+import broadwick.config.generated.CacheOptions;
+import broadwick.config.generated.CacheSpec;
+import broadwick.config.generated.DataFiles;
+import broadwick.config.generated.DataOptions;
+import broadwick.config.generated.LifeHistoryType;
+import broadwick.config.generated.Project;
+import broadwick.config.generated.WarmUpOptions;
+import com.google.common.cache.CacheStats;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for the caches of the broadwick.data.Lookup class, configured by the caches and warmUp options of the
+ * data section of the configuration file.
+ */
+@Slf4j
+public class LookupCacheTest {
+
+    public LookupCacheTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    @Rule
+    public TemporaryDatabases databases = new TemporaryDatabases();
+
+    /**
+     * Test that the caches are created with the size, weight and expiry configured for each, and that statistics are
+     * only recorded for the caches configured to record them.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test
+    public void testCacheConfiguration() throws IOException {
+        final CacheOptions caches = new CacheOptions();
+        caches.setLocations(createSpec(2L, null, null, true));
+        // entries expire as soon as they are written.
+        caches.setAnimals(createSpec(null, null, 0L, true));
+        // each animal has two movements, so only one animal's movements fit in the cache.
+        caches.setMovements(createSpec(null, 3L, null, false));
+        final Project.Data data = createData();
+        data.getOptions().setCaches(caches);
+
+        try (DataReader reader = databases.track(new DataReader(data))) {
+            final Lookup lookup = reader.getLookup();
+            for (final String locationId : new String[]{"L1", "L2", "L3", "L3"}) {
+                assertEquals(locationId, lookup.getLocation(locationId).getId());
+            }
+            assertEquals(new HashSet<>(Arrays.asList("L2", "L3")), lookup.locationsCache.asMap().keySet());
+
+            assertEquals("A1", lookup.getAnimal("A1").getId());
+            assertEquals("A1", lookup.getAnimal("A1").getId());
+            assertEquals(0, lookup.animalsCache.size());
+
+            assertEquals(2, lookup.getMovementsForAnimal("A1").size());
+            assertEquals(2, lookup.getMovementsForAnimal("A2").size());
+            assertEquals(new HashSet<>(Arrays.asList("A2")), lookup.movementsCache.asMap().keySet());
+
+            final Map<String, CacheStats> stats = lookup.getCacheStats();
+            assertEquals(Arrays.asList("locations", "animals", "movements"), Arrays.asList(stats.keySet().toArray()));
+            assertEquals(4, stats.get("locations").requestCount());
+            assertEquals(1, stats.get("locations").hitCount());
+            assertEquals(1, stats.get("locations").evictionCount());
+            assertEquals(2, stats.get("animals").missCount());
+            assertEquals(0, stats.get("animals").hitCount());
+            // the movements cache does not record its statistics.
+            assertEquals(0, stats.get("movements").requestCount());
+            assertEquals(0, stats.get("movements").evictionCount());
+        }
+    }
+
+    /**
+     * Test that the default caches are used when no caches are configured and that they do not record statistics.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test
+    public void testDefaultCaches() throws IOException {
+        try (DataReader reader = databases.track(new DataReader(createData()))) {
+            final Lookup lookup = reader.getLookup();
+            for (final String locationId : new String[]{"L1", "L2", "L3", "L1"}) {
+                assertEquals(locationId, lookup.getLocation(locationId).getId());
+            }
+            assertEquals(3, lookup.locationsCache.size());
+            for (final CacheStats stats : lookup.getCacheStats().values()) {
+                assertEquals(0, stats.requestCount());
+            }
+        }
+    }
+
+    /**
+     * Test that the locations and the animals listed in a file are loaded into the caches when the data is read, if
+     * the warmUp option is given.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test
+    public void testWarmUpCaches() throws IOException {
+        final CacheOptions caches = new CacheOptions();
+        caches.setLocations(createSpec(null, null, null, true));
+        caches.setAnimals(createSpec(null, null, null, true));
+        final WarmUpOptions warmUp = new WarmUpOptions();
+        warmUp.setLocations(true);
+        warmUp.setAnimalIdsFile(write("animalIds.txt", "A2", "", "A9"));
+        final Project.Data data = createData();
+        data.getOptions().setCaches(caches);
+        data.getOptions().setWarmUp(warmUp);
+
+        try (DataReader reader = databases.track(new DataReader(data))) {
+            final Lookup lookup = reader.getLookup();
+            assertEquals(new HashSet<>(Arrays.asList("L1", "L2", "L3")), lookup.locationsCache.asMap().keySet());
+            assertEquals(new HashSet<>(Arrays.asList("A2")), lookup.animalsCache.asMap().keySet());
+
+            assertEquals("L2", lookup.getLocation("L2").getId());
+            assertEquals("A2", lookup.getAnimal("A2").getId());
+            assertEquals(1, lookup.getCacheStats().get("locations").hitCount());
+            assertEquals(1, lookup.getCacheStats().get("animals").hitCount());
+        }
+
+        warmUp.setLocations(false);
+        warmUp.setAnimalIdsFile(folder.getRoot().toPath().resolve("missing.txt").toString());
+        // the reader cannot be tracked if its constructor fails, so its database is kept in the test directory.
+        data.getOptions().setDatabaseDirectory(folder.newFolder().toString());
+        try (DataReader reader = new DataReader(data)) {
+            fail(String.format("The missing animal ids file was not reported by %s.", reader.getDbName()));
+        } catch (BroadwickException e) {
+            assertTrue(e.getMessage().startsWith("Could not read the animal ids to preload from "));
+        }
+    }
+
+    /**
+     * Create the configuration of a cache.
+     * @param maximumSize       the maximum number of entries, or null.
+     * @param maximumWeight     the maximum weight of the entries, or null.
+     * @param expireAfterWrite  the number of seconds after which an entry expires, or null.
+     * @param recordStats       whether the statistics of the cache are recorded.
+     * @return the configuration.
+     */
+    private static CacheSpec createSpec(final Long maximumSize, final Long maximumWeight, final Long expireAfterWrite,
+                                        final boolean recordStats) {
+        final CacheSpec spec = new CacheSpec();
+        spec.setMaximumSize(maximumSize);
+        spec.setMaximumWeight(maximumWeight);
+        spec.setExpireAfterWrite(expireAfterWrite);
+        spec.setRecordStats(recordStats);
+        return spec;
+    }
+
+    /**
+     * Create the data section of a configuration file that reads three locations and two animals, each with two
+     * movements.
+     * @return the data section.
+     * @throws IOException if the files cannot be written.
+     */
+    private Project.Data createData() throws IOException {
+        final DataFiles.LocationsFile locationsFile = new DataFiles.LocationsFile();
+        locationsFile.setName(write("locations.csv", "L1,1,1", "L2,2,2", "L3,3,3"));
+        locationsFile.setAlias("locations");
+        locationsFile.setSeparator(",");
+        locationsFile.setLocationIdColumn(1);
+        locationsFile.setEastingColumn(2);
+        locationsFile.setNorthingColumn(3);
+
+        final LifeHistoryType lifeHistory = new LifeHistoryType();
+        lifeHistory.setIdColumn(1);
+        lifeHistory.setSpeciesColumn(2);
+        lifeHistory.setDateOfBirthColumn(3);
+        lifeHistory.setLocationOfBirthColumn(4);
+        lifeHistory.setDateOfDeathColumn(5);
+        lifeHistory.setLocationOfDeathColumn(6);
+        final DataFiles.PopulationFile populationFile = new DataFiles.PopulationFile();
+        populationFile.setName(write("animals.csv", "A1,cattle,2010-01-01,L1,,", "A2,cattle,2010-01-02,L2,,"));
+        populationFile.setAlias("animals");
+        populationFile.setSeparator(",");
+        populationFile.setLifeHistory(lifeHistory);
+        populationFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles.DirectedMovementFile directedFile = new DataFiles.DirectedMovementFile();
+        directedFile.setName(write("directed.csv", "A1,cattle,L1,2010-02-01,OFF", "A1,cattle,L2,2010-02-01,ON",
+                                   "A2,cattle,L2,2010-03-01,OFF", "A2,cattle,L3,2010-03-01,ON"));
+        directedFile.setAlias("directed");
+        directedFile.setSeparator(",");
+        directedFile.setIdColumn(1);
+        directedFile.setSpeciesColumn(2);
+        directedFile.setLocationColumn(3);
+        directedFile.setMovementDateColumn(4);
+        directedFile.setMovementDirectionColumn(5);
+        directedFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles files = new DataFiles();
+        files.getLocationsFile().add(locationsFile);
+        files.getPopulationFile().add(populationFile);
+        files.getDirectedMovementFile().add(directedFile);
+        final Project.Data data = new Project.Data();
+        data.setDatafiles(files);
+        data.setOptions(new DataOptions());
+        return data;
+    }
+
+    /**
+     * Write lines to a file in the test directory, if it has not already been written.
+     * @param name  the name of the file.
+     * @param lines the lines.
+     * @return the name of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private String write(final String name, final String... lines) throws IOException {
+        final Path path = folder.getRoot().toPath().resolve(name);
+        if (!Files.exists(path)) {
+            Files.write(path, Arrays.asList(lines), StandardCharsets.UTF_8);
+        }
+        return path.toString();
+    }
+
+    private static final String DATE_FORMAT = "yyyy-MM-dd";
+}
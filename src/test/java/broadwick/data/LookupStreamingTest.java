@@ -0,0 +1,635 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.config.generated.DataFiles;
+import broadwick.config.generated.DataOptions;
+import broadwick.config.generated.LifeHistoryType;
+import broadwick.config.generated.Project;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.SQLDialect;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for the streaming (forEach) methods of the broadwick.data.Lookup class and the mapping of the database
+ * records to Movement, Animal, Location and Test objects.
+ */
+@Slf4j
+public class LookupStreamingTest {
+
+    public LookupStreamingTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    @Rule
+    public TemporaryDatabases databases = new TemporaryDatabases();
+
+    /**
+     * Test that every column of each table is mapped to the right field of the objects read from both databases, i.e.
+     * the objects are those written to the data files.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test
+    public void testMappers() throws IOException {
+        for (final String backend : new String[]{null, "memory"}) {
+            try (DataReader reader = databases.track(new DataReader(createData(backend)))) {
+                final Lookup lookup = reader.getLookup();
+                assertEquals(asSet(MOVEMENTS), new HashSet<>(lookup.getMovements()));
+                assertEquals(asSet(ANIMALS), new HashSet<>(lookup.getAnimals()));
+                assertEquals(asSet(LOCATIONS), new HashSet<>(lookup.getLocations()));
+                assertEquals(asSet(TESTS), new HashSet<>(lookup.getTests()));
+                assertEquals(ANIMALS[1], lookup.getAnimal("A2"));
+                assertEquals(LOCATIONS[0], lookup.getLocation("L1"));
+                assertEquals(asSet(MOVEMENTS[0], MOVEMENTS[1]), new HashSet<>(lookup.getMovementsForAnimal("A1")));
+            }
+        }
+    }
+
+    /**
+     * Test that the objects passed to the handlers of the forEach methods are the objects returned by the methods that
+     * collect them, for all the objects and for date ranges, and that the number of objects passed is returned.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test
+    public void testForEach() throws IOException {
+        final int start = day(1);
+        final int end = day(31);
+        for (final String backend : new String[]{null, "memory"}) {
+            try (DataReader reader = databases.track(new DataReader(createData(backend)))) {
+                final Lookup lookup = reader.getLookup();
+
+                final List<Movement> movements = new ArrayList<>();
+                assertEquals(4, lookup.forEachMovement(collect(movements)));
+                assertEquals(asSet(MOVEMENTS), new HashSet<>(movements));
+                assertEquals(new HashSet<>(lookup.getMovements()), new HashSet<>(movements));
+
+                movements.clear();
+                assertEquals(3, lookup.forEachMovement(start, end, collect(movements)));
+                assertEquals(asSet(MOVEMENTS[0], MOVEMENTS[1], MOVEMENTS[2]), new HashSet<>(movements));
+                assertEquals(new HashSet<>(lookup.getMovements(start, end)), new HashSet<>(movements));
+
+                movements.clear();
+                assertEquals(2, lookup.forEachOffMovement(start, end, collect(movements)));
+                assertEquals(asSet(MOVEMENTS[0], MOVEMENTS[2]), new HashSet<>(movements));
+                assertEquals(new HashSet<>(lookup.getOffMovements(start, end)), new HashSet<>(movements));
+
+                movements.clear();
+                assertEquals(2, lookup.forEachOnMovement(start, end, collect(movements)));
+                assertEquals(asSet(MOVEMENTS[1], MOVEMENTS[2]), new HashSet<>(movements));
+                assertEquals(new HashSet<>(lookup.getOnMovements(start, end)), new HashSet<>(movements));
+
+                final List<broadwick.data.Test> tests = new ArrayList<>();
+                assertEquals(2, lookup.forEachTest(collect(tests)));
+                assertEquals(asSet(TESTS), new HashSet<>(tests));
+                assertEquals(new HashSet<>(lookup.getTests()), new HashSet<>(tests));
+                tests.clear();
+                assertEquals(1, lookup.forEachTest(start, end, collect(tests)));
+                assertEquals(Arrays.asList(TESTS[0]), tests);
+                assertEquals(new HashSet<>(lookup.getTests(start, end)), new HashSet<>(tests));
+
+                final List<Animal> animals = new ArrayList<>();
+                assertEquals(2, lookup.forEachAnimal(collect(animals)));
+                assertEquals(lookup.getAnimals(), new HashSet<>(animals));
+                animals.clear();
+                assertEquals(1, lookup.forEachAnimal(day(3), collect(animals)));
+                assertEquals(Arrays.asList(ANIMALS[0]), animals);
+                animals.clear();
+                assertEquals(1, lookup.forEachAnimal(day(70), collect(animals)));
+                assertEquals(Arrays.asList(ANIMALS[1]), animals);
+                assertEquals(lookup.getAnimals(day(70)), new HashSet<>(animals));
+
+                final List<Location> locations = new ArrayList<>();
+                assertEquals(3, lookup.forEachLocation(collect(locations)));
+                assertEquals(new HashSet<>(lookup.getLocations()), new HashSet<>(locations));
+            }
+        }
+    }
+
+    /**
+     * Test that the fetch size of the lookup is given to every statement that reads a table lazily, including those
+     * run concurrently on their own connections to read several movements tables.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test
+    public void testFetchSize() throws IOException {
+        final List<Integer> fetchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        // the database is opened again (sharing the tables of the reader's database) by a database that records the
+        // statements created on it.
+        try (DataReader reader = databases.track(new DataReader(createData(null)));
+             H2Database h2 = new H2Database(reader.getDbName(), false)) {
+            final Lookup lookup = new Lookup(new RecordingDatabase(h2, fetchSizes, null));
+            lookup.setFetchSize(3);
+            assertEquals(2, lookup.forEachTest(collect(new ArrayList<broadwick.data.Test>())));
+            assertEquals(Arrays.asList(3), fetchSizes);
+
+            fetchSizes.clear();
+            assertEquals(4, lookup.forEachMovement(collect(new ArrayList<Movement>())));
+            // one statement for each of the three movements tables.
+            assertEquals(Arrays.asList(3, 3, 3), fetchSizes);
+
+            fetchSizes.clear();
+            lookup.setFetchSize(5);
+            assertEquals(3, lookup.forEachLocation(collect(new ArrayList<Location>())));
+            assertEquals(2, lookup.forEachAnimal(day(10), collect(new ArrayList<Animal>())));
+            assertEquals(Arrays.asList(5, 5), fetchSizes);
+        }
+    }
+
+    /**
+     * Test that the movements of several tables streamed through the queue of the lookup are all passed to the handler,
+     * each table's reader ending its movements with an empty batch even when it has no movements to read.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test(timeout = TEST_TIMEOUT)
+    public void testMovementStream() throws IOException {
+        try (DataReader reader = databases.track(new DataReader(createManyMovementsData()));
+             H2Database h2 = new H2Database(reader.getDbName(), false)) {
+            final RecordingDatabase database = new RecordingDatabase(h2, new ArrayList<Integer>(), null);
+            final Lookup lookup = new Lookup(database);
+            lookup.setFetchSize(2);
+            final int open = database.getOpenConnections();
+
+            final List<Movement> movements = new ArrayList<>();
+            assertEquals(3 * NUM_MOVEMENTS, lookup.forEachMovement(collect(movements)));
+            assertEquals(3 * NUM_MOVEMENTS, movements.size());
+            assertEquals(reader.getLookup().getNumMovements(), movements.size());
+
+            // only the directed movements table has movements in the first week of the year.
+            movements.clear();
+            assertEquals(7, lookup.forEachMovement(day(1), day(7), collect(movements)));
+            assertEquals(7, movements.size());
+
+            // no table has any movements, so each reader only sends its empty batch.
+            assertEquals(0, lookup.forEachMovement(day(3000), day(3100), collect(movements)));
+            assertConnectionsClosed(database, open);
+        }
+    }
+
+    /**
+     * Test that the readers of the movements tables stop, rather than waiting forever for space in the full queue, if
+     * the handler throws an exception after the first movement.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test(timeout = TEST_TIMEOUT)
+    public void testMovementStreamAbandoned() throws IOException {
+        try (DataReader reader = databases.track(new DataReader(createManyMovementsData()));
+             H2Database h2 = new H2Database(reader.getDbName(), false)) {
+            final RecordingDatabase database = new RecordingDatabase(h2, new ArrayList<Integer>(), null);
+            final Lookup lookup = new Lookup(database);
+            lookup.setFetchSize(2);
+            final int open = database.getOpenConnections();
+
+            final List<Movement> movements = new ArrayList<>();
+            try {
+                lookup.forEachMovement(new ResultHandler<Movement>() {
+                    @Override
+                    public void handle(final Movement movement) {
+                        movements.add(movement);
+                        throw new IllegalStateException("stop");
+                    }
+                });
+                fail("The exception thrown by the handler was not passed on.");
+            } catch (IllegalStateException e) {
+                assertEquals("stop", e.getMessage());
+            }
+            assertEquals(1, movements.size());
+            // a reader still waiting to add a batch to the queue would keep its connection open.
+            assertConnectionsClosed(database, open);
+
+            movements.clear();
+            assertEquals(3 * NUM_MOVEMENTS, lookup.forEachMovement(collect(movements)));
+            assertEquals(3 * NUM_MOVEMENTS, movements.size());
+            assertConnectionsClosed(database, open);
+        }
+    }
+
+    /**
+     * Test that the failure of the reader of one movements table is passed on to the caller once the other tables
+     * have been read.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test(timeout = TEST_TIMEOUT)
+    public void testMovementStreamFailure() throws IOException {
+        try (DataReader reader = databases.track(new DataReader(createManyMovementsData()));
+             H2Database h2 = new H2Database(reader.getDbName(), false)) {
+            final RecordingDatabase database = new RecordingDatabase(h2, new ArrayList<Integer>(), "BatchedMovements");
+            final Lookup lookup = new Lookup(database);
+            lookup.setFetchSize(2);
+            final int open = database.getOpenConnections();
+
+            final List<Movement> movements = new ArrayList<>();
+            try {
+                lookup.forEachMovement(collect(movements));
+                fail("The failure to read the batched movements was not passed on.");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("Cannot read BatchedMovements"));
+            }
+            // the directed and full movements are all read.
+            assertEquals(2 * NUM_MOVEMENTS, movements.size());
+            assertConnectionsClosed(database, open);
+        }
+    }
+
+    /**
+     * Wait for the connections opened to read the movements tables to be closed, i.e. for their readers to finish.
+     * @param database the database.
+     * @param open     the number of connections open before the tables were read.
+     */
+    private static void assertConnectionsClosed(final RecordingDatabase database, final int open) {
+        final long end = System.currentTimeMillis() + CLOSE_TIMEOUT;
+        while (database.getOpenConnections() > open && System.currentTimeMillis() < end) {
+            Thread.yield();
+        }
+        assertEquals("A movements table reader has not finished.", open, database.getOpenConnections());
+    }
+
+    /**
+     * Create the data section of a configuration file whose movements files each have NUM_MOVEMENTS movements, one a
+     * day, the directed movements from the first day of 2010, the full and batched movements from the first day of
+     * 2011.
+     * @return the data section.
+     * @throws IOException if the files cannot be written.
+     */
+    private Project.Data createManyMovementsData() throws IOException {
+        final List<String> directed = new ArrayList<>();
+        final List<String> full = new ArrayList<>();
+        final List<String> batch = new ArrayList<>();
+        for (int i = 0; i < NUM_MOVEMENTS; i++) {
+            final String day2010 = String.format("2010-%02d-%02d", 1 + i / 28, 1 + i % 28);
+            final String day2011 = String.format("2011-%02d-%02d", 1 + i / 28, 1 + i % 28);
+            directed.add(String.format("A%d,cattle,L1,%s,OFF", i, day2010));
+            full.add(String.format("A%d,%s,L1,%s,L2,cattle", i, day2011, day2011));
+            batch.add(String.format("%d,%s,L1,%s,L2,M1,%s,cattle", i, day2011, day2011, day2011));
+        }
+        final Project.Data data = createData(null);
+        final DataFiles files = data.getDatafiles();
+        files.getDirectedMovementFile().get(0).setName(write("many_directed.csv", directed));
+        files.getFullMovementFile().get(0).setName(write("many_full.csv", full));
+        files.getBatchMovementFile().get(0).setName(write("many_batch.csv", batch));
+        return data;
+    }
+
+    /**
+     * Create a handler that adds each object to a list.
+     * @param <T>  the type of the objects.
+     * @param list the list.
+     * @return the handler.
+     */
+    private static <T> ResultHandler<T> collect(final List<T> list) {
+        return new ResultHandler<T>() {
+            @Override
+            public void handle(final T result) {
+                list.add(result);
+            }
+        };
+    }
+
+    /**
+     * Create a set of objects.
+     * @param <T>     the type of the objects.
+     * @param objects the objects.
+     * @return the set.
+     */
+    @SafeVarargs
+    private static <T> Set<T> asSet(final T... objects) {
+        return new HashSet<>(Arrays.asList(objects));
+    }
+
+    /**
+     * Get the day (as stored in the databases) of a day of 2010.
+     * @param dayOfYear the (one based) day of the year.
+     * @return the day.
+     */
+    private static int day(final int dayOfYear) {
+        return FIRST_DATE + dayOfYear - 1;
+    }
+
+    /**
+     * Create the data section of a configuration file that reads one file of each type.
+     * @param backend the backend option, or null for the default.
+     * @return the data section.
+     * @throws IOException if the files cannot be written.
+     */
+    private Project.Data createData(final String backend) throws IOException {
+        final DataFiles.LocationsFile locationsFile = new DataFiles.LocationsFile();
+        locationsFile.setName(write("locations.csv", "L1,1.5,2.5", "L2,3,4", "M1,5,6"));
+        locationsFile.setAlias("locations");
+        locationsFile.setSeparator(",");
+        locationsFile.setLocationIdColumn(1);
+        locationsFile.setEastingColumn(2);
+        locationsFile.setNorthingColumn(3);
+
+        final LifeHistoryType lifeHistory = new LifeHistoryType();
+        lifeHistory.setIdColumn(1);
+        lifeHistory.setSpeciesColumn(2);
+        lifeHistory.setDateOfBirthColumn(3);
+        lifeHistory.setLocationOfBirthColumn(4);
+        lifeHistory.setDateOfDeathColumn(5);
+        lifeHistory.setLocationOfDeathColumn(6);
+        final DataFiles.PopulationFile populationFile = new DataFiles.PopulationFile();
+        populationFile.setName(write("animals.csv", "A1,cattle,2010-01-01,L1,2010-03-01,L2",
+                                     "A2,sheep,2010-01-05,L2,,"));
+        populationFile.setAlias("animals");
+        populationFile.setSeparator(",");
+        populationFile.setLifeHistory(lifeHistory);
+        populationFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles.DirectedMovementFile directedFile = new DataFiles.DirectedMovementFile();
+        directedFile.setName(write("directed.csv", "A1,cattle,L1,2010-01-10,OFF", "A1,cattle,L2,2010-01-11,ON"));
+        directedFile.setAlias("directed");
+        directedFile.setSeparator(",");
+        directedFile.setIdColumn(1);
+        directedFile.setSpeciesColumn(2);
+        directedFile.setLocationColumn(3);
+        directedFile.setMovementDateColumn(4);
+        directedFile.setMovementDirectionColumn(5);
+        directedFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles.FullMovementFile fullFile = new DataFiles.FullMovementFile();
+        fullFile.setName(write("full.csv", "A2,2010-01-20,L2,2010-01-21,L1,sheep"));
+        fullFile.setAlias("full");
+        fullFile.setSeparator(",");
+        fullFile.setIdColumn(1);
+        fullFile.setDepartureDateColumn(2);
+        fullFile.setDepartureLocationIdColumn(3);
+        fullFile.setDestinationDateColumn(4);
+        fullFile.setDestinationLocationIdColumn(5);
+        fullFile.setSpeciesColumn(6);
+        fullFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles.BatchMovementFile batchFile = new DataFiles.BatchMovementFile();
+        batchFile.setName(write("batch.csv", "10,2010-02-01,L1,2010-02-03,L2,M1,2010-02-02,cattle"));
+        batchFile.setAlias("batch");
+        batchFile.setSeparator(",");
+        batchFile.setBatchSizeColumn(1);
+        batchFile.setDepartureDateColumn(2);
+        batchFile.setDepartureLocationIdColumn(3);
+        batchFile.setDestinationDateColumn(4);
+        batchFile.setDestinationLocationIdColumn(5);
+        batchFile.setMarketIdColumn(6);
+        batchFile.setMarketDateColumn(7);
+        batchFile.setSpeciesColumn(8);
+        batchFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles.TestsFile testsFile = new DataFiles.TestsFile();
+        testsFile.setName(write("tests.csv", "A1,G1,L1,2010-01-15,1,0", "A2,G2,L2,2010-02-15,0,1"));
+        testsFile.setAlias("tests");
+        testsFile.setSeparator(",");
+        testsFile.setIdColumn(1);
+        testsFile.setGroupIdColumn(2);
+        testsFile.setLocationIdColumn(3);
+        testsFile.setTestDateColumn(4);
+        testsFile.setPostiveResultColumn(5);
+        testsFile.setNegativeResultColumn(6);
+        testsFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles files = new DataFiles();
+        files.getLocationsFile().add(locationsFile);
+        files.getPopulationFile().add(populationFile);
+        files.getDirectedMovementFile().add(directedFile);
+        files.getFullMovementFile().add(fullFile);
+        files.getBatchMovementFile().add(batchFile);
+        files.getTestsFile().add(testsFile);
+        final DataOptions options = new DataOptions();
+        options.setBackend(backend);
+        final Project.Data data = new Project.Data();
+        data.setDatafiles(files);
+        data.setOptions(options);
+        return data;
+    }
+
+    /**
+     * Write lines to a file in the test directory, if it has not already been written.
+     * @param name  the name of the file.
+     * @param lines the lines.
+     * @return the name of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private String write(final String name, final String... lines) throws IOException {
+        return write(name, Arrays.asList(lines));
+    }
+
+    /**
+     * Write lines to a file in the test directory, if it has not already been written.
+     * @param name  the name of the file.
+     * @param lines the lines.
+     * @return the name of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private String write(final String name, final List<String> lines) throws IOException {
+        final Path path = folder.getRoot().toPath().resolve(name);
+        if (!Files.exists(path)) {
+            Files.write(path, lines, StandardCharsets.UTF_8);
+        }
+        return path.toString();
+    }
+
+    /**
+     * A database that records the fetch size given to each statement prepared on its connections and the number of its
+     * connections that are open, and that can fail to read a table.
+     */
+    private static final class RecordingDatabase implements DatabaseImpl {
+
+        /**
+         * Create the database.
+         * @param database   the database whose connections are used.
+         * @param fetchSizes the list to which the fetch size of each statement is added.
+         * @param failing    the name of the table that cannot be read, or null if all the tables can be read.
+         */
+        RecordingDatabase(final DatabaseImpl database, final List<Integer> fetchSizes, final String failing) {
+            this.database = database;
+            this.fetchSizes = fetchSizes;
+            this.failing = failing;
+        }
+
+        /**
+         * Get the number of connections that have been opened and not closed.
+         * @return the number of open connections.
+         */
+        int getOpenConnections() {
+            return openConnections.get();
+        }
+
+        @Override
+        public void open(final String dbName) {
+            database.open(dbName);
+        }
+
+        @Override
+        public void close() {
+            database.close();
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            final Connection connection = database.getConnection();
+            final AtomicBoolean closed = new AtomicBoolean(false);
+            openConnections.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                                       new Class<?>[]{Connection.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                    if ("close".equals(method.getName()) && closed.compareAndSet(false, true)) {
+                        openConnections.decrementAndGet();
+                    } else if ("prepareStatement".equals(method.getName()) && failing != null
+                               && ((String) args[0]).toUpperCase().contains(failing.toUpperCase())) {
+                        throw new SQLException("Cannot read " + failing);
+                    }
+                    final Object result = call(connection, method, args);
+                    if ("prepareStatement".equals(method.getName())) {
+                        return record((PreparedStatement) result);
+                    }
+                    return result;
+                }
+            });
+        }
+
+        @Override
+        public SQLDialect getDialect() {
+            return database.getDialect();
+        }
+
+        /**
+         * Wrap a statement so that the fetch size it is given is recorded.
+         * @param statement the statement.
+         * @return the wrapped statement.
+         */
+        private PreparedStatement record(final PreparedStatement statement) {
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                                              new Class<?>[]{PreparedStatement.class},
+                                                              new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                    if ("setFetchSize".equals(method.getName())) {
+                        fetchSizes.add((Integer) args[0]);
+                    }
+                    return call(statement, method, args);
+                }
+            });
+        }
+
+        /**
+         * Call a method of the wrapped object, throwing the exception thrown by the method rather than the reflection
+         * exception.
+         * @param target the wrapped object.
+         * @param method the method.
+         * @param args   the arguments of the method.
+         * @return the result of the method.
+         * @throws Throwable the exception thrown by the method.
+         */
+        private static Object call(final Object target, final Method method, final Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private final DatabaseImpl database;
+        private final List<Integer> fetchSizes;
+        private final String failing;
+        private final AtomicInteger openConnections = new AtomicInteger();
+    }
+
+    private static final String DATE_FORMAT = "yyyy-MM-dd";
+    private static final int FIRST_DATE = 40177;
+    private static final int NUM_MOVEMENTS = 100;
+    private static final long TEST_TIMEOUT = 60000;
+    private static final long CLOSE_TIMEOUT = 10000;
+    private static final Movement[] MOVEMENTS = {
+        new Movement("A1", null, FIRST_DATE + 9, "L1", null, "", null, "", "cattle"),
+        new Movement("A1", null, null, "", FIRST_DATE + 10, "L2", null, "", "cattle"),
+        new Movement("A2", null, FIRST_DATE + 19, "L2", FIRST_DATE + 20, "L1", null, "", "sheep"),
+        new Movement("", 10, FIRST_DATE + 31, "L1", FIRST_DATE + 33, "L2", FIRST_DATE + 32, "M1", "cattle")};
+    private static final Animal[] ANIMALS = {
+        new Animal("A1", "cattle", FIRST_DATE, "L1", FIRST_DATE + 59, "L2"),
+        new Animal("A2", "sheep", FIRST_DATE + 4, "L2", Integer.MAX_VALUE, "")};
+    private static final Location[] LOCATIONS = {
+        new Location("L1", 1.5, 2.5, new HashMap<String, Integer>()),
+        new Location("L2", 3.0, 4.0, new HashMap<String, Integer>()),
+        new Location("M1", 5.0, 6.0, new HashMap<String, Integer>())};
+    private static final broadwick.data.Test[] TESTS = {
+        new broadwick.data.Test("A1", "G1", "L1", FIRST_DATE + 14, true, false),
+        new broadwick.data.Test("A2", "G2", "L2", FIRST_DATE + 45, false, true)};
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.utils.CloneUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for broadwick.data.MovementIndex class.
+ */
+@Slf4j
+public class MovementIndexTest {
+    
+    public MovementIndexTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    /**
+     * Test of getDepartures and getArrivals methods, of class MovementIndex.
+     */
+    @Test
+    public void testGetDeparturesAndArrivals() {
+        final Collection<Movement> movements = new ArrayList<>();
+        // full movements
+        movements.add(new Movement("1", null, 100, "A", 101, "B", null, "", "cattle"));
+        movements.add(new Movement("2", null, 100, "B", 100, "C", null, "", "cattle"));
+        movements.add(new Movement("3", null, 102, "A", 102, "C", null, "", "cattle"));
+        // the OFF and ON halves of a directed movement
+        movements.add(new Movement("4", null, 100, "A", null, "", null, "", "sheep"));
+        movements.add(new Movement("4", null, null, "", 100, "D", null, "", "sheep"));
+
+        final MovementIndex index = new MovementIndex(movements);
+        assertEquals(5, index.size());
+        assertEquals(100, index.getFirstDay());
+        assertEquals(102, index.getLastDay());
+
+        assertEquals(3, index.getDepartures(100).size());
+        assertEquals(ids("1", "4"), ids(index.getDepartures(100, Arrays.asList("A"))));
+        assertEquals(ids("1", "2", "4"), ids(index.getDepartures(100, Arrays.asList("A", "B", "X"))));
+        assertTrue(index.getDepartures(101, Arrays.asList("A")).isEmpty());
+        assertTrue(index.getDepartures(99).isEmpty());
+        assertTrue(index.getDepartures(1000, Arrays.asList("A")).isEmpty());
+
+        assertEquals(ids("2", "4"), ids(index.getArrivals(100)));
+        assertEquals(ids("4"), ids(index.getArrivals(100, Arrays.asList("D"))));
+        assertEquals(ids("3"), ids(index.getArrivals(102, Arrays.asList("C"))));
+    }
+
+    /**
+     * Test the index against a linear search of randomly generated movements.
+     */
+    @Test
+    public void testAgainstLinearSearch() {
+        final Random random = new Random(12345);
+        final List<Movement> movements = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            final int day = 40000 + random.nextInt(60);
+            movements.add(new Movement(Integer.toString(i), null, day, "L" + random.nextInt(100),
+                                       day + random.nextInt(3), "L" + random.nextInt(100), null, "", "cattle"));
+        }
+        final MovementIndex index = new MovementIndex(movements);
+
+        for (int trial = 0; trial < 200; trial++) {
+            final int day = 39995 + random.nextInt(70);
+            final Set<String> locations = new HashSet<>();
+            for (int j = random.nextInt(20); j >= 0; j--) {
+                locations.add("L" + random.nextInt(110));
+            }
+
+            final Set<Movement> expectedDepartures = new HashSet<>();
+            final Set<Movement> expectedArrivals = new HashSet<>();
+            for (final Movement m : movements) {
+                if (m.getDepartureDate() == day && locations.contains(m.getDepartureId())) {
+                    expectedDepartures.add(m);
+                }
+                if (m.getDestinationDate() == day && locations.contains(m.getDestinationId())) {
+                    expectedArrivals.add(m);
+                }
+            }
+            final List<Movement> departures = index.getDepartures(day, locations);
+            final List<Movement> arrivals = index.getArrivals(day, locations);
+            assertEquals(expectedDepartures.size(), departures.size());
+            assertEquals(expectedDepartures, new HashSet<>(departures));
+            assertEquals(expectedArrivals.size(), arrivals.size());
+            assertEquals(expectedArrivals, new HashSet<>(arrivals));
+        }
+    }
+
+    /**
+     * Test that the index is shared, not copied, when an object containing it is cloned.
+     */
+    @Test
+    public void testCloneSharesIndex() {
+        final MovementIndex index = new MovementIndex(Arrays.asList(
+                new Movement("1", null, 100, "A", 101, "B", null, "", "cattle")));
+        final MovementIndex[] holder = {index};
+        assertSame(index, CloneUtils.deepClone(holder)[0]);
+    }
+
+    /**
+     * Get the (sorted) ids of a collection of movements.
+     * @param movements the movements.
+     * @return the ids of the movements.
+     */
+    private static List<String> ids(final Collection<Movement> movements) {
+        final List<String> ids = new ArrayList<>();
+        for (final Movement m : movements) {
+            ids.add(m.getId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Get a list of ids.
+     * @param ids the ids.
+     * @return the ids as a list.
+     */
+    private static List<String> ids(final String... ids) {
+        return Arrays.asList(ids);
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.config.generated.DataFiles;
+import broadwick.config.generated.DataOptions;
+import broadwick.config.generated.Project;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.joda.time.LocalDate;
+
+/**
+ * Micro-benchmark of the daily date window queries of the Lookup class (getNumMovements(), getMovements(),
+ * getOffMovements() and getOnMovements() for a single day) over 10 years of directed and full movements. The queries
+ * are timed on a H2 database with the date indexes created by the movements file readers, on the same database once
+ * those indexes have been dropped (i.e. the indexes the readers used to create) and on the in-memory backend. This is
+ * not a unit test (it is not in any test suite), run it with
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; broadwick.data.MovementQueryBenchmark [movements] [step]
+ * </pre>
+ * where movements is the number of movements in each of the directed and full movements files (default 200,000) and
+ * the queries are made for every step'th day (default 30).
+ */
+public final class MovementQueryBenchmark {
+
+    /**
+     * Hidden constructor.
+     */
+    private MovementQueryBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     * @param args the number of movements in each file and the number of days between the queried days (optional).
+     * @throws IOException  if the movements files cannot be created.
+     * @throws SQLException if the date indexes cannot be dropped.
+     */
+    public static void main(final String[] args) throws IOException, SQLException {
+        final int movements = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MOVEMENTS;
+        final int step = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_STEP;
+        final Path directedFile = Files.createTempFile("directed", ".csv");
+        final Path fullFile = Files.createTempFile("full", ".csv");
+        final List<String> dbNames = new ArrayList<>();
+        try {
+            createMovementsFiles(directedFile, fullFile, movements);
+
+            long expected;
+            try (DataReader reader = new DataReader(createData(directedFile, fullFile, null))) {
+                dbNames.add(reader.getDbName());
+                final Lookup lookup = reader.getLookup();
+                explain(lookup.getConnection());
+                run(lookup, step);
+                final double indexed = run(lookup, step);
+                expected = count(lookup, step);
+                System.out.printf("H2 with date indexes: %d daily queries in %.2f s (%.2f ms/query)%n",
+                                  4 * queries(step), indexed, 1e3 * indexed / (4 * queries(step)));
+
+                dropDateIndexes(lookup.getConnection());
+                final double scanned = run(lookup, step);
+                System.out.printf("H2 without date indexes: %.2f s (%.2f ms/query), speedup of date indexes %.1fx%n",
+                                  scanned, 1e3 * scanned / (4 * queries(step)), scanned / indexed);
+            }
+
+            try (DataReader reader = new DataReader(createData(directedFile, fullFile, "memory"))) {
+                dbNames.add(reader.getDbName());
+                final Lookup lookup = reader.getLookup();
+                run(lookup, step);
+                final double memory = run(lookup, step);
+                System.out.printf("In-memory backend: %.2f s (%.3f ms/query)%n",
+                                  memory, 1e3 * memory / (4 * queries(step)));
+                if (count(lookup, step) != expected) {
+                    System.out.println("The in-memory backend found a different number of movements.");
+                }
+            }
+        } finally {
+            for (final String dbName : dbNames) {
+                TemporaryDatabases.delete(dbName);
+            }
+            Files.deleteIfExists(directedFile);
+            Files.deleteIfExists(fullFile);
+        }
+    }
+
+    /**
+     * Time the four daily queries for every step'th day of the 10 years.
+     * @param lookup the lookup object.
+     * @param step   the number of days between the queried days.
+     * @return the time taken in seconds.
+     */
+    private static double run(final Lookup lookup, final int step) {
+        long found = 0;
+        final long start = System.nanoTime();
+        for (int date = FIRST_DATE; date < FIRST_DATE + NUM_DAYS; date += step) {
+            found += lookup.getNumMovements(date, date);
+            found += lookup.getMovements(date, date).size();
+            found += lookup.getOffMovements(date, date).size();
+            found += lookup.getOnMovements(date, date).size();
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        if (found == 0) {
+            System.out.println("No movements found.");
+        }
+        return seconds;
+    }
+
+    /**
+     * Count the movements found by the daily queries, to check that the backends agree.
+     * @param lookup the lookup object.
+     * @param step   the number of days between the queried days.
+     * @return the total number of movements found.
+     */
+    private static long count(final Lookup lookup, final int step) {
+        long found = 0;
+        for (int date = FIRST_DATE; date < FIRST_DATE + NUM_DAYS; date += step) {
+            found += lookup.getOffMovements(date, date).size() + lookup.getOnMovements(date, date).size();
+        }
+        return found;
+    }
+
+    /**
+     * Get the number of days for which the queries are made.
+     * @param step the number of days between the queried days.
+     * @return the number of days.
+     */
+    private static int queries(final int step) {
+        return (NUM_DAYS + step - 1) / step;
+    }
+
+    /**
+     * Print the plans H2 uses for the daily queries of the movements tables.
+     * @param connection the connection to the database.
+     * @throws SQLException if the queries cannot be explained.
+     */
+    private static void explain(final Connection connection) throws SQLException {
+        final String[] queries = {
+            "SELECT * FROM DirectedMovements WHERE MovementDate >= 41000 AND MovementDate <= 41000",
+            "SELECT * FROM DirectedMovements WHERE MovementDate >= 41000 AND MovementDate <= 41000 "
+            + "AND MovementDirection = 'OFF'",
+            "SELECT * FROM FullMovements WHERE DepartureDate >= 41000 AND DepartureDate <= 41000 "
+            + "AND DestinationDate <= 41000",
+            "SELECT * FROM FullMovements WHERE DestinationDate >= 41000 AND DestinationDate <= 41000"};
+        try (Statement stmt = connection.createStatement()) {
+            for (final String query : queries) {
+                try (ResultSet rs = stmt.executeQuery("EXPLAIN " + query)) {
+                    while (rs.next()) {
+                        System.out.println(rs.getString(1).replaceAll("\\s+", " "));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the date indexes created by the movements file readers.
+     * @param connection the connection to the database.
+     * @throws SQLException if the indexes cannot be dropped.
+     */
+    private static void dropDateIndexes(final Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (final String index : new String[]{"IDX_DIR_MVMT_DATE", "IDX_DIR_MVMT_DIR_DATE",
+                                                   "IDX_FULL_MVMT_DEP_DATE", "IDX_FULL_MVMT_DES_DATE"}) {
+                stmt.execute("DROP INDEX IF EXISTS " + index);
+            }
+            // the full movements tables used to be indexed on each date.
+            stmt.execute("CREATE INDEX IDX_FULL_MVMT_DEP ON FullMovements (DepartureDate)");
+            stmt.execute("CREATE INDEX IDX_FULL_MVMT_DES ON FullMovements (DestinationDate)");
+        }
+    }
+
+    /**
+     * Write files of random directed and full movements, spread evenly over 10 years.
+     * @param directedFile the directed movements file.
+     * @param fullFile     the full movements file.
+     * @param movements    the number of movements in each file.
+     * @throws IOException if the files cannot be written.
+     */
+    private static void createMovementsFiles(final Path directedFile, final Path fullFile, final int movements)
+            throws IOException {
+        final Random random = new Random(SEED);
+        try (BufferedWriter directed = Files.newBufferedWriter(directedFile, StandardCharsets.UTF_8);
+             BufferedWriter full = Files.newBufferedWriter(fullFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < movements; i++) {
+                final LocalDate date = FIRST_DAY.plusDays(random.nextInt(NUM_DAYS));
+                directed.write(String.format("%d,cattle,L%d,%s,%s%n", random.nextInt(NUM_ANIMALS),
+                                             random.nextInt(NUM_LOCATIONS), date, i % 2 == 0 ? "OFF" : "ON"));
+                full.write(String.format("%d,%s,L%d,%s,L%d,cattle%n", random.nextInt(NUM_ANIMALS), date,
+                                         random.nextInt(NUM_LOCATIONS), date.plusDays(random.nextInt(2)),
+                                         random.nextInt(NUM_LOCATIONS)));
+            }
+        }
+    }
+
+    /**
+     * Create the data section of a configuration file that reads the movements files.
+     * @param directedFile the directed movements file.
+     * @param fullFile     the full movements file.
+     * @param backend      the backend option, or null for the default.
+     * @return the data section.
+     */
+    private static Project.Data createData(final Path directedFile, final Path fullFile, final String backend) {
+        final DataFiles.DirectedMovementFile directed = new DataFiles.DirectedMovementFile();
+        directed.setName(directedFile.toString());
+        directed.setAlias("directed");
+        directed.setSeparator(",");
+        directed.setIdColumn(1);
+        directed.setSpeciesColumn(2);
+        directed.setLocationColumn(3);
+        directed.setMovementDateColumn(4);
+        directed.setMovementDirectionColumn(5);
+        directed.setDateFormat(DATE_FORMAT);
+
+        final DataFiles.FullMovementFile full = new DataFiles.FullMovementFile();
+        full.setName(fullFile.toString());
+        full.setAlias("full");
+        full.setSeparator(",");
+        full.setIdColumn(1);
+        full.setDepartureDateColumn(2);
+        full.setDepartureLocationIdColumn(3);
+        full.setDestinationDateColumn(4);
+        full.setDestinationLocationIdColumn(5);
+        full.setSpeciesColumn(6);
+        full.setDateFormat(DATE_FORMAT);
+
+        final DataFiles files = new DataFiles();
+        files.getDirectedMovementFile().add(directed);
+        files.getFullMovementFile().add(full);
+        final DataOptions options = new DataOptions();
+        options.setBackend(backend);
+        final Project.Data data = new Project.Data();
+        data.setDatafiles(files);
+        data.setOptions(options);
+        return data;
+    }
+
+    private static final int DEFAULT_MOVEMENTS = 200000;
+    private static final int DEFAULT_STEP = 30;
+    private static final int NUM_ANIMALS = 100000;
+    private static final int NUM_LOCATIONS = 5000;
+    private static final int FIRST_DATE = 40177;
+    private static final LocalDate FIRST_DAY = new LocalDate(2010, 1, 1);
+    private static final int NUM_DAYS = 3650;
+    private static final long SEED = 2013L;
+    private static final String DATE_FORMAT = "yyyy-MM-dd";
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.utils.CloneUtils;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for broadwick.data.MovementStore, AnimalStore and IdDictionary classes.
+ */
+@Slf4j
+public class MovementStoreTest {
+    
+    public MovementStoreTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    /**
+     * Test of encode, getCode and decode methods, of class IdDictionary.
+     */
+    @Test
+    public void testIdDictionary() {
+        final IdDictionary dictionary = new IdDictionary();
+        assertEquals(0, dictionary.encode("A"));
+        assertEquals(1, dictionary.encode("B"));
+        assertEquals(0, dictionary.encode("A"));
+        assertEquals(IdDictionary.NO_ID, dictionary.encode(null));
+        assertEquals(2, dictionary.size());
+
+        assertEquals(1, dictionary.getCode("B"));
+        assertEquals(IdDictionary.NO_ID, dictionary.getCode("C"));
+        assertFalse(dictionary.contains("C"));
+        assertEquals(2, dictionary.size());
+
+        assertEquals("B", dictionary.decode(1));
+        assertNull(dictionary.decode(IdDictionary.NO_ID));
+        for (int i = 0; i < 5000; i++) {
+            dictionary.encode("L" + i);
+        }
+        assertEquals(5002, dictionary.size());
+        assertEquals("L4999", dictionary.decode(5001));
+    }
+
+    /**
+     * Test that the movements in a MovementStore are the same as those added to it.
+     */
+    @Test
+    public void testMovementStore() {
+        final IdDictionary dictionary = new IdDictionary();
+        final MovementStore store = new MovementStore(dictionary);
+        final Movement full = new Movement("1", null, 100, "A", 101, "B", null, "", "cattle");
+        final Movement batched = new Movement("2", 12, 100, "B", 102, "C", 101, "M", "sheep");
+        final Movement off = new Movement("3", null, 103, "A", null, null, null, "", "cattle");
+        store.add(full);
+        store.add(batched);
+        store.add(off);
+        for (int i = 0; i < 3000; i++) {
+            store.add(new Movement("x" + i, i, i, "L" + (i % 7), i + 1, "L" + (i % 11), null, "", "cattle"));
+        }
+        store.trim();
+
+        assertEquals(3003, store.size());
+        assertEquals(full, store.get(0));
+        assertEquals(batched, store.get(1));
+        assertEquals(off, store.get(2));
+        assertEquals(new Movement("x2999", 2999, 2999, "L3", 3000, "L7", null, "", "cattle"), store.get(3002));
+
+        assertEquals(dictionary.getCode("A"), store.getDepartureId(0));
+        assertEquals(store.getDestinationId(0), store.getDepartureId(1));
+        assertEquals(12, store.getBatchSize(1));
+        assertEquals(CompactStore.NULL_VALUE, store.getBatchSize(0));
+        assertEquals(CompactStore.NULL_VALUE, store.getDestinationDate(2));
+        assertEquals(IdDictionary.NO_ID, store.getDestinationId(2));
+        assertEquals(store.getSpecies(0), store.getSpecies(2));
+        assertEquals(101, store.getMarketDate(1));
+        assertEquals("M", dictionary.decode(store.getMarketId(1)));
+
+        final List<Movement> movements = store.asList();
+        assertEquals(3003, movements.size());
+        assertEquals(batched, movements.get(1));
+        assertTrue(movements.contains(off));
+    }
+
+    /**
+     * Test that the animals in an AnimalStore are the same as those added to it.
+     */
+    @Test
+    public void testAnimalStore() {
+        final IdDictionary dictionary = new IdDictionary();
+        final AnimalStore store = new AnimalStore(dictionary);
+        final Animal alive = new Animal("1", "cattle", 100, "A", null, "");
+        final Animal dead = new Animal("2", "cattle", 90, "B", 200, "A");
+        store.add(alive);
+        store.add(dead);
+        store.trim();
+
+        assertEquals(2, store.size());
+        assertEquals(alive, store.get(0));
+        assertEquals(dead, store.get(1));
+        assertEquals(store.getLocationOfBirth(0), store.getLocationOfDeath(1));
+        assertEquals(store.getSpecies(0), store.getSpecies(1));
+        assertEquals(CompactStore.NULL_VALUE, store.getDateOfDeath(0));
+        assertEquals(200, store.getDateOfDeath(1));
+        assertEquals("2", dictionary.decode(store.getId(1)));
+    }
+
+    /**
+     * Test that the stores are shared, not copied, when an object containing them is cloned.
+     */
+    @Test
+    public void testCloneSharesStore() {
+        final MovementStore store = new MovementStore(new IdDictionary());
+        final MovementStore[] holder = {store};
+        assertSame(store, CloneUtils.deepClone(holder)[0]);
+    }
+
+    /**
+     * Test that rows outside the store are rejected.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testRowOutOfRange() {
+        final MovementStore store = new MovementStore(new IdDictionary());
+        store.add(new Movement("1", null, 100, "A", 101, "B", null, "", "cattle"));
+        store.getDepartureDate(1);
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import broadwick.config.generated.DataFiles;
+import broadwick.config.generated.DataOptions;
+import broadwick.config.generated.LifeHistoryType;
+import broadwick.config.generated.PopulationType;
+import broadwick.config.generated.Project;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import lombok.extern.slf4j.Slf4j;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for broadwick.data.PopulationCube class, the populations in the cube are compared with the animals alive
+ * on each day (from Lookup.getAnimals(int)) and their locations (from an AnimalLocationIndex).
+ */
+@Slf4j
+public class PopulationCubeTest {
+
+    public PopulationCubeTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    @Rule
+    public TemporaryDatabases databases = new TemporaryDatabases();
+
+    /**
+     * Test the population of each location on each day and the number of animal-days over periods, for both backends.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test
+    public void testGetPopulation() throws IOException {
+        final Project.Data data = createData(false);
+        for (final String backend : new String[]{null, "memory"}) {
+            data.getOptions().setBackend(backend);
+            try (DataReader reader = databases.track(new DataReader(data))) {
+                final Lookup lookup = reader.getLookup();
+                final AnimalLocationIndex index = new AnimalLocationIndex(lookup, 2);
+                final PopulationCube cube = new PopulationCube(index, lookup, 3);
+                assertEquals(NUM_LOCATIONS, cube.getNumLocations());
+
+                final Map<String, Long> animalDays = new HashMap<>();
+                for (int day = FIRST_DATE - 5; day < FIRST_DATE + NUM_DAYS; day++) {
+                    final Map<String, Integer> expected = new HashMap<>();
+                    for (final Animal animal : lookup.getAnimals(day)) {
+                        final String location = index.getLocationIdAtDate(animal.getId(), day);
+                        final Integer population = expected.get(location);
+                        expected.put(location, population == null ? 1 : population + 1);
+                    }
+                    assertEquals(expected, cube.getPopulations(day));
+                    for (int l = 0; l < NUM_LOCATIONS; l++) {
+                        final String location = "L" + l;
+                        final Integer population = expected.get(location);
+                        assertEquals(population == null ? 0 : population.intValue(),
+                                     cube.getPopulation(location, day));
+                        final Long sum = animalDays.get(location);
+                        animalDays.put(location, (sum == null ? 0 : sum) + (population == null ? 0 : population));
+                    }
+                }
+                for (int l = 0; l < NUM_LOCATIONS; l++) {
+                    final String location = "L" + l;
+                    assertEquals(animalDays.get(location).longValue(),
+                                 cube.getAnimalDays(location, FIRST_DATE - 5, FIRST_DATE + NUM_DAYS - 1));
+                    assertEquals(cube.getPopulation(location, FIRST_DATE + 10),
+                                 cube.getAnimalDays(location, FIRST_DATE + 10, FIRST_DATE + 10));
+                    assertEquals(cube.getAnimalDays(location, FIRST_DATE, FIRST_DATE + 99)
+                                 + cube.getAnimalDays(location, FIRST_DATE + 100, FIRST_DATE + 199),
+                                 cube.getAnimalDays(location, FIRST_DATE, FIRST_DATE + 199));
+                    assertEquals(0, cube.getAnimalDays(location, FIRST_DATE + 1, FIRST_DATE));
+                }
+                assertEquals(0, cube.getPopulation("unknown", FIRST_DATE));
+            }
+        }
+    }
+
+    /**
+     * Test that the census of a location in the populations table is used instead of the animals found there.
+     * @throws IOException if the test files cannot be written.
+     */
+    @Test
+    public void testCensus() throws IOException {
+        try (DataReader reader = databases.track(new DataReader(createData(true)))) {
+            final Lookup lookup = reader.getLookup();
+            final PopulationCube cube = new PopulationCube(lookup);
+            assertEquals(NUM_LOCATIONS + 1, cube.getNumLocations());
+
+            // L0 has census records of 100 cattle and 20 sheep from the 11th day and 150 cattle from the 101st day.
+            assertEquals(0, cube.getPopulation("L0", FIRST_DATE + 5));
+            assertEquals(120, cube.getPopulation("L0", FIRST_DATE + 10));
+            assertEquals(120, cube.getPopulation("L0", FIRST_DATE + 99));
+            assertEquals(150, cube.getPopulation("L0", FIRST_DATE + 100));
+            assertEquals(150, cube.getPopulation("L0", FIRST_DATE + NUM_DAYS));
+            assertEquals(120 * 90 + 150 * 10, cube.getAnimalDays("L0", FIRST_DATE, FIRST_DATE + 109));
+
+            // L99 is only in the census.
+            assertEquals(7, cube.getPopulation("L99", FIRST_DATE + 10));
+
+            // the other locations are unaffected.
+            final AnimalLocationIndex index = new AnimalLocationIndex(lookup, 1);
+            for (int day = FIRST_DATE; day < FIRST_DATE + NUM_DAYS; day += 7) {
+                final int[] expected = new int[NUM_LOCATIONS];
+                for (final Animal animal : lookup.getAnimals(day)) {
+                    expected[Integer.parseInt(index.getLocationIdAtDate(animal.getId(), day).substring(1))]++;
+                }
+                for (int l = 1; l < NUM_LOCATIONS; l++) {
+                    assertEquals(expected[l], cube.getPopulation("L" + l, day));
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the data section of a configuration file that reads life histories and directed movements of random
+     * animals and (optionally) a census of some locations.
+     * @param census true if the populations file is to be read.
+     * @return the data section.
+     * @throws IOException if the files cannot be written.
+     */
+    private Project.Data createData(final boolean census) throws IOException {
+        final Random random = new Random(2013L);
+        final List<String> animals = new ArrayList<>();
+        final List<String> movements = new ArrayList<>();
+        for (int animal = 0; animal < NUM_ANIMALS; animal++) {
+            final int born = random.nextInt(NUM_DAYS / 2);
+            final String death = animal % 3 == 0 ? "" : date(born + random.nextInt(NUM_DAYS / 2));
+            animals.add(String.format("A%d,cattle,%s,L%d,%s,L%d", animal, date(born),
+                                      random.nextInt(NUM_LOCATIONS), death, random.nextInt(NUM_LOCATIONS)));
+            int day = born - 10;
+            for (int m = 0; m < 4; m++) {
+                day += 1 + random.nextInt(NUM_DAYS / 4);
+                movements.add(String.format("A%d,cattle,L%d,%s,%s", animal, random.nextInt(NUM_LOCATIONS), date(day),
+                                            m % 2 == 0 ? "OFF" : "ON"));
+            }
+        }
+
+        final LifeHistoryType lifeHistory = new LifeHistoryType();
+        lifeHistory.setIdColumn(1);
+        lifeHistory.setSpeciesColumn(2);
+        lifeHistory.setDateOfBirthColumn(3);
+        lifeHistory.setLocationOfBirthColumn(4);
+        lifeHistory.setDateOfDeathColumn(5);
+        lifeHistory.setLocationOfDeathColumn(6);
+        final DataFiles.PopulationFile lifeHistoryFile = new DataFiles.PopulationFile();
+        lifeHistoryFile.setName(write("animals.csv", animals).toString());
+        lifeHistoryFile.setAlias("animals");
+        lifeHistoryFile.setSeparator(",");
+        lifeHistoryFile.setLifeHistory(lifeHistory);
+        lifeHistoryFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles.DirectedMovementFile movementFile = new DataFiles.DirectedMovementFile();
+        movementFile.setName(write("movements.csv", movements).toString());
+        movementFile.setAlias("movements");
+        movementFile.setSeparator(",");
+        movementFile.setIdColumn(1);
+        movementFile.setSpeciesColumn(2);
+        movementFile.setLocationColumn(3);
+        movementFile.setMovementDateColumn(4);
+        movementFile.setMovementDirectionColumn(5);
+        movementFile.setDateFormat(DATE_FORMAT);
+
+        final DataFiles files = new DataFiles();
+        files.getPopulationFile().add(lifeHistoryFile);
+        files.getDirectedMovementFile().add(movementFile);
+        if (census) {
+            final List<String> records = new ArrayList<>();
+            records.add(String.format("L0,100,%s,cattle", date(10)));
+            records.add(String.format("L0,20,%s,sheep", date(10)));
+            records.add(String.format("L0,150,%s,cattle", date(100)));
+            records.add(String.format("L99,7,%s,cattle", date(0)));
+            final PopulationType population = new PopulationType();
+            population.setLocationIdColumn(1);
+            population.setPopulationSizeColumn(2);
+            population.setPopulationDateColumn(3);
+            population.setSpeciesColumn(4);
+            final DataFiles.PopulationFile populationFile = new DataFiles.PopulationFile();
+            populationFile.setName(write("census.csv", records).toString());
+            populationFile.setAlias("census");
+            populationFile.setSeparator(",");
+            populationFile.setPopulation(population);
+            populationFile.setDateFormat(DATE_FORMAT);
+            files.getPopulationFile().add(populationFile);
+        }
+
+        final Project.Data data = new Project.Data();
+        data.setDatafiles(files);
+        data.setOptions(new DataOptions());
+        return data;
+    }
+
+    /**
+     * Format a date as it is written in the data files.
+     * @param day the number of days after the first day of the data.
+     * @return the date.
+     */
+    private static String date(final int day) {
+        return FIRST_DAY.plusDays(day).toString(DATE_FORMAT);
+    }
+
+    /**
+     * Write lines to a file in the test folder.
+     * @param name  the name of the file.
+     * @param lines the lines.
+     * @return the path of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private Path write(final String name, final List<String> lines) throws IOException {
+        final Path path = folder.getRoot().toPath().resolve(name);
+        Files.write(path, lines, StandardCharsets.UTF_8);
+        return path;
+    }
+
+    private static final int NUM_ANIMALS = 300;
+    private static final int NUM_LOCATIONS = 6;
+    private static final int NUM_DAYS = 400;
+    private static final int FIRST_DATE = 40177;
+    private static final LocalDate FIRST_DAY = new LocalDate(2010, 1, 1);
+    private static final String DATE_FORMAT = "yyyy-MM-dd";
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.data;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.rules.ExternalResource;
+
+/**
+ * A rule that deletes the (randomly named) H2 databases created by the DataReader objects of a test once the test has
+ * finished, so that the tests leave no database files in the working directory. The readers must be closed by the
+ * test.
+ */
+@Slf4j
+final class TemporaryDatabases extends ExternalResource {
+
+    /**
+     * Track the database of a data reader, so that it is deleted when the test finishes.
+     * @param reader the data reader.
+     * @return the data reader.
+     */
+    DataReader track(final DataReader reader) {
+        dbNames.add(reader.getDbName());
+        return reader;
+    }
+
+    @Override
+    protected void after() {
+        for (final String dbName : dbNames) {
+            delete(dbName);
+        }
+        dbNames.clear();
+    }
+
+    /**
+     * Delete the files of a H2 database (the database itself, and any lock or trace files).
+     * @param dbName the name of the database.
+     */
+    static void delete(final String dbName) {
+        if (dbName == null) {
+            return;
+        }
+        final Path db = Paths.get(dbName).toAbsolutePath();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(db.getParent(), db.getFileName() + ".*")) {
+            for (final Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete the database {}. {}", dbName, e.getLocalizedMessage());
+        }
+    }
+
+    private final List<String> dbNames = new ArrayList<>();
+}
@@ -15,9 +15,18 @@
  */
 package broadwick.io;
 
+import broadwick.utils.DateConverter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -85,7 +94,9 @@ public class FileInputTest {
     };
     @Test
     public void testclose() {
-        try (FileInput instance = new FileInput(testsFileName)) {
+        // the file is closed explicitly, as that is what is being tested, rather than by a try-with-resources block.
+        try {
+            final FileInput instance = new FileInput(testsFileName);
             instance.readLine();
             instance.readLine();
             instance.close();
@@ -201,5 +212,132 @@ public class FileInputTest {
         }
     }
 
+    @Test
+    public void testReadRow() {
+        // the rows must contain the same tokens as readLine() for single character, character set and (general)
+        // regular expression separators.
+        for (final String sep : new String[]{",", "[\\s,]", ",|;"}) {
+            try (FileInput expected = new FileInput(testsFileName, sep);
+                 FileInput instance = new FileInput(testsFileName, sep)) {
+                List<String> line = expected.readLine();
+                FileInputRow row = instance.readRow();
+                while (!line.isEmpty()) {
+                    assertNotNull(row);
+                    assertEquals(line, row.toList());
+                    assertEquals(line.size(), row.size());
+                    line = expected.readLine();
+                    row = instance.readRow();
+                }
+                assertNull(row);
+                assertNull(instance.readRow());
+            } catch (IOException ex) {
+                fail("Caught IOException in testReadRow()");
+            }
+        }
+    }
+
+    @Test
+    public void testReadRowTypedFields() throws IOException {
+        final File file = File.createTempFile("FileInputRow", ".csv");
+        file.deleteOnExit();
+        Files.write(file.toPath(),
+                    "1, -42 ,3.25,-0.5, 1e3,2010-09-18\r\n\r\n# comment\r\n123456789012,,x\r\n"
+                    .getBytes(StandardCharsets.UTF_8));
+
+        try (FileInput instance = new FileInput(file.getPath(), ",")) {
+            FileInputRow row = instance.readRow();
+            assertEquals(6, row.size());
+            assertEquals(1, row.getInt(0));
+            assertEquals(-42, row.getInt(1));
+            assertEquals(3.25, row.getDouble(2), 0.0);
+            assertEquals(-0.5, row.getDouble(3), 0.0);
+            assertEquals(1000.0, row.getDouble(4), 0.0);
+            assertEquals(40437, row.getDate(5, DateConverter.forPattern("yyyy-MM-dd")));
+            assertEquals("2010-09-18", row.getChars(5).toString());
+
+            row = instance.readRow();
+            assertEquals(3, row.size());
+            assertEquals(123456789012.0, row.getDouble(0), 0.0);
+            assertTrue(row.isEmpty(1));
+            assertEquals("x", row.getString(2));
+            try {
+                row.getInt(0);
+                fail("Expected NumberFormatException for a value that overflows an int.");
+            } catch (NumberFormatException ex) {
+                // expected
+            }
+            try {
+                row.getString(3);
+                fail("Expected IndexOutOfBoundsException for a field that is not in the row.");
+            } catch (IndexOutOfBoundsException ex) {
+                // expected
+            }
+
+            assertNull(instance.readRow());
+        }
+    }
+
+    @Test
+    public void testReadCompressed() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            sb.append(i).append(",animal").append(i % 97).append(",2010-09-18\n");
+        }
+        final byte[] contents = sb.toString().getBytes(StandardCharsets.UTF_8);
+        final File plain = File.createTempFile("FileInputPlain", ".csv");
+        plain.deleteOnExit();
+        Files.write(plain.toPath(), contents);
+
+        // a gzip file identified by its extension and a zip file identified by its contents.
+        final File gzip = File.createTempFile("FileInputGzip", ".csv.gz");
+        gzip.deleteOnExit();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip))) {
+            out.write(contents);
+        }
+        final File zip = File.createTempFile("FileInputZip", ".dat");
+        zip.deleteOnExit();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("movements.csv"));
+            out.write(contents);
+            out.closeEntry();
+        }
+
+        assertFalse(FileInput.isCompressed(plain.getPath()));
+        for (final File file : new File[]{gzip, zip}) {
+            assertTrue(FileInput.isCompressed(file.getPath()));
+            try (FileInput expected = new FileInput(plain.getPath(), ",");
+                 FileInput instance = new FileInput(file.getPath(), ",")) {
+                FileInputRow row = instance.readRow();
+                int rows = 0;
+                while (row != null) {
+                    assertEquals(expected.readLine(), row.toList());
+                    rows++;
+                    row = instance.readRow();
+                }
+                assertEquals(200000, rows);
+                assertEquals(file.length(), instance.getBytesRead());
+            }
+        }
+
+        // closing a file before it has all been read.
+        try (FileInput instance = new FileInput(gzip.getPath(), ",")) {
+            assertEquals(Arrays.asList("0", "animal0", "2010-09-18"), instance.readLine());
+        }
+
+        // a file that is truncated can't be read.
+        final File truncated = File.createTempFile("FileInputTruncated", ".gz");
+        truncated.deleteOnExit();
+        Files.write(truncated.toPath(), Arrays.copyOf(Files.readAllBytes(gzip.toPath()), (int) gzip.length() / 2));
+        try (FileInput instance = new FileInput(truncated.getPath(), ",")) {
+            FileInputRow row = instance.readRow();
+            while (row != null) {
+                row = instance.readRow();
+            }
+            fail("Expected IOException for a truncated gzip file.");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
     private static String testsFileName;
 }
@@ -26,7 +26,7 @@ import org.junit.runners.Suite;
  * Test Suite for broadwick.stochastic package.
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({StochasticSimulatorTest.class})
+@Suite.SuiteClasses({StochasticSimulatorTest.class, TransitionKernelTest.class})
 public class BroadwickStochasticTestSuite {
     
 
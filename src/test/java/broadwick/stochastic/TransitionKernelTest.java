@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for broadwick.stochastic.TransitionKernel class.
+ */
+@Slf4j
+public class TransitionKernelTest {
+
+    public TransitionKernelTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    /**
+     * Test that the handles of events are stable and that rates set through them are seen through the map based
+     * methods.
+     */
+    @Test
+    public void testHandles() {
+        final TransitionKernel kernel = new TransitionKernel();
+        final int s2i = kernel.getEventHandle(S_TO_I);
+        final int i2r = kernel.getEventHandle(I_TO_R);
+        assertEquals(2, kernel.getNumHandles());
+        assertEquals(s2i, kernel.getEventHandle(S_TO_I));
+        assertEquals(S_TO_I, kernel.getEvent(s2i));
+        // an event with a handle is not in the kernel until it has a positive rate.
+        assertTrue(kernel.getTransitionEvents().isEmpty());
+        assertNull(kernel.getTransitionProbability(S_TO_I));
+
+        kernel.setRate(s2i, 2.0);
+        kernel.addRate(s2i, 0.5);
+        kernel.addToKernel(I_TO_R, 1.0);
+        assertEquals(2.5, kernel.getTransitionProbability(S_TO_I), 0.0);
+        assertEquals(1.0, kernel.getRate(i2r), 0.0);
+        assertEquals(Arrays.asList(S_TO_I, I_TO_R), new ArrayList<>(kernel.getTransitionEvents()));
+        assertEquals(3.5, kernel.getCDF().get(I_TO_R), 0.0);
+
+        // removing an event keeps its handle.
+        kernel.addRate(s2i, -2.5);
+        assertEquals(1, kernel.getTransitionEvents().size());
+        assertFalse(kernel.getTransitionEvents().contains(S_TO_I));
+        kernel.setTransitionProbability(S_TO_I, 1.0);
+        assertEquals(s2i, kernel.getEventHandle(S_TO_I));
+        assertEquals(2, kernel.getNumHandles());
+
+        // removing an event through the view of the events removes it from the kernel.
+        final Iterator<SimulationEvent> it = kernel.getTransitionEvents().iterator();
+        it.next();
+        it.remove();
+        assertEquals(0.0, kernel.getRate(s2i), 0.0);
+        assertEquals("TransitionKernel(kernel={I -->  R=1.0})", kernel.toString());
+
+        // clearing the kernel forgets the handles.
+        kernel.clear();
+        assertEquals(0, kernel.getNumHandles());
+        try {
+            kernel.getRate(i2r);
+            fail("A handle was used after the kernel was cleared.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Unknown event handle"));
+        }
+    }
+
+    /**
+     * Test that the changes to the rates are recorded once per event until they are polled and that clearing or
+     * replacing the kernel is reported.
+     */
+    @Test
+    public void testChangedEvents() {
+        final TransitionKernel kernel = new TransitionKernel();
+        final int s2i = kernel.getEventHandle(S_TO_I);
+        kernel.setRate(s2i, 1.0);
+        // the kernel is new so every rate may have changed.
+        assertNull(kernel.pollChangedHandles());
+
+        kernel.setRate(s2i, 2.0);
+        kernel.addToKernel(I_TO_R, 1.0);
+        kernel.addRate(s2i, 1.0);
+        kernel.setTransitionProbability(S_TO_I, 3.0);
+        final int[] changes = kernel.pollChangedHandles();
+        assertArrayEquals(new int[]{s2i, kernel.getEventHandle(I_TO_R)}, changes);
+        assertEquals(0, kernel.pollChangedHandles().length);
+
+        kernel.setTransitionProbability(I_TO_R, 0.0);
+        final List<SimulationEvent> events = new ArrayList<>();
+        assertTrue(kernel.pollChangedEvents(events));
+        assertEquals(Arrays.asList(I_TO_R), events);
+
+        final Map<SimulationEvent, Double> probabilities = new HashMap<>();
+        probabilities.put(S_TO_I, 1.0);
+        probabilities.put(I_TO_R, 0.0);
+        kernel.setTransitionProbabilities(probabilities);
+        assertFalse(kernel.pollChangedEvents(events));
+        assertEquals(1, kernel.getTransitionEvents().size());
+        assertEquals(1, kernel.getNumHandles());
+    }
+
+    /**
+     * A state identified by its name.
+     */
+    private static final class State implements SimulationState {
+
+        /**
+         * Create the state.
+         * @param name the name of the state.
+         */
+        State(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getStateName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+        private final String name;
+    }
+
+    private static final SimulationState SUSCEPTIBLE = new State("S");
+    private static final SimulationState INFECTED = new State("I");
+    private static final SimulationState RECOVERED = new State("R");
+    private static final SimulationEvent S_TO_I = new SimulationEvent(SUSCEPTIBLE, INFECTED);
+    private static final SimulationEvent I_TO_R = new SimulationEvent(INFECTED, RECOVERED);
+}
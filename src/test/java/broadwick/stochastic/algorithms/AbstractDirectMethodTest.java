@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic.algorithms;
+
+import broadwick.rng.RNG;
+import broadwick.stochastic.SimulationEvent;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test cases common to the direct method simulators, including the structure (EventSelector) each uses to hold the
+ * rates of the events.
+ */
+abstract class AbstractDirectMethodTest extends AbstractSimulatorTest {
+
+    /**
+     * Create an empty instance of the structure that holds the rates of the events in the simulator being tested.
+     * @return the event selector.
+     */
+    abstract EventSelector createSelector();
+
+    /**
+     * Test that the selector follows the rates as they are set, changed and removed and selects events in proportion
+     * to their rates.
+     */
+    @Test
+    public void testSelector() {
+        final EventSelector selector = createSelector();
+        final RNG generator = new RNG(RNG.Generator.Well19937c);
+        generator.seed(2013);
+        assertNull(selector.select(generator));
+
+        final SimulationEvent[] events = new SimulationEvent[4];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = event("S" + i, "I" + i);
+            selector.setRate(events[i], i + 1.0);
+        }
+        assertEquals(10.0, selector.getTotal(), 1e-12);
+
+        selector.setRate(events[0], 4.0);
+        selector.setRate(events[3], 6.0);
+        selector.setRate(events[1], 0.0);
+        assertEquals(13.0, selector.getTotal(), 1e-12);
+        assertEquals(4.0, selector.getRate(events[0]), 0.0);
+        assertEquals(0.0, selector.getRate(events[1]), 0.0);
+
+        final Map<SimulationEvent, Double> counts = sample(selector, generator, 130000);
+        assertNull(counts.get(events[1]));
+        assertEquals(4.0 / 13.0, counts.get(events[0]), 0.01);
+        assertEquals(3.0 / 13.0, counts.get(events[2]), 0.01);
+        assertEquals(6.0 / 13.0, counts.get(events[3]), 0.01);
+
+        for (final SimulationEvent event : events) {
+            selector.setRate(event, 0.0);
+        }
+        assertEquals(0.0, selector.getTotal(), 1e-12);
+        assertNull(selector.select(generator));
+
+        selector.setRate(events[2], 1.0);
+        selector.clear();
+        assertEquals(0.0, selector.getTotal(), 0.0);
+        assertNull(selector.select(generator));
+    }
+
+    /**
+     * Select events repeatedly from a selector.
+     * @param selector  the selector.
+     * @param generator the random number generator.
+     * @param samples   the number of events to select.
+     * @return the fraction of the selections in which each event was selected.
+     */
+    static Map<SimulationEvent, Double> sample(final EventSelector selector, final RNG generator, final int samples) {
+        final Map<SimulationEvent, Double> counts = new HashMap<>();
+        for (int i = 0; i < samples; i++) {
+            final SimulationEvent event = selector.select(generator);
+            final Double count = counts.get(event);
+            counts.put(event, (count == null ? 0 : count) + 1.0 / samples);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic.algorithms;
+
+import broadwick.stochastic.AmountManager;
+import broadwick.stochastic.Observer;
+import broadwick.stochastic.SimulationEvent;
+import broadwick.stochastic.SimulationState;
+import broadwick.stochastic.StochasticSimulator;
+import broadwick.stochastic.TransitionKernel;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Test cases common to the exact simulators of broadwick.stochastic.algorithms, with the states, amount manager and
+ * observer they use.
+ */
+abstract class AbstractSimulatorTest {
+
+    /**
+     * Create the simulator being tested.
+     * @param amounts the amount manager of the simulation.
+     * @param kernel  the transition kernel of the simulation.
+     * @param refill  true if the amount manager clears and refills the kernel whenever an event fires.
+     * @return the simulator.
+     */
+    abstract StochasticSimulator createSimulator(AmountManager amounts, TransitionKernel kernel, boolean refill);
+
+    /**
+     * Test a death process in which each animal is an event that is removed from the kernel when it fires, so that
+     * every event fires exactly once and the mean time to death is the inverse of the death rate.
+     */
+    @Test
+    public void testDeathProcess() {
+        final TransitionKernel kernel = new TransitionKernel();
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            kernel.addToKernel(event("animal" + i, "dead"), 2.0);
+        }
+        final Map<SimulationEvent, Double> deaths = new HashMap<>();
+        final StochasticSimulator simulator = createSimulator(new Amounts(kernel, false), kernel, false);
+        simulator.setRngSeed(2013);
+        simulator.addObserver(new EventCounter(simulator, deaths));
+        simulator.run(100.0);
+
+        assertEquals(NUM_EVENTS, deaths.size());
+        assertTrue(kernel.getTransitionEvents().isEmpty());
+        double meanTime = 0.0;
+        for (final double time : deaths.values()) {
+            meanTime += time / NUM_EVENTS;
+        }
+        assertEquals(0.5, meanTime, 0.05);
+    }
+
+    /**
+     * Test that events are selected in proportion to their rates, both when the rates are changed incrementally and
+     * when the kernel is cleared and refilled at each step.
+     */
+    @Test
+    public void testEventSelection() {
+        for (final boolean refill : new boolean[]{false, true}) {
+            final TransitionKernel kernel = new TransitionKernel();
+            final SimulationEvent[] events = new SimulationEvent[4];
+            for (int i = 0; i < events.length; i++) {
+                events[i] = event("S" + i, "I" + i);
+                kernel.addToKernel(events[i], i + 1.0);
+            }
+            final Map<SimulationEvent, Double> counts = new HashMap<>();
+            final StochasticSimulator simulator = createSimulator(new Amounts(kernel, refill), kernel, refill);
+            simulator.setRngSeed(42);
+            simulator.addObserver(new EventCounter(simulator, counts));
+            // the total rate is 10 so we expect about 100000 events.
+            simulator.run(10000.0);
+
+            double total = 0.0;
+            for (final double count : counts.values()) {
+                total += count;
+            }
+            assertEquals(100000, total, 2000);
+            for (int i = 0; i < events.length; i++) {
+                assertEquals((i + 1) / 10.0, counts.get(events[i]) / total, 0.01);
+            }
+        }
+    }
+
+    /**
+     * Create an event between two states.
+     * @param from the name of the initial state.
+     * @param to   the name of the final state.
+     * @return the event.
+     */
+    static SimulationEvent event(final String from, final String to) {
+        return new SimulationEvent(new State(from), new State(to));
+    }
+
+    /**
+     * A state identified by its name.
+     */
+    static final class State implements SimulationState {
+
+        /**
+         * Create the state.
+         * @param name the name of the state.
+         */
+        State(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getStateName() {
+            return name;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof State && ((State) obj).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+        private final String name;
+    }
+
+    /**
+     * An amount manager that updates the kernel when an event fires: events whose final state is "dead" are removed
+     * from the kernel and the rates of other events are set again, either individually or by refilling the kernel.
+     */
+    static final class Amounts implements AmountManager {
+
+        /**
+         * Create the amount manager.
+         * @param kernel the kernel of the simulation.
+         * @param refill true if the kernel is cleared and refilled whenever an event fires.
+         */
+        Amounts(final TransitionKernel kernel, final boolean refill) {
+            this.kernel = kernel;
+            this.refill = refill;
+        }
+
+        @Override
+        public void performEvent(final SimulationEvent reaction, final int times) {
+            if ("dead".equals(reaction.getFinalState().getStateName())) {
+                kernel.setTransitionProbability(reaction, 0.0);
+            } else if (refill) {
+                final Map<SimulationEvent, Double> rates = new HashMap<>();
+                for (final SimulationEvent event : kernel.getTransitionEvents()) {
+                    rates.put(event, kernel.getTransitionProbability(event));
+                }
+                kernel.setTransitionProbabilities(rates);
+            } else {
+                kernel.setTransitionProbability(reaction, kernel.getTransitionProbability(reaction));
+            }
+        }
+
+        @Override
+        public String toVerboseString() {
+            return kernel.toString();
+        }
+
+        @Override
+        public void resetAmount() {
+        }
+
+        @Override
+        public void save() {
+        }
+
+        @Override
+        public void rollback() {
+        }
+        private final TransitionKernel kernel;
+        private final boolean refill;
+        private static final long serialVersionUID = -6814436254458542723L;
+    }
+
+    /**
+     * An observer that records the events that fire, counting the number of times each fires and the last time at which
+     * it fired.
+     */
+    static final class EventCounter extends Observer {
+
+        /**
+         * Create the observer.
+         * @param simulator the simulator.
+         * @param counts    the map in which the number of times (or, for events to the "dead" state, the time at which)
+         *                  each event fired is recorded.
+         */
+        EventCounter(final StochasticSimulator simulator, final Map<SimulationEvent, Double> counts) {
+            super(simulator);
+            this.counts = counts;
+        }
+
+        @Override
+        public void started() {
+        }
+
+        @Override
+        public void step() {
+        }
+
+        @Override
+        public void finished() {
+        }
+
+        @Override
+        public void theta(final double thetaTime, final Collection<Object> events) {
+        }
+
+        @Override
+        public void observeEvent(final SimulationEvent event, final double tau, final int times) {
+            if ("dead".equals(event.getFinalState().getStateName())) {
+                assertNull("An event fired after it was removed from the kernel.", counts.put(event, tau));
+            } else {
+                final Double count = counts.get(event);
+                counts.put(event, (count == null ? 0 : count) + times);
+            }
+        }
+        private final Map<SimulationEvent, Double> counts;
+        private static final long serialVersionUID = -2023277687211832211L;
+    }
+
+    static final int NUM_EVENTS = 2000;
+}
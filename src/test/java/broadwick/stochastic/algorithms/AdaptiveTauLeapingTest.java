@@ -0,0 +1,267 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic.algorithms;
+
+import broadwick.stochastic.Observer;
+import broadwick.stochastic.PopulationManager;
+import broadwick.stochastic.SimulationEvent;
+import broadwick.stochastic.SimulationState;
+import broadwick.stochastic.TransitionKernel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for broadwick.stochastic.algorithms.AdaptiveTauLeaping class.
+ */
+@Slf4j
+public class AdaptiveTauLeapingTest {
+
+    public AdaptiveTauLeapingTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    /**
+     * Test a death process in a large population: the population at a theta event should be close to its expected
+     * value and far fewer steps than deaths should be needed to reach it.
+     */
+    @Test
+    public void testDeathProcess() {
+        final int population = 100000;
+        final Populations populations = new Populations(ALIVE, population);
+        final TransitionKernel kernel = populations.getKernel();
+        final AdaptiveTauLeaping simulator = new AdaptiveTauLeaping(populations, kernel);
+        simulator.setRngSeed(2013);
+        final EventRecorder recorder = new EventRecorder(simulator, populations);
+        simulator.addObserver(recorder);
+        simulator.registerNewTheta(recorder, 1.0, "census");
+        simulator.run(1.5);
+
+        assertEquals(1, recorder.thetaTimes.size());
+        assertEquals(1.0, recorder.thetaTimes.get(0), 0.0);
+        assertEquals(population * Math.exp(-1.0), recorder.thetaPopulations.get(0), 0.02 * population * Math.exp(-1.0));
+        assertTrue(recorder.steps < population / 100);
+    }
+
+    /**
+     * Test that a death process runs to extinction without any population becoming negative (the amount manager fails
+     * the test if one does), leaping while the population is large, performing single deaths as in the direct method
+     * while it is moderate and, once the death is a critical event, firing it once in each leap.
+     */
+    @Test
+    public void testExtinction() {
+        final Populations populations = new Populations(ALIVE, 1000);
+        final TransitionKernel kernel = populations.getKernel();
+        final AdaptiveTauLeaping simulator = new AdaptiveTauLeaping(populations, kernel);
+        simulator.setRngSeed(42);
+        final EventRecorder recorder = new EventRecorder(simulator, populations);
+        simulator.addObserver(recorder);
+        simulator.run(100.0);
+
+        assertEquals(0, populations.getAmount(ALIVE));
+        assertEquals(1000, populations.getAmount(DEAD));
+        assertEquals(Double.POSITIVE_INFINITY, simulator.getCurrentTime(), 0.0);
+        assertTrue(recorder.largestLeap > 1);
+        assertTrue(recorder.singleEvents > 0);
+        // the last deaths are critical events, none of them is leaped over.
+        assertFalse(recorder.criticalFirings.isEmpty());
+        assertTrue(recorder.criticalFirings.size() < simulator.getCriticalThreshold());
+        for (final boolean leaped : recorder.criticalFirings) {
+            assertTrue("A critical event was not fired in a leap.", leaped);
+        }
+    }
+
+    /**
+     * A population manager for a death process, which keeps the rate of death in the kernel equal to DEATH_RATE times
+     * the number of individuals alive.
+     */
+    private static final class Populations implements PopulationManager {
+
+        /**
+         * Create the population manager.
+         * @param state      the state in which all the individuals start.
+         * @param population the number of individuals.
+         */
+        Populations(final SimulationState state, final int population) {
+            amounts.put(ALIVE, 0);
+            amounts.put(DEAD, 0);
+            amounts.put(state, population);
+            updateKernel();
+        }
+
+        /**
+         * Get the kernel, whose rates are kept up to date with the populations.
+         * @return the kernel.
+         */
+        TransitionKernel getKernel() {
+            return kernel;
+        }
+
+        @Override
+        public int getAmount(final SimulationState state) {
+            return amounts.get(state);
+        }
+
+        @Override
+        public void performEvent(final SimulationEvent reaction, final int times) {
+            amounts.put(reaction.getInitialState(), amounts.get(reaction.getInitialState()) - times);
+            amounts.put(reaction.getFinalState(), amounts.get(reaction.getFinalState()) + times);
+            assertTrue("A population became negative.", amounts.get(reaction.getInitialState()) >= 0);
+            updateKernel();
+        }
+
+        /**
+         * Set the rate of death in the kernel from the number of individuals alive.
+         */
+        private void updateKernel() {
+            kernel.setTransitionProbability(DEATH, DEATH_RATE * amounts.get(ALIVE));
+        }
+
+        @Override
+        public String toVerboseString() {
+            return amounts.toString();
+        }
+
+        @Override
+        public void resetAmount() {
+        }
+
+        @Override
+        public void save() {
+        }
+
+        @Override
+        public void rollback() {
+        }
+        private final Map<SimulationState, Integer> amounts = new HashMap<>();
+        private final TransitionKernel kernel = new TransitionKernel();
+        private static final long serialVersionUID = -3375480499855011330L;
+    }
+
+    /**
+     * An observer that counts the steps, records how each event was performed and records the population alive at
+     * each theta event.
+     */
+    private static final class EventRecorder extends Observer {
+
+        /**
+         * Create the observer.
+         * @param simulator   the simulator.
+         * @param populations the populations of the simulation.
+         */
+        EventRecorder(final AdaptiveTauLeaping simulator, final Populations populations) {
+            super(simulator);
+            this.simulator = simulator;
+            this.populations = populations;
+        }
+
+        @Override
+        public void started() {
+        }
+
+        @Override
+        public void step() {
+            steps++;
+        }
+
+        @Override
+        public void finished() {
+        }
+
+        @Override
+        public void theta(final double thetaTime, final Collection<Object> events) {
+            thetaTimes.add(thetaTime);
+            thetaPopulations.add(populations.getAmount(ALIVE));
+        }
+
+        @Override
+        public void observeEvent(final SimulationEvent event, final double tau, final int times) {
+            // the observers are told of an event before the populations are changed.
+            if (populations.getAmount(event.getInitialState()) < simulator.getCriticalThreshold()) {
+                assertEquals("A critical event fired more than once in a step.", 1, times);
+                criticalFirings.add(simulator.isLeaping());
+            } else if (simulator.isLeaping()) {
+                largestLeap = Math.max(largestLeap, times);
+            } else {
+                assertEquals(1, times);
+                singleEvents++;
+            }
+        }
+        private final AdaptiveTauLeaping simulator;
+        private final Populations populations;
+        private final List<Double> thetaTimes = new ArrayList<>();
+        private final List<Integer> thetaPopulations = new ArrayList<>();
+        // whether each firing of a critical event was performed in a leap.
+        private final List<Boolean> criticalFirings = new ArrayList<>();
+        private int steps = 0;
+        private int singleEvents = 0;
+        private int largestLeap = 0;
+        private static final long serialVersionUID = 6865663039296308976L;
+    }
+
+    private static final SimulationState ALIVE = new AbstractSimulatorTest.State("alive");
+    private static final SimulationState DEAD = new AbstractSimulatorTest.State("dead");
+    private static final SimulationEvent DEATH = new SimulationEvent(ALIVE, DEAD);
+    private static final double DEATH_RATE = 1.0;
+}
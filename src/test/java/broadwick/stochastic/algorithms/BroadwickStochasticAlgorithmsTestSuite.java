@@ -26,7 +26,8 @@ import org.junit.runners.Suite;
  * Test Suite for broadwick.stochastic.algorithms package.
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({})
+@Suite.SuiteClasses({GillespieLogDirectTest.class, NextReactionMethodTest.class, CompositionRejectionTest.class,
+    AdaptiveTauLeapingTest.class})
 public class BroadwickStochasticAlgorithmsTestSuite {
     
 
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic.algorithms;
+
+import broadwick.rng.RNG;
+import broadwick.stochastic.AmountManager;
+import broadwick.stochastic.SimulationEvent;
+import broadwick.stochastic.StochasticSimulator;
+import broadwick.stochastic.TransitionKernel;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for broadwick.stochastic.algorithms.CompositionRejection class.
+ */
+@Slf4j
+public class CompositionRejectionTest extends AbstractDirectMethodTest {
+
+    public CompositionRejectionTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    @Override
+    StochasticSimulator createSimulator(final AmountManager amounts, final TransitionKernel kernel,
+                                        final boolean refill) {
+        return new CompositionRejection(amounts, kernel);
+    }
+
+    @Override
+    EventSelector createSelector() {
+        return new EventRateBins();
+    }
+
+    /**
+     * Test that rates are binned by their binary exponent: a rate of exactly 2^k starts bin k, a rate just below it is
+     * in bin k-1, and changing a rate across a power of two moves the event between bins.
+     */
+    @Test
+    public void testBinBoundaries() {
+        final EventRateBins bins = new EventRateBins();
+        final SimulationEvent low = event("S0", "I0");
+        final SimulationEvent high = event("S1", "I1");
+        bins.setRate(low, Math.nextAfter(2.0, 0.0));
+        bins.setRate(high, 2.0);
+        assertEquals(2, bins.getNumBins());
+
+        // a change within a bin, and then across the power of two, into the bin of the other event.
+        bins.setRate(low, 1.0);
+        assertEquals(2, bins.getNumBins());
+        bins.setRate(low, 3.999);
+        assertEquals(1, bins.getNumBins());
+        bins.setRate(low, 4.0);
+        assertEquals(2, bins.getNumBins());
+        assertEquals(6.0, bins.getTotal(), 1e-12);
+        assertEquals(2, bins.getNumEvents());
+
+        // the extreme rates have bins of their own, the largest without overflowing the bound of its bin.
+        final SimulationEvent tiny = event("S2", "I2");
+        final SimulationEvent huge = event("S3", "I3");
+        bins.setRate(tiny, Double.MIN_VALUE);
+        bins.setRate(huge, Double.MAX_VALUE);
+        assertEquals(4, bins.getNumBins());
+        final RNG generator = new RNG(RNG.Generator.Well19937c);
+        generator.seed(11);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(huge, bins.select(generator));
+        }
+    }
+
+    /**
+     * Test the rejection step within a single bin: rates of 1 and (nearly) 2 share a bin, so the event with the smaller
+     * rate is picked half the time but accepted with probability of only about a half.
+     */
+    @Test
+    public void testRejection() {
+        final EventRateBins bins = new EventRateBins();
+        final SimulationEvent slow = event("S0", "I0");
+        final SimulationEvent fast = event("S1", "I1");
+        bins.setRate(slow, 1.0);
+        bins.setRate(fast, 1.99);
+        assertEquals(1, bins.getNumBins());
+
+        final RNG generator = new RNG(RNG.Generator.Well19937c);
+        generator.seed(2013);
+        final Map<SimulationEvent, Double> fractions = sample(bins, generator, 100000);
+        assertEquals(1.0 / 2.99, fractions.get(slow), 0.01);
+        assertEquals(1.99 / 2.99, fractions.get(fast), 0.01);
+    }
+
+    /**
+     * Test that emptied bins are no longer selected from, that they can be refilled, and that zero or negative rates
+     * are never added.
+     */
+    @Test
+    public void testEmptyBins() {
+        final EventRateBins bins = new EventRateBins();
+        final SimulationEvent[] events = new SimulationEvent[3];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = event("S" + i, "I" + i);
+        }
+        bins.setRate(events[0], 0.0);
+        bins.setRate(events[1], -1.0);
+        assertEquals(0, bins.getNumEvents());
+        assertEquals(0, bins.getNumBins());
+
+        bins.setRate(events[0], 0.5);
+        bins.setRate(events[1], 8.0);
+        bins.setRate(events[2], 9.0);
+        assertEquals(2, bins.getNumBins());
+
+        // empty the bin of the two larger rates, only the remaining event can then be selected.
+        bins.setRate(events[1], 0.0);
+        bins.setRate(events[2], -2.0);
+        assertEquals(1, bins.getNumBins());
+        assertEquals(0.5, bins.getTotal(), 1e-12);
+        final RNG generator = new RNG(RNG.Generator.Well19937c);
+        generator.seed(5);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(events[0], bins.select(generator));
+        }
+
+        // and refill it.
+        bins.setRate(events[2], 12.0);
+        assertEquals(2, bins.getNumBins());
+        assertEquals(12.5, bins.getTotal(), 1e-12);
+        assertEquals(12.0 / 12.5, sample(bins, generator, 50000).get(events[2]), 0.01);
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.stochastic.algorithms;
+
+import broadwick.rng.RNG;
+import broadwick.stochastic.AmountManager;
+import broadwick.stochastic.Observer;
+import broadwick.stochastic.SimulationEvent;
+import broadwick.stochastic.StochasticSimulator;
+import broadwick.stochastic.TransitionKernel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for broadwick.stochastic.algorithms.NextReactionMethod class.
+ */
+@Slf4j
+public class NextReactionMethodTest extends AbstractSimulatorTest {
+
+    public NextReactionMethodTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    @Override
+    StochasticSimulator createSimulator(final AmountManager amounts, final TransitionKernel kernel,
+                                        final boolean refill) {
+        final NextReactionMethod simulator = new NextReactionMethod(amounts, kernel);
+        if (refill) {
+            // an event only changes its own rate.
+            final Map<SimulationEvent, List<SimulationEvent>> dependencies = new HashMap<>();
+            for (final SimulationEvent event : kernel.getTransitionEvents()) {
+                dependencies.put(event, Collections.<SimulationEvent>emptyList());
+            }
+            simulator.setDependencyGraph(dependencies);
+        }
+        return simulator;
+    }
+
+    /**
+     * Test that the queue gives the events in the order of their times as they are added, moved earlier or later and
+     * removed.
+     */
+    @Test
+    public void testEventTimeQueue() {
+        final EventTimeQueue queue = new EventTimeQueue();
+        assertNull(queue.peek());
+        assertEquals(Double.POSITIVE_INFINITY, queue.peekTime(), 0.0);
+
+        final RNG generator = new RNG(RNG.Generator.Well19937c);
+        generator.seed(2013);
+        final int numEvents = 201;
+        final SimulationEvent[] events = new SimulationEvent[numEvents];
+        for (int i = 0; i < numEvents; i++) {
+            events[i] = event("S" + i, "I" + i);
+            queue.put(events[i], i + 1.0, generator.getDouble());
+        }
+        // move some events earlier, some later, and remove others.
+        for (int i = 0; i < numEvents; i += 3) {
+            queue.put(events[i], 0.5, queue.getTime(events[i]) / 2);
+            queue.put(events[i + 1], 0.5, queue.getTime(events[i + 1]) + 1.0);
+            queue.remove(events[i + 2]);
+        }
+        assertEquals(numEvents - numEvents / 3, queue.size());
+        assertFalse(queue.contains(events[2]));
+        assertEquals(0.0, queue.getRate(events[2]), 0.0);
+        assertEquals(0.5, queue.getRate(events[0]), 0.0);
+
+        double last = 0.0;
+        int count = 0;
+        while (queue.size() > 0) {
+            final SimulationEvent first = queue.peek();
+            assertTrue(queue.peekTime() >= last);
+            assertEquals(queue.getTime(first), queue.peekTime(), 0.0);
+            last = queue.peekTime();
+            queue.remove(first);
+            count++;
+        }
+        assertEquals(numEvents - numEvents / 3, count);
+    }
+
+    /**
+     * Test that the putative time of an event is rescaled when its rate changes: the time remaining to an event whose
+     * rate changes from 1 to 4 should have a mean of 1/4 (not 1, as it would if its time were left unchanged).
+     */
+    @Test
+    public void testRateRescaling() {
+        final NavigableMap<Double, Double> rateChanges = new TreeMap<>();
+        rateChanges.put(0.5, 4.0);
+        final List<Double> remaining = timesAfterRateChanges(rateChanges, 0.5);
+        assertTrue(remaining.size() > 2000);
+        assertEquals(0.25, mean(remaining), 0.02);
+    }
+
+    /**
+     * Test an event whose rate drops to zero and comes back: it cannot fire while its rate is zero and the time to it
+     * once its rate is restored follows the new rate.
+     */
+    @Test
+    public void testRateDropsToZero() {
+        final NavigableMap<Double, Double> rateChanges = new TreeMap<>();
+        rateChanges.put(0.5, 0.0);
+        rateChanges.put(1.0, 2.0);
+        final List<Double> remaining = timesAfterRateChanges(rateChanges, 1.0);
+        assertTrue(remaining.size() > 2000);
+        assertEquals(0.5, mean(remaining), 0.04);
+    }
+
+    /**
+     * Test that theta events are performed at their times, in order with the events.
+     */
+    @Test
+    public void testThetaEvents() {
+        final TransitionKernel kernel = new TransitionKernel();
+        kernel.addToKernel(event("S", "I"), 5.0);
+        final StochasticSimulator simulator = new NextReactionMethod(new Amounts(kernel, false), kernel);
+        simulator.setRngSeed(7);
+        final OrderChecker observer = new OrderChecker(simulator);
+        simulator.addObserver(observer);
+        for (int i = 1; i <= 10; i++) {
+            simulator.registerNewTheta(observer, i + 0.5, "theta" + i);
+        }
+        simulator.run(20.0);
+
+        assertEquals(10, observer.thetaTimes.size());
+        assertEquals(1.5, observer.thetaTimes.get(0), 0.0);
+        assertEquals(10.5, observer.thetaTimes.get(9), 0.0);
+        final List<Double> sorted = new ArrayList<>(observer.eventTimes);
+        Collections.sort(sorted);
+        assertEquals(sorted, observer.eventTimes);
+        assertEquals(100, observer.eventTimes.size(), 30);
+    }
+
+    /**
+     * Simulate, many times, a single event with rate 1 that fires once and whose rate is changed at given times.
+     * @param rateChanges the new rates of the event, keyed by the time at which they are set.
+     * @param after       the time after which the time remaining to the event is recorded.
+     * @return the time from the given time to the event in each simulation in which it had not yet fired.
+     */
+    private static List<Double> timesAfterRateChanges(final NavigableMap<Double, Double> rateChanges,
+                                                      final double after) {
+        final List<Double> remaining = new ArrayList<>();
+        for (int run = 0; run < NUM_EVENTS * 2; run++) {
+            final TransitionKernel kernel = new TransitionKernel();
+            final SimulationEvent death = event("alive", "dead");
+            kernel.addToKernel(death, 1.0);
+            final StochasticSimulator simulator = new NextReactionMethod(new Amounts(kernel, false), kernel);
+            simulator.setRngSeed(run);
+            // the simulator holds one observer (they are all equal) so the one that changes the rate also records
+            // the time of the event.
+            final RateChanger changer = new RateChanger(simulator, kernel, death);
+            simulator.addObserver(changer);
+            for (final Map.Entry<Double, Double> change : rateChanges.entrySet()) {
+                simulator.registerNewTheta(changer, change.getKey(), change.getValue());
+            }
+            simulator.run(100.0);
+
+            assertNotNull(changer.firedAt);
+            final double time = changer.firedAt;
+            for (final Map.Entry<Double, Double> change : rateChanges.entrySet()) {
+                if (change.getValue() == 0.0 && time > change.getKey()) {
+                    // the event must not fire between its rate falling to zero and the next change.
+                    final Double restored = rateChanges.higherKey(change.getKey());
+                    assertTrue(restored == null || time >= restored);
+                }
+            }
+            if (time > after) {
+                remaining.add(time - after);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Get the mean of some values.
+     * @param values the values.
+     * @return their mean.
+     */
+    private static double mean(final List<Double> values) {
+        double sum = 0.0;
+        for (final double value : values) {
+            sum += value;
+        }
+        return sum / values.size();
+    }
+
+    /**
+     * An observer that sets the rate of an event (if it has not fired) at its theta events, the theta event being the
+     * new rate, and records the time at which the event fires.
+     */
+    private static final class RateChanger extends Observer {
+
+        /**
+         * Create the observer.
+         * @param simulator the simulator.
+         * @param kernel    the kernel of the simulation.
+         * @param event     the event whose rate is changed.
+         */
+        RateChanger(final StochasticSimulator simulator, final TransitionKernel kernel, final SimulationEvent event) {
+            super(simulator);
+            this.kernel = kernel;
+            this.event = event;
+        }
+
+        @Override
+        public void started() {
+        }
+
+        @Override
+        public void step() {
+        }
+
+        @Override
+        public void finished() {
+        }
+
+        @Override
+        public void theta(final double thetaTime, final Collection<Object> events) {
+            if (firedAt == null) {
+                for (final Object rate : events) {
+                    kernel.setTransitionProbability(event, (Double) rate);
+                }
+            }
+        }
+
+        @Override
+        public void observeEvent(final SimulationEvent firedEvent, final double tau, final int times) {
+            assertNull("An event fired after it was removed from the kernel.", firedAt);
+            firedAt = tau;
+        }
+        private final TransitionKernel kernel;
+        private final SimulationEvent event;
+        private Double firedAt = null;
+        private static final long serialVersionUID = -8830366475172349316L;
+    }
+
+    /**
+     * An observer that checks that the events and theta events are performed in time order.
+     */
+    private static final class OrderChecker extends Observer {
+
+        /**
+         * Create the observer.
+         * @param simulator the simulator.
+         */
+        OrderChecker(final StochasticSimulator simulator) {
+            super(simulator);
+        }
+
+        @Override
+        public void started() {
+        }
+
+        @Override
+        public void step() {
+        }
+
+        @Override
+        public void finished() {
+        }
+
+        @Override
+        public void theta(final double thetaTime, final Collection<Object> events) {
+            assertEquals(thetaTime, getProcess().getCurrentTime(), 0.0);
+            // every event so far fired before the theta event.
+            assertTrue(eventTimes.isEmpty() || eventTimes.get(eventTimes.size() - 1) < thetaTime);
+            thetaTimes.add(thetaTime);
+        }
+
+        @Override
+        public void observeEvent(final SimulationEvent event, final double tau, final int times) {
+            assertTrue(thetaTimes.isEmpty() || thetaTimes.get(thetaTimes.size() - 1) <= tau);
+            eventTimes.add(tau);
+        }
+        private final List<Double> eventTimes = new ArrayList<>();
+        private final List<Double> thetaTimes = new ArrayList<>();
+        private static final long serialVersionUID = -7667083082820586206L;
+    }
+}
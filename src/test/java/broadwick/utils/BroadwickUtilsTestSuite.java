@@ -26,7 +26,8 @@ import org.junit.runners.Suite;
  * Test Suite for broadwick.utils package.
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({broadwick.utils.ArrayUtilsTest.class})
+@Suite.SuiteClasses({broadwick.utils.ArrayUtilsTest.class, broadwick.utils.DateConverterTest.class,
+    broadwick.utils.ThetaQueueTest.class})
 public class BroadwickUtilsTestSuite {
     
 
@@ -0,0 +1,121 @@
+package broadwick.utils;
+
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.AfterClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.joda.time.DateTime;
+import org.joda.time.Days;
+import org.joda.time.format.DateTimeFormat;
+import org.slf4j.MarkerFactory;
+
+@Slf4j
+public class DateConverterTest {
+
+    public DateConverterTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+    
+    
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+
+    /**
+     * Test of forPattern method, of class DateConverter.
+     */
+    @Test
+    public void testForPattern() {
+        assertSame(DateConverter.forPattern("dd/MM/yyyy"), DateConverter.forPattern("dd/MM/yyyy"));
+        assertEquals("yyyy-MM-dd", DateConverter.forPattern("yyyy-MM-dd").getPattern());
+    }
+
+    /**
+     * Test of toDays method, of class DateConverter.
+     */
+    @Test
+    public void testToDays() {
+        assertEquals(0, DateConverter.forPattern("dd/MM/yyyy").toDays("01/01/1900"));
+        assertEquals(40437, DateConverter.forPattern("yyyy-MM-dd").toDays("2010-09-18"));
+        assertEquals(40437, DateConverter.forPattern("dd/MM/yyyy").toDays("18/09/2010"));
+        assertEquals(40437, DateConverter.forPattern("yyyyMMdd").toDays("20100918"));
+
+        // the converted dates must agree with Joda for every day over a wide range of dates (including leap years).
+        final String[] patterns = {"dd/MM/yyyy", "yyyy-MM-dd", "MM/dd/yyyy", "yyyyMMdd"};
+        final DateTime zeroDate = new DateTime(1900, 1, 1, 0, 0);
+        for (final String pattern : patterns) {
+            final DateConverter converter = DateConverter.forPattern(pattern);
+            for (DateTime date = new DateTime(1850, 1, 1, 0, 0); date.getYear() < 2101; date = date.plusDays(3)) {
+                final String str = DateTimeFormat.forPattern(pattern).print(date);
+                assertEquals(str, Days.daysBetween(zeroDate, date).getDays(), converter.toDays(str));
+            }
+        }
+
+        // dates that do not have the fixed width of the pattern and patterns that are not purely numeric are parsed by
+        // Joda.
+        assertEquals(40437, DateConverter.forPattern("dd/MM/yyyy").toDays("18/9/2010"));
+        assertEquals(40437, DateConverter.forPattern("dd MMM yyyy").toDays("18 Sep 2010"));
+    }
+
+    /**
+     * Test of toDays method for invalid dates, of class DateConverter.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testToDaysInvalid() {
+        DateConverter.forPattern("dd/MM/yyyy").toDays("31/02/2010");
+    }
+
+    /**
+     * Test of the bulk toDays methods, of class DateConverter.
+     */
+    @Test
+    public void testToDaysBulk() {
+        final DateConverter converter = DateConverter.forPattern("yyyy-MM-dd");
+        final int[] expected = {40437, Integer.MAX_VALUE, 0, Integer.MAX_VALUE};
+        assertArrayEquals(expected, converter.toDays(Arrays.asList("2010-09-18", "", "1900-01-01", null),
+                                                     Integer.MAX_VALUE));
+        assertArrayEquals(expected, converter.toDays(new String[]{"2010-09-18", "", "1900-01-01", null},
+                                                     Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2013 University of Glasgow.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package broadwick.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Test cases for broadwick.utils.ThetaQueue class.
+ */
+@Slf4j
+public class ThetaQueueTest {
+
+    public ThetaQueueTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @ClassRule // the magic is done here
+    public static TestRule classWatchman = new TestWatcher() {
+        @Override
+        protected void starting(Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "    Running tests from {} ...", description.getClassName());
+        }
+
+    };
+    @Rule
+    public TestRule watchman = new TestWatcher() {
+        @Override
+        public Statement apply(Statement base, Description description) {
+            log.info(MarkerFactory.getMarker("TEST"), "        Running {} ...", description.getMethodName());
+            return base;
+        }
+
+    };
+    /**
+     * Test that the events are taken in time order, grouped by time and observer.
+     */
+    @Test
+    public void testOrdering() {
+        final ThetaQueue<String> queue = new ThetaQueue<>();
+        assertEquals(Double.POSITIVE_INFINITY, queue.getNextThetaEventTime(), 0.0);
+        assertTrue(queue.getNextEventDataAndRemove().isEmpty());
+
+        queue.pushTheta(2.0, "obs1", "b");
+        queue.pushTheta(1.0, "obs1", "a");
+        queue.pushTheta(2.0, "obs2", "c");
+        queue.pushTheta(2.0, "obs1", "d");
+        queue.pushTheta(2.0, "obs1", "b");
+        assertEquals(2, queue.size());
+        assertEquals(1.0, queue.getNextThetaEventTime(), 0.0);
+
+        Map<String, Collection<Object>> events = queue.getNextEventDataAndRemove();
+        assertEquals(1, events.size());
+        assertEquals(Arrays.<Object>asList("a"), new ArrayList<>(events.get("obs1")));
+
+        // an event registered between the others is taken next.
+        queue.pushTheta(1.5, "obs2", "e");
+        assertEquals(1.5, queue.getNextThetaEventTime(), 0.0);
+        queue.getNextEventDataAndRemove();
+
+        assertEquals(2.0, queue.getNextThetaEventTime(), 0.0);
+        events = queue.getNextEventDataAndRemove();
+        assertEquals(Arrays.<Object>asList("b", "d"), new ArrayList<>(events.get("obs1")));
+        assertEquals(Arrays.<Object>asList("c"), new ArrayList<>(events.get("obs2")));
+        assertEquals(0, queue.size());
+        assertEquals(Double.POSITIVE_INFINITY, queue.getNextThetaEventTime(), 0.0);
+    }
+
+    /**
+     * Test that the latest events are taken first when time runs backwards.
+     */
+    @Test
+    public void testReverseTime() {
+        final ThetaQueue<String> queue = new ThetaQueue<>(true);
+        assertEquals(Double.NEGATIVE_INFINITY, queue.getNextThetaEventTime(), 0.0);
+        for (final double time : new double[]{3.0, 1.0, 5.0, 2.0, 4.0}) {
+            queue.pushTheta(time, "obs", time);
+        }
+        for (double time = 5.0; time > 0.0; time--) {
+            assertEquals(time, queue.getNextThetaEventTime(), 0.0);
+            queue.getNextEventDataAndRemove();
+        }
+        assertEquals(Double.NEGATIVE_INFINITY, queue.getNextThetaEventTime(), 0.0);
+    }
+
+    /**
+     * Test registering a schedule of events at once, mixed with events registered individually.
+     */
+    @Test
+    public void testBulkRegistration() {
+        final ThetaQueue<String> queue = new ThetaQueue<>();
+        queue.pushTheta(100.5, "obs", "single");
+        final Map<Double, List<Object>> schedule = new TreeMap<>();
+        for (int day = 365; day > 0; day--) {
+            schedule.put((double) day, Arrays.<Object>asList("movement" + day, "other" + day));
+        }
+        queue.pushThetas("obs", schedule);
+        // the schedule is copied when it is registered.
+        schedule.clear();
+        assertEquals(366, queue.size());
+
+        double last = 0.0;
+        int count = 0;
+        while (queue.size() > 0) {
+            final double time = queue.getNextThetaEventTime();
+            assertTrue(time > last);
+            last = time;
+            count += queue.getNextEventDataAndRemove().get("obs").size();
+        }
+        assertEquals(731, count);
+    }
+
+    /**
+     * Test that events can be registered from several threads at once.
+     */
+    @Test
+    public void testConcurrentRegistration() throws InterruptedException {
+        final ThetaQueue<String> queue = new ThetaQueue<>();
+        final int numThreads = 4;
+        final int numEvents = 1000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            final String observer = "obs" + i;
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    for (int j = 0; j < numEvents; j++) {
+                        queue.pushTheta(j % 10, observer, j);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(10, queue.size());
+        int count = 0;
+        while (queue.size() > 0) {
+            final Map<String, Collection<Object>> events = queue.getNextEventDataAndRemove();
+            assertEquals(numThreads, events.size());
+            for (final Collection<Object> thetas : events.values()) {
+                count += thetas.size();
+            }
+        }
+        assertEquals(numThreads * numEvents, count);
+    }
+}